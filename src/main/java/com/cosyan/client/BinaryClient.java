@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+
+import com.cosyan.db.lang.transaction.Result;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Client of the <code>/cosyan/binary</code> endpoint. All the requests of one
+ * call are sent in the body of a single HTTP request and executed in the same
+ * session, in order.
+ */
+public class BinaryClient {
+
+  private final String url;
+
+  /**
+   * @param baseUrl
+   *          the address of the server, e.g. <code>http://localhost:7070</code>.
+   */
+  public BinaryClient(String baseUrl, @Nullable String token, @Nullable String session) throws IOException {
+    StringJoiner params = new StringJoiner("&", "?", "").setEmptyValue("");
+    if (token != null) {
+      params.add("token=" + URLEncoder.encode(token, StandardCharsets.UTF_8.name()));
+    }
+    if (session != null) {
+      params.add("session=" + URLEncoder.encode(session, StandardCharsets.UTF_8.name()));
+    }
+    this.url = baseUrl + "/cosyan/binary" + params;
+  }
+
+  /**
+   * Builds the request frames of one call.
+   */
+  public static class Requests {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(body);
+    private int size;
+
+    private Requests add(ByteArrayOutputStream payload) throws IOException {
+      BinaryProtocol.writeFrame(out, payload);
+      size++;
+      return this;
+    }
+
+    public Requests sql(String sql) throws IOException {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      BinaryProtocol.writeSQL(sql, new DataOutputStream(payload));
+      return add(payload);
+    }
+
+    public Requests prepare(String sql) throws IOException {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      BinaryProtocol.writePrepare(sql, new DataOutputStream(payload));
+      return add(payload);
+    }
+
+    public Requests execute(long id, Object... params) throws IOException {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      BinaryProtocol.writeExecute(id, params, new DataOutputStream(payload));
+      return add(payload);
+    }
+
+    public Requests deallocate(long id) throws IOException {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      BinaryProtocol.writeDeallocate(id, new DataOutputStream(payload));
+      return add(payload);
+    }
+
+    public byte[] toByteArray() {
+      return body.toByteArray();
+    }
+
+    public int size() {
+      return size;
+    }
+  }
+
+  public Result execute(String sql) throws IOException {
+    return execute(new Requests().sql(sql)).get(0);
+  }
+
+  /**
+   * Sends the requests and returns their results in the same order.
+   */
+  public ImmutableList<Result> execute(Requests requests) throws IOException {
+    // The connection is kept alive and reused by the next call if the response
+    // is read fully.
+    byte[] body = requests.toByteArray();
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setRequestProperty("Content-Type", "application/octet-stream");
+    conn.setFixedLengthStreamingMode(body.length);
+    try (BufferedOutputStream out = new BufferedOutputStream(conn.getOutputStream())) {
+      out.write(body);
+    }
+    if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+      InputStream err = conn.getErrorStream();
+      throw new IOException(String.format("HTTP %s: %s", conn.getResponseCode(),
+          err == null ? "" : IOUtils.toString(err, StandardCharsets.UTF_8)));
+    }
+    List<Result> results = new ArrayList<>(requests.size());
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(conn.getInputStream()))) {
+      DataInputStream frame;
+      while ((frame = BinaryProtocol.readFrame(in, Integer.MAX_VALUE)) != null) {
+        results.add(BinaryProtocol.readResult(frame));
+      }
+    }
+    if (results.size() != requests.size()) {
+      throw new IOException(String.format("Expected %s results, received %s.",
+          requests.size(), results.size()));
+    }
+    return ImmutableList.copyOf(results);
+  }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.InsertIntoResult;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.cosyan.db.session.PreparedStatement;
+import com.cosyan.db.session.IParser.ParserException;
+import com.cosyan.db.session.Session;
+import com.google.common.collect.ImmutableList;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Binary encoding of requests and results. Every request and result is a frame
+ * of a 4 byte length and the payload. The values are written with the
+ * <code>write</code> and <code>read</code> methods of the data types, the same
+ * way as in the table files. A connection can send any number of request
+ * frames, the result frames are written in the same order.
+ */
+public class BinaryProtocol {
+
+  public static final byte SQL = 1;
+  public static final byte PREPARE = 2;
+  public static final byte EXECUTE = 3;
+  public static final byte DEALLOCATE = 4;
+
+  static final byte QUERY_RESULT = 1;
+  static final byte STATEMENT_RESULT = 2;
+  static final byte INSERT_RESULT = 3;
+  static final byte TRANSACTION_RESULT = 4;
+  static final byte ERROR_RESULT = 5;
+  static final byte PREPARED_RESULT = 6;
+  static final byte JSON_RESULT = 7;
+
+  /**
+   * The maximum length of a request frame.
+   */
+  public static final int MAX_FRAME = 64 * 1024 * 1024;
+
+  private static final ImmutableList<DataType<?>> WIRE_TYPES = ImmutableList.of(
+      DataTypes.NullType,
+      DataTypes.LongType,
+      DataTypes.DoubleType,
+      DataTypes.BoolType,
+      DataTypes.StringType,
+      DataTypes.dateType());
+
+  /**
+   * The result of a <code>PREPARE</code> request.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class PreparedResult extends Result {
+
+    private final long id;
+    private final int params;
+
+    public PreparedResult(long id, int params) {
+      super(true);
+      this.id = id;
+      this.params = params;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+      JSONObject obj = new JSONObject();
+      obj.put("id", id);
+      obj.put("params", params);
+      return obj;
+    }
+  }
+
+  /**
+   * Results without a binary encoding, sent in the same JSON format as the
+   * HTTP API.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class JSONResult extends Result {
+
+    private final JSONObject json;
+
+    public JSONResult(boolean success, JSONObject json) {
+      super(success);
+      this.json = json;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+      return json;
+    }
+  }
+
+  /**
+   * An error returned by the server.
+   */
+  public static class ServerException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ServerException(String msg) {
+      super(msg);
+    }
+  }
+
+  /**
+   * Writes the payload as one frame.
+   */
+  public static void writeFrame(DataOutput out, ByteArrayOutputStream payload) throws IOException {
+    out.writeInt(payload.size());
+    out.write(payload.toByteArray());
+  }
+
+  /**
+   * Reads the payload of the next request frame, or returns <code>null</code>
+   * at the end of the stream.
+   */
+  public static DataInputStream readFrame(DataInput in) throws IOException {
+    return readFrame(in, MAX_FRAME);
+  }
+
+  /**
+   * Reads the payload of the next frame, or returns <code>null</code> at the
+   * end of the stream. Frames longer than <code>maxLength</code> are rejected.
+   */
+  public static DataInputStream readFrame(DataInput in, int maxLength) throws IOException {
+    int length;
+    try {
+      length = in.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    if (length < 0 || length > maxLength) {
+      throw new IOException(String.format("Invalid frame length '%s'.", length));
+    }
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+    return new DataInputStream(new ByteArrayInputStream(payload));
+  }
+
+  /**
+   * The type used to write the values of the column. Types without a binary
+   * encoding are sent as strings.
+   */
+  static DataType<?> wireType(DataType<?> type) {
+    if (type.isNull()) {
+      return DataTypes.NullType;
+    } else if (type.javaClass() == Long.class) {
+      return DataTypes.LongType;
+    } else if (type.isDouble()) {
+      return DataTypes.DoubleType;
+    } else if (type.isBool()) {
+      return DataTypes.BoolType;
+    } else if (type.isDate()) {
+      return DataTypes.dateType();
+    } else {
+      return DataTypes.StringType;
+    }
+  }
+
+  private static void writeType(DataType<?> wireType, DataOutput out) throws IOException {
+    out.writeByte(WIRE_TYPES.indexOf(wireType));
+  }
+
+  private static DataType<?> readType(DataInput in) throws IOException {
+    int i = in.readByte();
+    if (i < 0 || i >= WIRE_TYPES.size()) {
+      throw new IOException(String.format("Invalid type '%s'.", i));
+    }
+    return WIRE_TYPES.get(i);
+  }
+
+  /**
+   * Writes a single value with its type, used for the parameters of prepared
+   * statements.
+   */
+  static void writeValue(Object value, DataOutput out) throws IOException {
+    if (value == null) {
+      writeType(DataTypes.NullType, out);
+      return;
+    }
+    DataType<?> type;
+    if (value instanceof Long || value instanceof Integer) {
+      type = DataTypes.LongType;
+      value = ((Number) value).longValue();
+    } else if (value instanceof Double || value instanceof Float) {
+      type = DataTypes.DoubleType;
+      value = ((Number) value).doubleValue();
+    } else if (value instanceof Boolean) {
+      type = DataTypes.BoolType;
+    } else if (value instanceof Date) {
+      type = DataTypes.dateType();
+    } else {
+      type = DataTypes.StringType;
+      value = value.toString();
+    }
+    writeType(type, out);
+    type.write(value, out);
+  }
+
+  static Object readValue(DataInputStream request) throws IOException {
+    DataType<?> type = readType(request);
+    if (type.isNull()) {
+      return null;
+    } else if (type == DataTypes.StringType) {
+      return readString(request);
+    } else {
+      return type.read(request);
+    }
+  }
+
+  /**
+   * Reads a length or count field of the request and checks that the elements
+   * of <code>elementSize</code> bytes fit in the rest of the frame, so invalid
+   * requests cannot make the server allocate more than the frame size.
+   */
+  private static int readLength(DataInputStream request, int elementSize) throws IOException {
+    int length = request.readInt();
+    if (length < 0 || (long) length * elementSize > request.available()) {
+      throw new IOException(String.format("Invalid length '%s'.", length));
+    }
+    return length;
+  }
+
+  private static String readString(DataInputStream request) throws IOException {
+    request.mark(4);
+    readLength(request, 2);
+    request.reset();
+    return DataTypes.StringType.read(request);
+  }
+
+  public static void writeSQL(String sql, DataOutput out) throws IOException {
+    out.writeByte(SQL);
+    DataTypes.StringType.write(sql, out);
+  }
+
+  public static void writePrepare(String sql, DataOutput out) throws IOException {
+    out.writeByte(PREPARE);
+    DataTypes.StringType.write(sql, out);
+  }
+
+  public static void writeExecute(long id, Object[] params, DataOutput out) throws IOException {
+    out.writeByte(EXECUTE);
+    out.writeLong(id);
+    out.writeInt(params.length);
+    for (Object param : params) {
+      writeValue(param, out);
+    }
+  }
+
+  public static void writeDeallocate(long id, DataOutput out) throws IOException {
+    out.writeByte(DEALLOCATE);
+    out.writeLong(id);
+  }
+
+  public static void writeResult(Result result, DataOutput out) throws IOException {
+    if (result instanceof TransactionResult) {
+      ImmutableList<Result> results = ((TransactionResult) result).getResults();
+      out.writeByte(TRANSACTION_RESULT);
+      out.writeInt(results.size());
+      for (Result r : results) {
+        writeResult(r, out);
+      }
+    } else if (result instanceof QueryResult) {
+      writeQueryResult((QueryResult) result, out);
+    } else if (result instanceof InsertIntoResult) {
+      InsertIntoResult insertIntoResult = (InsertIntoResult) result;
+      out.writeByte(INSERT_RESULT);
+      out.writeLong(insertIntoResult.getAffectedLines());
+      out.writeInt(insertIntoResult.getNewIDs().size());
+      for (long id : insertIntoResult.getNewIDs()) {
+        out.writeLong(id);
+      }
+    } else if (result instanceof StatementResult && result.getClass() == StatementResult.class) {
+      out.writeByte(STATEMENT_RESULT);
+      out.writeLong(((StatementResult) result).getAffectedLines());
+    } else if (result instanceof PreparedResult) {
+      out.writeByte(PREPARED_RESULT);
+      out.writeLong(((PreparedResult) result).getId());
+      out.writeInt(((PreparedResult) result).getParams());
+    } else if (!result.isSuccess()) {
+      out.writeByte(ERROR_RESULT);
+      DataTypes.StringType.write(result.toJSON().getJSONObject("error").optString("msg"), out);
+    } else {
+      out.writeByte(JSON_RESULT);
+      DataTypes.StringType.write(result.toJSON().toString(), out);
+    }
+  }
+
+  private static void writeQueryResult(QueryResult result, DataOutput out) throws IOException {
+    out.writeByte(QUERY_RESULT);
+    int columns = result.getHeader().size();
+    out.writeInt(columns);
+    DataType<?>[] wireTypes = new DataType<?>[columns];
+    for (int i = 0; i < columns; i++) {
+      DataTypes.StringType.write(result.getHeader().get(i), out);
+      wireTypes[i] = wireType(result.getTypes().get(i));
+      writeType(wireTypes[i], out);
+    }
+    out.writeInt(result.getValues().size());
+    byte[] nulls = new byte[(columns + 7) / 8];
+    for (Object[] values : result.getValues()) {
+      // Null bitmap of the row followed by the non null values.
+      for (int i = 0; i < nulls.length; i++) {
+        nulls[i] = 0;
+      }
+      for (int i = 0; i < columns; i++) {
+        if (values[i] == null) {
+          nulls[i / 8] |= 1 << (i % 8);
+        }
+      }
+      out.write(nulls);
+      for (int i = 0; i < columns; i++) {
+        if (values[i] != null) {
+          if (wireTypes[i] == DataTypes.StringType && !(values[i] instanceof String)) {
+            wireTypes[i].write(result.getTypes().get(i).toString(values[i]), out);
+          } else {
+            wireTypes[i].write(values[i], out);
+          }
+        }
+      }
+    }
+  }
+
+  public static Result readResult(DataInput in) throws IOException {
+    byte kind = in.readByte();
+    switch (kind) {
+    case TRANSACTION_RESULT: {
+      int n = in.readInt();
+      List<Result> results = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        results.add(readResult(in));
+      }
+      return new TransactionResult(results);
+    }
+    case QUERY_RESULT:
+      return readQueryResult(in);
+    case INSERT_RESULT: {
+      long affectedLines = in.readLong();
+      int n = in.readInt();
+      List<Long> newIDs = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        newIDs.add(in.readLong());
+      }
+      return new InsertIntoResult(affectedLines, newIDs);
+    }
+    case STATEMENT_RESULT:
+      return new StatementResult(in.readLong());
+    case PREPARED_RESULT:
+      return new PreparedResult(in.readLong(), in.readInt());
+    case ERROR_RESULT:
+      return new ErrorResult(new ServerException(DataTypes.StringType.read(in)));
+    case JSON_RESULT:
+      return new JSONResult(true, new JSONObject(DataTypes.StringType.read(in)));
+    default:
+      throw new IOException(String.format("Invalid result '%s'.", kind));
+    }
+  }
+
+  private static QueryResult readQueryResult(DataInput in) throws IOException {
+    int columns = in.readInt();
+    ImmutableList.Builder<String> header = ImmutableList.builder();
+    ImmutableList.Builder<DataType<?>> types = ImmutableList.builder();
+    DataType<?>[] wireTypes = new DataType<?>[columns];
+    for (int i = 0; i < columns; i++) {
+      header.add(DataTypes.StringType.read(in));
+      wireTypes[i] = readType(in);
+      types.add(wireTypes[i]);
+    }
+    int rows = in.readInt();
+    List<Object[]> values = new ArrayList<>(rows);
+    byte[] nulls = new byte[(columns + 7) / 8];
+    for (int r = 0; r < rows; r++) {
+      in.readFully(nulls);
+      Object[] row = new Object[columns];
+      for (int i = 0; i < columns; i++) {
+        if ((nulls[i / 8] & (1 << (i % 8))) == 0) {
+          row[i] = wireTypes[i].read(in);
+        }
+      }
+      values.add(row);
+    }
+    return new QueryResult(header.build(), types.build(), values);
+  }
+
+  /**
+   * Executes the request frames in the session until the end of the input,
+   * writing a result frame after every request. An invalid request results in
+   * an error frame. After an invalid frame the input cannot be read further, so
+   * the error frame is the last one.
+   */
+  public static void serve(Session session, DataInput in, OutputStream out) throws IOException {
+    DataOutputStream dos = new DataOutputStream(out);
+    while (true) {
+      DataInputStream request;
+      try {
+        request = readFrame(in);
+      } catch (IOException e) {
+        writeResultFrame(new ErrorResult(e), dos);
+        return;
+      }
+      if (request == null) {
+        return;
+      }
+      Result result;
+      try {
+        result = execute(session, request);
+      } catch (IOException | RuntimeException e) {
+        result = new ErrorResult(e);
+      }
+      writeResultFrame(result, dos);
+    }
+  }
+
+  private static void writeResultFrame(Result result, DataOutputStream out) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    writeResult(result, new DataOutputStream(payload));
+    writeFrame(out, payload);
+    out.flush();
+  }
+
+  private static Result execute(Session session, DataInputStream request) throws IOException {
+    byte kind = request.readByte();
+    switch (kind) {
+    case SQL:
+      return session.execute(readString(request));
+    case PREPARE:
+      try {
+        PreparedStatement preparedStatement = session.prepare(readString(request));
+        return new PreparedResult(preparedStatement.id(), preparedStatement.numParams());
+      } catch (ParserException e) {
+        return new ErrorResult(e);
+      }
+    case EXECUTE: {
+      long id = request.readLong();
+      // Every parameter takes at least one byte for its type.
+      Object[] params = new Object[readLength(request, 1)];
+      for (int i = 0; i < params.length; i++) {
+        params[i] = readValue(request);
+      }
+      return session.execute(id, params);
+    }
+    case DEALLOCATE:
+      return session.deallocate(request.readLong());
+    default:
+      throw new IOException(String.format("Invalid request '%s'.", kind));
+    }
+  }
+}
@@ -33,10 +33,12 @@ import com.cosyan.db.lang.sql.Parser;
 import com.cosyan.db.lock.LockManager;
 import com.cosyan.db.logging.MetaJournal.DBException;
 import com.cosyan.db.logging.TransactionJournal;
+import com.cosyan.db.meta.MetaReader;
 import com.cosyan.db.meta.MetaRepo;
 import com.cosyan.db.session.AdminSession;
 import com.cosyan.db.session.Session;
 import com.cosyan.db.tools.BackupManager;
+import com.cosyan.db.tools.Compactor;
 import com.cosyan.db.transaction.TransactionHandler;
 
 public class DBApi {
@@ -48,6 +50,7 @@ public class DBApi {
   private final Authenticator authenticator;
   private final BackupManager backupManager;
   private final EntityHandler entityHandler;
+  private final Compactor compactor;
 
   private final ThreadPoolExecutor threadPoolExecutor;
   private final ArrayBlockingQueue<Runnable> queue;
@@ -63,7 +66,9 @@ public class DBApi {
     transactionJournal = new TransactionJournal(config);
     backupManager = new BackupManager(config, metaRepo);
     entityHandler = new EntityHandler(metaRepo.config(), transactionHandler);
-    metaRepo.init();
+    metaRepo.init(transactionJournal);
+    compactor = new Compactor(config, metaRepo, newAdminSession());
+    compactor.start();
     // System.out.println("Server started.");
     int numThreads = config.getInt(Config.DB_NUM_THREADS);
     // TODO: figure out capacity.
@@ -117,8 +122,16 @@ public class DBApi {
         new Lexer());
   }
 
-  public void shutdown() throws IOException {
+  public void shutdown() throws IOException, DBException {
+    compactor.shutdown();
+    MetaReader metaReader = metaRepo.metaRepoReadLock();
+    try {
+      metaRepo.checkpoint(transactionJournal);
+    } finally {
+      metaReader.metaRepoReadUnlock();
+    }
     metaRepo.shutdown();
+    transactionJournal.close();
   }
 
   public void execute(Runnable runnable) {
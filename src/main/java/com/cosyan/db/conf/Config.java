@@ -49,9 +49,51 @@ public class Config {
   @ConfigType(type = ConfigType.INT, mandatory = true, doc = "The number of threads for the DB.")
   public static final String DB_NUM_THREADS = "DB_NUM_THREADS";
 
-  @ConfigType(type = ConfigType.INT, mandatory = true, doc = "The amount of time tasks sleep before trying to acquire locks again.")
+  @ConfigType(type = ConfigType.INT, mandatory = true, doc = "How often transactions waiting for locks check whether they were cancelled.")
   public static final String TR_RETRY_MS = "TR_RETRY_MS";
 
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The size of the table file pages in the page cache in KB.")
+  public static final String PAGE_SIZE_KB = "PAGE_SIZE_KB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The maximum size of the off-heap table page cache in MB.")
+  public static final String PAGE_CACHE_SIZE_MB = "PAGE_CACHE_SIZE_MB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The maximum estimated heap size of the cached index nodes in MB, shared by all indexes.")
+  public static final String INDEX_CACHE_SIZE_MB = "INDEX_CACHE_SIZE_MB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The number of bits per key of the Bloom filters of the indexes used by foreign key checks, 0 to disable the filters.")
+  public static final String INDEX_BLOOM_FILTER_BITS_PER_KEY = "INDEX_BLOOM_FILTER_BITS_PER_KEY";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The maximum time the transaction journal waits for more records before an fsync in milliseconds.")
+  public static final String JOURNAL_MAX_DELAY_MS = "JOURNAL_MAX_DELAY_MS";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The maximum number of transaction journal records written with one fsync.")
+  public static final String JOURNAL_MAX_BATCH = "JOURNAL_MAX_BATCH";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The size of the transaction journal in MB above which a checkpoint is made.")
+  public static final String JOURNAL_CHECKPOINT_MB = "JOURNAL_CHECKPOINT_MB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "How often the background compactor checks the tables in seconds, 0 disables it.")
+  public static final String VACUUM_INTERVAL_SEC = "VACUUM_INTERVAL_SEC";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The percentage of deleted records above which a table is vacuumed automatically.")
+  public static final String VACUUM_DELETED_RATIO_PCT = "VACUUM_DELETED_RATIO_PCT";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The memory budget of one sort in MB above which sorted runs are spilled to disk.")
+  public static final String SORT_MEMORY_MB = "SORT_MEMORY_MB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The memory budget of the build side of one hash join in MB above which both sides are partitioned to disk.")
+  public static final String JOIN_MEMORY_MB = "JOIN_MEMORY_MB";
+
+  @ConfigType(type = ConfigType.BOOL, mandatory = false, doc = "Whether the constraint checks of tables are evaluated through method handles instead of the interpreter.")
+  public static final String COMPILED_RULES = "COMPILED_RULES";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The maximum number of keys whose aggregates are cached for one view over a reverse foreign key.")
+  public static final String REF_AGGREGATES_CACHE_SIZE = "REF_AGGREGATES_CACHE_SIZE";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The minimum size of the table file ranges in KB which are aggregated in parallel.")
+  public static final String PARALLEL_SPLIT_KB = "PARALLEL_SPLIT_KB";
+
   private final String confDir;
   private final Properties props;
 
@@ -99,6 +141,10 @@ public class Config {
     return props.getProperty(DATA_DIR) + File.separator + "journal";
   }
 
+  public String tmpDir() {
+    return props.getProperty(DATA_DIR) + File.separator + "tmp";
+  }
+
   public String backupDir() {
     return props.getProperty(DATA_DIR) + File.separator + "backup";
   }
@@ -154,6 +200,20 @@ public class Config {
     return integer(props.getProperty(key));
   }
 
+  public int getInt(String key, int defaultValue) throws ConfigException {
+    if (!props.containsKey(key)) {
+      return defaultValue;
+    }
+    return integer(props.getProperty(key));
+  }
+
+  public boolean getBool(String key, boolean defaultValue) throws ConfigException {
+    if (!props.containsKey(key)) {
+      return defaultValue;
+    }
+    return bool(props.getProperty(key));
+  }
+
   public static ImmutableList<Field> fields(boolean showHidden) {
     ImmutableList.Builder<Field> builder = ImmutableList.builder();
     for (Field field : Config.class.getFields()) {
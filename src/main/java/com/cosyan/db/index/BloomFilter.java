@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+/**
+ * A blocked Bloom filter of hashed keys. All the bits of a key are set in one
+ * block of 512 bits - a cache line - so a lookup reads one block. The filter
+ * never returns <code>false</code> for an added key, and returns
+ * <code>true</code> for other keys with a small probability depending on the
+ * number of bits per key.
+ */
+class BloomFilter {
+
+  private static final int BLOCK_LONGS = 8;
+  private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+  // The bits within a block are addressed by 9 bits of the hash.
+  private static final int MAX_HASHES = Long.SIZE / 9;
+
+  private final long[] bits;
+  private final int blocks;
+  private final int hashes;
+  private final long capacity;
+  private long size;
+
+  /**
+   * @param capacity
+   *          the number of keys the filter is sized for.
+   */
+  BloomFilter(long capacity, int bitsPerKey) {
+    assert capacity > 0 && bitsPerKey > 0;
+    this.capacity = capacity;
+    this.blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS,
+        Math.max(1L, (capacity * bitsPerKey + BLOCK_BITS - 1) / BLOCK_BITS));
+    this.bits = new long[blocks * BLOCK_LONGS];
+    this.hashes = Math.max(1, Math.min(MAX_HASHES, (int) Math.round(bitsPerKey * Math.log(2))));
+  }
+
+  static long hash(byte[] key) {
+    // FNV-1a followed by the finalizer of MurmurHash3.
+    long h = 0xcbf29ce484222325L;
+    for (byte b : key) {
+      h = (h ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private int block(long hash) {
+    return (int) (((hash >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+  }
+
+  void add(long hash) {
+    int block = block(hash);
+    long h = hash * 0x9e3779b97f4a7c15L;
+    for (int i = 0; i < hashes; i++) {
+      int bit = (int) (h >>> (i * 9)) & (BLOCK_BITS - 1);
+      bits[block + (bit >>> 6)] |= 1L << bit;
+    }
+    size++;
+  }
+
+  boolean mightContain(long hash) {
+    int block = block(hash);
+    long h = hash * 0x9e3779b97f4a7c15L;
+    for (int i = 0; i < hashes; i++) {
+      int bit = (int) (h >>> (i * 9)) & (BLOCK_BITS - 1);
+      if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The number of keys added, including the same key added multiple times.
+   */
+  long size() {
+    return size;
+  }
+
+  long capacity() {
+    return capacity;
+  }
+
+  long memorySize() {
+    return (long) bits.length * Long.BYTES;
+  }
+}
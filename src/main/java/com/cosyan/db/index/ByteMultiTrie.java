@@ -26,6 +26,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.ByteTrie.RuntimeIndexException;
@@ -41,6 +42,8 @@ public abstract class ByteMultiTrie<T> {
   private static final int POINTERS_PER_NODE = 10;
   private static final int NODE_SIZE = Long.BYTES * (POINTERS_PER_NODE + 1);
   private static final long NULL_VALUE = Long.MIN_VALUE;
+  private static final int NODE_MEMORY_SIZE =
+      ByteTrie.OBJECT_BYTES + 16 + ByteTrie.ARRAY_BYTES + Long.BYTES * POINTERS_PER_NODE;
 
   @Data
   protected static class MultiLeaf {
@@ -81,7 +84,128 @@ public abstract class ByteMultiTrie<T> {
     }
   }
 
+  /**
+   * Iterates the keys of a range in order together with their values.
+   */
+  public class Cursor {
+    private final ByteTrie<T, MultiLeaf>.Cursor keys;
+    private final boolean committed;
+    private long[] values;
+
+    private Cursor(KeyRange range, boolean committed) throws IOException {
+      this.keys = trie.cursor(range, committed);
+      this.committed = committed;
+    }
+
+    /**
+     * Moves to the next key of the range having at least one value, returns
+     * false if there are no more.
+     */
+    public boolean next() throws IOException {
+      synchronized (ByteMultiTrie.this) {
+        while (keys.next()) {
+          values = ByteMultiTrie.this.values(keys.value(), committed);
+          if (values.length > 0) {
+            return true;
+          }
+        }
+        values = null;
+        return false;
+      }
+    }
+
+    public T key() {
+      return keys.key();
+    }
+
+    public long[] values() {
+      return values;
+    }
+  }
+
+  /**
+   * Builds an empty index from keys added in ascending order, the values of a
+   * key in the order they are added. The chain nodes of a key are appended to
+   * the file one after the other, and the key is loaded into the trie with
+   * its first and last chain node, see <code>ByteTrie.Loader</code>.
+   *
+   * Values are added one by one to a non-empty index.
+   */
+  public class Loader {
+    private final ByteTrie<T, MultiLeaf>.Loader keys;
+    private final NodeWriter writer;
+    private final long[] values = new long[POINTERS_PER_NODE];
+    private int size;
+
+    private T key;
+    private long firstIndex;
+
+    private Loader() throws IOException {
+      keys = pendingNodes.isEmpty() && filePointer == stableFilePointer ? trie.loader() : null;
+      writer = isBulk() ? new NodeWriter(raf.getChannel(), Long.MAX_VALUE) : null;
+      loaded |= isBulk();
+    }
+
+    private boolean isBulk() {
+      return keys != null && keys.isBulk();
+    }
+
+    public void add(T nextKey, long value) throws IOException, IndexException {
+      synchronized (ByteMultiTrie.this) {
+        if (!isBulk()) {
+          put(nextKey, value);
+          return;
+        }
+        if (key == null || !trie.keyType.keysEqual(key, nextKey)) {
+          finishKey();
+          key = nextKey;
+          firstIndex = filePointer;
+        } else if (size == POINTERS_PER_NODE) {
+          // The next node of the chain follows this one.
+          writeNode(filePointer + NODE_SIZE);
+        }
+        values[size++] = value;
+      }
+    }
+
+    private long writeNode(long nextPointer) throws IOException {
+      ByteBuffer bb = writer.buffer(filePointer, NODE_SIZE);
+      bb.putLong(nextPointer);
+      for (int i = 0; i < POINTERS_PER_NODE; i++) {
+        bb.putLong(i < size ? values[i] : NULL_VALUE);
+      }
+      long pointer = filePointer;
+      filePointer += NODE_SIZE;
+      size = 0;
+      return pointer;
+    }
+
+    private void finishKey() throws IOException, IndexException {
+      if (key != null) {
+        long lastIndex = writeNode(0L);
+        keys.add(key, new MultiLeaf(firstIndex, lastIndex));
+      }
+    }
+
+    /**
+     * Writes the remaining nodes, the index is persisted on commit.
+     */
+    public void finish() throws IOException, IndexException {
+      synchronized (ByteMultiTrie.this) {
+        if (!isBulk()) {
+          return;
+        }
+        finishKey();
+        key = null;
+        writer.flush();
+        keys.finish();
+      }
+    }
+  }
+
   private ByteTrie<T, MultiLeaf> trie;
+  private final NodeCache cache;
+  private final NodeCache.Owner owner;
 
   private final String fileName;
   protected RandomAccessFile raf;
@@ -89,11 +213,15 @@ public abstract class ByteMultiTrie<T> {
   private long stableFilePointer;
 
   private final LinkedHashMap<Long, PendingNode> pendingNodes = new LinkedHashMap<>();
+  // Nodes were written to the file by a loader since the last commit.
+  private boolean loaded;
 
   protected ByteMultiTrie(String fileName, ByteTrie<T, MultiLeaf> trie) throws IOException {
     this.fileName = fileName;
     this.raf = new RandomAccessFile(fileName, "rw");
     this.trie = trie;
+    this.cache = trie.cache();
+    this.owner = cache.newOwner();
     if (!new File(fileName).exists() || raf.length() == 0) {
       // Let's not start indexing from 0, since that is the null file pointer.
       raf.write(0);
@@ -103,6 +231,7 @@ public abstract class ByteMultiTrie<T> {
   }
 
   public synchronized void close() throws IOException {
+    cache.invalidate(owner);
     raf.close();
   }
 
@@ -116,29 +245,79 @@ public abstract class ByteMultiTrie<T> {
     this.raf = new RandomAccessFile(fileName, "rw");
   }
 
+  public synchronized void sync() throws IOException {
+    trie.sync();
+    raf.getChannel().force(false);
+  }
+
+  /**
+   * Keeps a Bloom filter of the keys of the trie, see
+   * <code>ByteTrie.enableBloomFilter</code>.
+   */
+  public synchronized void enableBloomFilter(int bitsPerKey) throws IOException {
+    trie.enableBloomFilter(bitsPerKey);
+  }
+
   public synchronized void commit() throws IOException {
     trie.commit();
+    // The new nodes are in the order of their file pointers, the modified last
+    // nodes of the existing chains are written after them.
+    NodeWriter appended = new NodeWriter(raf.getChannel(), filePointer - stableFilePointer);
+    TreeMap<Long, PendingNode> modified = new TreeMap<>();
     for (Map.Entry<Long, PendingNode> node : pendingNodes.entrySet()) {
-      saveNode(node.getKey(), node.getValue());
+      if (node.getKey() >= stableFilePointer) {
+        writeNode(appended.buffer(node.getKey(), NODE_SIZE), node.getValue());
+      } else {
+        modified.put(node.getKey(), node.getValue());
+      }
+    }
+    appended.flush();
+    NodeWriter writer = new NodeWriter(raf.getChannel(), (long) modified.size() * NODE_SIZE);
+    for (Map.Entry<Long, PendingNode> node : modified.entrySet()) {
+      writeNode(writer.buffer(node.getKey(), NODE_SIZE), node.getValue());
     }
+    writer.flush();
     if (filePointer != raf.length()) {
       throw new RuntimeIndexException("Inconsistent state.");
     }
+    for (Map.Entry<Long, PendingNode> node : pendingNodes.entrySet()) {
+      PendingNode pendingNode = node.getValue();
+      cache.put(owner, node.getKey(), new ImmutableNode(pendingNode.getNextPointer(), pendingNode.getValues()),
+          NODE_MEMORY_SIZE);
+    }
     pendingNodes.clear();
     stableFilePointer = filePointer;
+    loaded = false;
   }
 
   public synchronized void rollback() {
     trie.rollback();
+    if (loaded) {
+      try {
+        raf.setLength(stableFilePointer);
+      } catch (IOException e) {
+        throw new RuntimeIndexException(String.format("Cannot truncate '%s': %s.", fileName, e.getMessage()));
+      }
+      cache.invalidate(owner);
+      loaded = false;
+    }
     filePointer = stableFilePointer;
     pendingNodes.clear();
   }
 
   private ChainNode loadNode(long id) throws IOException {
-    PendingNode pendingNode = pendingNodes.get(id);
+    return loadNode(id, false);
+  }
+
+  private ChainNode loadNode(long id, boolean committed) throws IOException {
+    PendingNode pendingNode = committed ? null : pendingNodes.get(id);
     if (pendingNode != null) {
       return pendingNode;
     }
+    ChainNode node = (ChainNode) cache.get(owner, id);
+    if (node != null) {
+      return node;
+    }
     ByteBuffer bb = ByteBuffer.allocate(NODE_SIZE);
     raf.seek(id);
     raf.read(bb.array());
@@ -146,27 +325,43 @@ public abstract class ByteMultiTrie<T> {
     long[] values = new long[POINTERS_PER_NODE];
     long nextPointer = lb.get();
     lb.get(values);
-    return new ImmutableNode(nextPointer, values);
+    node = new ImmutableNode(nextPointer, values);
+    cache.put(owner, id, node, NODE_MEMORY_SIZE);
+    return node;
   }
 
-  private void saveNode(long filePointer, PendingNode node) throws IOException {
-    ByteBuffer bb = ByteBuffer.allocate(NODE_SIZE);
-    LongBuffer lb = bb.asLongBuffer();
-    lb.put(node.getNextPointer());
-    lb.put(node.getValues());
-    raf.seek(filePointer);
-    raf.write(bb.array());
+  private void writeNode(ByteBuffer bb, PendingNode node) {
+    bb.putLong(node.getNextPointer());
+    for (long value : node.getValues()) {
+      bb.putLong(value);
+    }
   }
 
   public synchronized long[] get(T key) throws IOException {
-    MultiLeaf leaf = trie.get(key);
+    return get(key, false);
+  }
+
+  /**
+   * Returns the values of the key as of the last commit, ignoring the pending
+   * changes of the transaction modifying the index.
+   */
+  public synchronized long[] getCommitted(T key) throws IOException {
+    return get(key, true);
+  }
+
+  private long[] get(T key, boolean committed) throws IOException {
+    MultiLeaf leaf = committed ? trie.getCommitted(key) : trie.get(key);
     if (leaf == null) {
       return EMPTY;
     }
+    return values(leaf, committed);
+  }
+
+  private long[] values(MultiLeaf leaf, boolean committed) throws IOException {
     List<Long> result = new LinkedList<>();
     long nextPointer = leaf.getFirstIndex();
     while (nextPointer > 0) {
-      ChainNode node = loadNode(nextPointer);
+      ChainNode node = loadNode(nextPointer, committed);
       for (int i = 0; i < POINTERS_PER_NODE; i++) {
         long value = node.getValue(i);
         if (value != NULL_VALUE) {
@@ -178,6 +373,22 @@ public abstract class ByteMultiTrie<T> {
     return result.stream().mapToLong(Long::longValue).toArray();
   }
 
+  /**
+   * Returns a cursor iterating the keys of <code>range</code> in order. The
+   * <code>committed</code> cursor ignores the pending changes.
+   */
+  public synchronized Cursor cursor(KeyRange range, boolean committed) throws IOException {
+    return new Cursor(range, committed);
+  }
+
+  /**
+   * Returns a loader adding keys in ascending order. The loaded keys are
+   * visible to the uncommitted reads and are persisted on commit.
+   */
+  public synchronized Loader loader() throws IOException {
+    return new Loader();
+  }
+
   public synchronized void put(T key, long finalIndex) throws IOException, IndexException {
     MultiLeaf leaf = trie.get(key);
     if (leaf == null) {
@@ -272,6 +483,14 @@ public abstract class ByteMultiTrie<T> {
         raf.length(),
         trieStat.getInMemNodes(),
         trieStat.getPendingNodes(),
-        pendingNodes.size());
+        owner.nodes(),
+        pendingNodes.size(),
+        trieStat.getInMemBytes() + owner.bytes(),
+        trieStat.getHits() + owner.hits(),
+        trieStat.getMisses() + owner.misses(),
+        trieStat.getEvictions() + owner.evictions(),
+        trieStat.getBloomFilterBytes(),
+        trieStat.getBloomFilterNegatives(),
+        trieStat.getBloomFilterFalsePositives());
   }
 }
@@ -15,28 +15,35 @@
  */
 package com.cosyan.db.index;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
 
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
 
 /**
- * A prefix trie for indexing. Supports in memory caching to minimize file
- * accesses.
+ * A prefix trie for indexing. The committed nodes are cached in a bounded
+ * <code>NodeCache</code> to minimize file accesses.
  * 
  * Every key is serialized to a byte array. The first <code>n</code> bytes are
  * used to address various levels of the prefix tree. Leaf nodes store the final
  * keys. In addition, every middle "index" node can store a key too, if the
- * bytes of the key exactly add up to the prefix.
+ * bytes of the key exactly add up to the prefix. Index nodes only take space
+ * for the children they have, they grow to larger node types as keys are
+ * added.
  * 
  * Subclass this class for to implement for various key types.
  * 
@@ -47,29 +54,358 @@ import com.cosyan.db.index.IndexStat.ByteTrieStat;
 public class ByteTrie<K, V> {
 
   /**
-   * The keys array is addressed by a byte. The last slot is for elements matching
+   * Index nodes are addressed by a byte. The last slot is for elements matching
    * the current prefix.
    */
   private static final int KEYS_SIZE = 257;
+  private static final int CURRENT = 256;
+
+  /**
+   * The files start with a header of a magic number and the version of the
+   * format, which covers the node layout and the order preserving key encoding
+   * of <code>LeafTypes</code>. Files without the header have nodes of 257
+   * pointers and either the order preserving or the earlier plain key encoding.
+   * They are migrated when opened: the keys are read from the leaves, where they
+   * are stored with their data types, and put into a new file, so the trie paths
+   * are encoded again. Lookups never read such a file directly.
+   */
+  private static final long MAGIC = 0x436f737961724154L;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+  private static final String MIGRATE_SUFFIX = ".migrate";
+
+  private static final byte NODE4 = 1;
+  private static final byte NODE16 = 2;
+  private static final byte NODE48 = 3;
+  private static final byte NODE256 = 4;
+
+  // Estimated heap overhead of objects and arrays.
+  static final int OBJECT_BYTES = 16;
+  static final int ARRAY_BYTES = 16;
 
   public static class Node<K, V> {
-    protected int accesses = 0;
+  }
+
+  /**
+   * An immutable index node, modifications return a new node. The nodes grow
+   * from 4 to 16, 48 and 256 children as keys are added. A node is stored in a
+   * fixed number of bytes depending on its type, so a modified node of the
+   * same type is written to the same place in the file.
+   */
+  private static abstract class Index<K, V> extends Node<K, V> {
+    protected final long current;
+
+    private Index(long current) {
+      this.current = current;
+    }
+
+    protected abstract long child(int slot);
+
+    /**
+     * Returns the node with the child at <code>slot</code> set to
+     * <code>pointer</code>, or removed if <code>pointer</code> is 0.
+     */
+    protected abstract Index<K, V> withChild(int slot, long pointer);
+
+    protected abstract Index<K, V> withCurrent(long current);
+
+    protected abstract byte type();
+
+    protected abstract void writeChildren(ByteBuffer bb);
+
+    /**
+     * The estimated heap size of the node.
+     */
+    protected abstract int memorySize();
+
+    private long pointer(int slot) {
+      return slot == CURRENT ? current : child(slot);
+    }
+
+    private Index<K, V> with(int slot, long pointer) {
+      return slot == CURRENT ? withCurrent(pointer) : withChild(slot, pointer);
+    }
+
+    private int size() {
+      return size(type());
+    }
+
+    private static int size(byte type) {
+      switch (type) {
+      case NODE4:
+        return 1 + Long.BYTES + 1 + 4 + 4 * Long.BYTES;
+      case NODE16:
+        return 1 + Long.BYTES + 1 + 16 + 16 * Long.BYTES;
+      case NODE48:
+        return 1 + Long.BYTES + 256 + 48 * Long.BYTES;
+      case NODE256:
+        return 1 + Long.BYTES + 256 * Long.BYTES;
+      default:
+        throw new RuntimeIndexException("Invalid index node type: " + type + ".");
+      }
+    }
+
+    private static <K, V> Index<K, V> read(byte type, ByteBuffer bb) {
+      long current = bb.getLong();
+      switch (type) {
+      case NODE4:
+      case NODE16:
+        int capacity = type == NODE4 ? 4 : 16;
+        int count = bb.get();
+        byte[] slots = new byte[count];
+        bb.get(slots);
+        bb.position(bb.position() + capacity - count);
+        long[] pointers = new long[count];
+        bb.asLongBuffer().get(pointers);
+        return new SmallIndex<>(current, capacity, slots, pointers);
+      case NODE48:
+        byte[] childIndex = new byte[256];
+        bb.get(childIndex);
+        long[] children = new long[48];
+        bb.asLongBuffer().get(children);
+        return new Index48<>(current, childIndex, children);
+      case NODE256:
+        long[] keys = new long[256];
+        bb.asLongBuffer().get(keys);
+        return new Index256<>(current, keys);
+      default:
+        throw new RuntimeIndexException("Invalid index node type: " + type + ".");
+      }
+    }
+
+    private void write(ByteBuffer bb) {
+      bb.put(type());
+      bb.putLong(current);
+      writeChildren(bb);
+    }
+  }
+
+  /**
+   * Up to 4 or 16 children, the slots are sorted.
+   */
+  private static class SmallIndex<K, V> extends Index<K, V> {
+    private final int capacity;
+    private final byte[] slots;
+    private final long[] pointers;
+
+    private SmallIndex(long current, int capacity, byte[] slots, long[] pointers) {
+      super(current);
+      this.capacity = capacity;
+      this.slots = slots;
+      this.pointers = pointers;
+    }
+
+    private int find(int slot) {
+      for (int i = 0; i < slots.length; i++) {
+        int s = slots[i] & 0xff;
+        if (s >= slot) {
+          return s == slot ? i : -i - 1;
+        }
+      }
+      return -slots.length - 1;
+    }
+
+    @Override
+    protected long child(int slot) {
+      int i = find(slot);
+      return i >= 0 ? pointers[i] : 0L;
+    }
+
+    @Override
+    protected Index<K, V> withChild(int slot, long pointer) {
+      int i = find(slot);
+      if (i >= 0) {
+        if (pointer != 0) {
+          long[] newPointers = pointers.clone();
+          newPointers[i] = pointer;
+          return new SmallIndex<>(current, capacity, slots, newPointers);
+        }
+        byte[] newSlots = new byte[slots.length - 1];
+        long[] newPointers = new long[pointers.length - 1];
+        System.arraycopy(slots, 0, newSlots, 0, i);
+        System.arraycopy(slots, i + 1, newSlots, i, newSlots.length - i);
+        System.arraycopy(pointers, 0, newPointers, 0, i);
+        System.arraycopy(pointers, i + 1, newPointers, i, newPointers.length - i);
+        return new SmallIndex<>(current, capacity, newSlots, newPointers);
+      }
+      if (pointer == 0) {
+        return this;
+      }
+      if (slots.length == capacity) {
+        Index<K, V> grown;
+        if (capacity == 4) {
+          grown = new SmallIndex<>(current, 16, slots, pointers);
+        } else {
+          grown = Index48.of(current, slots, pointers);
+        }
+        return grown.withChild(slot, pointer);
+      }
+      i = -i - 1;
+      byte[] newSlots = new byte[slots.length + 1];
+      long[] newPointers = new long[pointers.length + 1];
+      System.arraycopy(slots, 0, newSlots, 0, i);
+      System.arraycopy(slots, i, newSlots, i + 1, slots.length - i);
+      System.arraycopy(pointers, 0, newPointers, 0, i);
+      System.arraycopy(pointers, i, newPointers, i + 1, pointers.length - i);
+      newSlots[i] = (byte) slot;
+      newPointers[i] = pointer;
+      return new SmallIndex<>(current, capacity, newSlots, newPointers);
+    }
+
+    @Override
+    protected Index<K, V> withCurrent(long current) {
+      return new SmallIndex<>(current, capacity, slots, pointers);
+    }
+
+    @Override
+    protected byte type() {
+      return capacity == 4 ? NODE4 : NODE16;
+    }
+
+    @Override
+    protected int memorySize() {
+      return OBJECT_BYTES + 32 + 2 * ARRAY_BYTES + slots.length + pointers.length * Long.BYTES;
+    }
+
+    @Override
+    protected void writeChildren(ByteBuffer bb) {
+      bb.put((byte) slots.length);
+      bb.put(slots);
+      bb.position(bb.position() + capacity - slots.length);
+      for (long pointer : pointers) {
+        bb.putLong(pointer);
+      }
+      bb.position(bb.position() + (capacity - pointers.length) * Long.BYTES);
+    }
+  }
+
+  /**
+   * Up to 48 children, addressed by the position stored for every slot.
+   */
+  private static class Index48<K, V> extends Index<K, V> {
+    // The position of the child of the slot plus one, 0 if empty.
+    private final byte[] childIndex;
+    private final long[] children;
+
+    private Index48(long current, byte[] childIndex, long[] children) {
+      super(current);
+      this.childIndex = childIndex;
+      this.children = children;
+    }
+
+    private static <K, V> Index48<K, V> of(long current, byte[] slots, long[] pointers) {
+      byte[] childIndex = new byte[256];
+      long[] children = new long[48];
+      for (int i = 0; i < slots.length; i++) {
+        childIndex[slots[i] & 0xff] = (byte) (i + 1);
+        children[i] = pointers[i];
+      }
+      return new Index48<>(current, childIndex, children);
+    }
+
+    @Override
+    protected long child(int slot) {
+      int i = childIndex[slot];
+      return i == 0 ? 0L : children[i - 1];
+    }
+
+    @Override
+    protected Index<K, V> withChild(int slot, long pointer) {
+      int i = childIndex[slot];
+      if (i != 0) {
+        long[] newChildren = children.clone();
+        newChildren[i - 1] = pointer;
+        byte[] newChildIndex = childIndex;
+        if (pointer == 0) {
+          newChildIndex = childIndex.clone();
+          newChildIndex[slot] = 0;
+        }
+        return new Index48<>(current, newChildIndex, newChildren);
+      }
+      if (pointer == 0) {
+        return this;
+      }
+      for (int j = 0; j < children.length; j++) {
+        if (children[j] == 0) {
+          long[] newChildren = children.clone();
+          newChildren[j] = pointer;
+          byte[] newChildIndex = childIndex.clone();
+          newChildIndex[slot] = (byte) (j + 1);
+          return new Index48<>(current, newChildIndex, newChildren);
+        }
+      }
+      long[] keys = new long[256];
+      for (int s = 0; s < 256; s++) {
+        keys[s] = child(s);
+      }
+      keys[slot] = pointer;
+      return new Index256<>(current, keys);
+    }
+
+    @Override
+    protected Index<K, V> withCurrent(long current) {
+      return new Index48<>(current, childIndex, children);
+    }
+
+    @Override
+    protected byte type() {
+      return NODE48;
+    }
 
-    public int getAccesses() {
-      return accesses;
+    @Override
+    protected int memorySize() {
+      return OBJECT_BYTES + 24 + 2 * ARRAY_BYTES + childIndex.length + children.length * Long.BYTES;
+    }
+
+    @Override
+    protected void writeChildren(ByteBuffer bb) {
+      bb.put(childIndex);
+      for (long pointer : children) {
+        bb.putLong(pointer);
+      }
     }
   }
 
-  private static class Index<K, V> extends Node<K, V> {
+  private static class Index256<K, V> extends Index<K, V> {
     private final long[] keys;
 
-    private Index(long[] keys) {
+    private Index256(long current, long[] keys) {
+      super(current);
       this.keys = keys;
     }
 
-    private long[] keys() {
-      accesses++;
-      return keys;
+    @Override
+    protected long child(int slot) {
+      return keys[slot];
+    }
+
+    @Override
+    protected Index<K, V> withChild(int slot, long pointer) {
+      long[] newKeys = keys.clone();
+      newKeys[slot] = pointer;
+      return new Index256<>(current, newKeys);
+    }
+
+    @Override
+    protected Index<K, V> withCurrent(long current) {
+      return new Index256<>(current, keys);
+    }
+
+    @Override
+    protected byte type() {
+      return NODE256;
+    }
+
+    @Override
+    protected int memorySize() {
+      return OBJECT_BYTES + 16 + ARRAY_BYTES + keys.length * Long.BYTES;
+    }
+
+    @Override
+    protected void writeChildren(ByteBuffer bb) {
+      for (long pointer : keys) {
+        bb.putLong(pointer);
+      }
     }
   }
 
@@ -83,7 +419,6 @@ public class ByteTrie<K, V> {
     }
 
     protected K key() {
-      accesses++;
       return key;
     }
 
@@ -92,6 +427,322 @@ public class ByteTrie<K, V> {
     }
   }
 
+  private static class Frame {
+    private final Index<?, ?> index;
+    private int i;
+
+    private Frame(Index<?, ?> index, int i) {
+      this.index = index;
+      this.i = i;
+    }
+  }
+
+  /**
+   * An index node of a loader, the children are added in the order of their
+   * slots. The builders are reused for the nodes of the same depth.
+   */
+  private static class NodeBuilder {
+    private final byte[] slots = new byte[256];
+    private final long[] pointers = new long[256];
+    private int slot;
+    private long current;
+    private int size;
+
+    private void reset(int slot) {
+      this.slot = slot;
+      this.current = 0L;
+      this.size = 0;
+    }
+
+    private void add(int slot, long pointer) {
+      slots[size] = (byte) slot;
+      pointers[size++] = pointer;
+    }
+
+    /**
+     * The smallest node type fitting the children, the root is always a node of
+     * 256 children.
+     */
+    private <K, V> Index<K, V> build(boolean root) {
+      if (!root && size <= 16) {
+        return new SmallIndex<>(current, size <= 4 ? 4 : 16,
+            Arrays.copyOf(slots, size), Arrays.copyOf(pointers, size));
+      } else if (!root && size <= 48) {
+        return Index48.of(current, Arrays.copyOf(slots, size), Arrays.copyOf(pointers, size));
+      }
+      long[] keys = new long[256];
+      for (int i = 0; i < size; i++) {
+        keys[slots[i] & 0xff] = pointers[i];
+      }
+      return new Index256<>(current, keys);
+    }
+  }
+
+  /**
+   * Builds an empty trie from keys added in ascending order. The trie is built
+   * bottom up: a key is added when the next key is known, so the depth of its
+   * leaf is known, and an index node is written when its last child is added.
+   * The nodes are appended to the file in one sequential pass, only the root
+   * is pending until the commit.
+   *
+   * Keys are added one by one to a non-empty trie.
+   */
+  public class Loader {
+    private final boolean bulk;
+    private final NodeWriter writer;
+    private final ArrayList<NodeBuilder> builders = new ArrayList<>();
+    private int depth;
+
+    // The last key added, which is loaded when the next key is known.
+    private K key;
+    private V value;
+    private byte[] keyBytes;
+    // The length of the common prefix with the key before.
+    private int prefix;
+
+    private Loader() throws IOException {
+      bulk = pendingNodes.isEmpty() && filePointer == stableFilePointer && isEmpty(getIndex(0L));
+      writer = bulk ? new NodeWriter(raf.getChannel(), Long.MAX_VALUE) : null;
+      if (bulk) {
+        loaded = true;
+        builders.add(new NodeBuilder());
+      }
+    }
+
+    public void add(K nextKey, V nextValue) throws IOException, IndexException {
+      synchronized (ByteTrie.this) {
+        if (!bulk) {
+          put(nextKey, nextValue);
+          return;
+        }
+        byte[] nextKeyBytes = keyType.toByteArray(nextKey);
+        int nextPrefix = 0;
+        if (keyBytes != null) {
+          int cmp = compareBytes(keyBytes, nextKeyBytes);
+          if (cmp == 0) {
+            throw new IndexException("Key '" + nextKey + "' already present in index.");
+          } else if (cmp > 0) {
+            throw new RuntimeIndexException("Keys are not loaded in order.");
+          }
+          while (nextPrefix < keyBytes.length && keyBytes[nextPrefix] == nextKeyBytes[nextPrefix]) {
+            nextPrefix++;
+          }
+          load(nextPrefix);
+        }
+        if (bloomFilter != null) {
+          bloomFilter.add(BloomFilter.hash(nextKeyBytes));
+          bloomFilterPendingKeys++;
+        }
+        key = nextKey;
+        value = nextValue;
+        keyBytes = nextKeyBytes;
+        prefix = nextPrefix;
+      }
+    }
+
+    /**
+     * Writes the leaf of the last key. The node of its leaf is at the depth of
+     * the longest common prefix with its neighbors.
+     */
+    private void load(int nextPrefix) throws IOException {
+      while (depth > prefix) {
+        close();
+      }
+      int leafDepth = Math.max(prefix, nextPrefix);
+      while (depth < leafDepth) {
+        depth++;
+        if (builders.size() == depth) {
+          builders.add(new NodeBuilder());
+        }
+        builders.get(depth).reset(keyBytes[depth - 1] - Byte.MIN_VALUE);
+      }
+      Leaf<K, V> leaf = new Leaf<>(key, value);
+      int size = leafSize(leaf);
+      DataOutputStream stream = writer.stream(filePointer, size);
+      keyType.write(stream, key);
+      valueType.write(stream, value);
+      long pointer = filePointer;
+      filePointer += size;
+      NodeBuilder builder = builders.get(depth);
+      if (keyBytes.length == depth) {
+        builder.current = pointer;
+      } else {
+        builder.add(keyBytes[depth] - Byte.MIN_VALUE, pointer);
+      }
+    }
+
+    private void close() throws IOException {
+      NodeBuilder builder = builders.get(depth--);
+      Index<K, V> index = builder.build(false);
+      index.write(writer.buffer(filePointer, index.size()));
+      builders.get(depth).add(builder.slot, -filePointer);
+      filePointer += index.size();
+    }
+
+    /**
+     * Writes the remaining nodes, the new root is written on commit.
+     */
+    public void finish() throws IOException {
+      synchronized (ByteTrie.this) {
+        if (!bulk) {
+          return;
+        }
+        if (keyBytes != null) {
+          load(0);
+          keyBytes = null;
+        }
+        while (depth > 0) {
+          close();
+        }
+        writer.flush();
+        pendingNodes.put(0L, builders.get(0).build(true));
+      }
+    }
+
+    boolean isBulk() {
+      return bulk;
+    }
+  }
+
+  private static boolean isEmpty(Index<?, ?> index) {
+    for (int slot = 0; slot < KEYS_SIZE; slot++) {
+      if (index.pointer(slot) != 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Iterates the keys of a range in order. Every step reads the current state of
+   * the trie, the nodes already visited are immutable.
+   */
+  public class Cursor {
+    private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+    private final byte[] fromBytes;
+    private final boolean fromInclusive;
+    private final byte[] toBytes;
+    private final boolean toInclusive;
+    private final boolean descending;
+    private final boolean committed;
+    private Leaf<K, V> leaf;
+
+    @SuppressWarnings("unchecked")
+    private Cursor(KeyRange range, boolean committed) throws IOException {
+      this.fromBytes = range.getFrom() == null ? null : keyType.toByteArray((K) range.getFrom());
+      this.fromInclusive = range.isFromInclusive();
+      this.toBytes = range.getTo() == null ? null : keyType.toByteArray((K) range.getTo());
+      this.toInclusive = range.isToInclusive();
+      this.descending = range.isDescending();
+      this.committed = committed;
+      seek(descending ? toBytes : fromBytes);
+    }
+
+    /**
+     * Pushes the nodes on the path of <code>bound</code>, skipping the slots
+     * which are before the bound in the iteration order.
+     */
+    private void seek(byte[] bound) throws IOException {
+      Index<K, V> index = getIndex(0L, committed);
+      if (bound == null) {
+        stack.push(new Frame(index, 0));
+        return;
+      }
+      for (int depth = 0; depth < bound.length; depth++) {
+        int slot = bound[depth] - Byte.MIN_VALUE;
+        int i = descending ? 255 - slot : slot + 1;
+        long pointer = index.pointer(slot);
+        if (pointer < 0) {
+          stack.push(new Frame(index, i + 1));
+          index = getIndex(pointer, committed);
+        } else {
+          // Leaf nodes are checked against the bounds while iterating.
+          stack.push(new Frame(index, pointer > 0 ? i : i + 1));
+          return;
+        }
+      }
+      // Longer keys are greater than the bound, descending they come first.
+      stack.push(new Frame(index, descending ? 256 : 0));
+    }
+
+    private int slot(int i) {
+      if (descending) {
+        return i == 256 ? 256 : 255 - i;
+      } else {
+        return i == 0 ? 256 : i - 1;
+      }
+    }
+
+    private boolean beforeStart(byte[] keyBytes) {
+      byte[] start = descending ? toBytes : fromBytes;
+      if (start == null) {
+        return false;
+      }
+      int cmp = compareBytes(keyBytes, start) * (descending ? -1 : 1);
+      return cmp < 0 || (cmp == 0 && !(descending ? toInclusive : fromInclusive));
+    }
+
+    private boolean afterEnd(byte[] keyBytes) {
+      byte[] end = descending ? fromBytes : toBytes;
+      if (end == null) {
+        return false;
+      }
+      int cmp = compareBytes(keyBytes, end) * (descending ? -1 : 1);
+      return cmp > 0 || (cmp == 0 && !(descending ? fromInclusive : toInclusive));
+    }
+
+    /**
+     * Moves to the next key of the range, returns false if there are no more.
+     */
+    public boolean next() throws IOException {
+      synchronized (ByteTrie.this) {
+        while (!stack.isEmpty()) {
+          Frame frame = stack.peek();
+          if (frame.i >= KEYS_SIZE) {
+            stack.pop();
+            continue;
+          }
+          long pointer = frame.index.pointer(slot(frame.i++));
+          if (pointer < 0) {
+            stack.push(new Frame(getIndex(pointer, committed), 0));
+          } else if (pointer > 0) {
+            Leaf<K, V> candidate = getLeaf(pointer, committed);
+            byte[] keyBytes = keyType.toByteArray(candidate.key());
+            if (afterEnd(keyBytes)) {
+              stack.clear();
+            } else if (!beforeStart(keyBytes)) {
+              leaf = candidate;
+              return true;
+            }
+          }
+        }
+        leaf = null;
+        return false;
+      }
+    }
+
+    public K key() {
+      return leaf.key();
+    }
+
+    public V value() {
+      return leaf.value();
+    }
+  }
+
+  /**
+   * Compares serialized keys in the iteration order of the trie.
+   */
+  static int compareBytes(byte[] x, byte[] y) {
+    int length = Math.min(x.length, y.length);
+    for (int i = 0; i < length; i++) {
+      if (x[i] != y[i]) {
+        return Byte.compare(x[i], y[i]);
+      }
+    }
+    return Integer.compare(x.length, y.length);
+  }
+
   public static class IndexException extends Exception {
     private static final long serialVersionUID = 1L;
 
@@ -139,17 +790,42 @@ public class ByteTrie<K, V> {
   private long filePointer;
   private long stableFilePointer;
 
-  private final HashMap<Long, Node<K, V>> trie = new HashMap<>();
+  private final NodeCache cache;
+  private final NodeCache.Owner owner;
   private final LinkedHashMap<Long, Node<K, V>> pendingNodes = new LinkedHashMap<>();
+  // Nodes were written to the file by a loader since the last commit.
+  private boolean loaded;
+
+  @Nullable
+  private BloomFilter bloomFilter;
+  private int bloomFilterBitsPerKey;
+  // The keys of the filter which might have been deleted or rolled back.
+  private long bloomFilterStale;
+  private long bloomFilterPendingKeys;
+  private long bloomFilterNegatives;
+  private long bloomFilterFalsePositives;
 
   protected ByteTrie(String fileName, KeyType<K> keyType, ValueType<V> leafType) throws IOException {
+    this(fileName, keyType, leafType, new NodeCache(NodeCache.DEFAULT_MAX_BYTES));
+  }
+
+  protected ByteTrie(String fileName, KeyType<K> keyType, ValueType<V> leafType, NodeCache cache)
+      throws IOException {
     this.fileName = fileName;
+    this.cache = cache;
+    this.owner = cache.newOwner();
     this.keyType = keyType;
     this.valueType = leafType;
 
     this.raf = new RandomAccessFile(fileName, "rw");
     if (!new File(fileName).exists() || raf.length() == 0) {
-      saveIndex(0, new long[KEYS_SIZE]);
+      raf.writeLong(MAGIC);
+      raf.writeInt(VERSION);
+      saveIndex(0, new Index256<>(0L, new long[256]));
+    } else if (raf.readLong() != MAGIC) {
+      migrate();
+    } else if (raf.readInt() != VERSION) {
+      throw new IOException(String.format("Unsupported index file version in '%s'.", fileName));
     }
     filePointer = raf.length();
     stableFilePointer = filePointer;
@@ -160,8 +836,15 @@ public class ByteTrie<K, V> {
     raf.close();
   }
 
+  /**
+   * Removes the nodes of the index from the cache.
+   */
   public synchronized void cleanUp() {
-    trie.clear();
+    cache.invalidate(owner);
+  }
+
+  NodeCache cache() {
+    return cache;
   }
 
   public synchronized void drop() throws IOException {
@@ -173,38 +856,227 @@ public class ByteTrie<K, V> {
     this.raf = new RandomAccessFile(fileName, "rw");
   }
 
+  public synchronized void sync() throws IOException {
+    raf.getChannel().force(false);
+  }
+
+  /**
+   * Rewrites a file of the format before the adaptive index nodes - where every
+   * index node had 257 pointers and no file header - with the current node
+   * layout and key encoding, and replaces the original file. The original file
+   * is unchanged if the migration fails.
+   */
+  private void migrate() throws IOException {
+    File migrated = new File(fileName + MIGRATE_SUFFIX);
+    migrated.delete();
+    ByteTrie<K, V> target = new ByteTrie<>(migrated.getPath(), keyType, valueType, cache);
+    try {
+      migrate(target, 0L, new int[1]);
+      target.commit();
+    } catch (IndexException e) {
+      throw new IOException(e);
+    } finally {
+      target.close();
+    }
+    raf.close();
+    Files.move(migrated.toPath(), new File(fileName).toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    raf = new RandomAccessFile(fileName, "rw");
+  }
+
+  private void migrate(ByteTrie<K, V> target, long fileIndex, int[] count) throws IOException, IndexException {
+    raf.seek(fileIndex);
+    ByteBuffer bb = ByteBuffer.allocate(KEYS_SIZE * Long.BYTES);
+    raf.readFully(bb.array());
+    long[] pointers = new long[KEYS_SIZE];
+    bb.asLongBuffer().get(pointers);
+    for (long pointer : pointers) {
+      if (pointer < 0) {
+        migrate(target, -pointer, count);
+      } else if (pointer > 0) {
+        raf.seek(pointer);
+        target.put(keyType.read(raf), valueType.read(raf));
+        if (++count[0] % 10000 == 0) {
+          target.commit();
+          target.cleanUp();
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps a Bloom filter of the keys, so most lookups of absent keys return
+   * without reading the trie. The filter is built from the keys of the index
+   * when enabled, and built again on commit when it is full or too many of its
+   * keys were deleted.
+   */
+  public synchronized void enableBloomFilter(int bitsPerKey) throws IOException {
+    if (bloomFilter == null || bloomFilterBitsPerKey != bitsPerKey) {
+      bloomFilterBitsPerKey = bitsPerKey;
+      buildBloomFilter();
+    }
+  }
+
+  private void buildBloomFilter() throws IOException {
+    long[] hashes = new long[1024];
+    int n = 0;
+    // The keys deleted by the pending changes are still present as of the last
+    // commit, the keys added are present in the pending changes.
+    for (boolean committed : pendingNodes.isEmpty() ? new boolean[] { true } : new boolean[] { true, false }) {
+      Cursor cursor = new Cursor(KeyRange.ALL, committed);
+      while (cursor.next()) {
+        if (n == hashes.length) {
+          hashes = Arrays.copyOf(hashes, n * 2);
+        }
+        hashes[n++] = BloomFilter.hash(keyType.toByteArray(cursor.key()));
+      }
+    }
+    // Room for twice as many keys before the filter is built again.
+    bloomFilter = new BloomFilter(Math.max(1024L, 2L * n), bloomFilterBitsPerKey);
+    for (int i = 0; i < n; i++) {
+      bloomFilter.add(hashes[i]);
+    }
+    bloomFilterStale = 0L;
+    bloomFilterPendingKeys = 0L;
+  }
+
+  /**
+   * Returns false if the key is definitely not in the index.
+   */
+  private boolean mightContain(byte[] keyBytes) {
+    if (bloomFilter == null || bloomFilter.mightContain(BloomFilter.hash(keyBytes))) {
+      return true;
+    }
+    bloomFilterNegatives++;
+    return false;
+  }
+
+  private V checkFalsePositive(V value) {
+    if (value == null && bloomFilter != null) {
+      bloomFilterFalsePositives++;
+    }
+    return value;
+  }
+
   public synchronized V get(K key) throws IOException {
-    return get(getIndex(0L).keys(), keyType.toByteArray(key), 0, key);
+    byte[] keyBytes = keyType.toByteArray(key);
+    if (!mightContain(keyBytes)) {
+      return null;
+    }
+    return checkFalsePositive(get(getIndex(0L), keyBytes, 0, key));
+  }
+
+  /**
+   * Returns the value of the key as of the last commit, ignoring the pending
+   * changes of the transaction modifying the index.
+   */
+  public synchronized V getCommitted(K key) throws IOException {
+    byte[] keyBytes = keyType.toByteArray(key);
+    if (!mightContain(keyBytes)) {
+      return null;
+    }
+    return checkFalsePositive(get(getIndex(0L, true), keyBytes, 0, key, true));
+  }
+
+  /**
+   * Returns a cursor iterating the keys of <code>range</code> in order. The
+   * <code>committed</code> cursor ignores the pending changes.
+   */
+  public synchronized Cursor cursor(KeyRange range, boolean committed) throws IOException {
+    return new Cursor(range, committed);
+  }
+
+  /**
+   * Returns a loader adding keys in ascending order. The loaded keys are
+   * visible to the uncommitted reads and are persisted on commit.
+   */
+  public synchronized Loader loader() throws IOException {
+    return new Loader();
   }
 
   public synchronized void put(K key, V value) throws IOException, IndexException {
-    put(0, getIndex(0L).keys(), keyType.toByteArray(key), 0, key, value);
+    byte[] keyBytes = keyType.toByteArray(key);
+    if (bloomFilter != null) {
+      bloomFilter.add(BloomFilter.hash(keyBytes));
+      bloomFilterPendingKeys++;
+    }
+    put(0L, keyBytes, 0, key, value);
   }
 
   public synchronized boolean delete(K key) throws IOException {
-    return delete(0, getIndex(0L).keys(), keyType.toByteArray(key), 0, key);
+    boolean deleted = delete(0L, keyType.toByteArray(key), 0, key);
+    if (deleted) {
+      bloomFilterStale++;
+    }
+    return deleted;
   }
 
+  /**
+   * Writes the pending nodes. The new nodes are appended to the file in one
+   * run, the modified index nodes are written afterwards ordered by their
+   * position, so the file never points to nodes not yet written.
+   */
   public synchronized void commit() throws IOException {
+    // The pending nodes are in the order they were added, which is the order of
+    // the file pointers of the new nodes.
+    NodeWriter appended = new NodeWriter(raf.getChannel(), filePointer - stableFilePointer);
+    TreeMap<Long, Index<K, V>> modified = new TreeMap<>();
+    long modifiedLength = 0L;
     for (Map.Entry<Long, Node<K, V>> node : pendingNodes.entrySet()) {
       if (node.getKey() <= 0) {
-        saveIndex(node.getKey(), ((Index<K, V>) node.getValue()).keys());
+        Index<K, V> index = (Index<K, V>) node.getValue();
+        long fileIndex = fileIndex(node.getKey());
+        if (fileIndex >= stableFilePointer) {
+          index.write(appended.buffer(fileIndex, index.size()));
+        } else {
+          modified.put(fileIndex, index);
+          modifiedLength += index.size();
+        }
       } else {
-        saveLeaf(node.getKey(), ((Leaf<K, V>) node.getValue()));
+        Leaf<K, V> leaf = (Leaf<K, V>) node.getValue();
+        DataOutputStream stream = appended.stream(node.getKey(), leafSize(leaf));
+        keyType.write(stream, leaf.key());
+        valueType.write(stream, leaf.value());
       }
     }
+    appended.flush();
+    NodeWriter writer = new NodeWriter(raf.getChannel(), modifiedLength);
+    for (Map.Entry<Long, Index<K, V>> node : modified.entrySet()) {
+      node.getValue().write(writer.buffer(node.getKey(), node.getValue().size()));
+    }
+    writer.flush();
     long rafLength = raf.length();
     if (filePointer != rafLength) {
       throw new RuntimeIndexException(String.format("Inconsistent state: '%s' != '%s'.", filePointer, rafLength));
     }
-    trie.putAll(pendingNodes);
+    for (Map.Entry<Long, Node<K, V>> node : pendingNodes.entrySet()) {
+      cache.put(owner, node.getKey(), node.getValue(), memorySize(node.getValue()));
+    }
     pendingNodes.clear();
     stableFilePointer = filePointer;
+    loaded = false;
+    bloomFilterPendingKeys = 0L;
+    if (bloomFilter != null
+        && (bloomFilter.size() > bloomFilter.capacity() || bloomFilterStale > bloomFilter.size() / 2)) {
+      buildBloomFilter();
+    }
   }
 
   public synchronized void rollback() {
+    if (loaded) {
+      // The loaded nodes are removed from the file and the cache.
+      try {
+        raf.setLength(stableFilePointer);
+      } catch (IOException e) {
+        throw new RuntimeIndexException(String.format("Cannot truncate '%s': %s.", fileName, e.getMessage()));
+      }
+      cache.invalidate(owner);
+      loaded = false;
+    }
     filePointer = stableFilePointer;
     pendingNodes.clear();
+    bloomFilterStale += bloomFilterPendingKeys;
+    bloomFilterPendingKeys = 0L;
   }
 
   protected Leaf<K, V> loadLeaf(long filePointer) throws IOException {
@@ -212,91 +1084,133 @@ public class ByteTrie<K, V> {
     return new Leaf<K, V>(keyType.read(raf), valueType.read(raf));
   }
 
-  protected void saveLeaf(long filePointer, Leaf<K, V> leaf) throws IOException {
-    ByteArrayOutputStream b = new ByteArrayOutputStream(leafSize(leaf));
-    DataOutputStream stream = new DataOutputStream(b);
-    keyType.write(stream, leaf.key());
-    valueType.write(stream, leaf.value());
-    raf.seek(filePointer);
-    raf.write(b.toByteArray());
-  }
-
   protected int leafSize(Leaf<K, V> leaf) {
     return keyType.size(leaf.key()) + valueType.size(leaf.value());
   }
 
+  private int memorySize(Node<K, V> node) {
+    if (node instanceof Index) {
+      return ((Index<K, V>) node).memorySize();
+    }
+    // The key and the value are boxed objects.
+    return 3 * OBJECT_BYTES + 8 + 2 * leafSize((Leaf<K, V>) node);
+  }
+
   private Leaf<K, V> getLeaf(long id) throws IOException {
-    Leaf<K, V> leafNode = (Leaf<K, V>) pendingNodes.get(id);
+    return getLeaf(id, false);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Leaf<K, V> getLeaf(long id, boolean committed) throws IOException {
+    Leaf<K, V> leafNode = committed ? null : (Leaf<K, V>) pendingNodes.get(id);
     if (leafNode != null) {
       return leafNode;
     }
-    leafNode = (Leaf<K, V>) trie.get(id);
+    leafNode = (Leaf<K, V>) cache.get(owner, id);
     if (leafNode == null) {
       // Assume leaf node exists but not in memory.
-      if (id >= stableFilePointer) {
+      if (id >= writtenFilePointer()) {
         throw new RuntimeIndexException("Inconsistent state.");
       }
       leafNode = loadLeaf(id);
-      trie.put(id, leafNode);
+      cache.put(owner, id, leafNode, memorySize(leafNode));
     }
     return leafNode;
   }
 
   private Index<K, V> getIndex(long id) throws IOException {
-    Index<K, V> indexNode = (Index<K, V>) pendingNodes.get(id);
+    return getIndex(id, false);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Index<K, V> getIndex(long id, boolean committed) throws IOException {
+    Index<K, V> indexNode = committed ? null : (Index<K, V>) pendingNodes.get(id);
     if (indexNode != null) {
       return indexNode;
     }
-    indexNode = (Index<K, V>) trie.get(id);
+    indexNode = (Index<K, V>) cache.get(owner, id);
     if (indexNode == null) {
-      long fileIndex = -id;
+      long fileIndex = fileIndex(id);
       // Index node exists but not in memory.
-      if (fileIndex >= stableFilePointer) {
+      if (fileIndex >= writtenFilePointer()) {
         throw new RuntimeIndexException("Inconsistent state.");
       }
       raf.seek(fileIndex);
-      ByteBuffer bb = ByteBuffer.allocate(KEYS_SIZE * Long.BYTES);
-      raf.read(bb.array());
-      long[] keysToLoad = new long[KEYS_SIZE];
-      bb.asLongBuffer().get(keysToLoad);
+      byte type = raf.readByte();
+      ByteBuffer bb = ByteBuffer.allocate(Index.size(type) - 1);
+      raf.readFully(bb.array());
 
-      indexNode = new Index<K, V>(keysToLoad);
-      trie.put(id, indexNode);
+      indexNode = Index.read(type, bb);
+      cache.put(owner, id, indexNode, indexNode.memorySize());
     }
     return indexNode;
   }
 
-  private void modifyIndex(long parentPointer, long[] pointers, int i, long fileIndex) {
-    long[] newPointers = pointers.clone();
-    newPointers[i] = fileIndex;
-    Index<K, V> newIndex = new Index<>(newPointers);
-    pendingNodes.put(parentPointer, newIndex);
+  /**
+   * The end of the nodes in the file, the nodes written by a loader are in the
+   * file before the commit.
+   */
+  private long writtenFilePointer() {
+    return loaded ? filePointer : stableFilePointer;
   }
 
-  private void saveIndex(long id, long[] indices) throws IOException {
-    ByteBuffer bb = ByteBuffer.allocate(KEYS_SIZE * 8);
-    bb.asLongBuffer().put(indices);
-    raf.seek(-id);
-    raf.write(bb.array());
+  /**
+   * The root node follows the header of the file, the other index nodes are
+   * addressed by the negated file pointer.
+   */
+  private static long fileIndex(long id) {
+    return id == 0L ? HEADER_SIZE : -id;
   }
 
-  public synchronized void cleanUp(int limit) {
-    Iterator<Map.Entry<Long, Node<K, V>>> iter = trie.entrySet().iterator();
-    while (iter.hasNext()) {
-      Map.Entry<Long, Node<K, V>> item = iter.next();
-      if (item.getValue().getAccesses() < limit) {
-        iter.remove();
-      }
+  /**
+   * Sets the slot of the index node at <code>pointer</code> and returns the
+   * pointer of the modified node. The node is moved to the end of the file if
+   * it grows to a larger node type, the parent has to be modified accordingly.
+   */
+  private long modifyIndex(long pointer, int slot, long value) throws IOException {
+    Index<K, V> index = getIndex(pointer);
+    Index<K, V> newIndex = index.with(slot, value);
+    if (newIndex.type() == index.type()) {
+      pendingNodes.put(pointer, newIndex);
+      return pointer;
     }
+    return addIndex(newIndex);
+  }
+
+  private long addIndex(Index<K, V> index) {
+    long indexPointer = -filePointer;
+    pendingNodes.put(indexPointer, index);
+    filePointer += index.size();
+    return indexPointer;
+  }
+
+  private long addLeaf(K keyObject, V valueObject) {
+    Leaf<K, V> leaf = new Leaf<K, V>(keyObject, valueObject);
+    long fileIndex = filePointer;
+    pendingNodes.put(fileIndex, leaf);
+    filePointer += leafSize(leaf);
+    return fileIndex;
+  }
+
+  private void saveIndex(long id, Index<K, V> index) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(index.size());
+    index.write(bb);
+    raf.seek(fileIndex(id));
+    raf.write(bb.array());
+  }
+
+  protected V get(Index<K, V> index, byte[] keyBytes, int keyBytesIndex, K keyObject)
+      throws IOException {
+    return get(index, keyBytes, keyBytesIndex, keyObject, false);
   }
 
-  protected V get(long[] pointers, byte[] keyBytes, int keyBytesIndex, K keyObject)
+  private V get(Index<K, V> index, byte[] keyBytes, int keyBytesIndex, K keyObject, boolean committed)
       throws IOException {
     if (keyBytesIndex >= keyBytes.length) {
       // Check current node.
-      long currentKey = pointers[256];
+      long currentKey = index.current;
       if (currentKey > 0) {
-        Leaf<K, V> leaf = getLeaf(currentKey);
+        Leaf<K, V> leaf = getLeaf(currentKey, committed);
         if (keyType.keysEqual(keyObject, leaf.key())) {
           return leaf.value();
         } else {
@@ -307,17 +1221,17 @@ public class ByteTrie<K, V> {
       }
     }
     int keyByte = keyBytes[keyBytesIndex] - Byte.MIN_VALUE;
-    long pointer = pointers[keyByte];
+    long pointer = index.child(keyByte);
     if (pointer == 0) {
       // Equivalent of null pointer, search is over.
       return null;
     } else if (pointer < 0) {
       // Pointer to index node.
-      Index<K, V> nextIndex = getIndex(pointer);
-      return get(nextIndex.keys(), keyBytes, keyBytesIndex + 1, keyObject);
+      Index<K, V> nextIndex = getIndex(pointer, committed);
+      return get(nextIndex, keyBytes, keyBytesIndex + 1, keyObject, committed);
     } else {
       // Pointer to leaf node.
-      Leaf<K, V> leaf = getLeaf(pointer);
+      Leaf<K, V> leaf = getLeaf(pointer, committed);
       if (keyType.keysEqual(keyObject, leaf.key())) {
         return leaf.value();
       } else {
@@ -327,41 +1241,30 @@ public class ByteTrie<K, V> {
     }
   }
 
-  protected void put(long parentPointer, long[] pointers, byte[] keyBytes, int keyBytesIndex, K keyObject,
-      V valueObject)
+  /**
+   * Adds the key below the index node at <code>indexPointer</code> and returns
+   * the new pointer of the index node.
+   */
+  protected long put(long indexPointer, byte[] keyBytes, int keyBytesIndex, K keyObject, V valueObject)
       throws IOException, IndexException {
+    Index<K, V> index = getIndex(indexPointer);
     if (keyBytesIndex >= keyBytes.length) {
       // Check current node.
-      long currentKey = pointers[256];
-      if (currentKey > 0) {
+      if (index.current > 0) {
         throw new IndexException("Key '" + keyObject + "' already present in index.");
       } else {
-        Leaf<K, V> leaf = new Leaf<K, V>(keyObject, valueObject);
-        long fileIndex = filePointer;
-        pendingNodes.put(fileIndex, leaf);
-        filePointer += leafSize(leaf);
-
-        // Modify parent index.
-        modifyIndex(parentPointer, pointers, 256, fileIndex);
-        return;
+        return modifyIndex(indexPointer, CURRENT, addLeaf(keyObject, valueObject));
       }
     }
     int keyByte = keyBytes[keyBytesIndex] - Byte.MIN_VALUE;
-    long pointer = pointers[keyByte];
+    long pointer = index.child(keyByte);
     if (pointer == 0) {
       // Null pointer, create a leaf node.
-      Leaf<K, V> leaf = new Leaf<K, V>(keyObject, valueObject);
-      long fileIndex = filePointer;
-      pendingNodes.put(fileIndex, leaf);
-      filePointer += leafSize(leaf);
-
-      // Modify parent index.
-      modifyIndex(parentPointer, pointers, keyByte, fileIndex);
-      return;
+      return modifyIndex(indexPointer, keyByte, addLeaf(keyObject, valueObject));
     } else if (pointer < 0) {
       // Pointer to index node.
-      Index<K, V> nextIndex = getIndex(pointer);
-      put(pointer, nextIndex.keys(), keyBytes, keyBytesIndex + 1, keyObject, valueObject);
+      long newPointer = put(pointer, keyBytes, keyBytesIndex + 1, keyObject, valueObject);
+      return newPointer == pointer ? indexPointer : modifyIndex(indexPointer, keyByte, newPointer);
     } else {
       // Pointer to leaf node.
       Leaf<K, V> leaf = getLeaf(pointer);
@@ -371,42 +1274,38 @@ public class ByteTrie<K, V> {
       } else {
         // Another non-final leaf node is present, need to split.
         // Create a new index node.
-        long indexPointer = -filePointer;
-        long[] newIndex = new long[KEYS_SIZE];
+        Index<K, V> newIndex = new SmallIndex<>(0L, 4, new byte[0], new long[0]);
         byte[] existingKeyBytes = keyType.toByteArray(leaf.key());
         if (keyBytesIndex + 1 < existingKeyBytes.length) {
           // Push the existing key down the trie if has more bytes.
-          newIndex[existingKeyBytes[keyBytesIndex + 1] - Byte.MIN_VALUE] = pointer;
+          newIndex = newIndex.withChild(existingKeyBytes[keyBytesIndex + 1] - Byte.MIN_VALUE, pointer);
         } else {
           // Add to the new index if has no more bytes.
-          newIndex[256] = pointer;
+          newIndex = newIndex.withCurrent(pointer);
         }
-        // Add new index.
-        pendingNodes.put(indexPointer, new Index<K, V>(newIndex));
-        filePointer += KEYS_SIZE * Long.BYTES;
+        long newIndexPointer = put(addIndex(newIndex), keyBytes, keyBytesIndex + 1, keyObject, valueObject);
 
         // Modify parent index.
-        modifyIndex(parentPointer, pointers, keyByte, indexPointer);
-
-        put(indexPointer, newIndex, keyBytes, keyBytesIndex + 1, keyObject, valueObject);
+        return modifyIndex(indexPointer, keyByte, newIndexPointer);
       }
     }
   }
 
   protected boolean delete(
-      long parentPointer,
-      long[] pointers,
+      long indexPointer,
       byte[] keyBytes,
       int keyBytesIndex,
       K keyObject)
       throws IOException {
+    Index<K, V> index = getIndex(indexPointer);
     if (keyBytesIndex >= keyBytes.length) {
       // Check current node.
-      long currentKey = pointers[256];
+      long currentKey = index.current;
       if (currentKey > 0) {
         Leaf<K, V> leaf = getLeaf(currentKey);
         if (keyType.keysEqual(keyObject, leaf.key())) {
-          modifyIndex(parentPointer, pointers, 256, 0);
+          // Removing never changes the node type.
+          modifyIndex(indexPointer, CURRENT, 0L);
           return true;
         } else {
           throw new RuntimeIndexException("Inconsistent state.");
@@ -416,19 +1315,18 @@ public class ByteTrie<K, V> {
       }
     }
     int keyByte = keyBytes[keyBytesIndex] - Byte.MIN_VALUE;
-    long pointer = pointers[keyByte];
+    long pointer = index.child(keyByte);
     if (pointer == 0) {
       // Equivalent of null pointer, search is over.
       return false;
     } else if (pointer < 0) {
       // Pointer to index node.
-      Index<K, V> nextIndex = getIndex(pointer);
-      return delete(pointer, nextIndex.keys(), keyBytes, keyBytesIndex + 1, keyObject);
+      return delete(pointer, keyBytes, keyBytesIndex + 1, keyObject);
     } else {
       // Pointer to leaf node.
       Leaf<K, V> leaf = getLeaf(pointer);
       if (keyType.keysEqual(keyObject, leaf.key())) {
-        modifyIndex(parentPointer, pointers, keyByte, 0);
+        modifyIndex(indexPointer, keyByte, 0L);
         return true;
       } else {
         // Search is over and not found.
@@ -437,7 +1335,9 @@ public class ByteTrie<K, V> {
     }
   }
 
-  public ByteTrieStat stats() throws IOException {
-    return new ByteTrieStat(raf.length(), trie.size(), pendingNodes.size());
+  public synchronized ByteTrieStat stats() throws IOException {
+    return new ByteTrieStat(raf.length(), owner.nodes(), owner.bytes(), pendingNodes.size(),
+        owner.hits(), owner.misses(), owner.evictions(),
+        bloomFilter == null ? 0L : bloomFilter.memorySize(), bloomFilterNegatives, bloomFilterFalsePositives);
   }
 }
@@ -61,25 +61,44 @@ public class IDIndex {
     }
   }
 
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
     cleanUp();
     raf.close();
   }
 
-  public void cleanUp() {
+  public synchronized void cleanUp() {
     cachedIndices.clear();
   }
 
-  public void drop() throws IOException {
+  public synchronized void drop() throws IOException {
     close();
     new File(fileName).delete();
   }
 
-  public void reOpen() throws FileNotFoundException {
+  public synchronized void reOpen() throws FileNotFoundException {
     this.raf = new RandomAccessFile(fileName, "rw");
   }
 
-  public Long get(long key) throws IOException {
+  public synchronized void sync() throws IOException {
+    raf.getChannel().force(false);
+  }
+
+  /**
+   * Returns the value of the key as of the last commit. Modified segments are
+   * read from the file, which only changes on commit.
+   */
+  public synchronized Long getCommitted(long key) throws IOException {
+    long segment = key / SIZE;
+    if (key * 8 >= filePointer) {
+      return null;
+    }
+    long[] values = dirty.contains(segment) || !cachedIndices.containsKey(segment)
+        ? read(segment) : cachedIndices.get(segment);
+    long value = values[(int) (key % SIZE)];
+    return value == -1 ? null : value;
+  }
+
+  public synchronized Long get(long key) throws IOException {
     long segment = key / SIZE;
     long[] cachedValues = cachedIndices.get(segment);
     if (cachedValues == null) {
@@ -92,6 +111,84 @@ public class IDIndex {
     return cachedValue == -1 ? null : cachedValue;
   }
 
+  /**
+   * Iterates the IDs of a range in order. The <code>committed</code> cursor
+   * reads a copy of the committed segments.
+   */
+  public class Cursor {
+    private final boolean descending;
+    private final boolean committed;
+    private final long end;
+    private long id;
+    private long segment = -1L;
+    private long[] values;
+    private long key;
+    private long value;
+
+    private Cursor(KeyRange range, boolean committed) {
+      long from = range.getFrom() == null ? 0L
+          : (Long) range.getFrom() + (range.isFromInclusive() ? 0L : 1L);
+      long to = range.getTo() == null ? lastID
+          : Math.min(lastID, (Long) range.getTo() - (range.isToInclusive() ? 0L : 1L));
+      from = Math.max(0L, from);
+      this.descending = range.isDescending();
+      this.committed = committed;
+      this.id = descending ? to : from;
+      this.end = descending ? from : to;
+    }
+
+    private Long read(long key) throws IOException {
+      if (!committed) {
+        return get(key);
+      }
+      synchronized (IDIndex.this) {
+        if (key * 8 >= filePointer) {
+          return null;
+        }
+        if (key / SIZE != segment) {
+          segment = key / SIZE;
+          values = dirty.contains(segment) || !cachedIndices.containsKey(segment)
+              ? IDIndex.this.read(segment) : cachedIndices.get(segment).clone();
+        }
+      }
+      long value = values[(int) (key % SIZE)];
+      return value == -1 ? null : value;
+    }
+
+    /**
+     * Moves to the next ID of the range, returns false if there are no more.
+     */
+    public boolean next() throws IOException {
+      while (descending ? id >= end : id <= end) {
+        long key = id;
+        id += descending ? -1L : 1L;
+        Long value = read(key);
+        if (value != null) {
+          this.key = key;
+          this.value = value;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public long key() {
+      return key;
+    }
+
+    public long value() {
+      return value;
+    }
+  }
+
+  /**
+   * Returns a cursor iterating the IDs of <code>range</code> in order. The
+   * <code>committed</code> cursor ignores the pending changes.
+   */
+  public synchronized Cursor cursor(KeyRange range, boolean committed) {
+    return new Cursor(range, committed);
+  }
+
   private long[] read(long segment) throws IOException {
     ByteBuffer bb = ByteBuffer.allocate(BYTE_SIZE);
     raf.seek(segment * BYTE_SIZE);
@@ -102,7 +199,7 @@ public class IDIndex {
     return cachedValues;
   }
 
-  public void put(long key, long value) throws IOException, IndexException {
+  public synchronized void put(long key, long value) throws IOException, IndexException {
     long segment = key / SIZE;
     long[] cachedValues = cachedIndices.get(segment);
     if (cachedValues == null) {
@@ -128,7 +225,7 @@ public class IDIndex {
     lastID = Math.max(lastID, key);
   }
 
-  public boolean delete(long key) throws IOException {
+  public synchronized boolean delete(long key) throws IOException {
     long segment = key / SIZE;
     long[] cachedValues = cachedIndices.get(segment);
     long blockStart = segment * SIZE;
@@ -150,31 +247,36 @@ public class IDIndex {
     }
   }
 
-  public void commit() throws IOException {
+  public synchronized void commit() throws IOException {
+    // Adjacent dirty segments, e.g. the new segments at the end of the file,
+    // are written together.
+    NodeWriter writer = new NodeWriter(raf.getChannel(), (long) dirty.size() * BYTE_SIZE);
     for (Map.Entry<Long, long[]> e : cachedIndices.entrySet()) {
       long i = e.getKey();
       if (dirty.contains(i)) {
-        long[] values = e.getValue();
-        raf.seek(i * BYTE_SIZE);
-        ByteBuffer lb = ByteBuffer.allocate(BYTE_SIZE);
-        lb.asLongBuffer().put(values);
-        raf.write(lb.array());
+        ByteBuffer bb = writer.buffer(i * BYTE_SIZE, BYTE_SIZE);
+        bb.asLongBuffer().put(e.getValue());
+        bb.position(bb.position() + BYTE_SIZE);
       }
     }
+    writer.flush();
     filePointer = raf.length();
     dirty.clear();
   }
 
-  public void rollback() {
+  public synchronized void rollback() {
     cachedIndices.clear();
     dirty.clear();
   }
 
-  public long getLastID() {
+  public synchronized long getLastID() {
     return lastID;
   }
 
-  public ByteTrieStat stats() throws IOException {
-    return new ByteTrieStat(raf.length(), cachedIndices.size(), dirty.size());
+  public synchronized ByteTrieStat stats() throws IOException {
+    // The segments are not evicted and the lookups do not need a Bloom filter,
+    // there are no counters.
+    return new ByteTrieStat(raf.length(), cachedIndices.size(), (long) cachedIndices.size() * BYTE_SIZE,
+        dirty.size(), 0L, 0L, 0L, 0L, 0L, 0L);
   }
 }
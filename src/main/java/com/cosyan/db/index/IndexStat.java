@@ -18,19 +18,61 @@ package com.cosyan.db.index;
 import lombok.Data;
 
 public class IndexStat {
+  private static double ratio(long hits, long misses) {
+    return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+  }
+
   @Data
   public static class ByteTrieStat {
     private final long indexFileSize;
     private final int inMemNodes;
+    private final long inMemBytes;
     private final int pendingNodes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long bloomFilterBytes;
+    private final long bloomFilterNegatives;
+    private final long bloomFilterFalsePositives;
+
+    public double hitRatio() {
+      return ratio(hits, misses);
+    }
+
+    /**
+     * The ratio of the lookups of absent keys not filtered out by the Bloom
+     * filter.
+     */
+    public double bloomFilterFalsePositiveRate() {
+      return ratio(bloomFilterFalsePositives, bloomFilterNegatives);
+    }
   }
 
+  /**
+   * The cache counters are the sums of the key trie and the value chains.
+   */
   @Data
   public static class ByteMultiTrieStat {
     private final long trieFileSize;
     private final long indexFileSize;
     private final int trieInMemNodes;
     private final int triePendingNodes;
+    private final int inMemNodes;
     private final int pendingNodes;
+    private final long inMemBytes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long bloomFilterBytes;
+    private final long bloomFilterNegatives;
+    private final long bloomFilterFalsePositives;
+
+    public double hitRatio() {
+      return ratio(hits, misses);
+    }
+
+    public double bloomFilterFalsePositiveRate() {
+      return ratio(bloomFilterFalsePositives, bloomFilterNegatives);
+    }
   }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import lombok.Data;
+
+/**
+ * A range of index keys iterated in ascending or descending order. A
+ * <code>null</code> bound means the range is unbounded in that direction.
+ */
+@Data
+public class KeyRange {
+
+  public static final KeyRange ALL = new KeyRange(null, false, null, false, false);
+
+  private final Object from;
+  private final boolean fromInclusive;
+  private final Object to;
+  private final boolean toInclusive;
+  private final boolean descending;
+
+  public static KeyRange greaterThan(Object key, boolean inclusive) {
+    return new KeyRange(key, inclusive, null, false, false);
+  }
+
+  public static KeyRange lessThan(Object key, boolean inclusive) {
+    return new KeyRange(null, false, key, inclusive, false);
+  }
+
+  /**
+   * The range of the strings starting with <code>prefix</code>.
+   */
+  public static KeyRange prefix(String prefix) {
+    StringBuilder sb = new StringBuilder(prefix);
+    while (sb.length() > 0 && sb.charAt(sb.length() - 1) == Character.MAX_VALUE) {
+      sb.setLength(sb.length() - 1);
+    }
+    if (sb.length() == 0) {
+      return new KeyRange(prefix, true, null, false, false);
+    }
+    sb.setCharAt(sb.length() - 1, (char) (sb.charAt(sb.length() - 1) + 1));
+    return new KeyRange(prefix, true, sb.toString(), false, false);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static int compare(Object x, Object y) {
+    return ((Comparable) x).compareTo(y);
+  }
+
+  public KeyRange intersect(KeyRange other) {
+    Object from = this.from;
+    boolean fromInclusive = this.fromInclusive;
+    if (from == null || (other.from != null && compare(other.from, from) >= 0)) {
+      fromInclusive = from != null && compare(other.from, from) == 0
+          ? fromInclusive && other.fromInclusive
+          : other.fromInclusive;
+      from = other.from;
+    }
+    Object to = this.to;
+    boolean toInclusive = this.toInclusive;
+    if (to == null || (other.to != null && compare(other.to, to) <= 0)) {
+      toInclusive = to != null && compare(other.to, to) == 0
+          ? toInclusive && other.toInclusive
+          : other.toInclusive;
+      to = other.to;
+    }
+    return new KeyRange(from, fromInclusive, to, toInclusive, descending);
+  }
+
+  public KeyRange withDescending(boolean descending) {
+    return new KeyRange(from, fromInclusive, to, toInclusive, descending);
+  }
+
+  public boolean isAll() {
+    return from == null && to == null;
+  }
+
+  public boolean contains(Object key) {
+    if (key == null) {
+      return false;
+    }
+    if (from != null) {
+      int cmp = compare(key, from);
+      if (cmp < 0 || (cmp == 0 && !fromInclusive)) {
+        return false;
+      }
+    }
+    if (to != null) {
+      int cmp = compare(key, to);
+      if (cmp > 0 || (cmp == 0 && !toInclusive)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares two keys in the iteration order of the range.
+   */
+  public int compareKeys(Object x, Object y) {
+    return descending ? compare(y, x) : compare(x, y);
+  }
+}
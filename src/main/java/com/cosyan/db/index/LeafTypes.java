@@ -5,6 +5,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.Date;
 import java.util.Objects;
 
 import com.cosyan.db.index.ByteTrie.KeyType;
@@ -14,14 +15,40 @@ import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.google.common.collect.ImmutableList;
 
+/**
+ * Key and value types of the tries. The keys are serialized so that iterating
+ * the slots of the trie nodes - which are addressed by the signed value of the
+ * key bytes - visits them in key order. An encoded byte is the unsigned order
+ * preserving byte with the sign bit flipped. The encoding is part of the index
+ * file format, changing it needs a new format version in <code>ByteTrie</code>.
+ */
 public class LeafTypes {
 
+  private static final long FLIP = 0x8080808080808080L;
+  private static final byte NULL = (byte) 0x80;
+  private static final byte NOT_NULL = (byte) 0x81;
+  private static final byte STRING_END = (byte) 0x80;
+  private static final byte STRING_CHAR = (byte) 0x81;
+
+  private static long orderedLong(long key) {
+    return key ^ Long.MIN_VALUE ^ FLIP;
+  }
+
+  private static long orderedDouble(double key) {
+    long bits = Double.doubleToLongBits(key);
+    return (bits < 0 ? ~bits : bits ^ Long.MIN_VALUE) ^ FLIP;
+  }
+
+  private static char orderedChar(char c) {
+    return (char) (c ^ 0x8080);
+  }
+
   public static KeyType<Long> longKeyType = new KeyType<Long>() {
 
     @Override
     public byte[] toByteArray(Long key) {
       ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-      buffer.putLong(key);
+      buffer.putLong(orderedLong(key));
       return buffer.array();
     }
 
@@ -51,7 +78,9 @@ public class LeafTypes {
     @Override
     public byte[] toByteArray(String key) {
       ByteBuffer buffer = ByteBuffer.allocate(Character.BYTES * key.length());
-      buffer.asCharBuffer().put(key.toCharArray());
+      for (int i = 0; i < key.length(); i++) {
+        buffer.putChar(orderedChar(key.charAt(i)));
+      }
       return buffer.array();
     }
 
@@ -81,7 +110,7 @@ public class LeafTypes {
     @Override
     public byte[] toByteArray(Double key) {
       ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES);
-      buffer.putDouble(key);
+      buffer.putLong(orderedDouble(key));
       return buffer.array();
     }
 
@@ -144,13 +173,45 @@ public class LeafTypes {
         ByteArrayOutputStream b = new ByteArrayOutputStream(256);
         DataOutputStream stream = new DataOutputStream(b);
         try {
-          serializeKey(key, stream);
+          for (int i = 0; i < types.size(); i++) {
+            writeOrdered(key[i], types.get(i), stream);
+          }
           return b.toByteArray();
         } catch (IOException e) {
           throw new RuntimeException(e); // Should not happen.
         }
       }
 
+      /**
+       * Every part of the key is self delimiting: fixed length numbers and
+       * terminated strings, so that the concatenation preserves the order.
+       */
+      private void writeOrdered(Object value, DataType<?> type, DataOutputStream stream) throws IOException {
+        if (value == null) {
+          stream.writeByte(NULL);
+          return;
+        }
+        stream.writeByte(NOT_NULL);
+        if (value instanceof Long) {
+          stream.writeLong(orderedLong((Long) value));
+        } else if (value instanceof Double) {
+          stream.writeLong(orderedDouble((Double) value));
+        } else if (value instanceof Date) {
+          stream.writeLong(orderedLong(((Date) value).getTime()));
+        } else if (value instanceof Boolean) {
+          stream.writeByte((Boolean) value ? NOT_NULL : NULL);
+        } else if (value instanceof String) {
+          String str = (String) value;
+          for (int i = 0; i < str.length(); i++) {
+            stream.writeByte(STRING_CHAR);
+            stream.writeChar(orderedChar(str.charAt(i)));
+          }
+          stream.writeByte(STRING_END);
+        } else {
+          Serializer.writeColumn(value, type, stream);
+        }
+      }
+
       @Override
       public boolean keysEqual(Object[] key1, Object[] key2) {
         for (int i = 0; i < types.size(); i++) {
@@ -185,23 +246,40 @@ public class LeafTypes {
     public LongIndex(String fileName) throws IOException {
       super(fileName, longKeyType, longValueType);
     }
+
+    public LongIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName, longKeyType, longValueType, cache);
+    }
   }
 
   public static class StringIndex extends ByteTrie<String, Long> {
     public StringIndex(String fileName) throws IOException {
       super(fileName, stringKeyType, longValueType);
     }
+
+    public StringIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName, stringKeyType, longValueType, cache);
+    }
   }
 
   public static class DoubleIndex extends ByteTrie<Double, Long> {
     public DoubleIndex(String fileName) throws IOException {
       super(fileName, doubleKeyType, longValueType);
     }
+
+    public DoubleIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName, doubleKeyType, longValueType, cache);
+    }
   }
 
   public static class MultiColumnIndex extends ByteTrie<Object[], Long> {
     public MultiColumnIndex(String fileName, ImmutableList<DataType<?>> types) throws IOException {
       super(fileName, multiKeyType(types), longValueType);
     }
+
+    public MultiColumnIndex(String fileName, ImmutableList<DataType<?>> types, NodeCache cache)
+        throws IOException {
+      super(fileName, multiKeyType(types), longValueType, cache);
+    }
   }
 }
@@ -30,50 +30,68 @@ public class MultiLeafTries {
   };
 
   private static class LongMultiLeafIndex extends ByteTrie<Long, MultiLeaf> {
-    protected LongMultiLeafIndex(String fileName) throws IOException {
-      super(fileName + "#index", LeafTypes.longKeyType, multiLeafValueType);
+    protected LongMultiLeafIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#index", LeafTypes.longKeyType, multiLeafValueType, cache);
     }
   }
 
   private static class StringMultiLeafIndex extends ByteTrie<String, MultiLeaf> {
-    protected StringMultiLeafIndex(String fileName) throws IOException {
-      super(fileName + "#index", LeafTypes.stringKeyType, multiLeafValueType);
+    protected StringMultiLeafIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#index", LeafTypes.stringKeyType, multiLeafValueType, cache);
     }
   }
 
   private static class DoubleMultiLeafIndex extends ByteTrie<Double, MultiLeaf> {
-    protected DoubleMultiLeafIndex(String fileName) throws IOException {
-      super(fileName + "#index", LeafTypes.doubleKeyType, multiLeafValueType);
+    protected DoubleMultiLeafIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#index", LeafTypes.doubleKeyType, multiLeafValueType, cache);
     }
   }
 
   private static class MultiColumnMultiLeafIndex extends ByteTrie<Object[], MultiLeaf> {
-    protected MultiColumnMultiLeafIndex(String fileName, ImmutableList<DataType<?>> types) throws IOException {
-      super(fileName + "#index", LeafTypes.multiKeyType(types), multiLeafValueType);
+    protected MultiColumnMultiLeafIndex(String fileName, ImmutableList<DataType<?>> types, NodeCache cache)
+        throws IOException {
+      super(fileName + "#index", LeafTypes.multiKeyType(types), multiLeafValueType, cache);
     }
   }
 
   public static class LongMultiIndex extends ByteMultiTrie<Long> {
     public LongMultiIndex(String fileName) throws IOException {
-      super(fileName + "#chain", new LongMultiLeafIndex(fileName));
+      this(fileName, new NodeCache(NodeCache.DEFAULT_MAX_BYTES));
+    }
+
+    public LongMultiIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#chain", new LongMultiLeafIndex(fileName, cache));
     }
   }
 
   public static class StringMultiIndex extends ByteMultiTrie<String> {
     public StringMultiIndex(String fileName) throws IOException {
-      super(fileName + "#chain", new StringMultiLeafIndex(fileName));
+      this(fileName, new NodeCache(NodeCache.DEFAULT_MAX_BYTES));
+    }
+
+    public StringMultiIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#chain", new StringMultiLeafIndex(fileName, cache));
     }
   }
 
   public static class DoubleMultiIndex extends ByteMultiTrie<Double> {
     public DoubleMultiIndex(String fileName) throws IOException {
-      super(fileName + "#chain", new DoubleMultiLeafIndex(fileName));
+      this(fileName, new NodeCache(NodeCache.DEFAULT_MAX_BYTES));
+    }
+
+    public DoubleMultiIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#chain", new DoubleMultiLeafIndex(fileName, cache));
     }
   }
 
   public static class MultiColumnMultiIndex extends ByteMultiTrie<Object[]> {
     public MultiColumnMultiIndex(String fileName, ImmutableList<DataType<?>> types) throws IOException {
-      super(fileName + "#chain", new MultiColumnMultiLeafIndex(fileName, types));
+      this(fileName, types, new NodeCache(NodeCache.DEFAULT_MAX_BYTES));
+    }
+
+    public MultiColumnMultiIndex(String fileName, ImmutableList<DataType<?>> types, NodeCache cache)
+        throws IOException {
+      super(fileName + "#chain", new MultiColumnMultiLeafIndex(fileName, types, cache));
     }
   }
 }
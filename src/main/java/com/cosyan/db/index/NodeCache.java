@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Data;
+
+/**
+ * A bounded cache of the committed nodes of the index files, shared by all the
+ * indexes. The nodes are addressed by the index file and their file pointer in
+ * open addressing hash tables of primitive keys. The cache is striped into
+ * segments by the hash of the address, every segment has its own lock so that
+ * lookups of different nodes do not block each other. The sizes of the nodes
+ * are estimated, and nodes are evicted with the CLOCK algorithm of the segments
+ * in turn when the total size exceeds the budget.
+ */
+public class NodeCache {
+
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024L * 1024L;
+
+  private static final int SEGMENT_BITS = 4;
+
+  @Data
+  public static class NodeCacheStat {
+    private final long maxBytes;
+    private final long bytes;
+    private final int nodes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+  }
+
+  /**
+   * The nodes of one index file.
+   */
+  public static class Owner {
+    private final int id;
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private Owner(int id) {
+      this.id = id;
+    }
+
+    public int nodes() {
+      return nodes.intValue();
+    }
+
+    public long bytes() {
+      return bytes.sum();
+    }
+
+    public long hits() {
+      return hits.sum();
+    }
+
+    public long misses() {
+      return misses.sum();
+    }
+
+    public long evictions() {
+      return evictions.sum();
+    }
+  }
+
+  private final long maxBytes;
+  private final AtomicInteger ownerIDs = new AtomicInteger();
+  private final Segment[] segments;
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicInteger evictionHand = new AtomicInteger();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public NodeCache(long maxBytes) {
+    assert maxBytes > 0;
+    this.maxBytes = maxBytes;
+    this.segments = new Segment[1 << SEGMENT_BITS];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  public Owner newOwner() {
+    return new Owner(ownerIDs.incrementAndGet());
+  }
+
+  private static long hash(Owner owner, long pointer) {
+    return (pointer ^ ((long) owner.id << 48)) * 0x9E3779B97F4A7C15L;
+  }
+
+  private Segment segment(Owner owner, long pointer) {
+    return segments[(int) (hash(owner, pointer) >>> (64 - SEGMENT_BITS))];
+  }
+
+  public Object get(Owner owner, long pointer) {
+    Object node = segment(owner, pointer).get(owner, pointer);
+    if (node == null) {
+      owner.misses.increment();
+      misses.increment();
+    } else {
+      owner.hits.increment();
+      hits.increment();
+    }
+    return node;
+  }
+
+  /**
+   * Adds or replaces the node, <code>size</code> is the estimated heap size of
+   * the node in bytes.
+   */
+  public void put(Owner owner, long pointer, Object node, int size) {
+    segment(owner, pointer).put(owner, pointer, node, size);
+    // The segments are visited in turn, only one segment lock is held at a time.
+    while (bytes.get() > maxBytes) {
+      segments[evictionHand.getAndIncrement() & (segments.length - 1)].evict();
+    }
+  }
+
+  /**
+   * Removes all the nodes of the index file.
+   */
+  public void invalidate(Owner owner) {
+    for (Segment segment : segments) {
+      segment.invalidate(owner);
+    }
+  }
+
+  public NodeCacheStat stats() {
+    int nodes = 0;
+    for (Segment segment : segments) {
+      nodes += segment.count();
+    }
+    return new NodeCacheStat(maxBytes, bytes.get(), nodes, hits.sum(), misses.sum(), evictions.sum());
+  }
+
+  private class Segment {
+    private Owner[] owners;
+    private long[] pointers;
+    private Object[] nodes;
+    private int[] sizes;
+    private boolean[] referenced;
+    private int mask;
+    private int count;
+    private int clockHand;
+
+    private Segment() {
+      allocate(16);
+    }
+
+    private void allocate(int capacity) {
+      owners = new Owner[capacity];
+      pointers = new long[capacity];
+      nodes = new Object[capacity];
+      sizes = new int[capacity];
+      referenced = new boolean[capacity];
+      mask = capacity - 1;
+      clockHand = 0;
+    }
+
+    private int home(Owner owner, long pointer) {
+      long h = hash(owner, pointer);
+      return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the slot of the node, or <code>-slot - 1</code> of the empty slot
+     * where it can be added.
+     */
+    private int find(Owner owner, long pointer) {
+      int i = home(owner, pointer);
+      while (owners[i] != null) {
+        if (owners[i] == owner && pointers[i] == pointer) {
+          return i;
+        }
+        i = (i + 1) & mask;
+      }
+      return -i - 1;
+    }
+
+    private synchronized Object get(Owner owner, long pointer) {
+      int i = find(owner, pointer);
+      if (i < 0) {
+        return null;
+      }
+      referenced[i] = true;
+      return nodes[i];
+    }
+
+    private synchronized void put(Owner owner, long pointer, Object node, int size) {
+      int i = find(owner, pointer);
+      if (i >= 0) {
+        bytes.addAndGet(size - sizes[i]);
+        owner.bytes.add(size - sizes[i]);
+        nodes[i] = node;
+        sizes[i] = size;
+      } else {
+        if ((count + 1) * 2 > owners.length) {
+          resize(owners.length * 2, null);
+          i = find(owner, pointer);
+        }
+        i = -i - 1;
+        owners[i] = owner;
+        pointers[i] = pointer;
+        nodes[i] = node;
+        sizes[i] = size;
+        count++;
+        bytes.addAndGet(size);
+        owner.nodes.increment();
+        owner.bytes.add(size);
+      }
+      referenced[i] = true;
+    }
+
+    private synchronized void invalidate(Owner owner) {
+      resize(owners.length, owner);
+    }
+
+    private synchronized int count() {
+      return count;
+    }
+
+    /**
+     * Rehashes the nodes into a table of <code>capacity</code> slots, dropping
+     * the nodes of <code>skip</code>.
+     */
+    private void resize(int capacity, Owner skip) {
+      Owner[] oldOwners = owners;
+      long[] oldPointers = pointers;
+      Object[] oldNodes = nodes;
+      int[] oldSizes = sizes;
+      boolean[] oldReferenced = referenced;
+      allocate(capacity);
+      count = 0;
+      for (int j = 0; j < oldOwners.length; j++) {
+        if (oldOwners[j] == null) {
+          continue;
+        }
+        if (oldOwners[j] == skip) {
+          bytes.addAndGet(-oldSizes[j]);
+          skip.nodes.decrement();
+          skip.bytes.add(-oldSizes[j]);
+          continue;
+        }
+        int i = -find(oldOwners[j], oldPointers[j]) - 1;
+        owners[i] = oldOwners[j];
+        pointers[i] = oldPointers[j];
+        nodes[i] = oldNodes[j];
+        sizes[i] = oldSizes[j];
+        referenced[i] = oldReferenced[j];
+        count++;
+      }
+    }
+
+    /**
+     * Evicts one node of the segment unless it is empty.
+     */
+    private synchronized void evict() {
+      if (count == 0) {
+        return;
+      }
+      while (true) {
+        int i = clockHand;
+        if (owners[i] != null) {
+          if (referenced[i]) {
+            // Second chance.
+            referenced[i] = false;
+          } else {
+            Owner owner = owners[i];
+            owner.nodes.decrement();
+            owner.bytes.add(-sizes[i]);
+            owner.evictions.increment();
+            evictions.increment();
+            // The slot gets the next node of the cluster, which is checked next.
+            remove(i);
+            return;
+          }
+        }
+        clockHand = (clockHand + 1) & mask;
+      }
+    }
+
+    /**
+     * Removes the node and moves the following nodes of the cluster back so that
+     * the lookups do not need tombstones.
+     */
+    private void remove(int i) {
+      count--;
+      bytes.addAndGet(-sizes[i]);
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        if (owners[j] == null) {
+          break;
+        }
+        int home = home(owners[j], pointers[j]);
+        boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+        if (!stays) {
+          owners[i] = owners[j];
+          pointers[i] = pointers[j];
+          nodes[i] = nodes[j];
+          sizes[i] = sizes[j];
+          referenced[i] = referenced[j];
+          i = j;
+        }
+      }
+      owners[i] = null;
+      nodes[i] = null;
+      sizes[i] = 0;
+      referenced[i] = false;
+    }
+  }
+}
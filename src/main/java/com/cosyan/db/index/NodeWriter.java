@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the nodes of an index commit with as few system calls as possible.
+ * The nodes are serialized into one buffer as long as they are adjacent in the
+ * file, and every run of adjacent nodes is written with one positional write.
+ * The nodes should be added in the order of their file pointers.
+ */
+class NodeWriter {
+
+  // Longer runs are written in multiple parts to limit the size of the buffer.
+  private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+  private final FileChannel channel;
+  private final int capacity;
+  private ByteBuffer buffer;
+  private long start;
+  private int writes;
+
+  private final DataOutputStream stream = new DataOutputStream(new OutputStream() {
+    @Override
+    public void write(int b) {
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buffer.put(b, off, len);
+    }
+  });
+
+  /**
+   * @param length
+   *          the total size of the nodes to write, used to size the buffer.
+   */
+  NodeWriter(FileChannel channel, long length) {
+    this.channel = channel;
+    this.capacity = (int) Math.min(length, MAX_BUFFER_SIZE);
+  }
+
+  /**
+   * Returns the buffer to put the next node of <code>size</code> bytes into,
+   * which is written to <code>filePointer</code>.
+   */
+  ByteBuffer buffer(long filePointer, int size) throws IOException {
+    if (buffer != null && (start + buffer.position() != filePointer || buffer.remaining() < size)) {
+      flush();
+    }
+    if (buffer == null || buffer.capacity() < size) {
+      buffer = ByteBuffer.allocate(Math.max(capacity, size));
+    }
+    if (buffer.position() == 0) {
+      start = filePointer;
+    }
+    return buffer;
+  }
+
+  /**
+   * Same as <code>buffer</code> for nodes serialized to a stream.
+   */
+  DataOutputStream stream(long filePointer, int size) throws IOException {
+    buffer(filePointer, size);
+    return stream;
+  }
+
+  void flush() throws IOException {
+    if (buffer == null || buffer.position() == 0) {
+      return;
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, start + buffer.position());
+      writes++;
+    }
+    buffer.clear();
+  }
+
+  /**
+   * The number of writes issued since the writer was created.
+   */
+  int writes() {
+    return writes;
+  }
+}
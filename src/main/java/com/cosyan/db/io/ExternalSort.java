@@ -0,0 +1,327 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Sorts records within a memory budget. Records are collected into a run until
+ * the estimated size of the run exceeds the budget, then the run is sorted and
+ * spilled to a temporary file in the serialized format of the records. The runs
+ * are merged with a k-way merge. Records comparing equal keep their original
+ * order.
+ */
+public class ExternalSort {
+
+  private final File dir;
+  private final long memory;
+  private final ImmutableList<DataType<?>> types;
+  private final Comparator<Object[]> comparator;
+
+  private final ArrayList<File> files = new ArrayList<>();
+  private ArrayList<Object[]> run = new ArrayList<>();
+  private long runSize;
+  private PriorityQueue<Run> queue;
+
+  public ExternalSort(File dir, long memory, ImmutableList<DataType<?>> types, Comparator<Object[]> comparator) {
+    this.dir = dir;
+    this.memory = memory;
+    this.types = types;
+    this.comparator = comparator;
+  }
+
+  public void add(Object[] values) throws IOException {
+    assert queue == null;
+    run.add(values);
+    runSize += WorkMemory.size(types, values);
+    if (runSize > memory) {
+      spill();
+    }
+  }
+
+  private void spill() throws IOException {
+    Collections.sort(run, comparator);
+    File file = File.createTempFile("sort", ".run", dir);
+    files.add(file);
+    try (DataOutputStream stream = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+      stream.writeInt(run.size());
+      for (Object[] values : run) {
+        for (int i = 0; i < types.size(); i++) {
+          Serializer.writeColumn(values[i], types.get(i), stream);
+        }
+      }
+    }
+    run = new ArrayList<>();
+    runSize = 0;
+  }
+
+  /**
+   * Returns the next record in order, or <code>null</code> after the last one.
+   * No more records can be added after the first call.
+   */
+  public Object[] next() throws IOException {
+    if (queue == null) {
+      merge();
+    }
+    Run first = queue.poll();
+    if (first == null) {
+      return null;
+    }
+    Object[] values = first.current;
+    if (first.advance()) {
+      queue.add(first);
+    }
+    return values;
+  }
+
+  /**
+   * Sorts the records of the last run, so that it is done by the thread which
+   * added the records instead of the first call of <code>next</code>. No more
+   * records can be added afterwards.
+   */
+  public void finish() throws IOException {
+    if (queue == null) {
+      merge();
+    }
+  }
+
+  private void merge() throws IOException {
+    // Earlier runs win ties, so the merge is stable.
+    queue = new PriorityQueue<>(Math.max(1, files.size() + 1), new Comparator<Run>() {
+      @Override
+      public int compare(Run x, Run y) {
+        int result = comparator.compare(x.current, y.current);
+        return result != 0 ? result : Integer.compare(x.index, y.index);
+      }
+    });
+    for (int i = 0; i < files.size(); i++) {
+      Run fileRun = new FileRun(i, files.get(i));
+      if (fileRun.advance()) {
+        queue.add(fileRun);
+      }
+    }
+    // The last run stays in memory.
+    Collections.sort(run, comparator);
+    Run memoryRun = new MemoryRun(files.size(), run.iterator());
+    if (memoryRun.advance()) {
+      queue.add(memoryRun);
+    }
+    run = null;
+  }
+
+  public int spills() {
+    return files.size();
+  }
+
+  public void close() throws IOException {
+    if (queue != null) {
+      for (Run run : queue) {
+        run.close();
+      }
+      queue.clear();
+    }
+    for (File file : files) {
+      file.delete();
+    }
+    files.clear();
+    run = null;
+  }
+
+  private static abstract class Run {
+    private final int index;
+    protected Object[] current;
+
+    private Run(int index) {
+      this.index = index;
+    }
+
+    protected abstract boolean advance() throws IOException;
+
+    protected void close() throws IOException {
+    }
+  }
+
+  private static class MemoryRun extends Run {
+    private final Iterator<Object[]> iterator;
+
+    private MemoryRun(int index, Iterator<Object[]> iterator) {
+      super(index);
+      this.iterator = iterator;
+    }
+
+    @Override
+    protected boolean advance() {
+      if (!iterator.hasNext()) {
+        current = null;
+        return false;
+      }
+      current = iterator.next();
+      return true;
+    }
+  }
+
+  private class FileRun extends Run {
+    private final DataInputStream stream;
+    private int remaining;
+
+    private FileRun(int index, File file) throws IOException {
+      super(index);
+      this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+      this.remaining = stream.readInt();
+    }
+
+    @Override
+    protected boolean advance() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        close();
+        return false;
+      }
+      remaining--;
+      current = new Object[types.size()];
+      for (int i = 0; i < types.size(); i++) {
+        current[i] = Serializer.readColumn(types.get(i), stream);
+      }
+      return true;
+    }
+
+    @Override
+    protected void close() throws IOException {
+      stream.close();
+    }
+  }
+
+  /**
+   * Merges the records of multiple sorts in order, e.g. the sorts of the ranges
+   * of a table filled in parallel. Records comparing equal are returned in the
+   * order of the sorts.
+   */
+  public static class Merge {
+    private final List<ExternalSort> sorts;
+    private final Object[][] current;
+    private final PriorityQueue<Integer> queue;
+
+    public Merge(List<ExternalSort> sorts, Comparator<Object[]> comparator) throws IOException {
+      this.sorts = sorts;
+      this.current = new Object[sorts.size()][];
+      this.queue = new PriorityQueue<>(Math.max(1, sorts.size()), new Comparator<Integer>() {
+        @Override
+        public int compare(Integer x, Integer y) {
+          int result = comparator.compare(current[x], current[y]);
+          return result != 0 ? result : Integer.compare(x, y);
+        }
+      });
+      for (int i = 0; i < sorts.size(); i++) {
+        advance(i);
+      }
+    }
+
+    private void advance(int i) throws IOException {
+      current[i] = sorts.get(i).next();
+      if (current[i] != null) {
+        queue.add(i);
+      }
+    }
+
+    /**
+     * Returns the next record in order, or <code>null</code> after the last one.
+     */
+    public Object[] next() throws IOException {
+      Integer first = queue.poll();
+      if (first == null) {
+        return null;
+      }
+      Object[] values = current[first];
+      advance(first);
+      return values;
+    }
+  }
+
+  /**
+   * Keeps the first <code>limit</code> records in order in a bounded heap.
+   * Records comparing equal keep their original order.
+   */
+  public static class TopN {
+    private final long limit;
+    private final Comparator<Object[]> comparator;
+    private final PriorityQueue<Object[]> heap;
+    private long sequence;
+
+    public TopN(long limit, Comparator<Object[]> comparator) {
+      this.limit = limit;
+      this.comparator = comparator;
+      // The last column is the sequence number, the root is the largest record.
+      this.heap = new PriorityQueue<>((int) Math.max(1, Math.min(limit, 1024)), new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] x, Object[] y) {
+          return -compareSeq(x, y);
+        }
+      });
+    }
+
+    private int compareSeq(Object[] x, Object[] y) {
+      int result = comparator.compare(x, y);
+      return result != 0 ? result : Long.compare((Long) x[x.length - 1], (Long) y[y.length - 1]);
+    }
+
+    public void add(Object[] values) {
+      if (limit <= 0) {
+        return;
+      }
+      Object[] entry = new Object[values.length + 1];
+      System.arraycopy(values, 0, entry, 0, values.length);
+      entry[values.length] = sequence++;
+      if (heap.size() < limit) {
+        heap.add(entry);
+      } else if (compareSeq(entry, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(entry);
+      }
+    }
+
+    /**
+     * Returns the records in order and empties the heap.
+     */
+    public ArrayList<Object[]> sorted() {
+      ArrayList<Object[]> result = new ArrayList<>(heap.size());
+      while (!heap.isEmpty()) {
+        Object[] entry = heap.poll();
+        Object[] values = new Object[entry.length - 1];
+        System.arraycopy(entry, 0, values, 0, values.length);
+        result.add(values);
+      }
+      Collections.reverse(result);
+      return result;
+    }
+  }
+}
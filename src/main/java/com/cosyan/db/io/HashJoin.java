@@ -0,0 +1,527 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Hash join of records prefixed with the values of the join keys. The build
+ * side is kept in a compact hash table of chained record indexes. If the build
+ * side exceeds the memory budget both sides are partitioned to temporary files
+ * by the hash of the keys and the partitions are joined one by one (grace hash
+ * join). A partition whose build side still exceeds the budget is partitioned
+ * again with a different hash seed, up to <code>MAX_DEPTH</code> levels. A
+ * partition of a single key, or one which cannot be split further, is joined
+ * in blocks of build records fitting in the budget (block nested loop join).
+ * Records with a <code>null</code> key never match.
+ *
+ * In memory the probe records are returned in their original order with the
+ * matching build records in their original order. Partitioned joins return the
+ * records partition by partition. In a block nested loop join a probe record
+ * is returned once for every block it has matches in, and the probe records
+ * without any matches are returned after the last block.
+ */
+public class HashJoin {
+
+  static final int NUM_PARTITIONS = 16;
+  static final int MAX_DEPTH = 4;
+
+  public interface Source {
+    Object[] next() throws IOException;
+  }
+
+  private final File dir;
+  private final long memory;
+  private final int numKeys;
+  private final ImmutableList<DataType<?>> buildTypes;
+  private final ImmutableList<DataType<?>> probeTypes;
+
+  private HashTable table;
+  private long tableSize;
+  private Partition[] buildPartitions;
+  private Partition[] probePartitions;
+  // The partitions to join, the sub-partitions of a split one first.
+  private final ArrayDeque<PartitionPair> pending = new ArrayDeque<>();
+  private final ArrayList<Partition> allPartitions = new ArrayList<>();
+  private PartitionPair current;
+  private DataInputStream partitionStream;
+  private int partitionRemaining;
+  private boolean probeDone;
+
+  // The state of the block nested loop join of the current partition.
+  private DataInputStream blockStream;
+  private int blockRemaining;
+  private BitSet matched;
+  private boolean unmatchedPass;
+
+  private Object[] probeValues;
+  private final ArrayList<Object[]> matches = new ArrayList<>();
+
+  public HashJoin(File dir, long memory, int numKeys,
+      ImmutableList<DataType<?>> buildTypes, ImmutableList<DataType<?>> probeTypes) {
+    this.dir = dir;
+    this.memory = memory;
+    this.numKeys = numKeys;
+    this.buildTypes = buildTypes;
+    this.probeTypes = probeTypes;
+    this.table = new HashTable(numKeys);
+  }
+
+  private static int hash(Object[] values, int numKeys) {
+    return hash(values, numKeys, 0);
+  }
+
+  private static int hash(Object[] values, int numKeys, int depth) {
+    int h = 1;
+    for (int i = 0; i < numKeys; i++) {
+      h = 31 * h + values[i].hashCode();
+    }
+    h = (h ^ depth * 0x85EBCA6B) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private boolean hasNullKey(Object[] values) {
+    for (int i = 0; i < numKeys; i++) {
+      if (values[i] == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean keyEquals(Object[] values, Object[] key, int numKeys) {
+    for (int j = 0; j < numKeys; j++) {
+      if (!values[j].equals(key[j])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int partition(int hash) {
+    // The high bits, the buckets of the hash table use the low ones.
+    return (hash >>> 24) % NUM_PARTITIONS;
+  }
+
+  public void build(Object[] values) throws IOException {
+    if (hasNullKey(values)) {
+      return;
+    }
+    int hash = hash(values, numKeys);
+    if (buildPartitions != null) {
+      buildPartitions[partition(hash)].write(values, buildTypes);
+      return;
+    }
+    table.add(values, hash);
+    tableSize += WorkMemory.size(buildTypes, values);
+    if (tableSize > memory) {
+      spill();
+    }
+  }
+
+  private Partition[] newPartitions() throws IOException {
+    Partition[] partitions = new Partition[NUM_PARTITIONS];
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      partitions[i] = new Partition(dir);
+      allPartitions.add(partitions[i]);
+    }
+    return partitions;
+  }
+
+  private void spill() throws IOException {
+    buildPartitions = newPartitions();
+    probePartitions = newPartitions();
+    for (int i = 0; i < table.size; i++) {
+      buildPartitions[partition(table.hashes[i])].write(table.rows[i], buildTypes);
+    }
+    table = null;
+    tableSize = 0;
+  }
+
+  public boolean partitioned() {
+    return buildPartitions != null;
+  }
+
+  /**
+   * Reads the next probe record which has matches or is not matched at all.
+   * Returns false after the last one. Partitioned probe records are written to
+   * disk first and are returned after the probe source is exhausted.
+   */
+  public boolean next(Source probe) throws IOException {
+    while (!probeDone) {
+      Object[] values = probe.next();
+      if (values == null) {
+        probeDone = true;
+        if (buildPartitions != null) {
+          for (int i = 0; i < NUM_PARTITIONS; i++) {
+            buildPartitions[i].finish();
+            probePartitions[i].finish();
+            pending.add(new PartitionPair(buildPartitions[i], probePartitions[i], 0));
+          }
+        }
+        break;
+      }
+      if (hasNullKey(values)) {
+        probeValues = values;
+        matches.clear();
+        return true;
+      }
+      int hash = hash(values, numKeys);
+      if (buildPartitions != null) {
+        probePartitions[partition(hash)].write(values, probeTypes);
+        continue;
+      }
+      probeValues = values;
+      table.find(values, hash, matches);
+      return true;
+    }
+    if (buildPartitions == null) {
+      return false;
+    }
+    while (true) {
+      while (partitionRemaining == 0) {
+        if (!nextPass()) {
+          return false;
+        }
+      }
+      int index = current.probe.count - partitionRemaining;
+      partitionRemaining--;
+      probeValues = read(probeTypes, partitionStream);
+      if (blockStream == null) {
+        table.find(probeValues, hash(probeValues, numKeys), matches);
+        return true;
+      }
+      if (unmatchedPass) {
+        if (!matched.get(index)) {
+          matches.clear();
+          return true;
+        }
+      } else {
+        table.find(probeValues, hash(probeValues, numKeys), matches);
+        if (!matches.isEmpty()) {
+          matched.set(index);
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts the next pass over the probe records of a partition: the next block
+   * of the current partition or the next partition.
+   */
+  private boolean nextPass() throws IOException {
+    closePartitionStream();
+    if (blockStream != null) {
+      if (!unmatchedPass) {
+        if (blockRemaining > 0) {
+          loadBlock();
+        } else {
+          unmatchedPass = true;
+          table = null;
+        }
+        openProbe();
+        return true;
+      }
+      blockStream.close();
+      blockStream = null;
+    }
+    return nextPartition();
+  }
+
+  private boolean nextPartition() throws IOException {
+    if (current != null) {
+      current.delete();
+      current = null;
+    }
+    while (!pending.isEmpty()) {
+      current = pending.poll();
+      if (loadPartition()) {
+        openProbe();
+        return true;
+      }
+      current.delete();
+      current = null;
+    }
+    table = null;
+    return false;
+  }
+
+  /**
+   * Loads the build records of the current partition, or returns false if the
+   * partition was split into sub-partitions instead. Starts a block nested loop
+   * join if the partition does not fit in the budget and cannot be split.
+   */
+  private boolean loadPartition() throws IOException {
+    table = new HashTable(numKeys);
+    tableSize = 0;
+    Partition build = current.build;
+    try (DataInputStream stream = build.open()) {
+      for (int i = 0; i < build.count; i++) {
+        Object[] values = read(buildTypes, stream);
+        table.add(values, hash(values, numKeys));
+        tableSize += WorkMemory.size(buildTypes, values);
+        if (tableSize > memory) {
+          break;
+        }
+      }
+    }
+    if (tableSize <= memory) {
+      return true;
+    }
+    table = null;
+    if (current.depth + 1 < MAX_DEPTH && !singleKey(build)) {
+      split();
+      return false;
+    }
+    blockStream = build.open();
+    blockRemaining = build.count;
+    matched = new BitSet(current.probe.count);
+    unmatchedPass = false;
+    loadBlock();
+    return true;
+  }
+
+  private boolean singleKey(Partition build) throws IOException {
+    try (DataInputStream stream = build.open()) {
+      Object[] first = read(buildTypes, stream);
+      for (int i = 1; i < build.count; i++) {
+        if (!keyEquals(read(buildTypes, stream), first, numKeys)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Partitions both sides of the current partition again with the hash seed
+   * of the next level.
+   */
+  private void split() throws IOException {
+    int depth = current.depth + 1;
+    Partition[] builds = newPartitions();
+    Partition[] probes = newPartitions();
+    copy(current.build, builds, buildTypes, depth);
+    copy(current.probe, probes, probeTypes, depth);
+    for (int i = NUM_PARTITIONS - 1; i >= 0; i--) {
+      pending.addFirst(new PartitionPair(builds[i], probes[i], depth));
+    }
+  }
+
+  private void copy(Partition from, Partition[] to, ImmutableList<DataType<?>> types, int depth)
+      throws IOException {
+    try (DataInputStream stream = from.open()) {
+      for (int i = 0; i < from.count; i++) {
+        Object[] values = read(types, stream);
+        to[partition(hash(values, numKeys, depth))].write(values, types);
+      }
+    }
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      to[i].finish();
+    }
+  }
+
+  private void loadBlock() throws IOException {
+    table = new HashTable(numKeys);
+    tableSize = 0;
+    while (blockRemaining > 0 && (table.size == 0 || tableSize <= memory)) {
+      Object[] values = read(buildTypes, blockStream);
+      blockRemaining--;
+      table.add(values, hash(values, numKeys));
+      tableSize += WorkMemory.size(buildTypes, values);
+    }
+  }
+
+  private void openProbe() throws IOException {
+    partitionStream = current.probe.open();
+    partitionRemaining = current.probe.count;
+  }
+
+  private static Object[] read(ImmutableList<DataType<?>> types, DataInputStream stream) throws IOException {
+    Object[] values = new Object[types.size()];
+    for (int i = 0; i < types.size(); i++) {
+      values[i] = Serializer.readColumn(types.get(i), stream);
+    }
+    return values;
+  }
+
+  private void closePartitionStream() throws IOException {
+    if (partitionStream != null) {
+      partitionStream.close();
+      partitionStream = null;
+    }
+  }
+
+  /**
+   * The current probe record.
+   */
+  public Object[] probeValues() {
+    return probeValues;
+  }
+
+  /**
+   * The build records matching the current probe record.
+   */
+  public List<Object[]> matches() {
+    return matches;
+  }
+
+  public void close() throws IOException {
+    closePartitionStream();
+    if (blockStream != null) {
+      blockStream.close();
+      blockStream = null;
+    }
+    for (Partition partition : allPartitions) {
+      partition.delete();
+    }
+    table = null;
+  }
+
+  /**
+   * Records are stored in arrays by insertion index. Every bucket is a chain of
+   * record indexes in insertion order, so no key objects are allocated.
+   */
+  private static class HashTable {
+    private final int numKeys;
+    private Object[][] rows = new Object[16][];
+    private int[] hashes = new int[16];
+    private int[] next = new int[16];
+    private int[] heads = new int[16];
+    private int[] tails = new int[16];
+    private int size;
+
+    private HashTable(int numKeys) {
+      this.numKeys = numKeys;
+      Arrays.fill(heads, -1);
+    }
+
+    private void add(Object[] values, int hash) {
+      if (size == rows.length) {
+        rows = Arrays.copyOf(rows, size * 2);
+        hashes = Arrays.copyOf(hashes, size * 2);
+        next = Arrays.copyOf(next, size * 2);
+      }
+      rows[size] = values;
+      hashes[size] = hash;
+      next[size] = -1;
+      link(size);
+      size++;
+      if (size > heads.length * 3 / 4) {
+        rehash(heads.length * 2);
+      }
+    }
+
+    private void link(int i) {
+      int bucket = hashes[i] & (heads.length - 1);
+      if (heads[bucket] < 0) {
+        heads[bucket] = i;
+      } else {
+        next[tails[bucket]] = i;
+      }
+      tails[bucket] = i;
+    }
+
+    private void rehash(int buckets) {
+      heads = new int[buckets];
+      tails = new int[buckets];
+      Arrays.fill(heads, -1);
+      for (int i = 0; i < size; i++) {
+        next[i] = -1;
+        link(i);
+      }
+    }
+
+    private void find(Object[] key, int hash, ArrayList<Object[]> result) {
+      result.clear();
+      int i = heads[hash & (heads.length - 1)];
+      while (i >= 0) {
+        if (hashes[i] == hash && HashJoin.keyEquals(rows[i], key, numKeys)) {
+          result.add(rows[i]);
+        }
+        i = next[i];
+      }
+    }
+  }
+
+  private static class Partition {
+    private final File file;
+    private DataOutputStream stream;
+    private int count;
+
+    private Partition(File dir) throws IOException {
+      this.file = File.createTempFile("join", ".part", dir);
+      this.stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 8 * 1024));
+    }
+
+    private void write(Object[] values, ImmutableList<DataType<?>> types) throws IOException {
+      for (int i = 0; i < types.size(); i++) {
+        Serializer.writeColumn(values[i], types.get(i), stream);
+      }
+      count++;
+    }
+
+    private void finish() throws IOException {
+      stream.close();
+      stream = null;
+    }
+
+    private DataInputStream open() throws IOException {
+      return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    }
+
+    private void delete() throws IOException {
+      if (stream != null) {
+        stream.close();
+        stream = null;
+      }
+      file.delete();
+    }
+  }
+
+  private static class PartitionPair {
+    private final Partition build;
+    private final Partition probe;
+    private final int depth;
+
+    private PartitionPair(Partition build, Partition probe, int depth) {
+      this.build = build;
+      this.probe = probe;
+      this.depth = depth;
+    }
+
+    private void delete() throws IOException {
+      build.delete();
+      probe.delete();
+    }
+  }
+}
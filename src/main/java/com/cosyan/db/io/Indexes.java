@@ -17,7 +17,11 @@ package com.cosyan.db.io;
 
 import java.io.IOException;
 
+import com.cosyan.db.index.ByteMultiTrie;
+import com.cosyan.db.index.ByteTrie;
 import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.index.IDIndex;
+import com.cosyan.db.index.KeyRange;
 import com.cosyan.db.model.DataTypes.DataType;
 
 public class Indexes {
@@ -27,15 +31,169 @@ public class Indexes {
     public boolean contains(Object key) throws IOException;
 
     public long[] get(Object key) throws IOException;
-    
+
+    public long[] getCommitted(Object key) throws IOException;
+
+    /**
+     * Returns a cursor iterating the keys of <code>range</code> in key order.
+     */
+    public IndexCursor range(KeyRange range) throws IOException;
+
+    /**
+     * Returns a cursor iterating the keys of <code>range</code> as of the last
+     * commit.
+     */
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException;
+
     public DataType<?> keyDataType();
   }
 
+  /**
+   * Iterates the keys of an index in order together with their file pointers.
+   */
+  public static interface IndexCursor {
+
+    /**
+     * Moves to the next key, returns false if there are no more.
+     */
+    public boolean next() throws IOException;
+
+    public Object key();
+
+    public long[] values();
+  }
+
+  public static <K> IndexCursor cursor(ByteTrie<K, Long>.Cursor cursor) {
+    return new IndexCursor() {
+
+      @Override
+      public boolean next() throws IOException {
+        return cursor.next();
+      }
+
+      @Override
+      public Object key() {
+        return cursor.key();
+      }
+
+      @Override
+      public long[] values() {
+        return new long[] { cursor.value() };
+      }
+    };
+  }
+
+  public static <K> IndexCursor cursor(ByteMultiTrie<K>.Cursor cursor) {
+    return new IndexCursor() {
+
+      @Override
+      public boolean next() throws IOException {
+        return cursor.next();
+      }
+
+      @Override
+      public Object key() {
+        return cursor.key();
+      }
+
+      @Override
+      public long[] values() {
+        return cursor.values();
+      }
+    };
+  }
+
+  public static IndexCursor cursor(IDIndex.Cursor cursor) {
+    return new IndexCursor() {
+
+      @Override
+      public boolean next() throws IOException {
+        return cursor.next();
+      }
+
+      @Override
+      public Object key() {
+        return cursor.key();
+      }
+
+      @Override
+      public long[] values() {
+        return new long[] { cursor.value() };
+      }
+    };
+  }
+
   public static interface IndexWriter {
 
     public abstract void put(Object key, long fileIndex) throws IOException, IndexException;
 
     public abstract boolean delete(Object key) throws IOException;
 
+    /**
+     * Returns a loader adding keys in ascending order, which builds an empty
+     * index in one sequential pass.
+     */
+    public abstract IndexLoader loader() throws IOException;
+
+  }
+
+  /**
+   * Adds keys to an index in ascending order, the file pointers of a key in
+   * the order they are added.
+   */
+  public static interface IndexLoader {
+
+    public void add(Object key, long fileIndex) throws IOException, IndexException;
+
+    public void finish() throws IOException, IndexException;
+  }
+
+  public static <K> IndexLoader loader(ByteTrie<K, Long>.Loader loader) {
+    return new IndexLoader() {
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void add(Object key, long fileIndex) throws IOException, IndexException {
+        loader.add((K) key, fileIndex);
+      }
+
+      @Override
+      public void finish() throws IOException {
+        loader.finish();
+      }
+    };
+  }
+
+  public static <K> IndexLoader loader(ByteMultiTrie<K>.Loader loader) {
+    return new IndexLoader() {
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void add(Object key, long fileIndex) throws IOException, IndexException {
+        loader.add((K) key, fileIndex);
+      }
+
+      @Override
+      public void finish() throws IOException, IndexException {
+        loader.finish();
+      }
+    };
+  }
+
+  /**
+   * Adds the keys one by one, used by the indexes storing the keys by position.
+   */
+  public static IndexLoader loader(IndexWriter writer) {
+    return new IndexLoader() {
+
+      @Override
+      public void add(Object key, long fileIndex) throws IOException, IndexException {
+        writer.put(key, fileIndex);
+      }
+
+      @Override
+      public void finish() {
+      }
+    };
   }
 }
@@ -15,28 +15,187 @@
  */
 package com.cosyan.db.io;
 
-import java.io.FileNotFoundException;
+import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
-public class MappedDataFile {
+/**
+ * Read only memory mapping of a data file. A single mapping cannot exceed 2GB
+ * so the file is mapped in segments. The segment is remapped when a read
+ * crosses its end, therefore a record can span the boundary of two segments.
+ *
+ * The file length is fixed when the mapping is created.
+ */
+public class MappedDataFile implements DataInput {
+
+  public static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
 
   private final RandomAccessFile raf;
-  private final MappedByteBuffer buffer;
-  
-  public MappedDataFile(String path) throws FileNotFoundException, IOException {
-    raf = new RandomAccessFile(path, "rw");
-    buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+  private final FileChannel channel;
+  private final long length;
+  private final long segmentSize;
+
+  private MappedByteBuffer buffer;
+  private long segmentStart;
+  private long segmentEnd;
+  private long pointer;
+
+  public MappedDataFile(String path) throws IOException {
+    this(path, MAX_SEGMENT_SIZE);
+  }
+
+  MappedDataFile(String path, long segmentSize) throws IOException {
+    this.raf = new RandomAccessFile(path, "r");
+    this.channel = raf.getChannel();
+    this.length = channel.size();
+    this.segmentSize = Math.min(segmentSize, MAX_SEGMENT_SIZE);
+    this.segmentStart = 0L;
+    this.segmentEnd = 0L;
+    this.pointer = 0L;
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public long position() {
+    return pointer;
+  }
+
+  public void seek(long position) {
+    pointer = position;
+  }
+
+  /**
+   * Makes sure that the next <code>size</code> bytes are in the current segment
+   * and returns the index of the current position in the mapped buffer.
+   */
+  private int ensure(int size) throws IOException {
+    if (pointer + size > length) {
+      throw new IOException(String.format("Read past the end of file (%s + %s > %s).", pointer, size, length));
+    }
+    if (buffer == null || pointer < segmentStart || pointer + size > segmentEnd) {
+      long mapSize = Math.min(Math.max(segmentSize, size), length - pointer);
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, pointer, mapSize);
+      segmentStart = pointer;
+      segmentEnd = pointer + mapSize;
+    }
+    int index = (int) (pointer - segmentStart);
+    pointer += size;
+    return index;
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    int index = ensure(len);
+    // The other reads use absolute positions, the position of the buffer is
+    // only used by the bulk copy.
+    buffer.position(index);
+    buffer.get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = (int) Math.min(n, length - pointer);
+    pointer += skipped;
+    return skipped;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    int index = ensure(1);
+    return buffer.get(index) != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    int index = ensure(1);
+    return buffer.get(index);
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    int index = ensure(2);
+    return buffer.getShort(index);
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    int index = ensure(2);
+    return buffer.getChar(index);
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    int index = ensure(4);
+    return buffer.getInt(index);
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    int index = ensure(8);
+    return buffer.getLong(index);
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    int index = ensure(4);
+    return buffer.getFloat(index);
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    int index = ensure(8);
+    return buffer.getDouble(index);
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    // Same as RandomAccessFile: bytes to chars, terminated by \n, \r or \r\n.
+    if (pointer >= length) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    while (pointer < length) {
+      int c = readUnsignedByte();
+      if (c == '\n') {
+        break;
+      } else if (c == '\r') {
+        if (pointer < length && readUnsignedByte() != '\n') {
+          pointer--;
+        }
+        break;
+      }
+      sb.append((char) c);
+    }
+    return sb.toString();
   }
 
-  public MappedByteBuffer getBuffer() {
-    return buffer;
+  @Override
+  public String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
   }
 
   public void close() throws IOException {
-    buffer.force();
+    buffer = null;
     raf.close();
   }
 }
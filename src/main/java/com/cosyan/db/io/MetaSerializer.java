@@ -31,6 +31,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.index.NodeCache;
 import com.cosyan.db.lang.expr.TableDefinition.ForeignKeyDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.RuleDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.TableWithOwnerDefinition;
@@ -132,12 +133,13 @@ public class MetaSerializer {
     return obj;
   }
 
-  public Map<String, Map<String, MaterializedTable>> loadTables(Config config, List<JSONObject> jsons)
+  public Map<String, Map<String, MaterializedTable>> loadTables(
+      Config config, PageCache pageCache, NodeCache nodeCache, List<JSONObject> jsons)
       throws JSONException, IOException, ModelException, ParserException {
     Map<String, Map<String, MaterializedTable>> tables = new HashMap<>();
     for (JSONObject json : jsons) {
       String name = json.getString("name");
-      MaterializedTable table = table(config, name, json);
+      MaterializedTable table = table(config, pageCache, nodeCache, name, json);
       if (!tables.containsKey(table.owner())) {
         tables.put(table.owner(), new HashMap<>());
       }
@@ -226,7 +228,8 @@ public class MetaSerializer {
     }
   }
 
-  public MaterializedTable table(Config config, String tableName, JSONObject obj)
+  public MaterializedTable table(
+      Config config, PageCache pageCache, NodeCache nodeCache, String tableName, JSONObject obj)
       throws JSONException, IOException, ModelException {
     List<BasicColumn> columns = columns(obj.getJSONArray("columns"));
     Optional<PrimaryKey> pk = Optional.empty();
@@ -238,6 +241,8 @@ public class MetaSerializer {
     }
     return new MaterializedTable(
         config,
+        pageCache,
+        nodeCache,
         tableName,
         obj.getString("owner"),
         columns,
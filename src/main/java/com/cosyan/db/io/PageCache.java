@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Data;
+
+/**
+ * A bounded cache of fixed size file pages shared by all table files. Pages are
+ * stored in direct (off-heap) buffers which are allocated lazily up to the
+ * configured number of frames and are reused afterwards. Eviction uses the CLOCK
+ * algorithm.
+ *
+ * Callers never keep a reference to a frame, pages are copied out under the lock
+ * so a frame can be recycled any time.
+ */
+public class PageCache {
+
+  @Data
+  public static class PageCacheStat {
+    private final int pageSize;
+    private final int maxPages;
+    private final int cachedPages;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+  }
+
+  private final int pageSize;
+  private final int maxPages;
+  private final AtomicInteger fileIDs = new AtomicInteger();
+
+  private final ByteBuffer[] frames;
+  private final long[] frameKeys;
+  private final int[] frameLimits;
+  private final boolean[] referenced;
+  private final HashMap<Long, Integer> pages = new HashMap<>();
+  private int numFrames;
+  private int clockHand;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public PageCache(int pageSize, int maxPages) {
+    assert pageSize > 0 && maxPages > 0;
+    this.pageSize = pageSize;
+    this.maxPages = maxPages;
+    this.frames = new ByteBuffer[maxPages];
+    this.frameKeys = new long[maxPages];
+    this.frameLimits = new int[maxPages];
+    this.referenced = new boolean[maxPages];
+  }
+
+  public int pageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Every cached file gets a new ID, so pages of reopened files never collide
+   * with stale pages of the previous instance.
+   */
+  public int newFileID() {
+    return fileIDs.incrementAndGet();
+  }
+
+  private static long key(int fileID, long page) {
+    return (((long) fileID) << 32) | page;
+  }
+
+  /**
+   * Copies the page into <code>dst</code> and returns the number of valid bytes.
+   */
+  public synchronized int read(int fileID, long page, FileChannel channel, byte[] dst) throws IOException {
+    long key = key(fileID, page);
+    Integer frame = pages.get(key);
+    if (frame != null) {
+      hits++;
+    } else {
+      misses++;
+      frame = load(key, page, channel);
+    }
+    referenced[frame] = true;
+    ByteBuffer buffer = frames[frame].duplicate();
+    buffer.position(0);
+    buffer.get(dst, 0, frameLimits[frame]);
+    return frameLimits[frame];
+  }
+
+  /**
+   * Updates the cached copy of the page if present. The file itself has to be
+   * written by the caller.
+   */
+  public synchronized void update(int fileID, long page, int offset, byte[] src, int srcOffset, int length) {
+    Integer frame = pages.get(key(fileID, page));
+    if (frame == null) {
+      return;
+    }
+    ByteBuffer buffer = frames[frame].duplicate();
+    buffer.position(offset);
+    buffer.put(src, srcOffset, length);
+    frameLimits[frame] = Math.max(frameLimits[frame], offset + length);
+  }
+
+  public synchronized void invalidate(int fileID) {
+    Iterator<Map.Entry<Long, Integer>> iter = pages.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<Long, Integer> entry = iter.next();
+      if ((int) (entry.getKey() >>> 32) == fileID) {
+        frameKeys[entry.getValue()] = -1L;
+        referenced[entry.getValue()] = false;
+        iter.remove();
+      }
+    }
+  }
+
+  private int load(long key, long page, FileChannel channel) throws IOException {
+    int frame = freeFrame();
+    ByteBuffer buffer = frames[frame];
+    buffer.clear();
+    long position = page * pageSize;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        break;
+      }
+    }
+    frameKeys[frame] = key;
+    frameLimits[frame] = buffer.position();
+    pages.put(key, frame);
+    return frame;
+  }
+
+  private int freeFrame() {
+    if (numFrames < maxPages) {
+      frames[numFrames] = ByteBuffer.allocateDirect(pageSize);
+      return numFrames++;
+    }
+    while (true) {
+      int frame = clockHand;
+      clockHand = (clockHand + 1) % maxPages;
+      if (frameKeys[frame] == -1L) {
+        return frame;
+      }
+      if (referenced[frame]) {
+        // Second chance.
+        referenced[frame] = false;
+      } else {
+        pages.remove(frameKeys[frame]);
+        frameKeys[frame] = -1L;
+        evictions++;
+        return frame;
+      }
+    }
+  }
+
+  public synchronized PageCacheStat stats() {
+    return new PageCacheStat(pageSize, maxPages, pages.size(), hits, misses, evictions);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Seekable stream reading the file through the shared <code>PageCache</code>.
+ * Only the current page is copied to the heap, so the file size is not limited
+ * by the heap size. Writes go to the file directly and update the cached pages.
+ */
+public class PagedSeekableFileStream extends SeekableInputStream implements SeekableOutputStream {
+
+  private final RandomAccessFile file;
+  private final PageCache pageCache;
+  private final int fileID;
+  private final int pageSize;
+  private final byte[] page;
+
+  private long length;
+  private long pagePointer;
+  private int pageLimit;
+  private long pointer;
+
+  public PagedSeekableFileStream(RandomAccessFile file, PageCache pageCache) throws IOException {
+    this.file = file;
+    this.pageCache = pageCache;
+    this.fileID = pageCache.newFileID();
+    this.pageSize = pageCache.pageSize();
+    this.page = new byte[pageSize];
+    this.length = file.length();
+    this.pagePointer = -1L;
+    this.pointer = 0L;
+  }
+
+  private boolean loadPage() throws IOException {
+    long pageIndex = pointer / pageSize;
+    if (pageIndex != pagePointer || pointer - pageIndex * pageSize >= pageLimit) {
+      pageLimit = pageCache.read(fileID, pageIndex, file.getChannel(), page);
+      pagePointer = pageIndex;
+    }
+    return pointer - pageIndex * pageSize < pageLimit;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (pointer >= length || !loadPage()) {
+      return -1;
+    }
+    return page[(int) (pointer++ - pagePointer * pageSize)] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (pointer >= length || !loadPage()) {
+      return -1;
+    }
+    int offsetInPage = (int) (pointer - pagePointer * pageSize);
+    int n = (int) Math.min(Math.min(len, pageLimit - offsetInPage), length - pointer);
+    System.arraycopy(page, offsetInPage, b, off, n);
+    pointer += n;
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    pageCache.invalidate(fileID);
+    file.close();
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    pointer = position;
+  }
+
+  @Override
+  public void reset() throws IOException {
+    pointer = 0L;
+  }
+
+  @Override
+  public void write(long position, byte[] value) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(value);
+    while (buffer.hasRemaining()) {
+      file.getChannel().write(buffer, position + buffer.position());
+    }
+    int written = 0;
+    while (written < value.length) {
+      long pos = position + written;
+      long pageIndex = pos / pageSize;
+      int offsetInPage = (int) (pos - pageIndex * pageSize);
+      int n = Math.min(value.length - written, pageSize - offsetInPage);
+      pageCache.update(fileID, pageIndex, offsetInPage, value, written, n);
+      if (pageIndex == pagePointer) {
+        System.arraycopy(value, written, page, offsetInPage, n);
+        pageLimit = Math.max(pageLimit, offsetInPage + n);
+      }
+      written += n;
+    }
+    length = Math.max(length, position + value.length);
+  }
+
+  @Override
+  public FileChannel getChannel() {
+    return file.getChannel();
+  }
+}
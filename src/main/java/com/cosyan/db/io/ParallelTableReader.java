@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.TimeUnit;
+
+import com.cosyan.db.io.TableReader.IterableTableReader;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Reads the ranges of a table on the thread pool. Every range fills its own
+ * bounded queue of record batches, which are returned range by range, so the
+ * records come in the same order as from a sequential reader.
+ */
+public class ParallelTableReader extends IterableTableReader {
+
+  private static final int BATCH_SIZE = 256;
+  private static final int QUEUE_SIZE = 16;
+  private static final long POLL_MS = 10L;
+  private static final Object[][] END = new Object[0][];
+
+  private final ArrayList<ArrayBlockingQueue<Object[][]>> queues;
+  private volatile Throwable error;
+
+  private int range;
+  private Object[][] batch;
+  private int pointer;
+
+  public ParallelTableReader(ImmutableList<IterableTableReader> readers, Parallelism parallelism) {
+    this.queues = new ArrayList<>();
+    for (IterableTableReader reader : readers) {
+      ArrayBlockingQueue<Object[][]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+      queues.add(queue);
+      parallelism.getPool().execute(() -> produce(reader, queue));
+    }
+  }
+
+  private void produce(IterableTableReader reader, ArrayBlockingQueue<Object[][]> queue) {
+    try {
+      ArrayList<Object[]> values = new ArrayList<>(BATCH_SIZE);
+      Object[] record;
+      while (!cancelled.get() && (record = reader.next()) != null) {
+        values.add(record);
+        if (values.size() == BATCH_SIZE) {
+          put(queue, values.toArray(new Object[values.size()][]));
+          values.clear();
+        }
+      }
+      if (!values.isEmpty()) {
+        put(queue, values.toArray(new Object[values.size()][]));
+      }
+    } catch (Throwable e) {
+      error = e;
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+      try {
+        put(queue, END);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Blocks until the batch is added to the queue or the reader is cancelled.
+   * The pool can start compensating threads meanwhile, so the producers of
+   * other readers are not starved.
+   */
+  private void put(ArrayBlockingQueue<Object[][]> queue, Object[][] values) throws InterruptedException {
+    ForkJoinPool.managedBlock(new ManagedBlocker() {
+
+      private boolean added = false;
+
+      @Override
+      public boolean isReleasable() {
+        if (!added && !cancelled.get()) {
+          added = queue.offer(values);
+        }
+        return added || cancelled.get();
+      }
+
+      @Override
+      public boolean block() throws InterruptedException {
+        while (!isReleasable()) {
+          added = queue.offer(values, POLL_MS, TimeUnit.MILLISECONDS);
+        }
+        return true;
+      }
+    });
+  }
+
+  private Object[][] poll() throws IOException {
+    try {
+      while (!cancelled.get()) {
+        Object[][] values = queues.get(range).poll(POLL_MS, TimeUnit.MILLISECONDS);
+        if (values != null) {
+          return values;
+        }
+      }
+      return null;
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Returns the next non empty batch from the queues, or <code>null</code> at
+   * the end of the last range.
+   */
+  private Object[][] nextValues() throws IOException {
+    while (range < queues.size()) {
+      Object[][] values = poll();
+      if (values == null) {
+        return null;
+      }
+      if (values == END) {
+        if (error != null) {
+          Throwables.throwIfInstanceOf(error, IOException.class);
+          Throwables.throwIfUnchecked(error);
+          throw new IOException(error);
+        }
+        range++;
+      } else {
+        return values;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Object[] next() throws IOException {
+    if (batch == null || pointer == batch.length) {
+      batch = nextValues();
+      pointer = 0;
+      if (batch == null) {
+        return null;
+      }
+    }
+    return batch[pointer++];
+  }
+
+  @Override
+  public RecordBatch nextBatch() throws IOException {
+    Object[][] values;
+    if (batch != null && pointer < batch.length) {
+      values = Arrays.copyOfRange(batch, pointer, batch.length);
+    } else {
+      values = nextValues();
+    }
+    batch = null;
+    return values == null ? null : new RecordBatch(values, values.length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    cancelled.set(true);
+    for (ArrayBlockingQueue<Object[][]> queue : queues) {
+      queue.clear();
+    }
+  }
+}
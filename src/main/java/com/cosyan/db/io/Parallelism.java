@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.google.common.base.Throwables;
+
+import lombok.Data;
+
+/**
+ * The thread pool of the parallel operators. Tables are split into at most one
+ * range per thread, each range at least <code>minSplitSize</code> bytes.
+ */
+@Data
+public class Parallelism {
+
+  private final ForkJoinPool pool;
+  private final long minSplitSize;
+
+  public int maxSplits() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Runs the tasks on the pool and returns their results in the order of the
+   * tasks. Rethrows the failure of the first failed task. The failures are
+   * caught in the tasks, since the pool would rethrow copies of them.
+   */
+  public <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException, RuleException {
+    Object[] results = new Object[tasks.size()];
+    Throwable[] errors = new Throwable[tasks.size()];
+    List<Callable<Void>> wrapped = new ArrayList<>(tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      final int index = i;
+      wrapped.add(() -> {
+        try {
+          results[index] = tasks.get(index).call();
+        } catch (Throwable e) {
+          errors[index] = e;
+        }
+        return null;
+      });
+    }
+    pool.invokeAll(wrapped);
+    for (Throwable error : errors) {
+      if (error != null) {
+        Throwables.throwIfInstanceOf(error, IOException.class);
+        Throwables.throwIfInstanceOf(error, RuleException.class);
+        Throwables.throwIfUnchecked(error);
+        throw new IOException(error);
+      }
+    }
+    List<T> list = new ArrayList<>(results.length);
+    for (Object result : results) {
+      @SuppressWarnings("unchecked")
+      T t = (T) result;
+      list.add(t);
+    }
+    return list;
+  }
+
+  public void shutdown() {
+    pool.shutdown();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.cosyan.db.model.DataTypes.DataType;
+import com.cosyan.db.model.Vectors;
+import com.cosyan.db.model.Vectors.Vector;
+
+/**
+ * A batch of consecutive records of a table. The column vectors are extracted
+ * from the records on first use and cached for the other expressions of the
+ * same batch.
+ */
+public class RecordBatch {
+
+  public static final int SIZE = 1024;
+
+  private final Object[][] records;
+  private final int size;
+  private Vector[] columns;
+
+  public RecordBatch(Object[][] records, int size) {
+    this.records = records;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Object[] record(int i) {
+    return records[i];
+  }
+
+  public Vector column(int index, DataType<?> type) {
+    if (columns == null) {
+      columns = new Vector[records[0].length];
+    }
+    if (columns[index] == null) {
+      Object[] values = new Object[size];
+      for (int i = 0; i < size; i++) {
+        values[i] = records[i][index];
+      }
+      columns[index] = Vectors.of(type, values, size);
+    }
+    return columns[index];
+  }
+
+  /**
+   * Returns the records from <code>start</code> to the end of the batch.
+   */
+  public RecordBatch tail(int start) {
+    return new RecordBatch(Arrays.copyOfRange(records, start, size), size - start);
+  }
+
+  /**
+   * Returns the records at the selected positions, or <code>null</code> if
+   * nothing is selected.
+   */
+  public RecordBatch select(BitSet selected) {
+    int n = selected.cardinality();
+    if (n == size) {
+      return this;
+    } else if (n == 0) {
+      return null;
+    }
+    Object[][] result = new Object[n][];
+    int j = 0;
+    for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+      result[j++] = records[i];
+    }
+    return new RecordBatch(result, n);
+  }
+}
@@ -20,7 +20,10 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Set;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
 
 import com.cosyan.db.model.BasicColumn;
 import com.google.common.collect.ImmutableList;
@@ -63,12 +66,20 @@ public interface RecordProvider {
         ImmutableList<BasicColumn> columns,
         InputStream inputStream,
         Set<Long> recordsToDelete) {
+      this(columns, inputStream, recordsToDelete, 0L);
+    }
+
+    public RecordReader(
+        ImmutableList<BasicColumn> columns,
+        InputStream inputStream,
+        Set<Long> recordsToDelete,
+        long pointer) {
       this.columns = columns;
       this.recordsToDelete = recordsToDelete;
       this.numColumns = (int) columns.stream().filter(column -> !column.isDeleted()).count();
       this.inputStream = inputStream;
       this.dataInput = new DataInputStream(inputStream);
-      this.pointer = 0L;
+      this.pointer = pointer;
     }
 
     public RecordReader(
@@ -120,6 +131,225 @@ public interface RecordProvider {
     }
   }
 
+  /**
+   * Sequential reader decoding the records directly from the memory mapped
+   * table file. Deleted records are skipped without decoding the values. Records
+   * of the uncommitted <code>tail</code> are read after the end of the file.
+   * Snapshot readers stop at <code>end</code> and read the records deleted
+   * after the snapshot as live. Range readers start at a record boundary
+   * returned by <code>splits</code>, so a table file can be read in parallel
+   * ranges.
+   */
+  public class MappedRecordReader implements RecordProvider {
+
+    // The number of consecutive valid records which mark a record boundary.
+    private static final int SYNC_RECORDS = 4;
+
+    private final ImmutableList<BasicColumn> columns;
+    private final Set<Long> recordsToDelete;
+    private final int numColumns;
+    private final MappedDataFile file;
+    private final RecordProvider tail;
+    private final long end;
+    private final LongPredicate deletedAfter;
+
+    private MappedRecordReader(
+        ImmutableList<BasicColumn> columns,
+        MappedDataFile file,
+        Set<Long> recordsToDelete,
+        RecordProvider tail,
+        long start,
+        long end,
+        LongPredicate deletedAfter) {
+      this.columns = columns;
+      this.recordsToDelete = recordsToDelete;
+      this.numColumns = (int) columns.stream().filter(column -> !column.isDeleted()).count();
+      this.file = file;
+      this.tail = tail;
+      this.end = end;
+      this.deletedAfter = deletedAfter;
+      file.seek(start);
+    }
+
+    public MappedRecordReader(
+        ImmutableList<BasicColumn> columns,
+        MappedDataFile file,
+        Set<Long> recordsToDelete,
+        RecordProvider tail) {
+      this(columns, file, recordsToDelete, tail, 0L, file.length(), pos -> false);
+    }
+
+    public MappedRecordReader(ImmutableList<BasicColumn> columns, MappedDataFile file) {
+      this(columns, file, ImmutableSet.of(), null);
+    }
+
+    public MappedRecordReader(
+        ImmutableList<BasicColumn> columns,
+        MappedDataFile file,
+        long end,
+        LongPredicate deletedAfter) {
+      this(columns, file, ImmutableSet.of(), null, 0L, end, deletedAfter);
+    }
+
+    public MappedRecordReader(
+        ImmutableList<BasicColumn> columns,
+        MappedDataFile file,
+        long start,
+        long end,
+        LongPredicate deletedAfter) {
+      this(columns, file, ImmutableSet.of(), null, start, end, deletedAfter);
+    }
+
+    public MappedRecordReader(
+        ImmutableList<BasicColumn> columns,
+        MappedDataFile file,
+        Set<Long> recordsToDelete,
+        RecordProvider tail,
+        long start,
+        long end) {
+      this(columns, file, recordsToDelete, tail, start, end, pos -> false);
+    }
+
+    /**
+     * Returns the start positions of at most <code>maxSplits</code> record
+     * aligned ranges of the first <code>end</code> bytes of the file, each about
+     * <code>minSplitSize</code> bytes or more. The range of the last start
+     * position ends at <code>end</code>. The file is cut into equal byte ranges
+     * and every cut is moved forward to the next record header found by
+     * <code>sync</code>, so only a few records are read around the cuts.
+     */
+    public static long[] splits(MappedDataFile file, long end, int maxSplits, long minSplitSize)
+        throws IOException {
+      int numSplits = (int) Math.max(1L, Math.min(maxSplits, end / Math.max(1L, minSplitSize)));
+      ArrayList<Long> starts = new ArrayList<>();
+      starts.add(0L);
+      for (int i = 1; i < numSplits; i++) {
+        long cut = end / numSplits * i;
+        long start = starts.get(starts.size() - 1);
+        if (cut > start) {
+          long position = sync(file, cut, end);
+          if (position < end) {
+            starts.add(position);
+          }
+        }
+      }
+      return starts.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Returns the position of the first record header at or after
+     * <code>position</code>, or <code>end</code> if there is none. A header is a
+     * descriptor byte and the size of the record, followed by the CRC of the
+     * record bytes written by <code>Serializer.serialize</code>. A few following
+     * records have to be valid too, so that values which look like a record are
+     * not mistaken for one.
+     */
+    static long sync(MappedDataFile file, long position, long end) throws IOException {
+      CRC32 checksum = new CRC32();
+      for (; position < end; position++) {
+        long next = position;
+        for (int i = 0; i < SYNC_RECORDS && next >= 0 && next < end; i++) {
+          next = recordEnd(file, next, end, checksum);
+        }
+        if (next >= 0) {
+          return position;
+        }
+      }
+      return end;
+    }
+
+    /**
+     * Returns the end of the record at <code>position</code>, or -1 if there is
+     * no valid record there.
+     */
+    private static long recordEnd(MappedDataFile file, long position, long end, CRC32 checksum)
+        throws IOException {
+      if (position + 10 > end) {
+        return -1L;
+      }
+      file.seek(position);
+      byte desc = file.readByte();
+      int recordSize = file.readInt();
+      // Every record has at least one column.
+      if ((desc != 0 && desc != 1) || recordSize <= 0 || position + 9 + recordSize > end) {
+        return -1L;
+      }
+      checksum.reset();
+      for (int i = 0; i < recordSize; i++) {
+        checksum.update(file.readByte());
+      }
+      if (file.readInt() != (int) checksum.getValue()) {
+        return -1L;
+      }
+      return position + 9 + recordSize;
+    }
+
+    private boolean live(long recordPointer, byte desc) {
+      return (desc == 1 || deletedAfter.test(recordPointer)) && !recordsToDelete.contains(recordPointer);
+    }
+
+    @Override
+    public Record read() throws IOException {
+      while (file.position() < end) {
+        long recordPointer = file.position();
+        byte desc = file.readByte();
+        int recordSize = file.readInt();
+        long recordEnd = recordPointer + 5 + recordSize;
+        if (!live(recordPointer, desc)) {
+          file.seek(recordEnd + 4);
+          continue;
+        }
+        return new Record(recordPointer, readValues(recordEnd));
+      }
+      if (tail == null) {
+        return EMPTY;
+      }
+      return tail.read();
+    }
+
+    /**
+     * Returns the record at <code>position</code>, or <code>EMPTY</code> if it
+     * is not live.
+     */
+    public Record get(long position) throws IOException {
+      if (position < 0 || position >= end) {
+        return EMPTY;
+      }
+      file.seek(position);
+      byte desc = file.readByte();
+      int recordSize = file.readInt();
+      if (!live(position, desc)) {
+        return EMPTY;
+      }
+      return new Record(position, readValues(position + 5 + recordSize));
+    }
+
+    private Object[] readValues(long recordEnd) throws IOException {
+      Object[] values = new Object[numColumns];
+      int i = 0;
+      for (BasicColumn column : columns) {
+        if (file.position() >= recordEnd) {
+          // Columns added after the record was written.
+          break;
+        }
+        Object value = Serializer.readColumn(column.getType(), file);
+        if (!column.isDeleted()) {
+          values[i++] = value;
+        }
+      }
+      file.seek(recordEnd + 4); // CRC
+      return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+      if (tail != null) {
+        tail.close();
+      }
+    }
+  }
+
   public class SeekableRecordReader extends RecordReader {
 
     private final SeekableInputStream inputStream;
@@ -15,25 +15,40 @@
  */
 package com.cosyan.db.io;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongPredicate;
 
+import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.KeyRange;
+import com.cosyan.db.io.Indexes.IndexCursor;
+import com.cosyan.db.io.Indexes.IndexLoader;
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.RecordProvider.MappedRecordReader;
 import com.cosyan.db.io.RecordProvider.Record;
 import com.cosyan.db.io.RecordProvider.RecordReader;
 import com.cosyan.db.io.RecordProvider.SeekableRecordReader;
 import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.meta.TableSnapshot;
 import com.cosyan.db.model.BasicColumn;
 import com.cosyan.db.model.ColumnMeta;
+import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.Keys.PrimaryKey;
 import com.cosyan.db.model.Rule;
 import com.cosyan.db.model.TableContext;
 import com.cosyan.db.model.TableMeta.ExposedTableMeta;
+import com.cosyan.db.model.TableMultiIndex;
 import com.cosyan.db.model.TableUniqueIndex;
 import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
@@ -70,6 +85,24 @@ public abstract class TableReader implements TableIO {
 
     public abstract Object[] next() throws IOException;
 
+    /**
+     * Returns the next batch of at most <code>RecordBatch.SIZE</code> records,
+     * or <code>null</code> if there are no more records.
+     */
+    public RecordBatch nextBatch() throws IOException {
+      // Starts small, since many readers only return a few records.
+      Object[][] records = new Object[16][];
+      int size = 0;
+      Object[] values;
+      while (size < RecordBatch.SIZE && !cancelled.get() && (values = next()) != null) {
+        if (size == records.length) {
+          records = Arrays.copyOf(records, records.length * 2);
+        }
+        records[size++] = values;
+      }
+      return size == 0 ? null : new RecordBatch(records, size);
+    }
+
     public abstract void close() throws IOException;
 
     public void cancel() {
@@ -77,6 +110,58 @@ public abstract class TableReader implements TableIO {
     }
   }
 
+  static IterableTableReader iterable(RecordProvider reader) {
+    return new IterableTableReader() {
+
+      @Override
+      public Object[] next() throws IOException {
+        return reader.read().getValues();
+      }
+
+      @Override
+      public void close() throws IOException {
+        reader.close();
+      }
+    };
+  }
+
+  /**
+   * Record aligned split points of the first <code>end</code> bytes of a table
+   * file. The ranges are between the consecutive elements, the last element is
+   * the end of the file.
+   */
+  static long[] splitPoints(String fileName, long end, Parallelism parallelism) throws IOException {
+    MappedDataFile file = new MappedDataFile(fileName);
+    try {
+      end = Math.min(end, file.length());
+      long[] starts = MappedRecordReader.splits(file, end, parallelism.maxSplits(), parallelism.getMinSplitSize());
+      long[] points = Arrays.copyOf(starts, starts.length + 1);
+      points[starts.length] = end;
+      return points;
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Readers of the record aligned ranges of the first <code>end</code> bytes of
+   * a table file.
+   */
+  static ImmutableList<IterableTableReader> rangeReaders(
+      ImmutableList<BasicColumn> columns,
+      String fileName,
+      long end,
+      LongPredicate deletedAfter,
+      Parallelism parallelism) throws IOException {
+    long[] points = splitPoints(fileName, end, parallelism);
+    ImmutableList.Builder<IterableTableReader> builder = ImmutableList.builder();
+    for (int i = 0; i < points.length - 1; i++) {
+      builder.add(iterable(new MappedRecordReader(
+          columns, new MappedDataFile(fileName), points[i], points[i + 1], deletedAfter)));
+    }
+    return builder.build();
+  }
+
   public static abstract class DerivedIterableTableReader extends IterableTableReader {
 
     protected final IterableTableReader sourceReader;
@@ -103,10 +188,25 @@ public abstract class TableReader implements TableIO {
 
     public abstract IterableTableReader iterableReader(Resources resources) throws IOException;
 
+    /**
+     * Readers of disjoint parts of the table which together return the same
+     * records as <code>iterableReader</code>. They can be read from different
+     * threads.
+     */
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources) throws IOException {
+      return ImmutableList.of(iterableReader(resources));
+    }
+
     public abstract TableUniqueIndex getPrimaryKeyIndex();
 
     public abstract IndexReader getIndex(String name);
 
+    /**
+     * Releases what the reader holds for the duration of the transaction.
+     */
+    public void release() throws IOException {
+    }
+
     public void checkRule(Rule rule, Resources resources) throws IOException, RuleException {
       checkRule(rule, iterableReader(resources), resources);
     }
@@ -183,19 +283,114 @@ public abstract class TableReader implements TableIO {
 
     @Override
     public IterableTableReader iterableReader(Resources resources) throws IOException {
-      RecordReader reader = recordReader();
-      return new IterableTableReader() {
+      return iterable(recordReader());
+    }
 
-        @Override
-        public Object[] next() throws IOException {
-          return reader.read().getValues();
-        }
+    @Override
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources) throws IOException {
+      return rangeReaders(columns, fileName, Long.MAX_VALUE, pos -> false, resources.parallelism());
+    }
 
-        @Override
-        public void close() throws IOException {
-          reader.close();
-        }
-      };
+    @Override
+    public IndexReader getIndex(String name) {
+      return indexes.get(name);
+    }
+
+    protected RecordProvider recordReader() throws IOException {
+      return new MappedRecordReader(columns, new MappedDataFile(fileName));
+    }
+  }
+
+  /**
+   * Reads the committed state of a table pinned by a snapshot, without locking
+   * the table. Index lookups use the committed index nodes, skip the records
+   * appended after the snapshot and add back the ones deleted after it.
+   */
+  public static class SnapshotTableReader extends SeekableTableReader {
+
+    private final TableSnapshot snapshot;
+    private final MaterializedTable tableMeta;
+    private final ImmutableList<BasicColumn> columns;
+    private final MappedRecordReader reader;
+    private final ImmutableMap<String, IndexReader> indexes;
+
+    private Object cachedKey;
+    private Record cachedRecord;
+
+    private long deleteCount = -1L;
+    private final HashSet<Long> deleted = new HashSet<>();
+    private final ArrayList<Long> deletedPositions = new ArrayList<>();
+    private final HashMap<Integer, Integer> deletedProcessed = new HashMap<>();
+    private final HashMap<Integer, HashMap<Object, List<Long>>> deletedByValue = new HashMap<>();
+
+    public SnapshotTableReader(TableSnapshot snapshot) throws IOException {
+      this.snapshot = snapshot;
+      this.tableMeta = snapshot.getTable();
+      this.columns = tableMeta.allColumns();
+      this.reader = recordReader();
+      ImmutableMap.Builder<String, IndexReader> builder = ImmutableMap.builder();
+      for (Map.Entry<String, TableUniqueIndex> index : tableMeta.uniqueIndexes().entrySet()) {
+        builder.put(index.getKey(), new SnapshotUniqueIndex(index.getValue(), column(index.getKey())));
+      }
+      for (Map.Entry<String, TableMultiIndex> index : tableMeta.multiIndexes().entrySet()) {
+        builder.put(index.getKey(), new SnapshotIndex(index.getValue(), column(index.getKey())));
+      }
+      this.indexes = builder.build();
+    }
+
+    private int column(String name) {
+      return tableMeta.columns().get(name).getIndex();
+    }
+
+    private MappedRecordReader recordReader() throws IOException {
+      return new MappedRecordReader(
+          columns, new MappedDataFile(tableMeta.fileName()), snapshot.getLength(), snapshot::deletedAfter);
+    }
+
+    @Override
+    public TableUniqueIndex getPrimaryKeyIndex() {
+      return (TableUniqueIndex) getIndex(tableMeta.primaryKey().get().getColumn().getName());
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+
+    @Override
+    public void release() throws IOException {
+      try {
+        close();
+      } finally {
+        snapshot.release();
+      }
+    }
+
+    @Override
+    public Record get(long position) throws IOException {
+      return reader.get(position);
+    }
+
+    @Override
+    public Record get(Object key, Resources resources) throws IOException {
+      if (cachedKey != null && cachedKey.equals(key)) {
+        return cachedRecord;
+      }
+      Record record = get(getPrimaryKeyIndex().get0(key));
+      cachedKey = key;
+      cachedRecord = record;
+      return record;
+    }
+
+    @Override
+    public IterableTableReader iterableReader(Resources resources) throws IOException {
+      return iterable(recordReader());
+    }
+
+    @Override
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources) throws IOException {
+      return rangeReaders(
+          columns, tableMeta.fileName(), snapshot.getLength(), snapshot::deletedAfter, resources.parallelism());
     }
 
     @Override
@@ -203,8 +398,286 @@ public abstract class TableReader implements TableIO {
       return indexes.get(name);
     }
 
-    protected RecordReader recordReader() throws IOException {
-      return new RecordReader(columns, new BufferedInputStream(new FileInputStream(fileName)));
+    private long[] positions(IndexReader index, int column, Object key) throws IOException {
+      TreeSet<Long> positions = new TreeSet<>();
+      for (long position : index.getCommitted(key)) {
+        if (matches(position, column, key)) {
+          positions.add(position);
+        }
+      }
+      // Looked up after the index, since the deletes of a commit are registered
+      // before they reach the index.
+      List<Long> deletedPositions = deletedAfter(column).get(key);
+      if (deletedPositions != null) {
+        positions.addAll(deletedPositions);
+      }
+      return positions.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Returns the records visible in the snapshot but deleted since, grouped by
+     * the value of <code>column</code>. The groups are updated incrementally
+     * when more records are deleted.
+     */
+    private HashMap<Object, List<Long>> deletedAfter(int column) throws IOException {
+      long count = snapshot.deleteCount();
+      if (count != deleteCount) {
+        deleteCount = count;
+        for (long position : snapshot.deletedAfter()) {
+          if (deleted.add(position)) {
+            deletedPositions.add(position);
+          }
+        }
+      }
+      HashMap<Object, List<Long>> byValue = deletedByValue.computeIfAbsent(column, c -> new HashMap<>());
+      int processed = deletedProcessed.getOrDefault(column, 0);
+      for (long position : deletedPositions.subList(processed, deletedPositions.size())) {
+        Object value = reader.get(position).getValues()[column];
+        byValue.computeIfAbsent(value, v -> new ArrayList<>()).add(position);
+      }
+      deletedProcessed.put(column, deletedPositions.size());
+      return byValue;
+    }
+
+    private boolean matches(long position, int column, Object key) throws IOException {
+      Record record = reader.get(position);
+      return record != RecordProvider.EMPTY && key.equals(record.getValues()[column]);
+    }
+
+    /**
+     * Merges the committed keys of the range visible in the snapshot with the
+     * records deleted after it. The deleted records are looked up again before
+     * every step, since the deletes of a commit are registered before they
+     * reach the index.
+     */
+    private class SnapshotCursor implements IndexCursor {
+
+      private final IndexCursor committed;
+      private final KeyRange range;
+      private final int column;
+      private final HashSet<Long> extras = new HashSet<>();
+      private final TreeMap<Object, TreeSet<Long>> pending;
+      private long deleteCount = -1L;
+      private Object lastKey;
+      private Object committedKey;
+      private TreeSet<Long> committedValues;
+      private boolean committedDone;
+      private Object key;
+      private long[] values;
+
+      private SnapshotCursor(IndexReader index, KeyRange range, int column) throws IOException {
+        this.committed = index.rangeCommitted(range);
+        this.range = range;
+        this.column = column;
+        this.pending = new TreeMap<>(range::compareKeys);
+      }
+
+      private void refreshExtras() throws IOException {
+        long count = snapshot.deleteCount();
+        if (count == deleteCount) {
+          return;
+        }
+        deleteCount = count;
+        for (long position : snapshot.deletedAfter()) {
+          if (extras.add(position)) {
+            Object value = reader.get(position).getValues()[column];
+            // Deleted records before the last fetched key were iterated already.
+            if (range.contains(value) && (lastKey == null || range.compareKeys(value, lastKey) > 0)) {
+              pending.computeIfAbsent(value, k -> new TreeSet<>()).add(position);
+            }
+          }
+        }
+      }
+
+      private void fetchCommitted() throws IOException {
+        while (committedKey == null && !committedDone) {
+          if (!committed.next()) {
+            committedDone = true;
+            return;
+          }
+          Object key = committed.key();
+          TreeSet<Long> positions = new TreeSet<>();
+          for (long position : committed.values()) {
+            if (!extras.contains(position) && matches(position, column, key)) {
+              positions.add(position);
+            }
+          }
+          lastKey = key;
+          if (!positions.isEmpty()) {
+            committedKey = key;
+            committedValues = positions;
+          }
+        }
+      }
+
+      @Override
+      public boolean next() throws IOException {
+        refreshExtras();
+        fetchCommitted();
+        Map.Entry<Object, TreeSet<Long>> extra = pending.firstEntry();
+        if (committedKey == null && extra == null) {
+          key = null;
+          values = null;
+          return false;
+        }
+        int cmp = committedKey == null ? 1 : extra == null ? -1 : range.compareKeys(committedKey, extra.getKey());
+        TreeSet<Long> positions = new TreeSet<>();
+        if (cmp <= 0) {
+          key = committedKey;
+          positions.addAll(committedValues);
+          committedKey = null;
+          committedValues = null;
+        }
+        if (cmp >= 0) {
+          key = extra.getKey();
+          positions.addAll(pending.pollFirstEntry().getValue());
+        }
+        values = positions.stream().mapToLong(Long::longValue).toArray();
+        return true;
+      }
+
+      @Override
+      public Object key() {
+        return key;
+      }
+
+      @Override
+      public long[] values() {
+        return values;
+      }
+    }
+
+    private class SnapshotIndex implements IndexReader {
+
+      private final IndexReader index;
+      private final int column;
+
+      private SnapshotIndex(IndexReader index, int column) {
+        this.index = index;
+        this.column = column;
+      }
+
+      @Override
+      public boolean contains(Object key) throws IOException {
+        return get(key).length > 0;
+      }
+
+      @Override
+      public long[] get(Object key) throws IOException {
+        return positions(index, column, key);
+      }
+
+      @Override
+      public long[] getCommitted(Object key) throws IOException {
+        return get(key);
+      }
+
+      @Override
+      public IndexCursor range(KeyRange range) throws IOException {
+        return new SnapshotCursor(index, range, column);
+      }
+
+      @Override
+      public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+        return range(range);
+      }
+
+      @Override
+      public DataType<?> keyDataType() {
+        return index.keyDataType();
+      }
+    }
+
+    private class SnapshotUniqueIndex extends TableUniqueIndex {
+
+      private final TableUniqueIndex index;
+      private final int column;
+
+      private SnapshotUniqueIndex(TableUniqueIndex index, int column) {
+        this.index = index;
+        this.column = column;
+      }
+
+      @Override
+      public boolean contains(Object key) throws IOException {
+        return get(key).length > 0;
+      }
+
+      @Override
+      public long[] get(Object key) throws IOException {
+        return positions(index, column, key);
+      }
+
+      @Override
+      public long get0(Object key) throws IOException {
+        long[] positions = get(key);
+        return positions.length == 0 ? -1 : positions[0];
+      }
+
+      @Override
+      public long[] getCommitted(Object key) throws IOException {
+        return get(key);
+      }
+
+      @Override
+      public IndexCursor range(KeyRange range) throws IOException {
+        return new SnapshotCursor(index, range, column);
+      }
+
+      @Override
+      public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+        return range(range);
+      }
+
+      @Override
+      public DataType<?> keyDataType() {
+        return index.keyDataType();
+      }
+
+      @Override
+      public ByteTrieStat stats() throws IOException {
+        return index.stats();
+      }
+
+      @Override
+      public void put(Object key, long fileIndex) throws IOException, IndexException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean delete(Object key) throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void commit() throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void rollback() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void enableBloomFilter(int bitsPerKey) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public IndexLoader loader() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void drop() throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void sync() throws IOException {
+        throw new UnsupportedOperationException();
+      }
     }
   }
 
@@ -242,8 +715,9 @@ public abstract class TableReader implements TableIO {
         pointer = 0;
       }
       Record record = RecordReader.EMPTY;
-      boolean keepGoing = false;
+      boolean keepGoing;
       do {
+        keepGoing = false;
         if (pointer < positions.length) {
           record = sourceReader.get(positions[pointer]);
           if (record == RecordReader.EMPTY) {
@@ -255,7 +729,13 @@ public abstract class TableReader implements TableIO {
           }
           pointer++;
         } else {
-          return RecordReader.EMPTY;
+          long[] nextPositions = nextPositions();
+          if (nextPositions == null) {
+            return RecordReader.EMPTY;
+          }
+          positions = nextPositions;
+          pointer = 0;
+          keepGoing = true;
         }
       } while (keepGoing && !cancelled);
       return record;
@@ -263,6 +743,14 @@ public abstract class TableReader implements TableIO {
 
     protected abstract long[] readPositions() throws IOException;
 
+    /**
+     * Returns the next positions once the previous ones are consumed, or null
+     * if there are no more.
+     */
+    protected long[] nextPositions() throws IOException {
+      return null;
+    }
+
     @Override
     public void close() throws IOException {
       // SeekableTableReader should not be closed manually.
@@ -15,22 +15,36 @@
  */
 package com.cosyan.db.io;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.SequenceInputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.function.Predicate;
 
+import javax.annotation.Nullable;
+
 import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.io.Indexes.IndexLoader;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
+import com.cosyan.db.io.RecordProvider.MappedRecordReader;
 import com.cosyan.db.io.RecordProvider.Record;
 import com.cosyan.db.io.RecordProvider.RecordReader;
 import com.cosyan.db.io.RecordProvider.SeekableRecordReader;
@@ -42,12 +56,15 @@ import com.cosyan.db.logic.PredicateHelper.VariableEquals;
 import com.cosyan.db.meta.Dependencies.ReverseRuleDependencies;
 import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.meta.TableStat;
 import com.cosyan.db.model.BasicColumn;
 import com.cosyan.db.model.ColumnMeta;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.PrimaryKey;
+import com.cosyan.db.model.RefAggregates;
+import com.cosyan.db.model.Rule;
 import com.cosyan.db.model.Rule.BooleanRule;
 import com.cosyan.db.model.TableContext;
 import com.cosyan.db.model.TableMultiIndex;
@@ -58,9 +75,12 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 
 public class TableWriter extends SeekableTableReader implements TableIO {
 
+  public static final String VACUUM_SUFFIX = ".vacuum";
+
   private final String fileName;
   private final SeekableOutputStream writer;
   private final MaterializedTable tableMeta;
@@ -70,6 +90,7 @@ public class TableWriter extends SeekableTableReader implements TableIO {
   private final Map<String, TableUniqueIndex> uniqueIndexes;
   private final Map<String, TableMultiIndex> multiIndexes;
   private final Map<String, MultiColumnTableMultiIndex> extraIndexes;
+  private final Map<String, RefAggregates> refAggregates;
   private final ImmutableMultimap<String, IndexReader> foreignIndexes;
   private final ImmutableMultimap<String, IndexReader> reversedForeignIndexes;
   private final ImmutableMap<String, BooleanRule> rules;
@@ -80,6 +101,8 @@ public class TableWriter extends SeekableTableReader implements TableIO {
   private long actFileIndex;
   private final Set<Long> recordsToDelete = new LinkedHashSet<>();
   private final TreeMap<Long, byte[]> recordsToInsert = new TreeMap<>();
+  private final List<Object[]> insertedValues = new ArrayList<>();
+  private File vacuumFile;
 
   public TableWriter(
       MaterializedTable tableMeta,
@@ -90,6 +113,7 @@ public class TableWriter extends SeekableTableReader implements TableIO {
       Map<String, TableUniqueIndex> uniqueIndexes,
       Map<String, TableMultiIndex> multiIndexes,
       Map<String, MultiColumnTableMultiIndex> extraIndexes,
+      Map<String, RefAggregates> refAggregates,
       ImmutableMultimap<String, IndexReader> foreignIndexes,
       ImmutableMultimap<String, IndexReader> reversedForeignIndexes,
       ImmutableMap<String, BooleanRule> rules,
@@ -107,6 +131,7 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     this.uniqueIndexes = uniqueIndexes;
     this.multiIndexes = multiIndexes;
     this.extraIndexes = extraIndexes;
+    this.refAggregates = refAggregates;
     this.foreignIndexes = foreignIndexes;
     this.reversedForeignIndexes = reversedForeignIndexes;
     this.rules = rules;
@@ -175,7 +200,11 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     }
     byte[] data = Serializer.serialize(values, allColumns);
     recordsToInsert.put(fileIndex, data);
+    insertedValues.add(values);
     actFileIndex += data.length;
+    for (RefAggregates aggregates : refAggregates.values()) {
+      aggregates.insert(values, resources);
+    }
     for (Map.Entry<String, BooleanRule> rule : rules.entrySet()) {
       if (!rule.getValue().check(resources, fileIndex)) {
         throw new RuleException("Constraint check " + rule.getKey() + " failed.");
@@ -188,6 +217,35 @@ public class TableWriter extends SeekableTableReader implements TableIO {
   }
 
   public void commit() throws IOException {
+    long version = beginCommit();
+    try {
+      commitChanges();
+    } finally {
+      // Publishes even after a write error, the deletes already written stay on the disk.
+      publish(version);
+    }
+  }
+
+  /**
+   * Registers the deleted records of the commit and returns the version of the
+   * table the commit has to publish.
+   */
+  public long beginCommit() throws IOException {
+    return tableMeta.beginCommit(recordsToDelete, vacuumFile != null);
+  }
+
+  /**
+   * Makes the committed changes visible to the new snapshots.
+   */
+  public void publish(long version) {
+    tableMeta.publish(fileIndex0, version);
+  }
+
+  public void commitChanges() throws IOException {
+    if (vacuumFile != null) {
+      commitVacuum();
+      return;
+    }
     try {
       int delta = 0;
       if (recordsToInsert.size() > 1) {
@@ -204,9 +262,13 @@ public class TableWriter extends SeekableTableReader implements TableIO {
           delta += data.length;
         }
       }
+      long deletedBytes = 0L;
       for (Long pos : recordsToDelete) {
+        deletedBytes += recordLength(pos);
         writer.write(pos, new byte[] { 0 });
       }
+      tableMeta.stats().commit(activeColumns, insertedValues, recordsToDelete.size(), deletedBytes);
+      insertedValues.clear();
       recordsToInsert.clear();
       recordsToDelete.clear();
       fileIndex0 += delta;
@@ -237,12 +299,56 @@ public class TableWriter extends SeekableTableReader implements TableIO {
         index.invalidate();
       }
     }
+    for (RefAggregates aggregates : refAggregates.values()) {
+      aggregates.commit();
+    }
+  }
+
+  /**
+   * Commits the remapped indexes, then swaps the table file. The REDO record of
+   * the vacuum is already logged, so from here on an interrupted vacuum is
+   * completed by the recovery and the new file is kept even if the commit fails.
+   */
+  private void commitVacuum() throws IOException {
+    assert recordsToInsert.isEmpty() && recordsToDelete.isEmpty();
+    File newFile = vacuumFile;
+    vacuumFile = null;
+    for (TableUniqueIndex index : uniqueIndexes.values()) {
+      index.commit();
+      index.sync();
+    }
+    for (TableMultiIndex index : multiIndexes.values()) {
+      index.commit();
+      index.sync();
+    }
+    for (TableMultiIndex index : extraIndexes.values()) {
+      index.commit();
+      index.sync();
+    }
+    tableMeta.replaceFile(newFile);
+    fileIndex0 = tableMeta.fileReader().length();
+    actFileIndex = fileIndex0;
+  }
+
+  private int recordLength(long pos) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(4);
+    while (bb.hasRemaining()) {
+      if (writer.getChannel().read(bb, pos + 1 + bb.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    return bb.getInt(0) + 9;
   }
 
   public void rollback() {
     recordsToDelete.clear();
     recordsToInsert.clear();
+    insertedValues.clear();
     actFileIndex = fileIndex0;
+    if (vacuumFile != null) {
+      vacuumFile.delete();
+      vacuumFile = null;
+    }
     for (TableUniqueIndex index : uniqueIndexes.values()) {
       index.rollback();
     }
@@ -252,6 +358,9 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     for (TableMultiIndex index : extraIndexes.values()) {
       index.rollback();
     }
+    for (RefAggregates aggregates : refAggregates.values()) {
+      aggregates.rollback();
+    }
   }
 
   public void close() throws IOException {
@@ -286,6 +395,9 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     for (MultiColumnTableMultiIndex index : extraIndexes.values()) {
       index.delete(index.resolveKey(record.getValues(), resources), record.getFilePointer());
     }
+    for (RefAggregates aggregates : refAggregates.values()) {
+      aggregates.delete(record.getValues(), resources);
+    }
     if (checkReverseRuleDependencies) {
       RuleDependencyReader ruleDependencyReader = new RuleDependencyReader(resources, reverseRules);
       ruleDependencyReader.checkReferencingRules(record);
@@ -310,7 +422,7 @@ public class TableWriter extends SeekableTableReader implements TableIO {
   }
 
   public long delete(Resources resources, ColumnMeta whereColumn) throws IOException, RuleException {
-    RecordReader reader = recordReader();
+    RecordProvider reader = recordReader();
     try {
       return delete(reader, resources, whereColumn);
     } finally {
@@ -355,7 +467,7 @@ public class TableWriter extends SeekableTableReader implements TableIO {
 
   public long update(Resources resources, ImmutableMap<Integer, ColumnMeta> columnExprs, ColumnMeta whereColumn)
       throws IOException, RuleException {
-    RecordReader reader = recordReader();
+    RecordProvider reader = recordReader();
     try {
       ImmutableList<Object[]> valuess = deleteAndCollectUpdated(reader, resources, columnExprs, whereColumn);
       for (Object[] values : valuess) {
@@ -424,12 +536,11 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     return get(filePointer);
   }
 
-  protected RecordReader recordReader() throws IOException {
-    @SuppressWarnings("resource") // RecordReader closes SequenceInputStream.
-    InputStream rafReader = new SequenceInputStream(
-        new BufferedInputStream(new FileInputStream(fileName)),
-        new TreeMapInputStream(recordsToInsert));
-    return new RecordReader(allColumns, rafReader, recordsToDelete);
+  protected RecordProvider recordReader() throws IOException {
+    MappedDataFile file = new MappedDataFile(fileName);
+    RecordReader tail = new RecordReader(
+        allColumns, new TreeMapInputStream(recordsToInsert), recordsToDelete, file.length());
+    return new MappedRecordReader(allColumns, file, recordsToDelete, tail);
   }
 
   private MultiFilteredTableReader indexFilteredReader(Resources resources, ColumnMeta whereColumn,
@@ -443,45 +554,343 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     };
   }
 
+  /**
+   * Readers of the record aligned ranges of the table file, the last one
+   * followed by the uncommitted records. Only for scans which do not modify the
+   * table while reading it.
+   */
+  private ImmutableList<RecordProvider> rangeRecordReaders(Parallelism parallelism) throws IOException {
+    long[] points = TableReader.splitPoints(fileName, Long.MAX_VALUE, parallelism);
+    ImmutableList.Builder<RecordProvider> builder = ImmutableList.builder();
+    for (int i = 0; i < points.length - 1; i++) {
+      RecordProvider tail = null;
+      if (i == points.length - 2) {
+        tail = new RecordReader(
+            allColumns, new TreeMapInputStream(recordsToInsert), recordsToDelete, points[i + 1]);
+      }
+      builder.add(new MappedRecordReader(
+          allColumns, new MappedDataFile(fileName), recordsToDelete, tail, points[i], points[i + 1]));
+    }
+    return builder.build();
+  }
+
   @Override
   public IterableTableReader iterableReader(Resources resources) throws IOException {
-    RecordReader reader = recordReader();
-    return new IterableTableReader() {
+    return TableReader.iterable(recordReader());
+  }
 
-      @Override
-      public Object[] next() throws IOException {
-        return reader.read().getValues();
-      }
+  @Override
+  public void checkRule(Rule rule, Resources resources) throws IOException, RuleException {
+    if (!rule.getColumn().tableDependencies().getDeps().isEmpty()) {
+      // Referenced tables are read through the shared readers of the transaction.
+      super.checkRule(rule, resources);
+      return;
+    }
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (RecordProvider reader : rangeRecordReaders(resources.parallelism())) {
+      tasks.add(() -> {
+        checkRule(rule, TableReader.iterable(reader), resources);
+        return null;
+      });
+    }
+    resources.parallelism().invokeAll(tasks);
+  }
 
+  /**
+   * Reads and sorts the keys of the ranges of the table in parallel, each range
+   * within its share of the sort memory, then merges the sorted ranges and loads
+   * them into the index in key order, the file pointers of equal keys in file
+   * order.
+   */
+  public void buildIndex(String column, IndexWriter indexWriter, Resources resources)
+      throws IOException, RuleException {
+    int columnIndex = tableMeta.columnNames().asList().indexOf(column);
+    WorkMemory workMemory = resources.workMemory();
+    ImmutableList<DataType<?>> types = ImmutableList.of(tableMeta.columns().get(column).getType(), DataTypes.LongType);
+    Comparator<Object[]> comparator = new Comparator<Object[]>() {
+      @SuppressWarnings({ "unchecked", "rawtypes" })
       @Override
-      public void close() throws IOException {
-        reader.close();
+      public int compare(Object[] x, Object[] y) {
+        // The serialized keys of the indexes preserve the order of the values.
+        int result = ((Comparable) x[0]).compareTo(y[0]);
+        return result != 0 ? result : Long.compare((Long) x[1], (Long) y[1]);
       }
     };
-  }
-
-  public void buildIndex(String column, IndexWriter indexWriter) throws IOException, RuleException {
-    RecordReader reader = recordReader();
-    int columnIndex = tableMeta.columnNames().asList().indexOf(column);
-    Record record;
+    ImmutableList<RecordProvider> readers = rangeRecordReaders(resources.parallelism());
+    long memory = Math.max(1L, workMemory.getSortMemory() / Math.max(1, readers.size()));
+    List<ExternalSort> sorts = new ArrayList<>();
     try {
-      while ((record = reader.read()) != RecordReader.EMPTY && !cancelled) {
-        Object key = record.getValues()[columnIndex];
-        if (key != null) {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (RecordProvider reader : readers) {
+        ExternalSort sort = new ExternalSort(workMemory.getDir(), memory, types, comparator);
+        sorts.add(sort);
+        tasks.add(() -> {
+          Record record;
           try {
-            indexWriter.put(key, record.getFilePointer());
-          } catch (IndexException e) {
-            throw new RuleException(e);
+            while ((record = reader.read()) != RecordReader.EMPTY && !cancelled) {
+              Object key = record.getValues()[columnIndex];
+              if (key != null) {
+                sort.add(new Object[] { key, record.getFilePointer() });
+              }
+            }
+          } finally {
+            reader.close();
           }
+          sort.finish();
+          return null;
+        });
+      }
+      resources.parallelism().invokeAll(tasks);
+      ExternalSort.Merge merge = new ExternalSort.Merge(sorts, comparator);
+      IndexLoader loader = indexWriter.loader();
+      try {
+        Object[] values;
+        while ((values = merge.next()) != null) {
+          if (cancelled) {
+            return;
+          }
+          loader.add(values[0], (Long) values[1]);
         }
+        loader.finish();
+      } catch (IndexException e) {
+        throw new RuleException(e);
       }
     } finally {
-      reader.close();
+      for (ExternalSort sort : sorts) {
+        sort.close();
+      }
+    }
+  }
+
+  /**
+   * Copies the live records to a new file and remaps the file pointers of the
+   * moved records in all the indexes. The new file replaces the table file on
+   * commit. Returns the statistics of the table file before the compaction.
+   */
+  public TableStat vacuum(Resources resources) throws IOException, RuleException {
+    assert recordsToInsert.isEmpty() && recordsToDelete.isEmpty() && vacuumFile == null;
+    // Every vacuum writes a new file, so a leftover file is never mistaken for it.
+    File newFile = new File(fileName + "." + Long.toHexString(System.nanoTime()) + VACUUM_SUFFIX);
+    TableStat stat;
+    try (FileOutputStream fos = new FileOutputStream(newFile)) {
+      OutputStream out = new BufferedOutputStream(fos);
+      stat = remapLiveRecords(out, resources);
+      out.flush();
+      fos.getChannel().force(true);
+    } catch (IOException | RuleException e) {
+      newFile.delete();
+      throw e;
+    }
+    vacuumFile = newFile;
+    return stat;
+  }
+
+  /**
+   * Remaps the file pointers of the live records in the indexes to their
+   * position after the vacuum, optionally copying them to <code>out</code>.
+   * Remapping multiple times is idempotent since the records are processed in
+   * file order and a record never moves to a later position.
+   */
+  private TableStat remapLiveRecords(@Nullable OutputStream out, Resources resources)
+      throws IOException, RuleException {
+    long records = 0L;
+    long deletedRecords = 0L;
+    long deletedBytes = 0L;
+    MappedDataFile file = new MappedDataFile(fileName);
+    try {
+      long newPosition = 0L;
+      while (file.position() < file.length()) {
+        if (cancelled) {
+          throw new RuleException("Vacuum cancelled.");
+        }
+        long position = file.position();
+        byte desc = file.readByte();
+        int recordLength = file.readInt() + 9;
+        if (desc != 1) {
+          deletedRecords++;
+          deletedBytes += recordLength;
+          file.seek(position + recordLength);
+          continue;
+        }
+        byte[] record = new byte[recordLength];
+        file.seek(position);
+        file.readFully(record);
+        if (out != null) {
+          out.write(record);
+        }
+        if (newPosition != position) {
+          Object[] values = new RecordReader(allColumns, new ByteArrayInputStream(record)).read().getValues();
+          redoDelete(new Record(position, values), resources);
+          redoPut(new Record(newPosition, values), resources);
+        }
+        records++;
+        newPosition += recordLength;
+      }
+      return new TableStat(file.length(), records, deletedRecords, deletedBytes);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Completes a vacuum logged in the journal. If the new file still exists the
+   * swap did not happen, so the indexes are remapped again and the file is
+   * swapped on commit. Otherwise the vacuum is already complete.
+   */
+  private void redoVacuum(String vacuumFileName, Resources resources) throws IOException, RuleException {
+    File newFile = new File(new File(fileName).getParentFile(), vacuumFileName);
+    if (newFile.exists()) {
+      remapLiveRecords(null, resources);
+      vacuumFile = newFile;
+    }
+  }
+
+  public boolean hasChanges() {
+    return !recordsToInsert.isEmpty() || !recordsToDelete.isEmpty() || vacuumFile != null;
+  }
+
+  /**
+   * Serializes the pending inserted records and deleted file pointers so that
+   * the transaction can be redone from the journal after a crash.
+   */
+  public void writeRedo(DataOutput out) throws IOException {
+    out.writeUTF(tableMeta.fullName());
+    out.writeLong(fileIndex0);
+    out.writeInt((int) (actFileIndex - fileIndex0));
+    for (byte[] data : recordsToInsert.values()) {
+      out.write(data);
+    }
+    out.writeInt(recordsToDelete.size());
+    for (Long pos : recordsToDelete) {
+      out.writeLong(pos);
+    }
+    out.writeUTF(vacuumFile == null ? "" : vacuumFile.getName());
+  }
+
+  /**
+   * Reapplies the changes serialized by <code>writeRedo</code> to the table file
+   * and the indexes. The changes might have been fully or partially applied
+   * before the crash, so every step is idempotent. The index changes are
+   * persisted by the subsequent <code>commit</code>.
+   */
+  public void redo(DataInput in, Resources resources) throws IOException, RuleException {
+    assert !hasChanges();
+    for (RefAggregates aggregates : refAggregates.values()) {
+      aggregates.clear();
+    }
+    long insertIndex = in.readLong();
+    byte[] inserted = new byte[in.readInt()];
+    in.readFully(inserted);
+    long[] deleted = new long[in.readInt()];
+    for (int i = 0; i < deleted.length; i++) {
+      deleted[i] = in.readLong();
+    }
+    List<Object[]> redoneValues = new ArrayList<>();
+    if (inserted.length > 0) {
+      writer.write(insertIndex, inserted);
+      RecordReader recordReader = new RecordReader(
+          allColumns, new ByteArrayInputStream(inserted), ImmutableSet.of(), insertIndex);
+      Record record;
+      while ((record = recordReader.read()) != RecordReader.EMPTY) {
+        redoPut(record, resources);
+        redoneValues.add(record.getValues());
+      }
+    }
+    long deletedBytes = 0L;
+    for (long pos : deleted) {
+      deletedBytes += recordLength(pos);
+      redoDelete(readDeleted(pos), resources);
+      writer.write(pos, new byte[] { 0 });
+    }
+    tableMeta.stats().commit(activeColumns, redoneValues, deleted.length, deletedBytes);
+    fileIndex0 = tableMeta.fileReader().length();
+    actFileIndex = fileIndex0;
+    String vacuumFileName = in.readUTF();
+    if (!vacuumFileName.isEmpty()) {
+      redoVacuum(vacuumFileName, resources);
+    }
+  }
+
+  private Record readDeleted(long pos) throws IOException {
+    RandomAccessFile raf = tableMeta.raf();
+    raf.seek(pos + 1);
+    byte[] record = new byte[raf.readInt() + 9];
+    raf.seek(pos);
+    raf.readFully(record);
+    record[0] = 1;
+    return new RecordReader(allColumns, new ByteArrayInputStream(record), ImmutableSet.of(), pos).read();
+  }
+
+  private static boolean contains(long[] positions, long pos) {
+    for (long p : positions) {
+      if (p == pos) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void redoPut(Record record, Resources resources) throws IOException, RuleException {
+    long pos = record.getFilePointer();
+    Object[] values = record.getValues();
+    try {
+      for (int i = 0; i < activeColumns.size(); i++) {
+        String name = activeColumns.get(i).getName();
+        Object value = values[i];
+        if (value == null) {
+          continue;
+        }
+        if (uniqueIndexes.containsKey(name)) {
+          TableUniqueIndex index = uniqueIndexes.get(name);
+          long current = index.get0(value);
+          if (current != pos) {
+            if (current >= 0) {
+              index.delete(value);
+            }
+            index.put(value, pos);
+          }
+        }
+        if (multiIndexes.containsKey(name)) {
+          TableMultiIndex index = multiIndexes.get(name);
+          if (!contains(index.get(value), pos)) {
+            index.put(value, pos);
+          }
+        }
+      }
+      for (MultiColumnTableMultiIndex index : extraIndexes.values()) {
+        Object[] key = index.resolveKey(values, resources);
+        if (!contains(index.get(key), pos)) {
+          index.put(key, pos);
+        }
+      }
+    } catch (IndexException e) {
+      throw new RuleException(e);
+    }
+  }
+
+  private void redoDelete(Record record, Resources resources) throws IOException {
+    long pos = record.getFilePointer();
+    Object[] values = record.getValues();
+    for (int i = 0; i < activeColumns.size(); i++) {
+      String name = activeColumns.get(i).getName();
+      Object value = values[i];
+      if (value == null) {
+        continue;
+      }
+      if (uniqueIndexes.containsKey(name) && uniqueIndexes.get(name).get0(value) == pos) {
+        uniqueIndexes.get(name).delete(value);
+      }
+      if (multiIndexes.containsKey(name)) {
+        multiIndexes.get(name).delete(value, pos);
+      }
+    }
+    for (MultiColumnTableMultiIndex index : extraIndexes.values()) {
+      index.delete(index.resolveKey(values, resources), pos);
     }
   }
 
   public void checkForeignKey(ForeignKey foreignKey, Resources resources) throws RuleException, IOException {
-    RecordReader reader = recordReader();
+    RecordProvider reader = recordReader();
     IndexReader index = resources.getPrimaryKeyIndex(foreignKey.getRefTable().fullName());
     int columnIndex = tableMeta.columnNames().asList().indexOf(foreignKey.getColumn().getName());
     Record record;
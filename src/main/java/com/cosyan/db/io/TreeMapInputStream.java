@@ -28,7 +28,7 @@ public class TreeMapInputStream extends SeekableInputStream {
   public TreeMapInputStream(TreeMap<Long, byte[]> map) throws IOException {
     this.map = map;
     if (!map.isEmpty()) {
-      seek(map.firstKey());
+      seek(0L);
     }
   }
 
@@ -48,7 +48,7 @@ public class TreeMapInputStream extends SeekableInputStream {
     if (map.isEmpty()) {
       return 0;
     }
-    return map.lastKey() - map.firstKey() + map.firstEntry().getValue().length;
+    return map.lastKey() - map.firstKey() + map.lastEntry().getValue().length;
   }
 
   @Override
@@ -63,7 +63,7 @@ public class TreeMapInputStream extends SeekableInputStream {
       if (next == null) {
         return -1;
       }
-      seek(next);
+      seek(next - map.firstKey());
       return read();
     }
   }
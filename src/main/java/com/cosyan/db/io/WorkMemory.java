@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.File;
+
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+import lombok.Data;
+
+/**
+ * Memory budgets of the operators which spill to temporary files in
+ * <code>dir</code> above the budget.
+ */
+@Data
+public class WorkMemory {
+
+  // Object header, array header and reference per column.
+  private static final int RECORD_OVERHEAD = 32;
+  private static final int COLUMN_OVERHEAD = 8;
+
+  private final File dir;
+  private final long sortMemory;
+  private final long joinMemory;
+
+  /**
+   * Estimated heap size of a record.
+   */
+  public static long size(ImmutableList<DataType<?>> types, Object[] values) {
+    long size = RECORD_OVERHEAD;
+    for (int i = 0; i < types.size(); i++) {
+      size += COLUMN_OVERHEAD + Serializer.size(types.get(i), values[i]);
+    }
+    return size;
+  }
+}
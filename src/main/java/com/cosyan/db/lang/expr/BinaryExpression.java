@@ -16,8 +16,15 @@
 package com.cosyan.db.lang.expr;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
 
+import com.cosyan.db.io.RecordBatch;
 import com.cosyan.db.lang.sql.Tokens;
 import com.cosyan.db.lang.sql.Tokens.Loc;
 import com.cosyan.db.lang.sql.Tokens.Token;
@@ -25,10 +32,16 @@ import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.ColumnMeta;
 import com.cosyan.db.model.ColumnMeta.DerivedColumn;
+import com.cosyan.db.model.CompiledColumn;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.TableContext;
 import com.cosyan.db.model.TableMeta;
+import com.cosyan.db.model.Vectors;
+import com.cosyan.db.model.Vectors.BoolVector;
+import com.cosyan.db.model.Vectors.DoubleVector;
+import com.cosyan.db.model.Vectors.LongVector;
+import com.cosyan.db.model.Vectors.Vector;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 
@@ -93,7 +106,217 @@ public class BinaryExpression extends Expression {
       return deps;
     }
 
+    @Override
+    public Vector vector(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+      Vector l = leftColumn.vector(batch, resources, context);
+      Vector r = rightColumn.vector(batch, resources, context);
+      return vectorImpl(l, r, Vectors.nulls(l, r));
+    }
+
+    @Override
+    public MethodHandle handle() {
+      return CompiledColumn.binary(operator(), leftColumn, rightColumn);
+    }
+
     protected abstract Object getValueImpl(Object left, Object right);
+
+    /**
+     * The operator of the compiled expression.
+     */
+    protected MethodHandle operator() {
+      return GET_VALUE_IMPL.bindTo(this);
+    }
+
+    /**
+     * Evaluates the expression for the positions which are not
+     * <code>null</code>.
+     */
+    protected Vector vectorImpl(Vector left, Vector right, BitSet nulls) {
+      Object[] values = new Object[left.size()];
+      for (int i = nulls.nextClearBit(0); i < left.size(); i = nulls.nextClearBit(i + 1)) {
+        values[i] = getValueImpl(left.get(i), right.get(i));
+      }
+      return Vectors.of(type, values, left.size());
+    }
+  }
+
+  private static final MethodHandle GET_VALUE_IMPL;
+  private static final MethodHandle LONG_OPERATOR;
+  private static final MethodHandle DOUBLE_OPERATOR;
+  private static final MethodHandle LONG_COMPARATOR;
+  private static final MethodHandle DOUBLE_COMPARATOR;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      GET_VALUE_IMPL = lookup.findVirtual(BinaryColumn.class, "getValueImpl",
+          MethodType.methodType(Object.class, Object.class, Object.class));
+      LONG_OPERATOR = lookup.findVirtual(LongBinaryOperator.class, "applyAsLong",
+          MethodType.methodType(long.class, long.class, long.class));
+      DOUBLE_OPERATOR = lookup.findVirtual(DoubleBinaryOperator.class, "applyAsDouble",
+          MethodType.methodType(double.class, double.class, double.class));
+      LONG_COMPARATOR = lookup.findVirtual(LongComparator.class, "compare",
+          MethodType.methodType(boolean.class, long.class, long.class));
+      DOUBLE_COMPARATOR = lookup.findVirtual(DoubleComparator.class, "compare",
+          MethodType.methodType(boolean.class, double.class, double.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private interface LongComparator {
+    boolean compare(long left, long right);
+  }
+
+  private interface DoubleComparator {
+    boolean compare(double left, double right);
+  }
+
+  private static boolean isNumber(DataType<?> type) {
+    return type.isLong() || type.isDouble();
+  }
+
+  protected class LongArithmeticColumn extends BinaryColumn {
+    private final LongBinaryOperator operator;
+
+    public LongArithmeticColumn(ColumnMeta leftColumn, ColumnMeta rightColumn, LongBinaryOperator operator) {
+      super(DataTypes.LongType, leftColumn, rightColumn);
+      this.operator = operator;
+    }
+
+    @Override
+    protected Object getValueImpl(Object l, Object r) {
+      return operator.applyAsLong((Long) l, (Long) r);
+    }
+
+    @Override
+    protected MethodHandle operator() {
+      return LONG_OPERATOR.bindTo(operator);
+    }
+
+    @Override
+    protected Vector vectorImpl(Vector left, Vector right, BitSet nulls) {
+      LongVector l = (LongVector) left;
+      LongVector r = (LongVector) right;
+      long[] values = new long[l.size()];
+      for (int i = nulls.nextClearBit(0); i < l.size(); i = nulls.nextClearBit(i + 1)) {
+        values[i] = operator.applyAsLong(l.getLong(i), r.getLong(i));
+      }
+      return new LongVector(values, l.size(), nulls);
+    }
+  }
+
+  protected class DoubleArithmeticColumn extends BinaryColumn {
+    private final DoubleBinaryOperator operator;
+
+    public DoubleArithmeticColumn(ColumnMeta leftColumn, ColumnMeta rightColumn, DoubleBinaryOperator operator) {
+      super(DataTypes.DoubleType, leftColumn, rightColumn);
+      this.operator = operator;
+    }
+
+    @Override
+    protected Object getValueImpl(Object l, Object r) {
+      return operator.applyAsDouble(((Number) l).doubleValue(), ((Number) r).doubleValue());
+    }
+
+    @Override
+    protected MethodHandle operator() {
+      return DOUBLE_OPERATOR.bindTo(operator);
+    }
+
+    @Override
+    protected Vector vectorImpl(Vector left, Vector right, BitSet nulls) {
+      DoubleVector l = Vectors.toDouble(left);
+      DoubleVector r = Vectors.toDouble(right);
+      double[] values = new double[l.size()];
+      for (int i = nulls.nextClearBit(0); i < l.size(); i = nulls.nextClearBit(i + 1)) {
+        values[i] = operator.applyAsDouble(l.getDouble(i), r.getDouble(i));
+      }
+      return new DoubleVector(values, l.size(), nulls);
+    }
+  }
+
+  protected class LongComparisonColumn extends BinaryColumn {
+    private final LongComparator comparator;
+
+    public LongComparisonColumn(ColumnMeta leftColumn, ColumnMeta rightColumn, LongComparator comparator) {
+      super(DataTypes.BoolType, leftColumn, rightColumn);
+      this.comparator = comparator;
+    }
+
+    @Override
+    protected Object getValueImpl(Object l, Object r) {
+      return comparator.compare((Long) l, (Long) r);
+    }
+
+    @Override
+    protected MethodHandle operator() {
+      return LONG_COMPARATOR.bindTo(comparator);
+    }
+
+    @Override
+    protected Vector vectorImpl(Vector left, Vector right, BitSet nulls) {
+      LongVector l = (LongVector) left;
+      LongVector r = (LongVector) right;
+      BitSet values = new BitSet(l.size());
+      for (int i = nulls.nextClearBit(0); i < l.size(); i = nulls.nextClearBit(i + 1)) {
+        if (comparator.compare(l.getLong(i), r.getLong(i))) {
+          values.set(i);
+        }
+      }
+      return new BoolVector(values, l.size(), nulls);
+    }
+  }
+
+  protected class DoubleComparisonColumn extends BinaryColumn {
+    private final DoubleComparator comparator;
+
+    public DoubleComparisonColumn(ColumnMeta leftColumn, ColumnMeta rightColumn, DoubleComparator comparator) {
+      super(DataTypes.BoolType, leftColumn, rightColumn);
+      this.comparator = comparator;
+    }
+
+    @Override
+    protected Object getValueImpl(Object l, Object r) {
+      return comparator.compare(((Number) l).doubleValue(), ((Number) r).doubleValue());
+    }
+
+    @Override
+    protected MethodHandle operator() {
+      return DOUBLE_COMPARATOR.bindTo(comparator);
+    }
+
+    @Override
+    protected Vector vectorImpl(Vector left, Vector right, BitSet nulls) {
+      DoubleVector l = Vectors.toDouble(left);
+      DoubleVector r = Vectors.toDouble(right);
+      BitSet values = new BitSet(l.size());
+      for (int i = nulls.nextClearBit(0); i < l.size(); i = nulls.nextClearBit(i + 1)) {
+        if (comparator.compare(l.getDouble(i), r.getDouble(i))) {
+          values.set(i);
+        }
+      }
+      return new BoolVector(values, l.size(), nulls);
+    }
+  }
+
+  /**
+   * Logical operators, evaluated on whole bitmaps for batches.
+   */
+  protected abstract class LogicalColumn extends BinaryColumn {
+
+    public LogicalColumn(ColumnMeta leftColumn, ColumnMeta rightColumn) {
+      super(DataTypes.BoolType, leftColumn, rightColumn);
+    }
+
+    @Override
+    protected Vector vectorImpl(Vector left, Vector right, BitSet nulls) {
+      BitSet values = (BitSet) ((BoolVector) left).values().clone();
+      bitmapImpl(values, ((BoolVector) right).values(), left.size());
+      return new BoolVector(values, left.size(), nulls);
+    }
+
+    protected abstract void bitmapImpl(BitSet left, BitSet right, int size);
   }
 
   @Override
@@ -104,42 +327,63 @@ public class BinaryExpression extends Expression {
     if (token.is(Tokens.AND)) {
       assertType(DataTypes.BoolType, leftColumn.getType(), token.getLoc());
       assertType(DataTypes.BoolType, rightColumn.getType(), token.getLoc());
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
+      return new LogicalColumn(leftColumn, rightColumn) {
 
         @Override
         public Object getValueImpl(Object l, Object r) {
           return (Boolean) l && (Boolean) r;
         }
+
+        @Override
+        protected void bitmapImpl(BitSet left, BitSet right, int size) {
+          left.and(right);
+        }
       };
     } else if (token.is(Tokens.OR)) {
       assertType(DataTypes.BoolType, leftColumn.getType(), token.getLoc());
       assertType(DataTypes.BoolType, rightColumn.getType(), token.getLoc());
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
+      return new LogicalColumn(leftColumn, rightColumn) {
 
         @Override
         public Object getValueImpl(Object l, Object r) {
           return (Boolean) l || (Boolean) r;
         }
+
+        @Override
+        protected void bitmapImpl(BitSet left, BitSet right, int size) {
+          left.or(right);
+        }
       };
     } else if (token.is(Tokens.XOR)) {
       assertType(DataTypes.BoolType, leftColumn.getType(), token.getLoc());
       assertType(DataTypes.BoolType, rightColumn.getType(), token.getLoc());
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
+      return new LogicalColumn(leftColumn, rightColumn) {
 
         @Override
         public Object getValueImpl(Object l, Object r) {
           return (Boolean) l ^ (Boolean) r;
         }
+
+        @Override
+        protected void bitmapImpl(BitSet left, BitSet right, int size) {
+          left.xor(right);
+        }
       };
     } else if (token.is(Tokens.IMPL)) {
       assertType(DataTypes.BoolType, leftColumn.getType(), token.getLoc());
       assertType(DataTypes.BoolType, rightColumn.getType(), token.getLoc());
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
+      return new LogicalColumn(leftColumn, rightColumn) {
 
         @Override
         public Object getValueImpl(Object l, Object r) {
           return !(Boolean) l || (Boolean) r;
         }
+
+        @Override
+        protected void bitmapImpl(BitSet left, BitSet right, int size) {
+          left.flip(0, size);
+          left.or(right);
+        }
       };
     } else if (token.is(Tokens.ASTERISK)) {
       return asteriskExpression(leftColumn, rightColumn);
@@ -168,33 +412,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn asteriskExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.LongType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l * (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l * (Double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l * (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l * (Double) r;
-        }
-      };
+      return new LongArithmeticColumn(leftColumn, rightColumn, (l, r) -> l * r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleArithmeticColumn(leftColumn, rightColumn, (l, r) -> l * r);
     } else {
       throw new ModelException(String.format("Unsupported binary expression '%s' for types '%s' and '%s'.",
           token.getString(), leftColumn.getType(), rightColumn.getType()), token);
@@ -203,33 +423,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn plusExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.LongType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l + (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l + (Double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l + (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l + (Double) r;
-        }
-      };
+      return new LongArithmeticColumn(leftColumn, rightColumn, (l, r) -> l + r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleArithmeticColumn(leftColumn, rightColumn, (l, r) -> l + r);
     } else if (leftColumn.getType().isString() && rightColumn.getType().isString()) {
       return new BinaryColumn(DataTypes.StringType, leftColumn, rightColumn) {
         @Override
@@ -245,33 +441,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn minusExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.LongType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l - (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l - (Double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l - (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l - (Double) r;
-        }
-      };
+      return new LongArithmeticColumn(leftColumn, rightColumn, (l, r) -> l - r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleArithmeticColumn(leftColumn, rightColumn, (l, r) -> l - r);
     } else if (leftColumn.getType().isDate() && rightColumn.getType().isDate()) {
       return new BinaryColumn(DataTypes.LongType, leftColumn, rightColumn) {
         @Override
@@ -287,33 +459,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn divExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.LongType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l / (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l / (Double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l / (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l / (Double) r;
-        }
-      };
+      return new LongArithmeticColumn(leftColumn, rightColumn, (l, r) -> l / r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleArithmeticColumn(leftColumn, rightColumn, (l, r) -> l / r);
     } else {
       throw new ModelException(String.format("Unsupported binary expression '%s' for types '%s' and '%s'.",
           token.getString(), leftColumn.getType(), rightColumn.getType()), token);
@@ -322,33 +470,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn modExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.LongType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l % (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l % (Double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Double) l % (Long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.DoubleType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (Long) l % (Double) r;
-        }
-      };
+      return new LongArithmeticColumn(leftColumn, rightColumn, (l, r) -> l % r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleArithmeticColumn(leftColumn, rightColumn, (l, r) -> l % r);
     } else {
       throw new ModelException(String.format("Unsupported binary expression '%s' for types '%s' and '%s'.",
           token.getString(), leftColumn.getType(), rightColumn.getType()), token);
@@ -357,33 +481,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn eqExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l == (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l == (double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l == (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l == (double) r;
-        }
-      };
+      return new LongComparisonColumn(leftColumn, rightColumn, (l, r) -> l == r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleComparisonColumn(leftColumn, rightColumn, (l, r) -> l == r);
     } else if (leftColumn.getType().isString() && rightColumn.getType().isString()) {
       return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
         @Override
@@ -406,33 +506,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn lessExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l < (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l < (double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l < (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l < (double) r;
-        }
-      };
+      return new LongComparisonColumn(leftColumn, rightColumn, (l, r) -> l < r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleComparisonColumn(leftColumn, rightColumn, (l, r) -> l < r);
     } else if (leftColumn.getType().isString() && rightColumn.getType().isString()) {
       return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
         @Override
@@ -455,33 +531,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn greaterExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l > (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l > (double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l > (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l > (double) r;
-        }
-      };
+      return new LongComparisonColumn(leftColumn, rightColumn, (l, r) -> l > r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleComparisonColumn(leftColumn, rightColumn, (l, r) -> l > r);
     } else if (leftColumn.getType().isString() && rightColumn.getType().isString()) {
       return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
         @Override
@@ -504,33 +556,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn leqExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l <= (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l <= (double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l <= (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l <= (double) r;
-        }
-      };
+      return new LongComparisonColumn(leftColumn, rightColumn, (l, r) -> l <= r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleComparisonColumn(leftColumn, rightColumn, (l, r) -> l <= r);
     } else if (leftColumn.getType().isString() && rightColumn.getType().isString()) {
       return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
         @Override
@@ -553,33 +581,9 @@ public class BinaryExpression extends Expression {
 
   private DerivedColumn geqExpression(ColumnMeta leftColumn, ColumnMeta rightColumn) throws ModelException {
     if (leftColumn.getType().isLong() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l >= (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l >= (double) r;
-        }
-      };
-    } else if (leftColumn.getType().isDouble() && rightColumn.getType().isLong()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (double) l >= (long) r;
-        }
-      };
-    } else if (leftColumn.getType().isLong() && rightColumn.getType().isDouble()) {
-      return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
-        @Override
-        public Object getValueImpl(Object l, Object r) {
-          return (long) l >= (double) r;
-        }
-      };
+      return new LongComparisonColumn(leftColumn, rightColumn, (l, r) -> l >= r);
+    } else if (isNumber(leftColumn.getType()) && isNumber(rightColumn.getType())) {
+      return new DoubleComparisonColumn(leftColumn, rightColumn, (l, r) -> l >= r);
     } else if (leftColumn.getType().isString() && rightColumn.getType().isString()) {
       return new BinaryColumn(DataTypes.BoolType, leftColumn, rightColumn) {
         @Override
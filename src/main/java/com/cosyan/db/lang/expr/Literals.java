@@ -16,12 +16,14 @@
 package com.cosyan.db.lang.expr;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
 import java.util.Date;
 
 import com.cosyan.db.lang.sql.Tokens.Loc;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.ColumnMeta.DerivedColumn;
+import com.cosyan.db.model.CompiledColumn;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.DateFunctions;
@@ -29,6 +31,8 @@ import com.cosyan.db.model.TableContext;
 import com.cosyan.db.model.TableMeta;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -59,6 +63,11 @@ public class Literals {
       return literal.getValue();
     }
 
+    @Override
+    public MethodHandle handle() {
+      return CompiledColumn.constant(literal.getValue());
+    }
+
     @Override
     public String print(Object[] values, Resources resources, TableContext context) throws IOException {
       return literal.print();
@@ -240,4 +249,100 @@ public class Literals {
       return loc;
     }
   }
+
+  /**
+   * The values of the <code>?</code> placeholders of a prepared statement.
+   * The values are bound before every execution of the statement.
+   */
+  public static class Parameters {
+    private int size;
+    private Object[] values;
+
+    public int add() {
+      return size++;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean isBound() {
+      return values != null;
+    }
+
+    public void bind(Object[] values) {
+      Preconditions.checkArgument(values.length == size);
+      this.values = values.clone();
+    }
+
+    public Object get(int index) {
+      return values[index];
+    }
+
+    /**
+     * The types of the bound values, the statement has to be compiled again if
+     * they change.
+     */
+    public ImmutableList<DataType<?>> types() {
+      ImmutableList.Builder<DataType<?>> builder = ImmutableList.builder();
+      for (int i = 0; i < size; i++) {
+        builder.add(ParamLiteral.type(values[i]));
+      }
+      return builder.build();
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class ParamLiteral extends Expression implements Literal {
+    private final Parameters parameters;
+    private final int index;
+    private final Loc loc;
+
+    @Override
+    public DerivedColumn compile(TableMeta sourceTable) throws ModelException {
+      if (!parameters.isBound()) {
+        throw new ModelException("Parameters can only be used in prepared statements.", loc);
+      }
+      return new LiteralColumn(this);
+    }
+
+    @Override
+    public Object getValue() {
+      return parameters.get(index);
+    }
+
+    @Override
+    public String print() {
+      return "?";
+    }
+
+    @Override
+    public DataType<?> getType() {
+      return type(getValue());
+    }
+
+    @Override
+    public Loc loc() {
+      return loc;
+    }
+
+    public static DataType<?> type(Object value) {
+      if (value == null) {
+        return DataTypes.NullType;
+      } else if (value instanceof String) {
+        return DataTypes.StringType;
+      } else if (value instanceof Long) {
+        return DataTypes.LongType;
+      } else if (value instanceof Double) {
+        return DataTypes.DoubleType;
+      } else if (value instanceof Boolean) {
+        return DataTypes.BoolType;
+      } else if (value instanceof Date) {
+        return DataTypes.dateType();
+      } else {
+        throw new IllegalArgumentException(String.format("Invalid parameter type '%s'.", value.getClass()));
+      }
+    }
+  }
 }
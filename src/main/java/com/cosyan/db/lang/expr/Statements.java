@@ -19,6 +19,7 @@ import java.io.IOException;
 
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.ResultSink;
 import com.cosyan.db.meta.Grants.GrantException;
 import com.cosyan.db.meta.MetaReader;
 import com.cosyan.db.meta.MetaRepo.ModelException;
@@ -34,6 +35,13 @@ public class Statements {
 
     public abstract Result execute(Resources resources) throws RuleException, IOException;
 
+    /**
+     * Executes the statement writing the rows of queries to the sink.
+     */
+    public Result execute(Resources resources, ResultSink sink) throws RuleException, IOException {
+      return execute(resources);
+    }
+
     public abstract void cancel();
   }
 
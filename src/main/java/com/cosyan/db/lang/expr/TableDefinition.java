@@ -60,14 +60,15 @@ public class TableDefinition {
       return name + " [" + expr.print() + "]";
     }
 
-    public BooleanRule compile(SeekableTableMeta table) throws ModelException {
+    public BooleanRule compile(SeekableTableMeta table, boolean compiled) throws ModelException {
       ColumnMeta column = expr.compileColumn(table);
       if (column.getType() != DataTypes.BoolType) {
         throw new ModelException(
             String.format("Constraint check expression has to return a 'boolean': '%s'.", expr.print()),
             getName());
       }
-      return new BooleanRule(name.getString(), table, column, expr, nullIsTrue, column.tableDependencies());
+      return new BooleanRule(
+          name.getString(), table, column, expr, nullIsTrue, column.tableDependencies(), compiled);
     }
 
     public BooleanViewRule compile(View view) throws ModelException {
@@ -74,11 +74,13 @@ public class AlterStatementColumns {
     private final TableWithOwnerDefinition table;
     private final Ident column;
 
+    private TableWithOwner tableWithOwner;
     private BasicColumn basicColumn;
 
     @Override
     public MetaResources executeMeta(MetaWriter metaRepo, AuthToken authToken) throws ModelException, GrantException {
-      MaterializedTable tableMeta = metaRepo.table(table.resolve(authToken), authToken);
+      tableWithOwner = table.resolve(authToken);
+      MaterializedTable tableMeta = metaRepo.table(tableWithOwner, authToken);
       basicColumn = tableMeta.column(column);
       tableMeta.checkDeleteColumn(column);
       return MetaResources.tableMeta(tableMeta);
@@ -86,7 +88,8 @@ public class AlterStatementColumns {
 
     @Override
     public Result executeData(MetaWriter metaRepo, Resources resources) throws RuleException, IOException {
-      basicColumn.setDeleted(true);
+      MaterializedTable tableMeta = (MaterializedTable) resources.meta(tableWithOwner.resourceId());
+      tableMeta.deleteColumn(basicColumn);
       return Result.META_OK;
     }
 
@@ -76,7 +76,7 @@ public class AlterStatementConstraints {
       writer = resources.writer(tableWithOwner.resourceId());
       writer.checkForeignKey(foreignKey, resources);
       String colName = foreignKey.getColumn().getName();
-      writer.buildIndex(colName, indexWriter);
+      writer.buildIndex(colName, indexWriter, resources);
       tableMeta.addForeignKey(foreignKey);
       metaRepo.syncMeta(tableMeta);
       return Result.META_OK;
@@ -110,13 +110,12 @@ public class CSVStatements {
             break;
           }
           if ((lines - 1) % commitAfterNRecords == 0) {
-            writer.commit();
+            resources.intermediateCommit();
           }
         }
       } finally {
         csvParser.close();
       }
-      tableMeta.insert(lines);
       return new StatementResult(lines);
     }
 
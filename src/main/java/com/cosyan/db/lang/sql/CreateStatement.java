@@ -129,6 +129,8 @@ public class CreateStatement {
 
       MaterializedTable tableMeta = new MaterializedTable(
           metaRepo.config(),
+          metaRepo.pageCache(),
+          metaRepo.nodeCache(),
           name.getString(),
           authToken.username(),
           columns.values(),
@@ -208,7 +210,7 @@ public class CreateStatement {
     @Override
     public Result executeData(MetaWriter metaRepo, Resources resources) throws RuleException, IOException {
       writer = resources.writer(tableWithOwner.resourceId());
-      writer.buildIndex(tableColumn.getColumn().getString(), indexWriter);
+      writer.buildIndex(tableColumn.getColumn().getString(), indexWriter, resources);
       return Result.META_OK;
     }
 
@@ -71,7 +71,6 @@ public class DeleteStatement {
       } else {
         deletedLines = writer.deleteWithIndex(resources, whereColumn, clause);
       }
-      tableMeta.tableMeta().delete(deletedLines);
       return new StatementResult(deletedLines);
     }
 
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cosyan.db.auth.AuthToken;
+import com.cosyan.db.index.KeyRange;
+import com.cosyan.db.lang.expr.Statements.Statement;
+import com.cosyan.db.lang.sql.SelectStatement.Select;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.logic.CostModel;
+import com.cosyan.db.meta.MetaReader;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.model.AggrTables.GlobalAggrTableMeta;
+import com.cosyan.db.model.AggrTables.KeyValueAggrTableMeta;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.cosyan.db.model.DerivedTables.AliasedTableMeta;
+import com.cosyan.db.model.DerivedTables.DerivedTableMeta;
+import com.cosyan.db.model.DerivedTables.DistinctTableMeta;
+import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.IndexFilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.IndexRangeTableMeta;
+import com.cosyan.db.model.DerivedTables.LimitedTableMeta;
+import com.cosyan.db.model.DerivedTables.SortedTableMeta;
+import com.cosyan.db.model.JoinTables.JoinTableMeta;
+import com.cosyan.db.model.SeekableTableMeta;
+import com.cosyan.db.model.TableMeta;
+import com.cosyan.db.transaction.MetaResources;
+import com.cosyan.db.transaction.Resources;
+import com.google.common.collect.ImmutableList;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Describes how a select statement would be executed: one line per operator
+ * with the estimated number of records and the estimated cumulative cost.
+ * The tables are not read.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ExplainStatement extends Statement {
+
+  private final Select select;
+
+  private ImmutableList<String> plan;
+
+  @Override
+  public MetaResources compile(MetaReader metaRepo, AuthToken authToken) throws ModelException {
+    List<String> lines = new ArrayList<>();
+    explain(select.compileTable(metaRepo, authToken.username()), 0, lines);
+    plan = ImmutableList.copyOf(lines);
+    return MetaResources.empty();
+  }
+
+  @Override
+  public Result execute(Resources resources) throws RuleException, IOException {
+    List<Object[]> valuess = new ArrayList<>();
+    for (String line : plan) {
+      valuess.add(new Object[] { line });
+    }
+    return new QueryResult(ImmutableList.of("plan"), ImmutableList.<DataType<?>>of(DataTypes.StringType), valuess);
+  }
+
+  @Override
+  public void cancel() {
+  }
+
+  /**
+   * Adds the description of the table and its sources to the lines, returns
+   * the estimated cost of reading the table or -1 if unknown.
+   */
+  private static double explain(TableMeta tableMeta, int depth, List<String> lines) throws ModelException {
+    long rows = CostModel.rows(tableMeta);
+    int index = lines.size();
+    String operator;
+    double cost;
+    if (tableMeta instanceof SeekableTableMeta) {
+      operator = "full scan " + ((SeekableTableMeta) tableMeta).fullName();
+      cost = rows < 0 ? -1.0 : CostModel.scanCost(rows);
+      lines.add(null);
+    } else if (tableMeta instanceof IndexFilteredTableMeta) {
+      IndexFilteredTableMeta filtered = (IndexFilteredTableMeta) tableMeta;
+      SeekableTableMeta source = filtered.getSourceTable();
+      operator = String.format("index lookup %s.%s = %s", source.fullName(),
+          filtered.getClause().getIdent().getString(), filtered.getClause().getValue());
+      cost = CostModel.indexCost(CostModel.rows(source), CostModel.selectivity(source, filtered.getClause()));
+      lines.add(null);
+    } else if (tableMeta instanceof IndexRangeTableMeta) {
+      IndexRangeTableMeta filtered = (IndexRangeTableMeta) tableMeta;
+      SeekableTableMeta source = filtered.getSourceTable();
+      operator = String.format("index range scan %s.%s %s", source.fullName(),
+          filtered.getClause().getIdent().getString(), format(filtered.getClause().getRange()));
+      cost = CostModel.indexCost(CostModel.rows(source), CostModel.selectivity(source, filtered.getClause()));
+      lines.add(null);
+    } else if (tableMeta instanceof FilteredTableMeta) {
+      operator = "filter";
+      lines.add(null);
+      cost = explain(((FilteredTableMeta) tableMeta).getSourceTable(), depth + 1, lines);
+    } else if (tableMeta instanceof AliasedTableMeta) {
+      return explain(((AliasedTableMeta) tableMeta).getSourceTable(), depth, lines);
+    } else if (tableMeta instanceof DerivedTableMeta) {
+      operator = "project";
+      lines.add(null);
+      cost = explain(((DerivedTableMeta) tableMeta).getSourceTable(), depth + 1, lines);
+    } else if (tableMeta instanceof SortedTableMeta) {
+      SortedTableMeta sorted = (SortedTableMeta) tableMeta;
+      operator = sorted.getLimit().isPresent() ? "top " + sorted.getLimit().get() + " sort" : "sort";
+      lines.add(null);
+      cost = add(explain(sorted.getSourceTable(), depth + 1, lines),
+          rows < 0 ? -1.0 : rows * Math.log(Math.max(rows, 2)) / Math.log(2));
+    } else if (tableMeta instanceof DistinctTableMeta) {
+      operator = "distinct";
+      lines.add(null);
+      cost = explain(((DistinctTableMeta) tableMeta).getSourceTable(), depth + 1, lines);
+    } else if (tableMeta instanceof LimitedTableMeta) {
+      LimitedTableMeta limited = (LimitedTableMeta) tableMeta;
+      operator = "limit " + limited.getLimit();
+      lines.add(null);
+      cost = explain(limited.getSourceTable(), depth + 1, lines);
+    } else if (tableMeta instanceof KeyValueAggrTableMeta) {
+      operator = "hash aggregate";
+      lines.add(null);
+      cost = explain(((KeyValueAggrTableMeta) tableMeta).sourceTable().getSourceTable(), depth + 1, lines);
+    } else if (tableMeta instanceof GlobalAggrTableMeta) {
+      operator = "aggregate";
+      lines.add(null);
+      cost = explain(((GlobalAggrTableMeta) tableMeta).sourceTable().getSourceTable(), depth + 1, lines);
+    } else if (tableMeta instanceof JoinTableMeta) {
+      JoinTableMeta join = (JoinTableMeta) tableMeta;
+      lines.add(null);
+      if (join.lookupTable() != null) {
+        operator = String.format("index nested loop join %s lookup %s.%s",
+            join.getJoinType().name().toLowerCase(), join.lookupTable().fullName(), join.getIndexColumn().getName());
+        cost = add(explain(join.getMainTable(), depth + 1, lines), join.getIndexJoinCost());
+      } else {
+        operator = String.format("hash join %s build %s",
+            join.getJoinType().name().toLowerCase(), join.isMainTableFirst() ? "right" : "left");
+        cost = add(explain(join.getLeftTable(), depth + 1, lines), explain(join.getRightTable(), depth + 1, lines));
+      }
+    } else {
+      operator = tableMeta.getClass().getSimpleName();
+      cost = -1.0;
+      lines.add(null);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      sb.append("  ");
+    }
+    sb.append(operator)
+        .append(" (rows=").append(rows < 0 ? "?" : String.valueOf(rows))
+        .append(", cost=").append(cost < 0 ? "?" : String.format("%.1f", cost))
+        .append(")");
+    lines.set(index, sb.toString());
+    return cost;
+  }
+
+  private static double add(double cost1, double cost2) {
+    return cost1 < 0 || cost2 < 0 ? -1.0 : cost1 + cost2;
+  }
+
+  private static String format(KeyRange range) {
+    return (range.isFromInclusive() ? "[" : "(")
+        + (range.getFrom() == null ? "" : range.getFrom()) + ", "
+        + (range.getTo() == null ? "" : range.getTo())
+        + (range.isToInclusive() ? "]" : ")")
+        + (range.isDescending() ? " desc" : "");
+  }
+}
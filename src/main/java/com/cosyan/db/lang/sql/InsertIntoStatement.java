@@ -115,7 +115,6 @@ public class InsertIntoStatement {
         }
         writer.insert(resources, fullValues, /* checkReferencingRules= */true);
       }
-      tableMeta.insert(valuess.size());
       return new InsertIntoResult(valuess.size(), newIDs);
     }
 
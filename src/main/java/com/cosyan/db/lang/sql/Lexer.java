@@ -17,11 +17,13 @@ package com.cosyan.db.lang.sql;
 
 import java.util.ArrayList;
 
+import com.cosyan.db.lang.expr.Literals.Parameters;
 import com.cosyan.db.lang.sql.Tokens.BooleanToken;
 import com.cosyan.db.lang.sql.Tokens.FloatToken;
 import com.cosyan.db.lang.sql.Tokens.IdentToken;
 import com.cosyan.db.lang.sql.Tokens.IntToken;
 import com.cosyan.db.lang.sql.Tokens.Loc;
+import com.cosyan.db.lang.sql.Tokens.ParamToken;
 import com.cosyan.db.lang.sql.Tokens.StringToken;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.session.ILexer;
@@ -41,19 +43,23 @@ public class Lexer implements ILexer {
   private static final int STATE_IDENT = 5;
 
   public PeekingIterator<Token> tokenize(String sql) throws ParserException {
-    return Iterators.peekingIterator(tokens(sql, /* fullSQL= */true).iterator());
+    return tokenize(sql, new Parameters());
+  }
+
+  public PeekingIterator<Token> tokenize(String sql, Parameters parameters) throws ParserException {
+    return Iterators.peekingIterator(tokens(sql, /* fullSQL= */true, parameters).iterator());
   }
 
   public PeekingIterator<Token> tokenizeExpression(String sql) throws ParserException {
-    return Iterators.peekingIterator(tokens(sql, /* fullSQL= */false).iterator());
+    return Iterators.peekingIterator(tokens(sql, /* fullSQL= */false, new Parameters()).iterator());
   }
 
   @VisibleForTesting
   ImmutableList<Token> tokens(String sql) throws ParserException {
-    return tokens(sql, /* fullSQL= */true);
+    return tokens(sql, /* fullSQL= */true, new Parameters());
   }
 
-  private ImmutableList<Token> tokens(String sql, boolean fullSQL) throws ParserException {
+  private ImmutableList<Token> tokens(String sql, boolean fullSQL, Parameters parameters) throws ParserException {
     if (sql == null || sql.isEmpty()) {
       throw new ParserException("Query must not be empty.", new Loc(0, 0));
     }
@@ -133,6 +139,9 @@ public class Lexer implements ILexer {
             builder.add(new Token(String.valueOf(c), new Loc(literalStartIndex, i)));
           }
           literalStartIndex = i;
+        } else if (c == Tokens.QUESTION_MARK) {
+          builder.add(new ParamToken(parameters, parameters.add(), new Loc(i, i + 1)));
+          literalStartIndex = i;
         } else if (c == Tokens.SINGLE_QUOTE) {
           state = STATE_IN_SINGLE_QUOTE;
           literalStartIndex = i;
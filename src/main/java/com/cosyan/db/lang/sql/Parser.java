@@ -31,6 +31,7 @@ import com.cosyan.db.lang.expr.Literals.DoubleLiteral;
 import com.cosyan.db.lang.expr.Literals.Literal;
 import com.cosyan.db.lang.expr.Literals.LongLiteral;
 import com.cosyan.db.lang.expr.Literals.NullLiteral;
+import com.cosyan.db.lang.expr.Literals.ParamLiteral;
 import com.cosyan.db.lang.expr.Literals.StringLiteral;
 import com.cosyan.db.lang.expr.Statements.MetaStatement;
 import com.cosyan.db.lang.expr.Statements.Statement;
@@ -71,10 +72,12 @@ import com.cosyan.db.lang.sql.SelectStatement.Table;
 import com.cosyan.db.lang.sql.SelectStatement.TableExpr;
 import com.cosyan.db.lang.sql.SelectStatement.TableRef;
 import com.cosyan.db.lang.sql.SelectStatement.TableRefChain;
+import com.cosyan.db.lang.sql.Tokens.ParamToken;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lang.sql.UpdateStatement.SetExpression;
 import com.cosyan.db.lang.sql.UpdateStatement.Update;
 import com.cosyan.db.lang.sql.Users.CreateUser;
+import com.cosyan.db.lang.sql.VacuumStatement.Vacuum;
 import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DataTypes.DataType;
@@ -89,7 +92,8 @@ public class Parser implements IParser {
 
   public boolean isMeta(PeekingIterator<Token> tokens) {
     if (tokens.peek().is(Tokens.CREATE) || tokens.peek().is(Tokens.ALTER)
-        || tokens.peek().is(Tokens.DROP) || tokens.peek().is(Tokens.GRANT)) {
+        || tokens.peek().is(Tokens.DROP) || tokens.peek().is(Tokens.GRANT)
+        || tokens.peek().is(Tokens.VACUUM)) {
       return true;
     }
     return false;
@@ -116,6 +120,8 @@ public class Parser implements IParser {
       return parseAlter(tokens);
     } else if (token.is(Tokens.GRANT)) {
       return parseGrant(tokens);
+    } else if (token.is(Tokens.VACUUM)) {
+      return parseVacuum(tokens);
     }
     throw new ParserException("Syntax error, expected create, drop or alter.", token);
   }
@@ -136,6 +142,9 @@ public class Parser implements IParser {
       return parseExport(tokens);
     } else if (token.is(Tokens.WAIT)) {
       return parseWait(tokens);
+    } else if (token.is(Tokens.EXPLAIN)) {
+      tokens.next();
+      return new ExplainStatement(parseSelect(tokens));
     }
     throw new ParserException("Syntax error, expected select, insert, delete or update.", token);
   }
@@ -386,6 +395,11 @@ public class Parser implements IParser {
     }
   }
 
+  private MetaStatement parseVacuum(PeekingIterator<Token> tokens) throws ParserException {
+    assertNext(tokens, Tokens.VACUUM);
+    return new Vacuum(parseTableWithOwner(tokens));
+  }
+
   private TableColumnDefinition parseTableColumn(PeekingIterator<Token> tokens) throws ParserException {
     Ident ident1 = parseIdent(tokens);
     assertNext(tokens, String.valueOf(Tokens.DOT));
@@ -762,6 +776,10 @@ public class Parser implements IParser {
     } else if (token.isBoolean()) {
       tokens.next();
       expr = new BooleanLiteral(Boolean.valueOf(token.getString()), token.getLoc());
+    } else if (token.isParam()) {
+      tokens.next();
+      ParamToken paramToken = (ParamToken) token;
+      expr = new ParamLiteral(paramToken.getParameters(), paramToken.getIndex(), token.getLoc());
     } else {
       throw new ParserException("Expected literal but got " + token + ".", token);
     }
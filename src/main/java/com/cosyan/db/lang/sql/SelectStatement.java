@@ -27,8 +27,10 @@ import java.util.stream.Collectors;
 
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.io.TableReader.IterableTableReader;
+import com.cosyan.db.index.KeyRange;
 import com.cosyan.db.lang.expr.BinaryExpression;
 import com.cosyan.db.lang.expr.Expression;
+import com.cosyan.db.lang.expr.Expression.UnaryExpression;
 import com.cosyan.db.lang.expr.FuncCallExpression;
 import com.cosyan.db.lang.expr.Node;
 import com.cosyan.db.lang.expr.Statements.Statement;
@@ -36,8 +38,12 @@ import com.cosyan.db.lang.sql.Tokens.Loc;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StreamedQueryResult;
+import com.cosyan.db.lang.transaction.ResultSink;
+import com.cosyan.db.logic.CostModel;
 import com.cosyan.db.logic.PredicateHelper;
 import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
 import com.cosyan.db.meta.MetaReader;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.meta.MetaRepo.RuleException;
@@ -47,6 +53,7 @@ import com.cosyan.db.model.AggrTables;
 import com.cosyan.db.model.AggrTables.GlobalAggrTableMeta;
 import com.cosyan.db.model.AggrTables.KeyValueAggrTableMeta;
 import com.cosyan.db.model.AggrTables.NotAggrTableException;
+import com.cosyan.db.model.BasicColumn;
 import com.cosyan.db.model.ColumnMeta;
 import com.cosyan.db.model.ColumnMeta.DerivedColumn;
 import com.cosyan.db.model.ColumnMeta.OrderColumn;
@@ -58,6 +65,7 @@ import com.cosyan.db.model.DerivedTables.DerivedTableMeta;
 import com.cosyan.db.model.DerivedTables.DistinctTableMeta;
 import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
 import com.cosyan.db.model.DerivedTables.IndexFilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.IndexRangeTableMeta;
 import com.cosyan.db.model.DerivedTables.KeyValueTableMeta;
 import com.cosyan.db.model.DerivedTables.LimitedTableMeta;
 import com.cosyan.db.model.DerivedTables.SortedTableMeta;
@@ -109,6 +117,23 @@ public class SelectStatement extends Statement {
     return new QueryResult(tableMeta.columnNames(), tableMeta.columnTypes(), valuess);
   }
 
+  @Override
+  public Result execute(Resources resources, ResultSink sink) throws RuleException, IOException {
+    sink.query(tableMeta.columnNames(), tableMeta.columnTypes());
+    long rows = 0L;
+    reader = tableMeta.reader(resources, TableContext.EMPTY);
+    try {
+      Object[] values = null;
+      while ((values = reader.next()) != null) {
+        sink.row(values);
+        rows++;
+      }
+    } finally {
+      reader.close();
+    }
+    return new StreamedQueryResult(tableMeta.columnNames(), tableMeta.columnTypes(), rows);
+  }
+
   @Override
   public void cancel() {
     reader.cancel();
@@ -127,11 +152,14 @@ public class SelectStatement extends Statement {
 
     public ExposedTableMeta compileTable(TableProvider tableProvider, String owner) throws ModelException {
       ExposedTableMeta sourceTable = table.compile(tableProvider, owner);
-      ExposedTableMeta filteredTable;
-      if (where.isPresent()) {
-        filteredTable = filteredTable(sourceTable, where.get());
-      } else {
-        filteredTable = sourceTable;
+      ExposedTableMeta filteredTable = indexOrderedTable(sourceTable);
+      boolean indexOrdered = filteredTable != null;
+      if (!indexOrdered) {
+        if (where.isPresent()) {
+          filteredTable = filteredTable(sourceTable, where.get());
+        } else {
+          filteredTable = sourceTable;
+        }
       }
       DerivedTableMeta fullTable;
       if (groupBy.isPresent()) {
@@ -155,7 +183,11 @@ public class SelectStatement extends Statement {
       ExposedTableMeta orderedTable;
       if (orderBy.isPresent()) {
         ImmutableList<OrderColumn> orderColumns = orderColumns(distinctTable, orderBy.get());
-        orderedTable = new SortedTableMeta(distinctTable, orderColumns);
+        if (indexOrdered) {
+          orderedTable = distinctTable;
+        } else {
+          orderedTable = new SortedTableMeta(distinctTable, orderColumns, limit);
+        }
       } else {
         orderedTable = distinctTable;
       }
@@ -169,6 +201,82 @@ public class SelectStatement extends Statement {
       return limitedTable;
     }
 
+    /**
+     * Returns the source table read in the order of an index if the rows are
+     * ordered by an indexed column and limited, so that only the first rows
+     * have to be read. Returns null if the query cannot use an index for that.
+     */
+    private ExposedTableMeta indexOrderedTable(ExposedTableMeta sourceTable) throws ModelException {
+      if (!limit.isPresent() || !orderBy.isPresent() || orderBy.get().size() != 1
+          || groupBy.isPresent() || distinct || !(sourceTable instanceof SeekableTableMeta)) {
+        return null;
+      }
+      Expression orderExpr = orderBy.get().get(0);
+      boolean descending = false;
+      if (orderExpr instanceof UnaryExpression) {
+        UnaryExpression unaryExpr = (UnaryExpression) orderExpr;
+        if (unaryExpr.getType() != UnaryExpression.Type.ASC && unaryExpr.getType() != UnaryExpression.Type.DESC) {
+          return null;
+        }
+        descending = unaryExpr.getType() == UnaryExpression.Type.DESC;
+        orderExpr = unaryExpr.getExpr();
+      }
+      if (!isColumn(orderExpr)) {
+        return null;
+      }
+      Ident ident = ((FuncCallExpression) orderExpr).getIdent();
+      SeekableTableMeta tableMeta = (SeekableTableMeta) sourceTable;
+      if (!selectsColumn(ident) || !tableMeta.tableMeta().hasColumn(ident)) {
+        return null;
+      }
+      BasicColumn column = tableMeta.tableMeta().column(ident);
+      if (!column.isIndexed()) {
+        return null;
+      }
+      KeyRange range = KeyRange.ALL;
+      ColumnMeta whereColumn = ColumnMeta.TRUE_COLUMN;
+      if (where.isPresent()) {
+        whereColumn = where.get().compileColumn(sourceTable);
+        Node.assertType(DataTypes.BoolType, whereColumn.getType(), where.get().loc());
+        if (PredicateHelper.getBestClause(tableMeta, where.get()) != null) {
+          return null;
+        }
+        VariableRange clause = PredicateHelper.getBestRange(tableMeta, where.get(), ident);
+        if (clause != null && clause.getIdent().getString().equals(ident.getString())) {
+          range = clause.getRange();
+        }
+      }
+      if (range.isAll() && column.isNullable()) {
+        // Null values are not indexed.
+        return null;
+      }
+      return new IndexRangeTableMeta(tableMeta, whereColumn, new VariableRange(ident, range.withDescending(descending)));
+    }
+
+    private static boolean isColumn(Expression expr) {
+      if (!(expr instanceof FuncCallExpression)) {
+        return false;
+      }
+      FuncCallExpression funcCall = (FuncCallExpression) expr;
+      return funcCall.getObject() == null && funcCall.getArgs().isEmpty();
+    }
+
+    /**
+     * Whether the selected column named <code>ident</code> is the column of the
+     * source table with the same name.
+     */
+    private boolean selectsColumn(Ident ident) {
+      for (Expression expr : columns) {
+        if (expr instanceof AsteriskExpression
+            && !((AsteriskExpression) expr).excludes(ident.getString())) {
+          return true;
+        } else if (isColumn(expr) && ((FuncCallExpression) expr).getIdent().getString().equals(ident.getString())) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     public static DerivedTableMeta selectTable(
         IterableTableMeta sourceTable,
         ImmutableList<Expression> columns) throws ModelException {
@@ -243,9 +351,17 @@ public class SelectStatement extends Statement {
       Node.assertType(DataTypes.BoolType, whereColumn.getType(), where.loc());
       if (sourceTable instanceof SeekableTableMeta) {
         SeekableTableMeta tableMeta = (SeekableTableMeta) sourceTable;
+        long rows = tableMeta.tableMeta().stats().count();
         VariableEquals clause = PredicateHelper.getBestClause(tableMeta, where);
-        if (clause != null) {
+        VariableRange range = PredicateHelper.getBestRange(tableMeta, where, null);
+        if (range != null && !CostModel.indexCheaper(rows, CostModel.selectivity(tableMeta, range))) {
+          range = null;
+        }
+        if (clause != null && (range == null
+            || CostModel.selectivity(tableMeta, clause) <= CostModel.selectivity(tableMeta, range))) {
           return new IndexFilteredTableMeta(tableMeta, whereColumn, clause);
+        } else if (range != null) {
+          return new IndexRangeTableMeta(tableMeta, whereColumn, range);
         } else {
           return new FilteredTableMeta(sourceTable, whereColumn);
         }
@@ -15,6 +15,7 @@
  */
 package com.cosyan.db.lang.sql;
 
+import com.cosyan.db.lang.expr.Literals.Parameters;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
@@ -204,6 +205,8 @@ public class Tokens {
 
   public static char DOT = '.';
 
+  public static char QUESTION_MARK = '?';
+
   public static String LEQ = "<=";
 
   public static String GEQ = ">=";
@@ -234,6 +237,10 @@ public class Tokens {
 
   public static String WAIT = "wait";
 
+  public static String VACUUM = "vacuum";
+
+  public static String EXPLAIN = "explain";
+
   public static String LIMIT = "limit";
 
   public static boolean isDelimiter(char c) {
@@ -379,6 +386,10 @@ public class Tokens {
     public boolean isIdent() {
       return false;
     }
+
+    public boolean isParam() {
+      return false;
+    }
   }
 
   public static class StringToken extends Token {
@@ -450,4 +461,32 @@ public class Tokens {
       return true;
     }
   }
+
+  /**
+   * A <code>?</code> placeholder of a prepared statement, the index is the
+   * position of the parameter in the SQL.
+   */
+  public static class ParamToken extends Token {
+    private final Parameters parameters;
+    private final int index;
+
+    public ParamToken(Parameters parameters, int index, Loc loc) {
+      super(String.valueOf(QUESTION_MARK), loc);
+      this.parameters = parameters;
+      this.index = index;
+    }
+
+    public Parameters getParameters() {
+      return parameters;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    @Override
+    public boolean isParam() {
+      return true;
+    }
+  }
 }
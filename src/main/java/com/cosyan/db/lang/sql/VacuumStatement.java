@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import java.io.IOException;
+
+import com.cosyan.db.auth.AuthToken;
+import com.cosyan.db.io.TableWriter;
+import com.cosyan.db.lang.expr.Statements.AlterStatement;
+import com.cosyan.db.lang.expr.TableDefinition.TableWithOwnerDefinition;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.VacuumResult;
+import com.cosyan.db.meta.Grants.GrantException;
+import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.meta.MetaWriter;
+import com.cosyan.db.meta.TableProvider.TableWithOwner;
+import com.cosyan.db.meta.TableStat;
+import com.cosyan.db.transaction.MetaResources;
+import com.cosyan.db.transaction.Resources;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+public class VacuumStatement {
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class Vacuum extends AlterStatement {
+    private final TableWithOwnerDefinition table;
+
+    private TableWithOwner tableWithOwner;
+    private TableWriter writer;
+
+    @Override
+    public MetaResources executeMeta(MetaWriter metaRepo, AuthToken authToken)
+        throws ModelException, GrantException, IOException {
+      tableWithOwner = table.resolve(authToken);
+      MaterializedTable tableMeta = metaRepo.table(tableWithOwner, authToken);
+      // Keys of the extra indexes are resolved the same way as when inserting.
+      return MetaResources.tableMeta(tableMeta).merge(tableMeta.ruleDependenciesReadResources());
+    }
+
+    @Override
+    public Result executeData(MetaWriter metaRepo, Resources resources) throws RuleException, IOException {
+      writer = resources.writer(tableWithOwner.resourceId());
+      TableStat stat = writer.vacuum(resources);
+      return new VacuumResult(stat.getDeletedRecords(), stat.getDeletedBytes());
+    }
+
+    @Override
+    public void cancel() {
+      if (writer != null) {
+        writer.cancel();
+      }
+    }
+  }
+}
@@ -113,6 +113,35 @@ public abstract class Result {
     }
   }
 
+  /**
+   * A query whose rows were written to a <code>ResultSink</code>.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class StreamedQueryResult extends Result {
+
+    private final ImmutableList<String> header;
+    private final ImmutableList<DataType<?>> types;
+    private final long rows;
+
+    public StreamedQueryResult(ImmutableList<String> header, ImmutableList<DataType<?>> types, long rows) {
+      super(true);
+      this.header = header;
+      this.types = types;
+      this.rows = rows;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+      JSONObject obj = new JSONObject();
+      obj.put("type", "query");
+      obj.put("header", header);
+      obj.put("types", types.stream().map(t -> t.toJSON()).collect(Collectors.toList()));
+      obj.put("rows", rows);
+      return obj;
+    }
+  }
+
   @Data
   @EqualsAndHashCode(callSuper = true)
   public static class StatementResult extends Result {
@@ -153,6 +182,27 @@ public abstract class Result {
     }
   }
 
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class VacuumResult extends StatementResult {
+
+    private final long reclaimedBytes;
+
+    public VacuumResult(long removedRecords, long reclaimedBytes) {
+      super(removedRecords);
+      this.reclaimedBytes = reclaimedBytes;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+      JSONObject obj = super.toJSON();
+      obj.put("reclaimedBytes", reclaimedBytes);
+      obj.put("msg", String.format("Removed %s deleted records, reclaimed %s bytes.",
+          getAffectedLines(), reclaimedBytes));
+      return obj;
+    }
+  }
+
   @Data
   @EqualsAndHashCode(callSuper = true)
   public static class EmptyResult extends Result {
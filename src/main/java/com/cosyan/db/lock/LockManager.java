@@ -16,57 +16,91 @@
 package com.cosyan.db.lock;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.MetaResources.Resource;
+import com.google.common.collect.ImmutableMap;
 
+import lombok.Data;
+
+/**
+ * Table locks with a FIFO queue per table. A transaction acquires the locks of
+ * its resources one by one in the order of the resource ids, so transactions
+ * cannot deadlock on each other.
+ */
 public class LockManager {
 
+  @Data
+  public static class LockStat {
+    private final long acquisitions;
+    private final long waits;
+    private final long waitNanos;
+    private final long maxWaitNanos;
+    /**
+     * Number of acquisitions with wait times below 1, 10, 100, 1000 ms and above.
+     */
+    private final long[] histogram;
+    private final int queueLength;
+
+    public double avgWaitMillis() {
+      return waits == 0 ? 0.0 : waitNanos / 1000000.0 / waits;
+    }
+  }
+
   private final ReentrantReadWriteLock metaRepoLock = new ReentrantReadWriteLock();
-  private final Map<String, ReentrantReadWriteLock> lockMap = new HashMap<>();
+  private final ConcurrentHashMap<String, ResourceLock> lockMap = new ConcurrentHashMap<>();
 
-  public synchronized void metaRepoReadLock() {
+  public void metaRepoReadLock() {
     metaRepoLock.readLock().lock();
   }
 
-  public synchronized void metaRepoWriteLock() {
+  public void metaRepoWriteLock() {
     metaRepoLock.writeLock().lock();
   }
 
-  public synchronized void metaRepoReadUnlock() {
+  public void metaRepoReadUnlock() {
     metaRepoLock.readLock().unlock();
   }
 
-  public synchronized void metaRepoWriteUnlock() {
+  public void metaRepoWriteUnlock() {
     metaRepoLock.writeLock().unlock();
   }
 
-  public synchronized boolean tryLock(MetaResources metaResources) {
-    List<Lock> locks = new ArrayList<>();
-    for (Resource resource : metaResources.lockResources()) {
-      ReentrantReadWriteLock rwlock = lockMap.get(resource.getResourceId());
-      assert rwlock != null : String.format("Invalid resource '%s'. Existing: %s.", resource.getResourceId(), lockMap.keySet());
-      Lock lock;
-      if (resource.isWrite()) {
-        lock = rwlock.writeLock();
-      } else {
-        lock = rwlock.readLock();
-      }
-      boolean gotLock = lock.tryLock();
-      if (gotLock) {
-        locks.add(lock);
-      } else {
-        for (Lock acquiredLock : locks) {
-          acquiredLock.unlock();
+  private static List<Resource> ordered(MetaResources metaResources) {
+    List<Resource> resources = new ArrayList<>();
+    metaResources.lockResources().forEach(resources::add);
+    resources.sort(Comparator.comparing(Resource::getResourceId));
+    return resources;
+  }
+
+  private ResourceLock resourceLock(Resource resource) {
+    ResourceLock lock = lockMap.get(resource.getResourceId());
+    assert lock != null : String.format("Invalid resource '%s'. Existing: %s.", resource.getResourceId(), lockMap.keySet());
+    return lock;
+  }
+
+  /**
+   * Acquires the locks of all the resources, waiting in the queue of every
+   * resource if needed. Returns false without holding any locks if the
+   * transaction is cancelled while waiting.
+   */
+  public boolean lock(MetaResources metaResources, AtomicBoolean cancelled, long checkMs) {
+    List<Resource> resources = ordered(metaResources);
+    for (int i = 0; i < resources.size(); i++) {
+      Resource resource = resources.get(i);
+      if (!resourceLock(resource).lock(resource.isWrite(), cancelled, checkMs)) {
+        for (int j = i - 1; j >= 0; j--) {
+          resourceLock(resources.get(j)).unlock(resources.get(j).isWrite());
         }
         return false;
       }
@@ -74,38 +108,33 @@ public class LockManager {
     return true;
   }
 
-  public synchronized void unlock(MetaResources metaResources) {
-    for (Resource resource : metaResources.lockResources()) {
-      ReentrantReadWriteLock lock = lockMap.get(resource.getResourceId());
-      assert lock != null : String.format("Invalid resource '%s'. Existing: %s.", resource.getResourceId(), lockMap.keySet());
-      if (resource.isWrite()) {
-        lock.writeLock().unlock();
-      } else {
-        lock.readLock().unlock();
-      }
+  public void unlock(MetaResources metaResources) {
+    for (Resource resource : ordered(metaResources)) {
+      resourceLock(resource).unlock(resource.isWrite());
     }
   }
 
-  public synchronized void registerLock(MaterializedTable table) {
-    lockMap.put(table.fullName(), new ReentrantReadWriteLock());
+  public void registerLock(MaterializedTable table) {
+    lockMap.put(table.fullName(), new ResourceLock());
   }
 
-  public synchronized void removeLock(MaterializedTable table) {
+  public void removeLock(MaterializedTable table) {
     lockMap.remove(table.fullName());
   }
 
-  public synchronized void syncLocks(List<MaterializedTable> tables) {
+  public void syncLocks(List<MaterializedTable> tables) {
     Set<String> ids = tables.stream().map(t -> t.fullName()).collect(Collectors.toSet());
     for (String resourceId : ids) {
-      if (!lockMap.containsKey(resourceId)) {
-        lockMap.put(resourceId, new ReentrantReadWriteLock());
-      }
+      lockMap.putIfAbsent(resourceId, new ResourceLock());
     }
-    Set<String> oldIds = new HashSet<>(lockMap.keySet());
-    for (String resourceId : oldIds) {
-      if (!ids.contains(resourceId)) {
-        lockMap.remove(resourceId);
-      }
+    lockMap.keySet().retainAll(ids);
+  }
+
+  public ImmutableMap<String, LockStat> stats() {
+    ImmutableMap.Builder<String, LockStat> builder = ImmutableMap.builder();
+    for (Map.Entry<String, ResourceLock> entry : new TreeMap<>(lockMap).entrySet()) {
+      builder.put(entry.getKey(), entry.getValue().stats());
     }
+    return builder.build();
   }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lock;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import com.cosyan.db.lock.LockManager.LockStat;
+
+/**
+ * Read-write lock of one resource with a FIFO queue of waiting transactions.
+ * Waiting threads are parked and woken up in arrival order when the lock
+ * becomes compatible with their request. New requests do not overtake the
+ * queued ones. Unlike <code>ReentrantReadWriteLock</code> the lock is not
+ * owned by a thread.
+ */
+class ResourceLock {
+
+  static final long[] BUCKETS_MS = new long[] { 1L, 10L, 100L, 1000L };
+
+  private static class Waiter {
+    private final boolean write;
+    private final Thread thread;
+    private volatile boolean granted;
+
+    private Waiter(boolean write, Thread thread) {
+      this.write = write;
+      this.thread = thread;
+    }
+  }
+
+  private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+  private int readers;
+  private boolean writer;
+
+  private long acquisitions;
+  private long waits;
+  private long waitNanos;
+  private long maxWaitNanos;
+  private final long[] histogram = new long[BUCKETS_MS.length + 1];
+
+  private boolean compatible(boolean write) {
+    return write ? !writer && readers == 0 : !writer;
+  }
+
+  private void grant(boolean write) {
+    if (write) {
+      writer = true;
+    } else {
+      readers++;
+    }
+  }
+
+  private void grantWaiters() {
+    while (!queue.isEmpty() && compatible(queue.peek().write)) {
+      Waiter waiter = queue.poll();
+      grant(waiter.write);
+      waiter.granted = true;
+      LockSupport.unpark(waiter.thread);
+    }
+  }
+
+  private synchronized void record(long nanos) {
+    acquisitions++;
+    if (nanos > 0) {
+      waits++;
+      waitNanos += nanos;
+      maxWaitNanos = Math.max(maxWaitNanos, nanos);
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int i = 0;
+    while (i < BUCKETS_MS.length && millis >= BUCKETS_MS[i]) {
+      i++;
+    }
+    histogram[i]++;
+  }
+
+  /**
+   * Blocks until the lock is acquired or the transaction is cancelled. The
+   * cancellation is checked every <code>checkMs</code> milliseconds. Returns
+   * whether the lock was acquired.
+   */
+  boolean lock(boolean write, AtomicBoolean cancelled, long checkMs) {
+    Waiter waiter;
+    synchronized (this) {
+      if (queue.isEmpty() && compatible(write)) {
+        grant(write);
+        record(0L);
+        return true;
+      }
+      waiter = new Waiter(write, Thread.currentThread());
+      queue.add(waiter);
+    }
+    long start = System.nanoTime();
+    while (!waiter.granted) {
+      LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(checkMs));
+      if (!waiter.granted && (cancelled.get() || Thread.interrupted())) {
+        synchronized (this) {
+          if (!waiter.granted) {
+            cancelled.set(true);
+            queue.remove(waiter);
+            // Requests queued behind the removed one might be compatible now.
+            grantWaiters();
+            return false;
+          }
+        }
+      }
+    }
+    record(Math.max(1L, System.nanoTime() - start));
+    return true;
+  }
+
+  synchronized void unlock(boolean write) {
+    if (write) {
+      assert writer;
+      writer = false;
+    } else {
+      assert readers > 0;
+      readers--;
+    }
+    grantWaiters();
+  }
+
+  synchronized LockStat stats() {
+    return new LockStat(acquisitions, waits, waitNanos, maxWaitNanos, histogram.clone(), queue.size());
+  }
+}
@@ -15,26 +15,44 @@
  */
 package com.cosyan.db.logging;
 
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.CRC32;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
-
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
 import com.cosyan.db.logging.MetaJournal.DBException;
 
-public class TransactionJournal {
-
-  private final Config config;
-  private FileOutputStream stream = null;
+import lombok.Data;
 
-  private final ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
-  private final DataOutputStream dos = new DataOutputStream(bos);
+/**
+ * Group commit journal. Transactions enqueue their records and a single writer
+ * thread appends the pending records with one write followed by one fsync.
+ * Callers logging a REDO, REDO_ERROR or CHECKPOINT, or the SUCCESS of a
+ * transaction which changed data block until their record is durable, other
+ * records are written with the next batch.
+ * <p>
+ * The journal is also the write ahead log: before a transaction applies its
+ * changes it logs a REDO record with the serialized inserted records and
+ * deleted file pointers. A CHECKPOINT truncates the journal, so on startup only
+ * the records logged since the last checkpoint have to be replayed.
+ */
+public class TransactionJournal {
 
   private static final byte START = 1;
   private static final byte SUCCESS = 2;
@@ -47,34 +65,343 @@ public class TransactionJournal {
 
   private static final byte CHECKPOINT = 7;
 
-  public TransactionJournal(Config config) throws IOException {
+  private static final byte REDO = 8;
+  private static final byte REDO_ERROR = 9;
+
+  static final int RECORD_SIZE = 13;
+
+  static final String FILE_NAME = "transaction.journal";
+
+  @Data
+  public static class JournalStat {
+    private final long batches;
+    private final long records;
+    private final int maxBatchSize;
+    private final long fsyncs;
+    private final long fsyncNanos;
+    private final long maxFsyncNanos;
+    private final long checkpoints;
+    private final long size;
+
+    public double avgBatchSize() {
+      return batches == 0 ? 0.0 : (double) records / batches;
+    }
+
+    public double avgFsyncMillis() {
+      return fsyncs == 0 ? 0.0 : fsyncNanos / 1000000.0 / fsyncs;
+    }
+  }
+
+  @Data
+  private static class Entry {
+    private final byte[] record;
+    private final boolean sync;
+    private final boolean truncate;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+  }
+
+  private final Config config;
+  private final int maxDelayMs;
+  private final int maxBatch;
+  private final long checkpointSize;
+  private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+  private FileOutputStream stream = null;
+  private Thread writer = null;
+  private boolean closed = false;
+
+  private long batches;
+  private long records;
+  private int maxBatchSize;
+  private long fsyncs;
+  private long fsyncNanos;
+  private long maxFsyncNanos;
+  private long checkpoints;
+  private long size;
+
+  public TransactionJournal(Config config) throws IOException, ConfigException {
     this.config = config;
+    this.maxDelayMs = Math.max(0, config.getInt(Config.JOURNAL_MAX_DELAY_MS, 0));
+    this.maxBatch = Math.max(1, config.getInt(Config.JOURNAL_MAX_BATCH, 1024));
+    this.checkpointSize = config.getInt(Config.JOURNAL_CHECKPOINT_MB, 64) * 1024L * 1024L;
     Files.createDirectories(Paths.get(config.journalDir()));
+    this.size = file().length();
   }
 
-  private synchronized void log(byte event, long trxNumber) throws DBException {
-    try {
-      if (stream == null || !stream.getChannel().isOpen()) {
-        this.stream = new FileOutputStream(
-            config.journalDir() + File.separator + "transaction.journal",
-            /* append= */true);
+  private File file() {
+    return new File(config.journalDir() + File.separator + FILE_NAME);
+  }
+
+  /**
+   * Drops the content of the journal, e.g. after the table files are restored
+   * from a backup and the logged changes do not apply to them anymore.
+   */
+  public static void discard(Config config) throws IOException {
+    File file = new File(config.journalDir() + File.separator + FILE_NAME);
+    if (file.exists()) {
+      new FileOutputStream(file).close();
+    }
+  }
+
+  static byte[] record(byte event, long trxNumber) {
+    ByteBuffer bb = ByteBuffer.allocate(RECORD_SIZE);
+    bb.put(event);
+    bb.putLong(trxNumber);
+    CRC32 checksum = new CRC32();
+    checksum.update(bb.array(), 0, RECORD_SIZE - 4);
+    bb.putInt((int) checksum.getValue());
+    return bb.array();
+  }
+
+  static byte[] redoRecord(long trxNumber, byte[] changes) {
+    ByteBuffer bb = ByteBuffer.allocate(RECORD_SIZE + 4 + changes.length);
+    bb.put(REDO);
+    bb.putLong(trxNumber);
+    bb.putInt(changes.length);
+    bb.put(changes);
+    CRC32 checksum = new CRC32();
+    checksum.update(bb.array(), 0, bb.position());
+    bb.putInt((int) checksum.getValue());
+    return bb.array();
+  }
+
+  private void log(byte event, long trxNumber) throws DBException {
+    log(event, trxNumber, event == CHECKPOINT || event == REDO_ERROR);
+  }
+
+  private void log(byte event, long trxNumber, boolean sync) throws DBException {
+    log(new Entry(record(event, trxNumber), sync, event == CHECKPOINT));
+  }
+
+  private void log(Entry entry) throws DBException {
+    boolean sync = entry.isSync();
+    synchronized (this) {
+      queue.add(entry);
+      if (writer == null) {
+        startWriter();
       }
-      bos.reset();
-      CRC32 checksum = new CRC32();
-      dos.write(event);
-      dos.writeLong(trxNumber);
-      byte[] b = bos.toByteArray();
-      checksum.update(b);
-      dos.writeInt((int) checksum.getValue());
-      stream.write(bos.toByteArray());
-      stream.flush();
-    } catch (IOException e) {
+      notifyAll();
+    }
+    if (!sync) {
+      return;
+    }
+    try {
+      entry.getDone().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new DBException(e);
+    } catch (ExecutionException e) {
+      throw new DBException(e.getCause());
     }
   }
 
-  public synchronized void close() throws IOException {
-    stream.close();
+  private void startWriter() {
+    writer = new Thread(this::run, "transaction-journal");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private List<Entry> nextBatch() throws InterruptedException {
+    synchronized (this) {
+      while (queue.isEmpty() && !closed) {
+        wait();
+      }
+      if (queue.isEmpty()) {
+        return null;
+      }
+      // Wait for more records to arrive to make the batch larger.
+      long deadline = System.currentTimeMillis() + maxDelayMs;
+      long remaining = maxDelayMs;
+      while (queue.size() < maxBatch && remaining > 0 && !closed) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      List<Entry> batch = new ArrayList<>(Math.min(queue.size(), maxBatch));
+      while (!queue.isEmpty() && batch.size() < maxBatch) {
+        batch.add(queue.poll());
+      }
+      return batch;
+    }
+  }
+
+  private void run() {
+    try {
+      List<Entry> batch;
+      while ((batch = nextBatch()) != null) {
+        try {
+          write(batch);
+          for (Entry entry : batch) {
+            entry.getDone().complete(null);
+          }
+        } catch (IOException e) {
+          for (Entry entry : batch) {
+            entry.getDone().completeExceptionally(e);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void write(List<Entry> batch) throws IOException {
+    if (stream == null || !stream.getChannel().isOpen()) {
+      stream = new FileOutputStream(file(), /* append= */true);
+    }
+    // Records before the last checkpoint of the batch are discarded together
+    // with the content of the file.
+    int first = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.get(i).isTruncate()) {
+        first = i;
+      }
+    }
+    boolean truncate = batch.get(first).isTruncate();
+    int length = 0;
+    for (Entry entry : batch.subList(first, batch.size())) {
+      length += entry.getRecord().length;
+    }
+    ByteBuffer bb = ByteBuffer.allocate(length);
+    boolean sync = false;
+    for (Entry entry : batch.subList(first, batch.size())) {
+      bb.put(entry.getRecord());
+      sync |= entry.isSync();
+    }
+    bb.flip();
+    FileChannel channel = stream.getChannel();
+    if (truncate) {
+      channel.truncate(0L);
+    }
+    while (bb.hasRemaining()) {
+      channel.write(bb);
+    }
+    long elapsed = 0L;
+    if (sync) {
+      long t = System.nanoTime();
+      channel.force(false);
+      elapsed = System.nanoTime() - t;
+    }
+    synchronized (this) {
+      batches++;
+      records += batch.size();
+      maxBatchSize = Math.max(maxBatchSize, batch.size());
+      if (truncate) {
+        checkpoints++;
+        size = 0L;
+      }
+      size += length;
+      if (sync) {
+        fsyncs++;
+        fsyncNanos += elapsed;
+        maxFsyncNanos = Math.max(maxFsyncNanos, elapsed);
+      }
+    }
+  }
+
+  /**
+   * Writes the pending records, stops the writer thread and closes the file.
+   * The journal is reopened if it is used again.
+   */
+  public void close() throws IOException {
+    Thread thread;
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      thread = writer;
+    }
+    if (thread != null) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      if (stream != null) {
+        stream.close();
+      }
+      closed = false;
+      writer = null;
+      if (!queue.isEmpty()) {
+        startWriter();
+      }
+    }
+  }
+
+  public synchronized JournalStat stats() {
+    return new JournalStat(
+        batches, records, maxBatchSize, fsyncs, fsyncNanos, maxFsyncNanos, checkpoints, size);
+  }
+
+  /**
+   * Whether the journal grew large enough since the last checkpoint to make
+   * a new one worthwhile.
+   */
+  public synchronized boolean needsCheckpoint() {
+    return size >= checkpointSize;
+  }
+
+  /**
+   * Returns the changes of the REDO records logged since the last checkpoint in
+   * the order they were logged. A transaction can log multiple REDO records if
+   * it commits in batches. Every REDO record is replayed, even if the transaction
+   * failed to apply it, except for the ones followed by a REDO_ERROR: those might
+   * not have been durable so the transaction rolled them back. A torn record at
+   * the end of the journal and everything after it is ignored.
+   */
+  public synchronized List<byte[]> redoTail() throws IOException {
+    File file = file();
+    List<Long> trxNumbers = new ArrayList<>();
+    List<byte[]> changes = new ArrayList<>();
+    if (!file.exists()) {
+      return new ArrayList<>();
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      byte[] header = new byte[RECORD_SIZE];
+      while (true) {
+        try {
+          in.readFully(header);
+        } catch (EOFException e) {
+          break;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(header);
+        byte event = bb.get();
+        long trxNumber = bb.getLong();
+        CRC32 checksum = new CRC32();
+        if (event == REDO) {
+          int length = bb.getInt();
+          if (length < 0 || length > file.length()) {
+            break;
+          }
+          byte[] record = new byte[length + 4];
+          try {
+            in.readFully(record);
+          } catch (EOFException e) {
+            break;
+          }
+          checksum.update(header, 0, RECORD_SIZE);
+          checksum.update(record, 0, length);
+          if ((int) checksum.getValue() != ByteBuffer.wrap(record, length, 4).getInt()) {
+            break;
+          }
+          trxNumbers.add(trxNumber);
+          changes.add(Arrays.copyOf(record, length));
+        } else {
+          checksum.update(header, 0, RECORD_SIZE - 4);
+          if ((int) checksum.getValue() != bb.getInt()) {
+            break;
+          }
+          if (event == REDO_ERROR) {
+            int i = trxNumbers.lastIndexOf(trxNumber);
+            if (i >= 0) {
+              trxNumbers.remove(i);
+              changes.remove(i);
+            }
+          }
+        }
+      }
+    }
+    return changes;
   }
 
   public void start(long trxNumber) throws DBException {
@@ -82,7 +409,16 @@ public class TransactionJournal {
   }
 
   public void success(long trxNumber) throws DBException {
-    log(SUCCESS, trxNumber);
+    success(trxNumber, /* sync= */true);
+  }
+
+  /**
+   * Logs the SUCCESS of the transaction. Only transactions which logged REDO
+   * records have to wait for the record to be durable, the SUCCESS of a read-only
+   * transaction is written with the next batch.
+   */
+  public void success(long trxNumber, boolean sync) throws DBException {
+    log(SUCCESS, trxNumber, sync);
   }
 
   public void userError(long trxNumber) throws DBException {
@@ -101,6 +437,28 @@ public class TransactionJournal {
     log(CRASH, trxNumber);
   }
 
+  /**
+   * Logs that the last REDO record of the transaction failed to become durable,
+   * so the transaction rolled back the changes instead of applying them.
+   */
+  public void redoError(long trxNumber) throws DBException {
+    log(REDO_ERROR, trxNumber);
+  }
+
+  /**
+   * Logs the serialized changes of the transaction before they are applied.
+   * Does nothing if the transaction did not change any data.
+   */
+  public void redo(long trxNumber, byte[] changes) throws DBException {
+    if (changes != null) {
+      log(new Entry(redoRecord(trxNumber, changes), /* sync= */true, /* truncate= */false));
+    }
+  }
+
+  /**
+   * Truncates the journal and logs a CHECKPOINT. The caller has to make sure
+   * that the changes of every transaction logged so far are already durable.
+   */
   public void checkpoint(long trxNumber) throws DBException {
     log(CHECKPOINT, trxNumber);
   }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.logic;
+
+import com.cosyan.db.index.KeyRange;
+import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.model.AggrTables.GlobalAggrTableMeta;
+import com.cosyan.db.model.AggrTables.KeyValueAggrTableMeta;
+import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.DerivedTables.AliasedTableMeta;
+import com.cosyan.db.model.DerivedTables.DerivedTableMeta;
+import com.cosyan.db.model.DerivedTables.DistinctTableMeta;
+import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.IndexFilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.IndexRangeTableMeta;
+import com.cosyan.db.model.DerivedTables.LimitedTableMeta;
+import com.cosyan.db.model.DerivedTables.SortedTableMeta;
+import com.cosyan.db.model.JoinTables.JoinTableMeta;
+import com.cosyan.db.model.JoinTables.JoinType;
+import com.cosyan.db.model.SeekableTableMeta;
+import com.cosyan.db.model.TableMeta;
+import com.cosyan.db.model.stat.TableStats;
+
+/**
+ * Estimates the number of records and the cost of reading a table through an
+ * index or with a full scan, based on the <code>TableStats</code>. The cost
+ * unit is reading one record sequentially.
+ */
+public class CostModel {
+
+  /**
+   * The cost of reading a record from an index position relative to a
+   * sequential read.
+   */
+  public static final double RANDOM_READ = 4.0;
+
+  /**
+   * The selectivity of one bound of a range, e.g. <code>a &gt; 1</code>, on a
+   * column without statistics.
+   */
+  public static final double RANGE_BOUND_SELECTIVITY = 1.0 / 3.0;
+
+  /**
+   * The selectivity of an equality on a column without statistics.
+   */
+  public static final double EQUALS_SELECTIVITY = 0.1;
+
+  /**
+   * The selectivity of a filter which cannot use an index.
+   */
+  public static final double FILTER_SELECTIVITY = 1.0 / 3.0;
+
+  public static double selectivity(TableStats stats, BasicColumn column) {
+    if (column.isUnique()) {
+      long rows = stats.count();
+      return rows > 0 ? 1.0 / rows : 0.0;
+    }
+    long cardinality = stats.cardinality(column.getName());
+    return cardinality > 0 ? 1.0 / cardinality : EQUALS_SELECTIVITY;
+  }
+
+  public static double selectivity(KeyRange range) {
+    double selectivity = 1.0;
+    if (range.getFrom() != null) {
+      selectivity *= RANGE_BOUND_SELECTIVITY;
+    }
+    if (range.getTo() != null) {
+      selectivity *= RANGE_BOUND_SELECTIVITY;
+    }
+    return selectivity;
+  }
+
+  /**
+   * The selectivity of the range on the column based on the sampled values of
+   * the column if any.
+   */
+  public static double selectivity(TableStats stats, BasicColumn column, KeyRange range) {
+    double selectivity = stats.rangeSelectivity(column.getName(), range);
+    return selectivity >= 0.0 ? selectivity : selectivity(range);
+  }
+
+  public static double selectivity(SeekableTableMeta tableMeta, VariableEquals clause) throws ModelException {
+    return selectivity(tableMeta.tableMeta().stats(), tableMeta.tableMeta().column(clause.getIdent()));
+  }
+
+  public static double selectivity(SeekableTableMeta tableMeta, VariableRange clause) throws ModelException {
+    return selectivity(
+        tableMeta.tableMeta().stats(), tableMeta.tableMeta().column(clause.getIdent()), clause.getRange());
+  }
+
+  public static double indexCost(long rows, double selectivity) {
+    return RANDOM_READ * Math.max(1.0, rows * selectivity);
+  }
+
+  public static double scanCost(long rows) {
+    return rows;
+  }
+
+  /**
+   * Whether reading the matching records through an index is cheaper than a
+   * full scan. Without statistics the index is preferred.
+   */
+  public static boolean indexCheaper(long rows, double selectivity) {
+    return rows <= 0 || indexCost(rows, selectivity) <= scanCost(rows);
+  }
+
+  /**
+   * The estimated number of records of the table, -1 if unknown.
+   */
+  public static long rows(TableMeta tableMeta) throws ModelException {
+    if (tableMeta instanceof SeekableTableMeta) {
+      return ((SeekableTableMeta) tableMeta).tableMeta().stats().count();
+    } else if (tableMeta instanceof IndexFilteredTableMeta) {
+      IndexFilteredTableMeta filtered = (IndexFilteredTableMeta) tableMeta;
+      return estimate(rows(filtered.getSourceTable()), selectivity(filtered.getSourceTable(), filtered.getClause()));
+    } else if (tableMeta instanceof IndexRangeTableMeta) {
+      IndexRangeTableMeta filtered = (IndexRangeTableMeta) tableMeta;
+      return estimate(rows(filtered.getSourceTable()), selectivity(filtered.getSourceTable(), filtered.getClause()));
+    } else if (tableMeta instanceof FilteredTableMeta) {
+      return estimate(rows(((FilteredTableMeta) tableMeta).getSourceTable()), FILTER_SELECTIVITY);
+    } else if (tableMeta instanceof AliasedTableMeta) {
+      return rows(((AliasedTableMeta) tableMeta).getSourceTable());
+    } else if (tableMeta instanceof DerivedTableMeta) {
+      return rows(((DerivedTableMeta) tableMeta).getSourceTable());
+    } else if (tableMeta instanceof SortedTableMeta) {
+      return rows(((SortedTableMeta) tableMeta).getSourceTable());
+    } else if (tableMeta instanceof DistinctTableMeta) {
+      return rows(((DistinctTableMeta) tableMeta).getSourceTable());
+    } else if (tableMeta instanceof LimitedTableMeta) {
+      LimitedTableMeta limited = (LimitedTableMeta) tableMeta;
+      long rows = rows(limited.getSourceTable());
+      return rows < 0 ? limited.getLimit() : Math.min(rows, limited.getLimit());
+    } else if (tableMeta instanceof KeyValueAggrTableMeta) {
+      return rows(((KeyValueAggrTableMeta) tableMeta).sourceTable().getSourceTable());
+    } else if (tableMeta instanceof GlobalAggrTableMeta) {
+      return 1L;
+    } else if (tableMeta instanceof JoinTableMeta) {
+      JoinTableMeta join = (JoinTableMeta) tableMeta;
+      long left = rows(join.getLeftTable());
+      long right = rows(join.getRightTable());
+      if (left < 0 || right < 0) {
+        return -1L;
+      }
+      boolean leftUnique = join.uniqueJoin(/* left= */true);
+      boolean rightUnique = join.uniqueJoin(/* left= */false);
+      long rows;
+      if (leftUnique && rightUnique) {
+        rows = Math.min(left, right);
+      } else if (rightUnique) {
+        rows = left;
+      } else if (leftUnique) {
+        rows = right;
+      } else {
+        // Assuming a join on the key of the smaller table.
+        rows = Math.max(left, right);
+      }
+      if (join.getJoinType() == JoinType.LEFT) {
+        return Math.max(left, rows);
+      } else if (join.getJoinType() == JoinType.RIGHT) {
+        return Math.max(right, rows);
+      }
+      return rows;
+    } else {
+      return -1L;
+    }
+  }
+
+  private static long estimate(long rows, double selectivity) {
+    return rows < 0 ? -1L : Math.round(Math.ceil(rows * selectivity));
+  }
+}
@@ -16,20 +16,29 @@
 package com.cosyan.db.logic;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
+import com.cosyan.db.index.KeyRange;
 import com.cosyan.db.lang.expr.BinaryExpression;
 import com.cosyan.db.lang.expr.Expression;
 import com.cosyan.db.lang.expr.Expression.UnaryExpression;
 import com.cosyan.db.lang.expr.FuncCallExpression;
 import com.cosyan.db.lang.expr.Literals.Literal;
 import com.cosyan.db.lang.expr.Literals.LongLiteral;
+import com.cosyan.db.lang.expr.Literals.ParamLiteral;
 import com.cosyan.db.lang.expr.Literals.StringLiteral;
 import com.cosyan.db.lang.sql.Tokens;
+import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.Ident;
 import com.cosyan.db.model.SeekableTableMeta;
+import com.cosyan.db.model.StringFunctions.StartsWith;
 import com.google.common.collect.ImmutableList;
 
 import lombok.Data;
@@ -40,20 +49,172 @@ public class PredicateHelper {
   public static class VariableEquals {
     private final Ident ident;
     private final Object value;
+
+    /**
+     * The value to look up, parameters of prepared statements are resolved at
+     * the time of the lookup.
+     */
+    public Object getValue() {
+      return value instanceof ParamLiteral ? ((ParamLiteral) value).getValue() : value;
+    }
   }
 
+  @Data
+  public static class VariableRange {
+    private final Ident ident;
+    private final KeyRange range;
+  }
+
+  /**
+   * Returns the most selective equality on an indexed column of the where
+   * clause, or null if there is none or a full scan of the table is estimated
+   * to be cheaper.
+   */
   public static VariableEquals getBestClause(SeekableTableMeta tableMeta, Expression where) throws ModelException {
     ImmutableList<VariableEquals> clauses = PredicateHelper.extractClauses(where);
     VariableEquals clause = null;
+    double selectivity = 1.0;
     for (VariableEquals clauseCandidate : clauses) {
       BasicColumn column = tableMeta.tableMeta().column(clauseCandidate.getIdent());
-      if ((clause == null && column.isIndexed()) || column.isUnique()) {
+      if (!column.isIndexed()) {
+        continue;
+      }
+      double candidateSelectivity = CostModel.selectivity(tableMeta.tableMeta().stats(), column);
+      if (clause == null || candidateSelectivity < selectivity) {
         clause = clauseCandidate;
+        selectivity = candidateSelectivity;
       }
     }
+    if (clause != null && !CostModel.indexCheaper(tableMeta.tableMeta().stats().count(), selectivity)) {
+      return null;
+    }
     return clause;
   }
-  
+
+  /**
+   * Returns the narrowest key range of an indexed column the where clause
+   * restricts the table to. Ranges of the same column are intersected. The
+   * ordering column is preferred, then the most selective range, then the
+   * unique columns.
+   */
+  public static VariableRange getBestRange(
+      SeekableTableMeta tableMeta, Expression where, @Nullable Ident orderBy) throws ModelException {
+    LinkedHashMap<String, VariableRange> ranges = new LinkedHashMap<>();
+    for (VariableRange candidate : extractRanges(where)) {
+      if (!tableMeta.tableMeta().hasColumn(candidate.getIdent())) {
+        continue;
+      }
+      BasicColumn column = tableMeta.tableMeta().column(candidate.getIdent());
+      KeyRange range = keyRange(column.getType(), candidate.getRange());
+      if (!column.isIndexed() || range == null) {
+        continue;
+      }
+      VariableRange previous = ranges.get(column.getName());
+      ranges.put(column.getName(), new VariableRange(candidate.getIdent(),
+          previous == null ? range : previous.getRange().intersect(range)));
+    }
+    VariableRange best = null;
+    for (VariableRange candidate : ranges.values()) {
+      BasicColumn column = tableMeta.tableMeta().column(candidate.getIdent());
+      if (orderBy != null && candidate.getIdent().getString().equals(orderBy.getString())) {
+        return candidate;
+      }
+      if (best == null) {
+        best = candidate;
+        continue;
+      }
+      double selectivity = CostModel.selectivity(tableMeta, candidate);
+      double bestSelectivity = CostModel.selectivity(tableMeta, best);
+      if (selectivity < bestSelectivity || (selectivity == bestSelectivity
+          && column.isUnique() && !tableMeta.tableMeta().column(best.getIdent()).isUnique())) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Converts the bounds of the range to the key type of the column, returns
+   * null if they are not compatible.
+   */
+  private static KeyRange keyRange(DataType<?> type, KeyRange range) {
+    Object from = key(type, range.getFrom());
+    Object to = key(type, range.getTo());
+    if ((range.getFrom() != null && from == null) || (range.getTo() != null && to == null)) {
+      return null;
+    }
+    return new KeyRange(from, range.isFromInclusive(), to, range.isToInclusive(), range.isDescending());
+  }
+
+  private static Object key(DataType<?> type, Object value) {
+    if (value == null) {
+      return null;
+    } else if (type.isLong() && value instanceof Long) {
+      return value;
+    } else if (type == DataTypes.DoubleType && value instanceof Double) {
+      return value;
+    } else if (type == DataTypes.DoubleType && value instanceof Long) {
+      return ((Long) value).doubleValue();
+    } else if (type == DataTypes.StringType && value instanceof String) {
+      return value;
+    } else {
+      return null;
+    }
+  }
+
+  public static ImmutableList<VariableRange> extractRanges(Expression expression) {
+    List<VariableRange> ranges = new ArrayList<>();
+    extractRanges(expression, ranges);
+    return ImmutableList.copyOf(ranges);
+  }
+
+  private static void extractRanges(Expression node, List<VariableRange> ranges) {
+    if (node instanceof BinaryExpression) {
+      BinaryExpression binaryExpression = (BinaryExpression) node;
+      Token token = binaryExpression.getToken();
+      if (token.is(Tokens.AND)) {
+        extractRanges(binaryExpression.getLeft(), ranges);
+        extractRanges(binaryExpression.getRight(), ranges);
+      } else if (token.is(Tokens.LESS) || token.is(Tokens.GREATER) || token.is(Tokens.LEQ) || token.is(Tokens.GEQ)) {
+        boolean inclusive = token.is(Tokens.LEQ) || token.is(Tokens.GEQ);
+        boolean less = token.is(Tokens.LESS) || token.is(Tokens.LEQ);
+        collectRange(binaryExpression.getLeft(), binaryExpression.getRight(), less, inclusive, ranges);
+        // The literal is on the left, e.g. 1 < a.
+        collectRange(binaryExpression.getRight(), binaryExpression.getLeft(), !less, inclusive, ranges);
+      }
+    } else if (node instanceof FuncCallExpression) {
+      FuncCallExpression funcCall = (FuncCallExpression) node;
+      if (funcCall.getIdent().getString().equals(StartsWith.NAME)
+          && isColumn(funcCall.getObject())
+          && funcCall.getArgs().size() == 1
+          && funcCall.getArgs().get(0) instanceof StringLiteral) {
+        String prefix = ((StringLiteral) funcCall.getArgs().get(0)).getValue();
+        ranges.add(new VariableRange(((FuncCallExpression) funcCall.getObject()).getIdent(), KeyRange.prefix(prefix)));
+      }
+    }
+  }
+
+  private static boolean isColumn(Expression expression) {
+    if (!(expression instanceof FuncCallExpression)) {
+      return false;
+    }
+    FuncCallExpression funcCall = (FuncCallExpression) expression;
+    return funcCall.getObject() == null && funcCall.getArgs().isEmpty();
+  }
+
+  private static void collectRange(
+      Expression first, Expression second, boolean less, boolean inclusive, List<VariableRange> ranges) {
+    if (isColumn(first) && second instanceof Literal && !(second instanceof ParamLiteral)) {
+      Object value = ((Literal) second).getValue();
+      if (value == null) {
+        return;
+      }
+      Ident ident = ((FuncCallExpression) first).getIdent();
+      ranges.add(new VariableRange(ident,
+          less ? KeyRange.lessThan(value, inclusive) : KeyRange.greaterThan(value, inclusive)));
+    }
+  }
+
   public static ImmutableList<VariableEquals> extractClauses(Expression expression) {
     List<VariableEquals> predicates = new ArrayList<>();
     extractClauses(expression, predicates);
@@ -83,7 +244,12 @@ public class PredicateHelper {
         lookupsToCollect.add(new VariableEquals(ident, ((StringLiteral) second).getValue()));
       } else if (second instanceof LongLiteral) {
         lookupsToCollect.add(new VariableEquals(ident, ((LongLiteral) second).getValue()));
-      } 
+      } else if (second instanceof ParamLiteral) {
+        ParamLiteral param = (ParamLiteral) second;
+        if (param.getParameters().isBound() && (param.getValue() instanceof String || param.getValue() instanceof Long)) {
+          lookupsToCollect.add(new VariableEquals(ident, second));
+        }
+      }
     }
   }
 }
@@ -18,14 +18,25 @@ package com.cosyan.db.meta;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
 import com.cosyan.db.index.IDIndex;
 import com.cosyan.db.index.LeafTypes.DoubleIndex;
 import com.cosyan.db.index.LeafTypes.LongIndex;
@@ -34,15 +45,19 @@ import com.cosyan.db.index.MultiLeafTries.DoubleMultiIndex;
 import com.cosyan.db.index.MultiLeafTries.LongMultiIndex;
 import com.cosyan.db.index.MultiLeafTries.MultiColumnMultiIndex;
 import com.cosyan.db.index.MultiLeafTries.StringMultiIndex;
+import com.cosyan.db.index.NodeCache;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
-import com.cosyan.db.io.MemoryBufferedSeekableFileStream;
+import com.cosyan.db.io.MappedDataFile;
+import com.cosyan.db.io.PageCache;
+import com.cosyan.db.io.PagedSeekableFileStream;
 import com.cosyan.db.io.RAFBufferedInputStream;
 import com.cosyan.db.io.SeekableInputStream;
 import com.cosyan.db.io.SeekableOutputStream;
 import com.cosyan.db.io.SeekableOutputStream.RAFSeekableOutputStream;
 import com.cosyan.db.io.TableReader.MaterializedTableReader;
 import com.cosyan.db.io.TableReader.SeekableTableReader;
+import com.cosyan.db.io.TableReader.SnapshotTableReader;
 import com.cosyan.db.lang.expr.TableDefinition.ColumnDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.ForeignKeyDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.RuleDefinition;
@@ -70,6 +85,7 @@ import com.cosyan.db.model.Keys.GroupByKey;
 import com.cosyan.db.model.Keys.PrimaryKey;
 import com.cosyan.db.model.Keys.Ref;
 import com.cosyan.db.model.Keys.ReverseForeignKey;
+import com.cosyan.db.model.RefAggregates;
 import com.cosyan.db.model.References.AggRefTableMeta;
 import com.cosyan.db.model.References.ReferencedMultiTableMeta;
 import com.cosyan.db.model.Rule;
@@ -101,10 +117,10 @@ public class MaterializedTable extends DBObject {
   }
 
   private final Config config;
+  private final PageCache pageCache;
+  private final NodeCache nodeCache;
   private final Type type;
-  private final RandomAccessFile raf;
   private final TableStats stats;
-  private final SeekableOutputStream fileWriter;
   private final List<BasicColumn> columns;
   private final Map<String, BooleanRule> rules;
   private final Optional<PrimaryKey> primaryKey;
@@ -114,18 +130,30 @@ public class MaterializedTable extends DBObject {
   private final HashMap<String, TableUniqueIndex> uniqueIndexes;
   private final HashMap<String, TableMultiIndex> multiIndexes;
   private final HashMap<String, MultiColumnTableMultiIndex> extraIndexes;
+  private final HashMap<String, RefAggregates> refAggregates;
   private TableDependencies ruleDependencies;
   private ReverseRuleDependencies reverseRuleDependencies;
   private Optional<ColumnMeta> partitioning;
+  private RandomAccessFile raf;
+  private SeekableOutputStream fileWriter;
   private SeekableInputStream fileReader;
 
-  public MaterializedTable(Config config, String tableName, String owner, Iterable<BasicColumn> columns,
-      Optional<PrimaryKey> primaryKey, Type type) throws IOException, ModelException {
+  private final ConcurrentHashMap<Long, Long> deleteVersions = new ConcurrentHashMap<>();
+  private final TreeMap<Long, List<Long>> deletesByVersion = new TreeMap<>();
+  private final TreeMap<Long, Integer> pinnedVersions = new TreeMap<>();
+  private long committedLength;
+  private long version;
+  private volatile long deleteCount;
+  private boolean replacing;
+
+  public MaterializedTable(Config config, PageCache pageCache, NodeCache nodeCache, String tableName, String owner,
+      Iterable<BasicColumn> columns, Optional<PrimaryKey> primaryKey, Type type) throws IOException, ModelException {
     super(tableName, owner);
     this.config = config;
+    this.pageCache = pageCache;
+    this.nodeCache = nodeCache;
     this.type = type;
-    this.raf = new RandomAccessFile(fileName(), "rw");
-    this.stats = new TableStats(config, tableName);
+    this.stats = new TableStats(config, owner + "." + tableName);
     this.columns = Lists.newArrayList(columns);
     this.primaryKey = primaryKey;
     this.rules = new HashMap<>();
@@ -135,17 +163,180 @@ public class MaterializedTable extends DBObject {
     this.uniqueIndexes = new HashMap<>();
     this.multiIndexes = new HashMap<>();
     this.extraIndexes = new HashMap<>();
+    this.refAggregates = new HashMap<>();
     this.ruleDependencies = new TableDependencies();
     this.reverseRuleDependencies = new ReverseRuleDependencies();
     this.partitioning = Optional.empty();
+    openFile();
+  }
 
+  private void openFile() throws IOException {
+    raf = new RandomAccessFile(fileName(), "rw");
     if (type == Type.LOG) {
       fileWriter = new RAFSeekableOutputStream(raf);
       fileReader = new RAFBufferedInputStream(raf);
     } else {
-      MemoryBufferedSeekableFileStream mbsfs = new MemoryBufferedSeekableFileStream(raf);
-      fileWriter = mbsfs;
-      fileReader = mbsfs;
+      PagedSeekableFileStream psfs = new PagedSeekableFileStream(raf, pageCache);
+      fileWriter = psfs;
+      fileReader = psfs;
+    }
+    committedLength = raf.length();
+  }
+
+  /**
+   * Atomically replaces the table file with <code>newFile</code> and reopens it.
+   * The rename is forced to the disk before returning. Has to be called while
+   * holding the write lock of the table, between an exclusive
+   * <code>beginCommit</code> and <code>publish</code>.
+   */
+  public void replaceFile(File newFile) throws IOException {
+    fileWriter.close();
+    try {
+      Path path = Paths.get(fileName()).toAbsolutePath();
+      Files.move(newFile.toPath(), path,
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      try (FileChannel dir = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+        dir.force(true);
+      }
+      stats.vacuumed();
+    } finally {
+      synchronized (this) {
+        deleteVersions.clear();
+        deletesByVersion.clear();
+      }
+      openFile();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the committed state of the table, or <code>null</code>
+   * if the table file is being replaced. Records appended after the snapshot
+   * are not visible, records deleted after the snapshot still are. The snapshot
+   * has to be released.
+   */
+  synchronized TableSnapshot trySnapshot() {
+    if (replacing) {
+      return null;
+    }
+    pinnedVersions.merge(version, 1, Integer::sum);
+    return new TableSnapshot(this, committedLength, version);
+  }
+
+  /**
+   * Waits until the table file is not being replaced.
+   */
+  synchronized void awaitReplaced() throws IOException {
+    while (replacing) {
+      await();
+    }
+  }
+
+  /**
+   * Waits until every snapshot of the table is released.
+   */
+  synchronized void awaitSnapshots() throws InterruptedException {
+    while (!pinnedVersions.isEmpty()) {
+      wait();
+    }
+  }
+
+  synchronized void release(TableSnapshot snapshot) {
+    pinnedVersions.computeIfPresent(snapshot.getVersion(), (v, cnt) -> cnt > 1 ? cnt - 1 : null);
+    pruneDeletes();
+    notifyAll();
+  }
+
+  /**
+   * Registers the records deleted by a committing transaction and returns the
+   * version the commit has to publish. An <code>exclusive</code> commit waits
+   * until every snapshot is released and blocks new ones until it is published.
+   */
+  public synchronized long beginCommit(Collection<Long> deletedRecords, boolean exclusive)
+      throws IOException {
+    if (exclusive) {
+      replacing = true;
+      try {
+        while (!pinnedVersions.isEmpty()) {
+          await();
+        }
+      } catch (IOException e) {
+        replacing = false;
+        notifyAll();
+        throw e;
+      }
+    }
+    long newVersion = version + 1;
+    for (Long pos : deletedRecords) {
+      deleteVersions.put(pos, newVersion);
+    }
+    if (!deletedRecords.isEmpty()) {
+      deletesByVersion.computeIfAbsent(newVersion, v -> new ArrayList<>()).addAll(deletedRecords);
+    }
+    deleteCount += deletedRecords.size();
+    return newVersion;
+  }
+
+  /**
+   * Makes the committed records up to <code>length</code> visible to the new
+   * snapshots.
+   */
+  public synchronized void publish(long length, long newVersion) {
+    committedLength = length;
+    version = newVersion;
+    replacing = false;
+    pruneDeletes();
+    notifyAll();
+  }
+
+  private void pruneDeletes() {
+    long minVersion = pinnedVersions.isEmpty() ? version : pinnedVersions.firstKey();
+    Map<Long, List<Long>> pruned = deletesByVersion.headMap(minVersion, /* inclusive= */true);
+    for (List<Long> positions : pruned.values()) {
+      for (Long pos : positions) {
+        deleteVersions.remove(pos);
+      }
+    }
+    pruned.clear();
+  }
+
+  private void await() throws IOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  Long deleteVersion(long position) {
+    return deleteVersions.get(position);
+  }
+
+  long deleteCount() {
+    return deleteCount;
+  }
+
+  synchronized long[] deletedSince(long version) {
+    return deletesByVersion.tailMap(version, /* inclusive= */false).values().stream()
+        .flatMap(List::stream)
+        .mapToLong(Long::longValue)
+        .sorted()
+        .toArray();
+  }
+
+  /**
+   * Forces the table file and all the index files to the disk.
+   */
+  public void sync() throws IOException {
+    raf.getChannel().force(false);
+    for (TableUniqueIndex index : uniqueIndexes.values()) {
+      index.sync();
+    }
+    for (TableMultiIndex index : multiIndexes.values()) {
+      index.sync();
+    }
+    for (TableMultiIndex index : extraIndexes.values()) {
+      index.sync();
     }
   }
 
@@ -172,6 +363,11 @@ public class MaterializedTable extends DBObject {
 
   public void loadStats() throws IOException {
     stats.load();
+    if (!stats.hasFileStats()) {
+      // Stats saved without the table file counters, these are counted once.
+      TableStat stat = scanFile();
+      stats.initFileStats(stat.getRecords(), stat.getDeletedRecords(), stat.getDeletedBytes());
+    }
   }
 
   public void saveStats() throws IOException {
@@ -264,6 +460,13 @@ public class MaterializedTable extends DBObject {
     return Collections.unmodifiableMap(extraIndexes);
   }
 
+  /**
+   * The aggregates of the views of other tables over the records of this table.
+   */
+  public Map<String, RefAggregates> refAggregates() {
+    return Collections.unmodifiableMap(refAggregates);
+  }
+
   public Map<String, IndexReader> allIndexReaders() {
     return ImmutableMap.<String, IndexReader>builder().putAll(uniqueIndexes).putAll(multiIndexes).putAll(extraIndexes).build();
   }
@@ -304,7 +507,13 @@ public class MaterializedTable extends DBObject {
           new KeyValueTableMeta(derivedTable, TableMeta.wholeTableKeys));
       // Columns have aggregations, recompile with an AggrTable.
       TableColumns tableColumns = SelectStatement.Select.tableColumns(aggrTable, ref.getSelect().getColumns());
-      return new AggRefTableMeta(aggrTable, tableColumns.getColumns());
+      int maxKeys;
+      try {
+        maxKeys = config.getInt(Config.REF_AGGREGATES_CACHE_SIZE, 10000);
+      } catch (ConfigException e) {
+        throw new ModelException(e.getMessage(), ref.getName());
+      }
+      return new AggRefTableMeta(aggrTable, tableColumns.getColumns(), RefAggregates.create(ref, srcTableMeta, maxKeys));
     } else if (tableMeta instanceof SeekableTableMeta) {
       return View.createView(ref, view, meta(), owner);
     } else {
@@ -313,20 +522,45 @@ public class MaterializedTable extends DBObject {
     }
   }
 
-  public void insert(long insertedLines) {
-    stats.insert(insertedLines);
-  }
-
-  public void delete(long deletedLines) {
-    stats.delete(deletedLines);
-  }
-
   public TableStats stats() {
     return stats;
   }
 
-  public TableStat stat() throws IOException {
-    return new TableStat(raf.length());
+  /**
+   * Returns the number of live and deleted records in the table file. The
+   * counters are maintained by the commits, the file is not read.
+   */
+  public TableStat stat() {
+    long fileSize;
+    synchronized (this) {
+      fileSize = committedLength;
+    }
+    return new TableStat(fileSize, stats.count(), stats.deletedCount(), stats.deletedBytes());
+  }
+
+  private TableStat scanFile() throws IOException {
+    long records = 0L;
+    long deletedRecords = 0L;
+    long deletedBytes = 0L;
+    MappedDataFile file = new MappedDataFile(fileName());
+    try {
+      // Only the record headers are read.
+      while (file.position() < file.length()) {
+        long position = file.position();
+        byte desc = file.readByte();
+        int recordLength = file.readInt() + 9;
+        if (desc == 1) {
+          records++;
+        } else {
+          deletedRecords++;
+          deletedBytes += recordLength;
+        }
+        file.seek(position + recordLength);
+      }
+      return new TableStat(file.length(), records, deletedRecords, deletedBytes);
+    } finally {
+      file.close();
+    }
   }
 
   public ForeignKey createForeignKey(ForeignKeyDefinition foreignKeyDefinition, MaterializedTable refTable)
@@ -389,16 +623,40 @@ public class MaterializedTable extends DBObject {
   public void addColumn(BasicColumn column) {
     assertName(column.getName());
     columns.add(column);
+    reCompileRefAggregates();
+  }
+
+  public void deleteColumn(BasicColumn column) {
+    column.setDeleted(true);
+    reCompileRefAggregates();
+  }
+
+  private void reCompileRefAggregates() {
+    for (RefAggregates aggregates : refAggregates.values()) {
+      aggregates.reCompile();
+    }
   }
 
   public void addRef(TableRef ref) {
     assertName(ref.getName());    
     refs.put(ref.getName(), ref);
+    if (ref.getTableMeta() instanceof AggRefTableMeta) {
+      RefAggregates aggregates = ((AggRefTableMeta) ref.getTableMeta()).getRefAggregates();
+      if (aggregates != null) {
+        aggregates.table().refAggregates.put(fullName() + "." + ref.getName(), aggregates);
+      }
+    }
   }
 
   public BooleanRule createRule(RuleDefinition ruleDefinition) throws ModelException {
     checkName(ruleDefinition.getName());
-    return ruleDefinition.compile(meta());
+    boolean compiled;
+    try {
+      compiled = config.getBool(Config.COMPILED_RULES, false);
+    } catch (ConfigException e) {
+      throw new ModelException(e.getMessage(), ruleDefinition.getName());
+    }
+    return ruleDefinition.compile(meta(), compiled);
   }
 
   public void addRule(BooleanRule booleanRule) {
@@ -454,7 +712,13 @@ public class MaterializedTable extends DBObject {
 
   public void dropRef(Ident ident) throws ModelException {
     assert refs.containsKey(ident.getString());
-    refs.remove(ident.getString());
+    TableRef ref = refs.remove(ident.getString());
+    if (ref.getTableMeta() instanceof AggRefTableMeta) {
+      RefAggregates aggregates = ((AggRefTableMeta) ref.getTableMeta()).getRefAggregates();
+      if (aggregates != null) {
+        aggregates.table().refAggregates.remove(fullName() + "." + ref.getName());
+      }
+    }
     for (Rule rule : rules().values()) {
       try {
         rule.reCompile();
@@ -478,11 +742,11 @@ public class MaterializedTable extends DBObject {
     String path = config.indexDir() + File.separator + fullName() + "." + indexName;
     if (!uniqueIndexes.containsKey(indexName)) {
       if (column.getType() == DataTypes.StringType) {
-        uniqueIndexes.put(indexName, new StringTableIndex(new StringIndex(path)));
+        uniqueIndexes.put(indexName, new StringTableIndex(new StringIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.LongType) {
-        uniqueIndexes.put(indexName, new LongTableIndex(new LongIndex(path)));
+        uniqueIndexes.put(indexName, new LongTableIndex(new LongIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.DoubleType) {
-        uniqueIndexes.put(indexName, new DoubleTableIndex(new DoubleIndex(path)));
+        uniqueIndexes.put(indexName, new DoubleTableIndex(new DoubleIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.IDType) {
         uniqueIndexes.put(indexName, new IDTableIndex(new IDIndex(path)));
       }
@@ -495,11 +759,11 @@ public class MaterializedTable extends DBObject {
     String path = config.indexDir() + File.separator + fullName() + "." + indexName;
     if (!multiIndexes.containsKey(indexName)) {
       if (column.getType() == DataTypes.StringType) {
-        multiIndexes.put(indexName, new StringTableMultiIndex(new StringMultiIndex(path)));
+        multiIndexes.put(indexName, new StringTableMultiIndex(new StringMultiIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.DoubleType) {
-        multiIndexes.put(indexName, new DoubleTableMultiIndex(new DoubleMultiIndex(path)));
+        multiIndexes.put(indexName, new DoubleTableMultiIndex(new DoubleMultiIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.LongType || column.getType() == DataTypes.IDType) {
-        multiIndexes.put(indexName, new LongTableMultiIndex(new LongMultiIndex(path)));
+        multiIndexes.put(indexName, new LongTableMultiIndex(new LongMultiIndex(path, nodeCache)));
       }
     }
     return multiIndexes.get(indexName);
@@ -523,7 +787,7 @@ public class MaterializedTable extends DBObject {
     String path = config.indexDir() + File.separator + fullName() + "." + indexName;
     if (!extraIndexes.containsKey(indexName)) {
       extraIndexes.put(indexName, new MultiColumnTableMultiIndex(
-          groupByKey, new MultiColumnMultiIndex(path, groupByKey.columnTypes())));
+          groupByKey, new MultiColumnMultiIndex(path, groupByKey.columnTypes(), nodeCache)));
     }
     return extraIndexes.get(indexName);
   }
@@ -716,8 +980,9 @@ public class MaterializedTable extends DBObject {
         dropIndex(column);
       }
     }
-    raf.close();
+    fileWriter.close();
     new File(fileName()).delete();
+    stats.drop();
   }
 
   protected SeekableTableReader createReader() throws IOException {
@@ -728,4 +993,13 @@ public class MaterializedTable extends DBObject {
         allColumns(),
         allIndexReaders());
   }
+
+  protected SeekableTableReader createSnapshotReader(TableSnapshot snapshot) throws IOException {
+    try {
+      return new SnapshotTableReader(snapshot);
+    } catch (IOException e) {
+      snapshot.release();
+      throw e;
+    }
+  }
 }
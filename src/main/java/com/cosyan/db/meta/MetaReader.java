@@ -24,6 +24,9 @@ import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.index.NodeCache.NodeCacheStat;
+import com.cosyan.db.io.PageCache.PageCacheStat;
+import com.cosyan.db.lock.LockManager.LockStat;
 import com.cosyan.db.meta.Grants.GrantException;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.meta.MetaRepo.RuleException;
@@ -42,6 +45,12 @@ public interface MetaReader extends TableProvider {
 
   ImmutableMap<String, ByteMultiTrieStat> multiIndexStats() throws IOException;
 
+  PageCacheStat pageCacheStats();
+
+  NodeCacheStat indexCacheStats();
+
+  ImmutableMap<String, LockStat> lockStats();
+
   JSONArray collectUsers();
 
   List<MaterializedTable> getTables(AuthToken authToken);
@@ -49,4 +58,10 @@ public interface MetaReader extends TableProvider {
   void checkAccess(MetaResource resource, AuthToken authToken) throws GrantException;
 
   IndexReader getIndex(String id) throws RuleException;
+
+  /**
+   * Changes every time the meta repo is locked for writing. Compiled statements
+   * are only valid as long as the version does not change.
+   */
+  long metaVersion();
 }
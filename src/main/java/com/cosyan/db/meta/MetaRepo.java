@@ -15,6 +15,8 @@
  */
 package com.cosyan.db.meta;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -25,6 +27,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -36,18 +44,27 @@ import org.json.JSONObject;
 
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.NodeCache;
+import com.cosyan.db.index.NodeCache.NodeCacheStat;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.MetaSerializer;
+import com.cosyan.db.io.PageCache;
+import com.cosyan.db.io.PageCache.PageCacheStat;
+import com.cosyan.db.io.Parallelism;
 import com.cosyan.db.io.TableReader.SeekableTableReader;
 import com.cosyan.db.io.TableWriter;
+import com.cosyan.db.io.WorkMemory;
 import com.cosyan.db.lang.expr.Expression;
 import com.cosyan.db.lang.sql.Tokens.Loc;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lock.LockManager;
+import com.cosyan.db.lock.LockManager.LockStat;
 import com.cosyan.db.logging.MetaJournal.DBException;
+import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.Grants.GrantException;
 import com.cosyan.db.meta.Grants.GrantToken;
 import com.cosyan.db.meta.Grants.Method;
@@ -84,6 +101,15 @@ public class MetaRepo {
 
   private final LockManager lockManager;
   private final MetaSerializer metaSerializer;
+  private final PageCache pageCache;
+  private final NodeCache nodeCache;
+  private final int bloomFilterBitsPerKey;
+  private final WorkMemory workMemory;
+  private final Parallelism parallelism;
+  private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+  // Snapshots are pinned under the read lock, commits publish their tables under the write lock.
+  private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+  private final AtomicLong metaVersion = new AtomicLong();
 
   public MetaRepo(
       Config config,
@@ -91,10 +117,23 @@ public class MetaRepo {
       Grants grants,
       ILexer lexer,
       IParser parser)
-      throws IOException, DBException {
+      throws IOException, DBException, ConfigException {
     this.config = config;
     this.lockManager = lockManager;
     this.metaSerializer = new MetaSerializer(lexer, parser);
+    int pageSize = config.getInt(Config.PAGE_SIZE_KB, 64) * 1024;
+    this.pageCache = new PageCache(
+        pageSize,
+        Math.max(1, (int) (config.getInt(Config.PAGE_CACHE_SIZE_MB, 256) * 1024L * 1024L / pageSize)));
+    this.nodeCache = new NodeCache(config.getInt(Config.INDEX_CACHE_SIZE_MB, 256) * 1024L * 1024L);
+    this.bloomFilterBitsPerKey = config.getInt(Config.INDEX_BLOOM_FILTER_BITS_PER_KEY, 10);
+    this.workMemory = new WorkMemory(
+        new File(config.tmpDir()),
+        config.getInt(Config.SORT_MEMORY_MB, 64) * 1024L * 1024L,
+        config.getInt(Config.JOIN_MEMORY_MB, 64) * 1024L * 1024L);
+    this.parallelism = new Parallelism(
+        new ForkJoinPool(config.getInt(Config.DB_NUM_THREADS, Runtime.getRuntime().availableProcessors())),
+        config.getInt(Config.PARALLEL_SPLIT_KB, 1024) * 1024L);
     this.tables = new HashMap<>();
     this.views = new HashMap<>();
     this.grants = grants;
@@ -105,6 +144,9 @@ public class MetaRepo {
     Files.createDirectories(Paths.get(config.metaDir()));
     Files.createDirectories(Paths.get(config.metaTableDir()));
     Files.createDirectories(Paths.get(config.metaViewDir()));
+    // Sort runs left behind by a crash are not needed anymore.
+    FileUtils.deleteDirectory(new File(config.tmpDir()));
+    Files.createDirectories(Paths.get(config.tmpDir()));
 
     readTables();
   }
@@ -129,16 +171,92 @@ public class MetaRepo {
     return allTables().stream().collect(Collectors.toMap(t -> t.owner() + "." + t.name(), t -> t));
   }
 
-  public void init() throws IOException {
+  public void init(TransactionJournal journal) throws IOException, DBException {
     for (MaterializedTable tableMeta : allTables()) {
       tableMeta.loadStats();
     }
+    recover(journal);
+  }
+
+  /**
+   * Replays the changes logged in the journal since the last checkpoint, then
+   * makes a new checkpoint. Changes of dropped tables are skipped. The files of
+   * vacuums which were not logged are deleted.
+   */
+  private void recover(TransactionJournal journal) throws IOException, DBException {
+    for (byte[] changes : journal.redoTail()) {
+      redo(changes);
+    }
+    File[] vacuumFiles = new File(config.tableDir()).listFiles(
+        (dir, name) -> name.endsWith(TableWriter.VACUUM_SUFFIX));
+    if (vacuumFiles != null) {
+      for (File file : vacuumFiles) {
+        Files.delete(file.toPath());
+      }
+    }
+    checkpoint(journal);
+  }
+
+  /**
+   * Applies the changes of a REDO record. Applying the same changes multiple
+   * times is idempotent. Changes of dropped tables are skipped.
+   */
+  public void redo(byte[] changes) throws IOException, DBException {
+    Map<String, MaterializedTable> tables = tablesWithNames();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(changes));
+    int numTables = in.readInt();
+    for (int i = 0; i < numTables; i++) {
+      MaterializedTable tableMeta = tables.get(in.readUTF());
+      if (tableMeta == null) {
+        in.readLong();
+        in.skipBytes(in.readInt());
+        in.skipBytes(in.readInt() * 8);
+        in.readUTF();
+        continue;
+      }
+      Resources resources = resources(
+          MetaResources.tableMeta(tableMeta).merge(tableMeta.ruleDependenciesReadResources()),
+          /* authToken= */null);
+      try {
+        resources.writer(tableMeta.fullName()).redo(in, resources);
+      } catch (RuleException e) {
+        resources.rollback();
+        throw new DBException(e);
+      }
+      resources.commit();
+    }
+  }
+
+  /**
+   * Has to be held while a transaction logs and applies its changes, so that a
+   * checkpoint never misses changes which are logged but not yet applied.
+   */
+  public Lock commitLock() {
+    return checkpointLock.readLock();
+  }
+
+  /**
+   * Forces every table, index and stat file to the disk and truncates the journal.
+   * The caller has to hold the meta repo read or write lock.
+   */
+  public void checkpoint(TransactionJournal journal) throws IOException, DBException {
+    checkpointLock.writeLock().lock();
+    try {
+      for (MaterializedTable tableMeta : allTables()) {
+        tableMeta.sync();
+        tableMeta.saveStats();
+      }
+      journal.checkpoint(0L);
+    } finally {
+      checkpointLock.writeLock().unlock();
+    }
   }
 
   public void shutdown() throws IOException {
     for (MaterializedTable tableMeta : allTables()) {
       tableMeta.saveStats();
     }
+    parallelism.shutdown();
   }
 
   public void writeTables() throws IOException {
@@ -182,7 +300,7 @@ public class MetaRepo {
             Charset.defaultCharset()));
         viewJsons.add(json);
       }
-      newTables = metaSerializer.loadTables(config, tableJsons);
+      newTables = metaSerializer.loadTables(config, pageCache, nodeCache, tableJsons);
       metaSerializer.loadViews(config, viewJsons, new TableProvider() {
 
         @Override
@@ -201,6 +319,7 @@ public class MetaRepo {
     } catch (IOException | ParserException | ModelException | JSONException e) {
       throw new DBException(e);
     }
+    Map<String, MaterializedTable> oldTables = tablesWithNames();
     this.tables.clear();
     this.views.clear();
     this.tables.putAll(newTables);
@@ -208,6 +327,10 @@ public class MetaRepo {
     lockManager.syncLocks(allTables());
     try {
       for (MaterializedTable table : allTables()) {
+        MaterializedTable oldTable = oldTables.get(table.fullName());
+        if (oldTable != null) {
+          table.stats().copy(oldTable.stats());
+        }
         table.syncIndex();
       }
     } catch (IOException e) {
@@ -284,27 +407,36 @@ public class MetaRepo {
         .collect(Collectors.toList());
   }
 
-  public ImmutableMultimap<String, IndexReader> collectForeignIndexes(MaterializedTable table) {
+  public ImmutableMultimap<String, IndexReader> collectForeignIndexes(MaterializedTable table) throws IOException {
     ImmutableMultimap.Builder<String, IndexReader> builder = ImmutableMultimap.builder();
     for (ForeignKey foreignKey : table.foreignKeys().values()) {
-      builder.put(
-          foreignKey.getColumn().getName(),
-          foreignKey.getRefTable().uniqueIndexes().get(foreignKey.getRefColumn().getName()));
+      TableUniqueIndex index = foreignKey.getRefTable().uniqueIndexes().get(foreignKey.getRefColumn().getName());
+      if (bloomFilterBitsPerKey > 0) {
+        index.enableBloomFilter(bloomFilterBitsPerKey);
+      }
+      builder.put(foreignKey.getColumn().getName(), index);
     }
     return builder.build();
   }
 
-  public ImmutableMultimap<String, IndexReader> collectReverseForeignIndexes(MaterializedTable table) {
+  public ImmutableMultimap<String, IndexReader> collectReverseForeignIndexes(MaterializedTable table)
+      throws IOException {
     ImmutableMultimap.Builder<String, IndexReader> builder = ImmutableMultimap.builder();
     for (ReverseForeignKey reverseForeignKey : table.reverseForeignKeys().values()) {
       if (reverseForeignKey.getRefColumn().isUnique()) {
-        builder.put(
-            reverseForeignKey.getColumn().getName(),
-            reverseForeignKey.getRefTable().uniqueIndexes().get(reverseForeignKey.getRefColumn().getName()));
+        TableUniqueIndex index = reverseForeignKey.getRefTable().uniqueIndexes()
+            .get(reverseForeignKey.getRefColumn().getName());
+        if (bloomFilterBitsPerKey > 0) {
+          index.enableBloomFilter(bloomFilterBitsPerKey);
+        }
+        builder.put(reverseForeignKey.getColumn().getName(), index);
       } else {
-        builder.put(
-            reverseForeignKey.getColumn().getName(),
-            reverseForeignKey.getRefTable().multiIndexes().get(reverseForeignKey.getRefColumn().getName()));
+        TableMultiIndex index = reverseForeignKey.getRefTable().multiIndexes()
+            .get(reverseForeignKey.getRefColumn().getName());
+        if (bloomFilterBitsPerKey > 0) {
+          index.enableBloomFilter(bloomFilterBitsPerKey);
+        }
+        builder.put(reverseForeignKey.getColumn().getName(), index);
       }
     }
     return builder.build();
@@ -373,6 +505,7 @@ public class MetaRepo {
             tableMeta.uniqueIndexes(),
             tableMeta.multiIndexes(),
             tableMeta.extraIndexes(),
+            tableMeta.refAggregates(),
             resource.isForeignIndexes() ? collectForeignIndexes(tableMeta) : ImmutableMultimap.of(),
             resource.isReverseForeignIndexes() ? collectReverseForeignIndexes(tableMeta) : ImmutableMultimap.of(),
             ImmutableMap.copyOf(tableMeta.rules()),
@@ -388,7 +521,88 @@ public class MetaRepo {
         metas.put(meta.fullName(), meta);
       }
     }
-    return new Resources(readers.build(), writers.build(), metas.build());
+    return new Resources(
+        readers.build(), writers.build(), metas.build(), workMemory, parallelism, snapshotLock.writeLock());
+  }
+
+  /**
+   * Creates snapshot readers for read-only resources, which need no table locks.
+   * The snapshots of all the tables are pinned at once, so they see the changes
+   * of a transaction either in all or in none of the tables. The snapshots have
+   * to be released.
+   */
+  public Resources snapshotResources(MetaResources metaResources) throws IOException {
+    TreeMap<String, MaterializedTable> tables = new TreeMap<>();
+    for (TableMetaResource resource : metaResources.tables()) {
+      tables.put(resource.getTable().fullName(), resource.getTable());
+    }
+    List<TableSnapshot> snapshots = new ArrayList<>();
+    while (true) {
+      MaterializedTable replacing = null;
+      snapshotLock.readLock().lock();
+      try {
+        for (MaterializedTable tableMeta : tables.values()) {
+          TableSnapshot snapshot = tableMeta.trySnapshot();
+          if (snapshot == null) {
+            replacing = tableMeta;
+            break;
+          }
+          snapshots.add(snapshot);
+        }
+      } finally {
+        snapshotLock.readLock().unlock();
+      }
+      if (replacing == null) {
+        break;
+      }
+      // Never waits for a table file swap while holding the lock, the swap has to publish.
+      for (TableSnapshot snapshot : snapshots) {
+        snapshot.release();
+      }
+      snapshots.clear();
+      replacing.awaitReplaced();
+    }
+    ImmutableMap.Builder<String, SeekableTableReader> readers = ImmutableMap.builder();
+    for (int i = 0; i < snapshots.size(); i++) {
+      TableSnapshot snapshot = snapshots.get(i);
+      try {
+        readers.put(snapshot.getTable().fullName(), snapshot.getTable().createSnapshotReader(snapshot));
+      } catch (IOException e) {
+        for (TableSnapshot unused : snapshots.subList(i + 1, snapshots.size())) {
+          unused.release();
+        }
+        snapshotResources(readers.build()).release();
+        throw e;
+      }
+    }
+    return snapshotResources(readers.build());
+  }
+
+  private Resources snapshotResources(ImmutableMap<String, SeekableTableReader> readers) {
+    return new Resources(
+        readers, ImmutableMap.of(), ImmutableMap.of(), workMemory, parallelism, snapshotLock.writeLock());
+  }
+
+  /**
+   * Waits until the snapshots of every table are released. Snapshot readers are
+   * pinned under the meta repo read lock but run without it, so writers of the
+   * meta repo have to wait for them before changing the tables.
+   */
+  private void awaitSnapshots() {
+    boolean interrupted = false;
+    for (MaterializedTable tableMeta : allTables()) {
+      while (true) {
+        try {
+          tableMeta.awaitSnapshots();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   public static class ModelException extends Exception {
@@ -446,6 +660,11 @@ public class MetaRepo {
     lockManager.metaRepoReadLock();
     return new MetaReader() {
 
+      @Override
+      public long metaVersion() {
+        return metaVersion.get();
+      }
+
       @Override
       public MaterializedTable table(TableWithOwner table) throws ModelException {
         return MetaRepo.table(table, tables);
@@ -489,6 +708,21 @@ public class MetaRepo {
         return builder.build();
       }
 
+      @Override
+      public PageCacheStat pageCacheStats() {
+        return pageCache.stats();
+      }
+
+      @Override
+      public NodeCacheStat indexCacheStats() {
+        return nodeCache.stats();
+      }
+
+      @Override
+      public ImmutableMap<String, LockStat> lockStats() {
+        return lockManager.stats();
+      }
+
       @Override
       public JSONArray collectUsers() {
         return grants.toJSON();
@@ -519,6 +753,9 @@ public class MetaRepo {
 
   public MetaWriter metaRepoWriteLock() {
     lockManager.metaRepoWriteLock();
+    awaitSnapshots();
+    // Statements compiled before this point are compiled again.
+    metaVersion.incrementAndGet();
     return new MetaWriter() {
 
       @Override
@@ -599,6 +836,16 @@ public class MetaRepo {
         return config;
       }
 
+      @Override
+      public PageCache pageCache() {
+        return pageCache;
+      }
+
+      @Override
+      public NodeCache nodeCache() {
+        return nodeCache;
+      }
+
       @Override
       public boolean hasTable(String tableName, String owner) {
         return MetaRepo.this.hasTable(tableName, owner);
@@ -651,8 +898,8 @@ public class MetaRepo {
     };
   }
 
-  public boolean tryLock(MetaResources metaResources) {
-    return lockManager.tryLock(metaResources);
+  public boolean lock(MetaResources metaResources, AtomicBoolean cancelled, long checkMs) {
+    return lockManager.lock(metaResources, cancelled, checkMs);
   }
 
   public void unlock(MetaResources metaResources) {
@@ -20,6 +20,8 @@ import java.util.List;
 
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.index.NodeCache;
+import com.cosyan.db.io.PageCache;
 import com.cosyan.db.logging.MetaJournal.DBException;
 import com.cosyan.db.meta.Grants.GrantException;
 import com.cosyan.db.meta.Grants.GrantToken;
@@ -52,6 +54,10 @@ public interface MetaWriter extends TableProvider {
 
   Config config();
 
+  PageCache pageCache();
+
+  NodeCache nodeCache();
+
   boolean hasTable(String tableName, String owner);
 
   void createGrant(GrantToken grant, AuthToken authToken) throws GrantException;
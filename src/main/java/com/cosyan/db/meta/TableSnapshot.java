@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.meta;
+
+import java.util.Arrays;
+
+import lombok.Data;
+
+/**
+ * The committed state of a table pinned by a read-only transaction: the length
+ * of the table file and the version of the deleted records.
+ */
+@Data
+public class TableSnapshot {
+  private final MaterializedTable table;
+  private final long length;
+  private final long version;
+
+  /**
+   * Whether the record at <code>position</code> was deleted by a transaction
+   * committed after the snapshot.
+   */
+  public boolean deletedAfter(long position) {
+    Long deleteVersion = table.deleteVersion(position);
+    return deleteVersion != null && deleteVersion > version;
+  }
+
+  /**
+   * The positions of the records visible in the snapshot but deleted since.
+   */
+  public long[] deletedAfter() {
+    return Arrays.stream(table.deletedSince(version)).filter(pos -> pos < length).toArray();
+  }
+
+  /**
+   * The number of records registered as deleted so far, it changes before the
+   * deletes of a commit reach the indexes.
+   */
+  public long deleteCount() {
+    return table.deleteCount();
+  }
+
+  public void release() {
+    table.release(this);
+  }
+}
@@ -21,4 +21,15 @@ import lombok.Data;
 public class TableStat {
 
   private final long fileSize;
+  private final long records;
+  private final long deletedRecords;
+  private final long deletedBytes;
+
+  /**
+   * Ratio of the deleted records to all the records in the table file.
+   */
+  public double deletedRatio() {
+    long all = records + deletedRecords;
+    return all == 0 ? 0.0 : (double) deletedRecords / all;
+  }
 }
@@ -19,17 +19,23 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.cosyan.db.io.RecordBatch;
 import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.meta.MetaRepo.RuleException;
 import com.cosyan.db.model.Aggregators.Aggregator;
 import com.cosyan.db.model.ColumnMeta.AggrColumn;
 import com.cosyan.db.model.ColumnMeta.IndexColumn;
 import com.cosyan.db.model.DerivedTables.KeyValueTableMeta;
 import com.cosyan.db.model.TableMeta.IterableTableMeta;
+import com.cosyan.db.model.Vectors.Vector;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
@@ -127,6 +133,116 @@ public abstract class AggrTables extends IterableTableMeta {
       return aggrValues;
     }
 
+    /**
+     * Whether the key and aggregated values can be computed from different
+     * threads, i.e. they do not read other tables through the shared readers of
+     * the transaction.
+     */
+    private boolean parallel() {
+      for (ColumnMeta column : sourceTable.getKeyColumns().values()) {
+        if (!column.tableDependencies().getDeps().isEmpty()) {
+          return false;
+        }
+      }
+      for (AggrColumn column : aggrColumns) {
+        if (!column.getBaseColumn().tableDependencies().getDeps().isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void aggregateInto(
+        IterableTableReader reader,
+        HashMap<ArrayList<Object>, Aggregator<?, ?>[]> aggregatedValues,
+        AtomicBoolean cancelled,
+        Resources resources,
+        TableContext context) throws IOException {
+      ImmutableList<ColumnMeta> keyColumns = sourceTable.getKeyColumns().values().asList();
+      ArrayList<Object> keyValues = new ArrayList<>(keyColumns.size());
+      Vector[] keyVectors = new Vector[keyColumns.size()];
+      Vector[] innerVectors = new Vector[aggrColumns.size()];
+      RecordBatch batch;
+      while (!cancelled.get() && (batch = reader.nextBatch()) != null) {
+        for (int k = 0; k < keyVectors.length; k++) {
+          keyVectors[k] = keyColumns.get(k).vector(batch, resources, context);
+        }
+        for (int j = 0; j < innerVectors.length; j++) {
+          innerVectors[j] = aggrColumns.get(j).getBaseColumn().vector(batch, resources, context);
+        }
+        for (int r = 0; r < batch.size(); r++) {
+          keyValues.clear();
+          for (Vector keyVector : keyVectors) {
+            keyValues.add(keyVector.get(r));
+          }
+          Aggregator<?, ?>[] aggrValues = aggregatedValues.get(keyValues);
+          if (aggrValues == null) {
+            aggrValues = new Aggregator[aggrColumns.size()];
+            int i = 0;
+            for (AggrColumn column : aggrColumns) {
+              aggrValues[i++] = column.getFunction().create();
+            }
+            // The key list is reused for the lookups, only new groups get a copy.
+            aggregatedValues.put(new ArrayList<>(keyValues), aggrValues);
+          }
+          for (int j = 0; j < innerVectors.length; j++) {
+            aggrValues[j].add(innerVectors[j].get(r));
+          }
+        }
+      }
+    }
+
+    /**
+     * Aggregates the ranges of the source table on the thread pool and merges
+     * the partial aggregations in the order of the ranges. Returns
+     * <code>null</code> if the source table cannot be split.
+     */
+    private HashMap<ArrayList<Object>, Aggregator<?, ?>[]> aggregateParallel(
+        AtomicBoolean cancelled, Resources resources, TableContext context) throws IOException {
+      ImmutableList<IterableTableReader> readers = sourceTable.splitReaders(resources, context);
+      if (readers == null) {
+        return null;
+      }
+      try {
+        if (readers.size() == 1) {
+          HashMap<ArrayList<Object>, Aggregator<?, ?>[]> aggregatedValues = new HashMap<>();
+          aggregateInto(readers.get(0), aggregatedValues, cancelled, resources, context);
+          return aggregatedValues;
+        }
+        List<Callable<HashMap<ArrayList<Object>, Aggregator<?, ?>[]>>> tasks = new ArrayList<>();
+        for (IterableTableReader reader : readers) {
+          tasks.add(() -> {
+            HashMap<ArrayList<Object>, Aggregator<?, ?>[]> partial = new HashMap<>();
+            aggregateInto(reader, partial, cancelled, resources, context);
+            return partial;
+          });
+        }
+        List<HashMap<ArrayList<Object>, Aggregator<?, ?>[]>> partials;
+        try {
+          partials = resources.parallelism().invokeAll(tasks);
+        } catch (RuleException e) {
+          // Aggregations do not check rules.
+          throw new IllegalStateException(e);
+        }
+        HashMap<ArrayList<Object>, Aggregator<?, ?>[]> aggregatedValues = partials.get(0);
+        for (HashMap<ArrayList<Object>, Aggregator<?, ?>[]> partial : partials.subList(1, partials.size())) {
+          for (Map.Entry<ArrayList<Object>, Aggregator<?, ?>[]> entry : partial.entrySet()) {
+            Aggregator<?, ?>[] aggrValues = aggregatedValues.putIfAbsent(entry.getKey(), entry.getValue());
+            if (aggrValues != null) {
+              for (int i = 0; i < aggrValues.length; i++) {
+                Aggregator.merge(aggrValues[i], entry.getValue()[i]);
+              }
+            }
+          }
+        }
+        return aggregatedValues;
+      } finally {
+        for (IterableTableReader reader : readers) {
+          reader.close();
+        }
+      }
+    }
+
     public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
       return new AggrTableReader(sourceTable.reader(resources, context)) {
         @Override
@@ -144,35 +260,14 @@ public abstract class AggrTables extends IterableTableMeta {
           return values;
         }
 
-        private ArrayList<Object> getKeyValues(Object[] sourceValues, Resources resources, TableContext context) throws IOException {
-          ArrayList<Object> keys = new ArrayList<>(sourceTable.getKeyColumns().size());
-          for (Map.Entry<String, ? extends ColumnMeta> entry : sourceTable.getKeyColumns().entrySet()) {
-            keys.add(entry.getValue().value(sourceValues, resources, context));
-          }
-          return keys;
-        }
-
         private void aggregate(Resources resources, TableContext context) throws IOException {
-          HashMap<ArrayList<Object>, Aggregator<?, ?>[]> aggregatedValues = new HashMap<>();
-          while (!cancelled.get()) {
-            Object[] sourceValues = sourceReader.next();
-            if (sourceValues == null) {
-              break;
-            }
-            ArrayList<Object> keyValues = getKeyValues(sourceValues, resources, context);
-            if (!aggregatedValues.containsKey(keyValues)) {
-              Aggregator<?, ?>[] aggrValues = new Aggregator[aggrColumns.size()];
-              int i = 0;
-              for (AggrColumn column : aggrColumns) {
-                aggrValues[i++] = column.getFunction().create();
-              }
-              aggregatedValues.put(keyValues, aggrValues);
-            }
-            Aggregator<?, ?>[] aggrValues = aggregatedValues.get(keyValues);
-            int i = 0;
-            for (AggrColumn column : aggrColumns) {
-              aggrValues[i++].add(column.getInnerValue(sourceValues, resources, context));
-            }
+          HashMap<ArrayList<Object>, Aggregator<?, ?>[]> aggregatedValues = null;
+          if (parallel()) {
+            aggregatedValues = aggregateParallel(cancelled, resources, context);
+          }
+          if (aggregatedValues == null) {
+            aggregatedValues = new HashMap<>();
+            aggregateInto(sourceReader, aggregatedValues, cancelled, resources, context);
           }
           final Iterator<Entry<ArrayList<Object>, Aggregator<?, ?>[]>> innerIterator = aggregatedValues.entrySet()
               .iterator();
@@ -244,14 +339,11 @@ public abstract class AggrTables extends IterableTableMeta {
           for (AggrColumn column : aggrColumns) {
             aggrValues[i++] = column.getFunction().create();
           }
-          while (!cancelled.get()) {
-            Object[] sourceValues = sourceReader.next();
-            if (sourceValues == null) {
-              break;
-            }
+          RecordBatch batch;
+          while (!cancelled.get() && (batch = sourceReader.nextBatch()) != null) {
             i = 1;
             for (AggrColumn column : aggrColumns) {
-              aggrValues[i++].add(column.getInnerValue(sourceValues, resources, context));
+              aggrValues[i++].addAll(column.getBaseColumn().vector(batch, resources, context));
             }
           }
           Object[] result = new Object[size()];
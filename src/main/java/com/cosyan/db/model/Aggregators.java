@@ -24,6 +24,7 @@ import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.BuiltinFunctions.AggrFunction;
 import com.cosyan.db.model.BuiltinFunctions.TypedAggrFunction;
 import com.cosyan.db.model.DataTypes.DataType;
+import com.cosyan.db.model.Vectors.Vector;
 
 @FuncCat(name = "aggr", doc = "General aggregators")
 public class Aggregators {
@@ -39,6 +40,16 @@ public class Aggregators {
 
     public abstract void addImpl(U x);
 
+    /**
+     * Adds all the values of a batch. Aggregators of primitive values should
+     * override it to avoid boxing.
+     */
+    public void addAll(Vector vector) {
+      for (int i = 0; i < vector.size(); i++) {
+        add(vector.get(i));
+      }
+    }
+
     public Object finish() {
       if (isNull()) {
         return null;
@@ -50,6 +61,17 @@ public class Aggregators {
     public abstract T finishImpl();
 
     public abstract boolean isNull();
+
+    /**
+     * Adds the state of another aggregator of the same function, used to
+     * combine partial aggregations.
+     */
+    public abstract void merge(Aggregator<T, U> other);
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static void merge(Aggregator<?, ?> target, Aggregator<?, ?> other) {
+      ((Aggregator) target).merge(other);
+    }
   }
 
   @Func(doc = "Counts the non `null` elements.")
@@ -73,6 +95,11 @@ public class Aggregators {
               sum++;
             }
 
+            @Override
+            public void addAll(Vector vector) {
+              sum += vector.size() - vector.nulls().cardinality();
+            }
+
             @Override
             public Long finishImpl() {
               return sum;
@@ -82,6 +109,11 @@ public class Aggregators {
             public boolean isNull() {
               return false;
             }
+
+            @Override
+            public void merge(Aggregator<Long, Object> other) {
+              sum += other.finishImpl();
+            }
           };
         }
       };
@@ -90,6 +122,31 @@ public class Aggregators {
 
   @Func(doc = "Counts the distinct non `null` elements.")
   public static class CountDistinct extends AggrFunction {
+    public static class CountDistinctAggregator extends Aggregator<Long, Object> {
+
+      private HashSet<Object> set = new HashSet<>();
+
+      @Override
+      public void addImpl(Object x) {
+        set.add(x);
+      }
+
+      @Override
+      public Long finishImpl() {
+        return (long) set.size();
+      }
+
+      @Override
+      public boolean isNull() {
+        return false;
+      }
+
+      @Override
+      public void merge(Aggregator<Long, Object> other) {
+        set.addAll(((CountDistinctAggregator) other).set);
+      }
+    }
+
     public CountDistinct() {
       super("count$distinct");
     }
@@ -100,25 +157,7 @@ public class Aggregators {
 
         @Override
         public Aggregator<Long, Object> create() {
-          return new Aggregator<Long, Object>() {
-
-            private HashSet<Object> set = new HashSet<>();
-
-            @Override
-            public void addImpl(Object x) {
-              set.add(x);
-            }
-
-            @Override
-            public Long finishImpl() {
-              return (long) set.size();
-            }
-
-            @Override
-            public boolean isNull() {
-              return false;
-            }
-          };
+          return new CountDistinctAggregator();
         }
       };
     }
@@ -159,6 +198,13 @@ public class Aggregators {
               public boolean isNull() {
                 return max == null;
               }
+
+              @Override
+              public void merge(Aggregator<Double, Double> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -189,6 +235,13 @@ public class Aggregators {
               public boolean isNull() {
                 return max == null;
               }
+
+              @Override
+              public void merge(Aggregator<Long, Long> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -219,6 +272,13 @@ public class Aggregators {
               public boolean isNull() {
                 return max == null;
               }
+
+              @Override
+              public void merge(Aggregator<String, String> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -249,6 +309,13 @@ public class Aggregators {
               public boolean isNull() {
                 return max == null;
               }
+
+              @Override
+              public void merge(Aggregator<Date, Date> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -293,6 +360,13 @@ public class Aggregators {
               public boolean isNull() {
                 return min == null;
               }
+
+              @Override
+              public void merge(Aggregator<Double, Double> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -323,6 +397,13 @@ public class Aggregators {
               public boolean isNull() {
                 return min == null;
               }
+
+              @Override
+              public void merge(Aggregator<Long, Long> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -353,6 +434,13 @@ public class Aggregators {
               public boolean isNull() {
                 return min == null;
               }
+
+              @Override
+              public void merge(Aggregator<String, String> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -383,6 +471,13 @@ public class Aggregators {
               public boolean isNull() {
                 return min == null;
               }
+
+              @Override
+              public void merge(Aggregator<Date, Date> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
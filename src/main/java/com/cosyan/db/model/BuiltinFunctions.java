@@ -67,6 +67,7 @@ import com.cosyan.db.model.StringFunctions.Length;
 import com.cosyan.db.model.StringFunctions.Lower;
 import com.cosyan.db.model.StringFunctions.Matches;
 import com.cosyan.db.model.StringFunctions.Replace;
+import com.cosyan.db.model.StringFunctions.StartsWith;
 import com.cosyan.db.model.StringFunctions.Substr;
 import com.cosyan.db.model.StringFunctions.Trim;
 import com.cosyan.db.model.StringFunctions.Upper;
@@ -157,6 +158,7 @@ public class BuiltinFunctions {
       .add(new Substr())
       .add(new Matches())
       .add(new Contains())
+      .add(new StartsWith())
       .add(new Replace())
       .add(new Trim())
       .add(new Concat())
@@ -16,12 +16,15 @@
 package com.cosyan.db.model;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
 
+import com.cosyan.db.io.RecordBatch;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.model.BuiltinFunctions.TypedAggrFunction;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.References.ReferencedTable;
 import com.cosyan.db.model.TableMeta.IterableTableMeta;
+import com.cosyan.db.model.Vectors.Vector;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 
@@ -36,6 +39,31 @@ public abstract class ColumnMeta implements CompiledObject {
 
   public abstract String print(Object[] values, Resources resources, TableContext context) throws IOException;
 
+  /**
+   * Evaluates the column for a batch of records. Columns which can compute the
+   * values of a batch in one pass without boxing should override it.
+   */
+  public Vector vector(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+    return valuesOf(batch, resources, context);
+  }
+
+  /**
+   * A method handle of type <code>CompiledColumn.TYPE</code> which computes the
+   * value of the column. Columns which can be composed from the handles of
+   * their parts should override it, the default calls <code>value</code>.
+   */
+  public MethodHandle handle() {
+    return CompiledColumn.interpreted(this);
+  }
+
+  protected final Vector valuesOf(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+    Object[] values = new Object[batch.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      values[i] = value(batch.record(i), resources, context);
+    }
+    return Vectors.of(type, values, batch.size());
+  }
+
   public abstract TableDependencies tableDependencies();
 
   public abstract MetaResources readResources();
@@ -68,6 +96,16 @@ public abstract class ColumnMeta implements CompiledObject {
       return values[index];
     }
 
+    @Override
+    public Vector vector(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+      return batch.column(index, type);
+    }
+
+    @Override
+    public MethodHandle handle() {
+      return CompiledColumn.element(index);
+    }
+
     @Override
     public String print(Object[] values, Resources resources, TableContext context) throws IOException {
       return String.valueOf(values[index]);
@@ -111,6 +149,16 @@ public abstract class ColumnMeta implements CompiledObject {
       return referencedTable.values(values, resources, context)[index];
     }
 
+    @Override
+    public Vector vector(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+      return valuesOf(batch, resources, context);
+    }
+
+    @Override
+    public MethodHandle handle() {
+      return CompiledColumn.interpreted(this);
+    }
+
     @Override
     public String print(Object[] values, Resources resources, TableContext context) throws IOException {
       return String.valueOf(referencedTable.values(values, resources, context)[index]);
@@ -179,6 +227,10 @@ public abstract class ColumnMeta implements CompiledObject {
       return function;
     }
 
+    public ColumnMeta getBaseColumn() {
+      return baseColumn;
+    }
+
     @Override
     public MetaResources readResources() {
       return baseColumn.readResources();
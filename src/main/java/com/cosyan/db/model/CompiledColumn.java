@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.model;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import com.cosyan.db.io.RecordBatch;
+import com.cosyan.db.meta.Dependencies.TableDependencies;
+import com.cosyan.db.model.ColumnMeta.DerivedColumn;
+import com.cosyan.db.model.Vectors.Vector;
+import com.cosyan.db.transaction.MetaResources;
+import com.cosyan.db.transaction.Resources;
+import com.google.common.base.Throwables;
+
+/**
+ * A column evaluated by a method handle built from the tree of the column
+ * instead of interpreting the tree node by node. Nodes without a handle of
+ * their own are called through <code>ColumnMeta.value</code>.
+ */
+public class CompiledColumn extends DerivedColumn {
+
+  /**
+   * The type of the handles of the columns: the values of the record, the
+   * resources and the context to the value of the column.
+   */
+  public static final MethodType TYPE = MethodType.methodType(
+      Object.class, Object[].class, Resources.class, TableContext.class);
+
+  private static final MethodHandle VALUE;
+  private static final MethodHandle NOT_NULL;
+  private static final MethodHandle TO_DOUBLE;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      VALUE = lookup.findVirtual(ColumnMeta.class, "value", TYPE);
+      NOT_NULL = lookup.findStatic(CompiledColumn.class, "notNull",
+          MethodType.methodType(boolean.class, Object.class, Object.class));
+      TO_DOUBLE = lookup.findVirtual(Number.class, "doubleValue", MethodType.methodType(double.class))
+          .asType(MethodType.methodType(double.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final ColumnMeta column;
+  private final MethodHandle handle;
+
+  public CompiledColumn(ColumnMeta column) {
+    super(column.getType());
+    this.column = column;
+    this.handle = column.handle();
+  }
+
+  @Override
+  public Object value(Object[] values, Resources resources, TableContext context) throws IOException {
+    try {
+      return (Object) handle.invokeExact(values, resources, context);
+    } catch (Throwable e) {
+      Throwables.throwIfInstanceOf(e, IOException.class);
+      Throwables.throwIfUnchecked(e);
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public Vector vector(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+    return column.vector(batch, resources, context);
+  }
+
+  @Override
+  public MethodHandle handle() {
+    return handle;
+  }
+
+  @Override
+  public String print(Object[] values, Resources resources, TableContext context) throws IOException {
+    return column.print(values, resources, context);
+  }
+
+  @Override
+  public TableDependencies tableDependencies() {
+    return column.tableDependencies();
+  }
+
+  @Override
+  public MetaResources readResources() {
+    return column.readResources();
+  }
+
+  @SuppressWarnings("unused")
+  private static boolean notNull(Object left, Object right) {
+    return left != null && right != null;
+  }
+
+  /**
+   * Calls the <code>value</code> method of the column.
+   */
+  public static MethodHandle interpreted(ColumnMeta column) {
+    return VALUE.bindTo(column);
+  }
+
+  /**
+   * Returns the same value for every record.
+   */
+  public static MethodHandle constant(Object value) {
+    return MethodHandles.dropArguments(
+        MethodHandles.constant(Object.class, value), 0, TYPE.parameterList());
+  }
+
+  /**
+   * Returns the element of the record at <code>index</code>.
+   */
+  public static MethodHandle element(int index) {
+    return MethodHandles.dropArguments(
+        MethodHandles.insertArguments(MethodHandles.arrayElementGetter(Object[].class), 1, index),
+        1, Resources.class, TableContext.class);
+  }
+
+  /**
+   * Applies a two argument operator to the values of two columns. The result is
+   * <code>null</code> if any of the values is <code>null</code>. Otherwise
+   * the values are unboxed if the operator has primitive parameters, integers
+   * are converted to float for <code>double</code> parameters, and the result
+   * is boxed.
+   */
+  public static MethodHandle binary(MethodHandle operator, ColumnMeta left, ColumnMeta right) {
+    MethodHandle impl = operator;
+    for (int i = 0; i < 2; i++) {
+      if (operator.type().parameterType(i) == double.class) {
+        impl = MethodHandles.filterArguments(impl, i, TO_DOUBLE);
+      }
+    }
+    impl = MethodHandles.explicitCastArguments(impl,
+        MethodType.methodType(Object.class, Object.class, Object.class));
+    MethodHandle nullSafe = MethodHandles.guardWithTest(NOT_NULL, impl,
+        MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object.class, Object.class));
+    MethodHandle combined = MethodHandles.collectArguments(
+        MethodHandles.collectArguments(nullSafe, 1, right.handle()), 0, left.handle());
+    return MethodHandles.permuteArguments(combined, TYPE, 0, 1, 2, 0, 1, 2);
+  }
+}
@@ -32,16 +32,23 @@ package com.cosyan.db.model;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.TreeMap;
+import java.util.Optional;
 
+import com.cosyan.db.io.ExternalSort;
+import com.cosyan.db.io.Indexes.IndexCursor;
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.ParallelTableReader;
+import com.cosyan.db.io.RecordBatch;
 import com.cosyan.db.io.TableReader.DerivedIterableTableReader;
 import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.io.TableReader.MultiFilteredTableReader;
+import com.cosyan.db.io.WorkMemory;
 import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo.ModelException;
@@ -50,6 +57,8 @@ import com.cosyan.db.model.ColumnMeta.OrderColumn;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.TableMeta.ExposedTableMeta;
 import com.cosyan.db.model.TableMeta.IterableTableMeta;
+import com.cosyan.db.model.Vectors.BoolVector;
+import com.cosyan.db.model.Vectors.Vector;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
@@ -117,6 +126,28 @@ public class DerivedTables {
         public Object[] next() throws IOException {
           return mapValues(sourceReader.next(), resources, context, columns);
         }
+
+        @Override
+        public RecordBatch nextBatch() throws IOException {
+          RecordBatch sourceBatch = sourceReader.nextBatch();
+          if (sourceBatch == null) {
+            return null;
+          }
+          Vector[] vectors = new Vector[columns.size()];
+          int j = 0;
+          for (ColumnMeta column : columns.values()) {
+            vectors[j++] = column.vector(sourceBatch, resources, context);
+          }
+          Object[][] records = new Object[sourceBatch.size()][];
+          for (int i = 0; i < records.length; i++) {
+            Object[] values = new Object[vectors.length];
+            for (j = 0; j < vectors.length; j++) {
+              values[j] = vectors[j].get(i);
+            }
+            records[i] = values;
+          }
+          return new RecordBatch(records, records.length);
+        }
       };
     }
 
@@ -167,25 +198,84 @@ public class DerivedTables {
       return sourceTable.readResources().merge(resourcesFromColumn(whereColumn));
     }
 
+    /**
+     * Filters the ranges of the table in parallel if it can be split, keeping
+     * the order of the records.
+     */
     @Override
     public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
-      return new DerivedIterableTableReader(sourceTable.reader(resources, context)) {
+      ImmutableList<IterableTableReader> readers = splitReaders(resources, context);
+      if (readers != null) {
+        if (readers.size() == 1) {
+          return readers.get(0);
+        }
+        return new ParallelTableReader(readers, resources.parallelism());
+      }
+      return filter(sourceTable.reader(resources, context), resources, context);
+    }
+
+    @Override
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources, TableContext context)
+        throws IOException {
+      if (!whereColumn.tableDependencies().getDeps().isEmpty()) {
+        // Referenced tables are read through the shared readers of the transaction.
+        return null;
+      }
+      ImmutableList<IterableTableReader> sourceReaders = sourceTable.splitReaders(resources, context);
+      if (sourceReaders == null) {
+        return null;
+      }
+      ImmutableList.Builder<IterableTableReader> builder = ImmutableList.builder();
+      for (IterableTableReader sourceReader : sourceReaders) {
+        builder.add(filter(sourceReader, resources, context));
+      }
+      return builder.build();
+    }
+
+    private IterableTableReader filter(IterableTableReader reader, Resources resources, TableContext context) {
+      return new DerivedIterableTableReader(reader) {
+
+        private RecordBatch batch;
+        private int pointer;
+
+        /**
+         * Evaluates the filter for a whole batch of the source at a time.
+         */
+        private RecordBatch filteredBatch() throws IOException {
+          RecordBatch selected = null;
+          while (selected == null && !cancelled.get()) {
+            RecordBatch sourceBatch = sourceReader.nextBatch();
+            if (sourceBatch == null) {
+              return null;
+            }
+            BoolVector where = (BoolVector) whereColumn.vector(sourceBatch, resources, context);
+            selected = sourceBatch.select(where.selected());
+          }
+          return selected;
+        }
 
         @Override
         public Object[] next() throws IOException {
-          Object[] values = null;
-          do {
-            values = sourceReader.next();
-            if (values == null) {
+          if (batch == null || pointer == batch.size()) {
+            batch = filteredBatch();
+            pointer = 0;
+            if (batch == null) {
               return null;
             }
-            if ((boolean) whereColumn.value(values, resources, context)) {
-              return values;
-            } else {
-              values = null;
-            }
-          } while (values == null && !cancelled.get());
-          return values;
+          }
+          return batch.record(pointer++);
+        }
+
+        @Override
+        public RecordBatch nextBatch() throws IOException {
+          RecordBatch result;
+          if (batch != null && pointer < batch.size()) {
+            result = batch.tail(pointer);
+          } else {
+            result = filteredBatch();
+          }
+          batch = null;
+          return result;
         }
       };
     }
@@ -268,6 +358,77 @@ public class DerivedTables {
     }
   }
 
+  /**
+   * Table with a filter expression restricting an indexed column to a range.
+   * The rows are read in the order of the index.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class IndexRangeTableMeta extends ExposedTableMeta {
+    private final SeekableTableMeta sourceTable;
+    private final ColumnMeta whereColumn;
+    private final VariableRange clause;
+
+    @Override
+    public ImmutableList<String> columnNames() {
+      return sourceTable.columnNames();
+    }
+
+    @Override
+    public ImmutableList<DataType<?>> columnTypes() {
+      return sourceTable.columnTypes();
+    }
+
+    @Override
+    public IndexColumn getColumn(Ident ident) throws ModelException {
+      return sourceTable.getColumn(ident);
+    }
+
+    @Override
+    public TableMeta getRefTable(Ident ident) throws ModelException {
+      return sourceTable.getRefTable(ident);
+    }
+
+    @Override
+    public MetaResources readResources() {
+      return sourceTable.readResources().merge(resourcesFromColumn(whereColumn));
+    }
+
+    @Override
+    public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
+      return new MultiFilteredTableReader(resources.reader(sourceTable.fullName()), whereColumn, resources) {
+        private IndexCursor cursor;
+
+        @Override
+        protected long[] readPositions() throws IOException {
+          IndexReader index = resources.getIndex(sourceTable.fullName(), clause.getIdent().getString());
+          cursor = index.range(clause.getRange());
+          return new long[0];
+        }
+
+        @Override
+        protected long[] nextPositions() throws IOException {
+          return cursor.next() ? cursor.values() : null;
+        }
+      };
+    }
+
+    @Override
+    public TableDependencies tableDependencies() {
+      return sourceTable.tableDependencies();
+    }
+
+    @Override
+    public Object[] values(Object[] key, Resources resources) throws IOException {
+      Object[] values = sourceTable.values(key, resources);
+      if ((boolean) whereColumn.value(values, resources, TableContext.EMPTY)) {
+        return values;
+      } else {
+        return null;
+      }
+    }
+  }
+
   /**
    * A table with key expressions to aggregate on.
    */
@@ -302,6 +463,12 @@ public class DerivedTables {
       return sourceTable.reader(resources, context);
     }
 
+    @Override
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources, TableContext context)
+        throws IOException {
+      return sourceTable.splitReaders(resources, context);
+    }
+
     @Override
     public Object[] values(Object[] key, Resources resources) throws IOException {
       throw new UnsupportedOperationException();
@@ -326,6 +493,7 @@ public class DerivedTables {
   public static class SortedTableMeta extends ExposedTableMeta {
     private final ExposedTableMeta sourceTable;
     private final ImmutableList<OrderColumn> orderColumns;
+    private final Optional<Long> limit;
 
     @Override
     public ImmutableList<String> columnNames() {
@@ -352,49 +520,77 @@ public class DerivedTables {
       return sourceTable.readResources();
     }
 
+    /**
+     * Compares records prefixed with the values of the order columns.
+     */
+    private Comparator<Object[]> comparator() {
+      return new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] x, Object[] y) {
+          for (int i = 0; i < orderColumns.size(); i++) {
+            if (x[i] == null) {
+              if (y[i] == null) {
+                continue;
+              } else {
+                return -1;
+              }
+            } else if (y[i] == null) {
+              return 1;
+            }
+            int result = orderColumns.get(i).compare(x[i], y[i]);
+            if (result != 0) {
+              return result;
+            }
+          }
+          return 0;
+        }
+      };
+    }
+
     @Override
     public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
       return new DerivedIterableTableReader(sourceTable.reader(resources, context)) {
 
+        private final int numKeys = orderColumns.size();
         private boolean sorted;
         private Iterator<Object[]> iterator;
+        private ExternalSort externalSort;
 
-        private void sort() throws IOException {
-          TreeMap<ArrayList<Object>, Object[]> values = new TreeMap<>(new Comparator<ArrayList<Object>>() {
-            @Override
-            public int compare(ArrayList<Object> x, ArrayList<Object> y) {
-              for (int i = 0; i < orderColumns.size(); i++) {
-                if (x.get(i) == null) {
-                  if (y.get(i) == null) {
-                    return 0;
-                  } else {
-                    return -1;
-                  }
-                } else if (y.get(i) == null) {
-                  return 1;
-                }
-                int result = orderColumns.get(i).compare(x.get(i), y.get(i));
-                if (result != 0) {
-                  return result;
-                }
-              }
-              return 0;
-            }
-          });
+        private Object[] keyed(Object[] sourceValues) throws IOException {
+          Object[] values = new Object[numKeys + sourceValues.length];
+          for (int i = 0; i < numKeys; i++) {
+            values[i] = orderColumns.get(i).value(sourceValues, resources, context);
+          }
+          System.arraycopy(sourceValues, 0, values, numKeys, sourceValues.length);
+          return values;
+        }
 
-          while (!cancelled.get()) {
-            Object[] sourceValues = sourceReader.next();
-            if (sourceValues == null) {
-              break;
+        private Object[] unkeyed(Object[] values) {
+          return Arrays.copyOfRange(values, numKeys, values.length);
+        }
+
+        private void sort() throws IOException {
+          if (limit.isPresent()) {
+            ExternalSort.TopN topN = new ExternalSort.TopN(limit.get(), comparator());
+            Object[] sourceValues;
+            while (!cancelled.get() && (sourceValues = sourceReader.next()) != null) {
+              topN.add(keyed(sourceValues));
             }
-            ArrayList<Object> list = new ArrayList<>();
+            iterator = topN.sorted().iterator();
+          } else {
+            ImmutableList.Builder<DataType<?>> types = ImmutableList.builder();
             for (OrderColumn column : orderColumns) {
-              Object key = column.value(sourceValues, resources, context);
-              list.add(key);
+              types.add(column.getType());
+            }
+            types.addAll(sourceTable.columnTypes());
+            WorkMemory workMemory = resources.workMemory();
+            externalSort = new ExternalSort(
+                workMemory.getDir(), workMemory.getSortMemory(), types.build(), comparator());
+            Object[] sourceValues;
+            while (!cancelled.get() && (sourceValues = sourceReader.next()) != null) {
+              externalSort.add(keyed(sourceValues));
             }
-            values.put(list, sourceValues);
           }
-          iterator = values.values().iterator();
           sorted = true;
         }
 
@@ -403,10 +599,25 @@ public class DerivedTables {
           if (!sorted) {
             sort();
           }
+          if (externalSort != null) {
+            Object[] values = externalSort.next();
+            return values == null ? null : unkeyed(values);
+          }
           if (!iterator.hasNext()) {
             return null;
           }
-          return iterator.next();
+          return unkeyed(iterator.next());
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            if (externalSort != null) {
+              externalSort.close();
+            }
+          } finally {
+            super.close();
+          }
         }
       };
     }
@@ -546,6 +757,12 @@ public class DerivedTables {
       return sourceTable.reader(resources, context);
     }
 
+    @Override
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources, TableContext context)
+        throws IOException {
+      return sourceTable.splitReaders(resources, context);
+    }
+
     @Override
     public TableDependencies tableDependencies() {
       return sourceTable.tableDependencies();
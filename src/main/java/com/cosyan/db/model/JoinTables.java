@@ -20,17 +20,25 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import com.cosyan.db.io.HashJoin;
+import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.RecordProvider.Record;
+import com.cosyan.db.io.RecordProvider.RecordReader;
 import com.cosyan.db.io.TableReader.IterableTableReader;
+import com.cosyan.db.io.TableReader.SeekableTableReader;
+import com.cosyan.db.io.WorkMemory;
+import com.cosyan.db.logic.CostModel;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.ColumnMeta.IndexColumn;
 import com.cosyan.db.model.DataTypes.DataType;
+import com.cosyan.db.model.DerivedTables.AliasedTableMeta;
 import com.cosyan.db.model.DerivedTables.ShiftedTableMeta;
 import com.cosyan.db.model.TableMeta.ExposedTableMeta;
+import com.cosyan.db.model.stat.TableStats;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.LinkedListMultimap;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -44,6 +52,8 @@ public class JoinTables {
   @Data
   @EqualsAndHashCode(callSuper = true)
   public static class JoinTableMeta extends ExposedTableMeta {
+    static final long MIN_BUILD_SIDE_ROWS = 1000L;
+
     private final JoinType joinType;
     private final ExposedTableMeta leftTable;
     private final ExposedTableMeta rightTable;
@@ -56,16 +66,46 @@ public class JoinTables {
     private final ImmutableList<ColumnMeta> joinTableJoinColumns;
     private final boolean mainTableFirst;
     private final boolean innerJoin;
+    // The indexed join column of the join table if the join looks up the join
+    // table through the index for every record of the main table.
+    private final BasicColumn indexColumn;
+    private final double indexJoinCost;
 
     public JoinTableMeta(JoinType joinType, ExposedTableMeta leftTable, ExposedTableMeta rightTable,
-        ImmutableList<ColumnMeta> leftTableJoinColumns, ImmutableList<ColumnMeta> rightTableJoinColumns) {
+        ImmutableList<ColumnMeta> leftTableJoinColumns, ImmutableList<ColumnMeta> rightTableJoinColumns)
+        throws ModelException {
       this.joinType = joinType;
       this.leftTable = leftTable;
       this.rightTable = rightTable;
       this.leftTableJoinColumns = leftTableJoinColumns;
       this.rightTableJoinColumns = rightTableJoinColumns;
 
-      if (joinType == JoinType.INNER) {
+      double rightLookupCost = joinType == JoinType.RIGHT ? -1.0
+          : indexJoinCost(leftTable, rightTable, leftTableJoinColumns, rightTableJoinColumns);
+      double leftLookupCost = joinType == JoinType.LEFT ? -1.0
+          : indexJoinCost(rightTable, leftTable, rightTableJoinColumns, leftTableJoinColumns);
+      boolean lookupRight = rightLookupCost >= 0 && (leftLookupCost < 0 || rightLookupCost <= leftLookupCost);
+      boolean lookupLeft = !lookupRight && leftLookupCost >= 0;
+      if (lookupRight) {
+        indexColumn = indexedColumn(rightTable, rightTableJoinColumns.get(0));
+        indexJoinCost = rightLookupCost;
+      } else if (lookupLeft) {
+        indexColumn = indexedColumn(leftTable, leftTableJoinColumns.get(0));
+        indexJoinCost = leftLookupCost;
+      } else {
+        indexColumn = null;
+        indexJoinCost = -1.0;
+      }
+
+      if (joinType == JoinType.INNER
+          && (lookupLeft || (!lookupRight && buildOnLeft(leftTable, rightTable)))) {
+        mainTable = rightTable;
+        joinTable = leftTable;
+        mainTableJoinColumns = rightTableJoinColumns;
+        joinTableJoinColumns = leftTableJoinColumns;
+        mainTableFirst = false;
+        innerJoin = true;
+      } else if (joinType == JoinType.INNER) {
         mainTable = leftTable;
         joinTable = rightTable;
         mainTableJoinColumns = leftTableJoinColumns;
@@ -92,6 +132,93 @@ public class JoinTables {
       }
     }
 
+    /**
+     * The join table is the build side of the hash join, so for inner joins the
+     * hash table is built from the left table if the right table is estimated
+     * to be much larger. Small tables are joined in the written order.
+     */
+    private static boolean buildOnLeft(ExposedTableMeta leftTable, ExposedTableMeta rightTable)
+        throws ModelException {
+      long leftRows = CostModel.rows(leftTable);
+      long rightRows = CostModel.rows(rightTable);
+      return leftRows >= 0 && rightRows >= MIN_BUILD_SIDE_ROWS && rightRows > 2 * leftRows;
+    }
+
+    /**
+     * The table read through an index in an index nested loop join.
+     */
+    private static SeekableTableMeta seekableTable(ExposedTableMeta table) {
+      while (table instanceof AliasedTableMeta) {
+        table = ((AliasedTableMeta) table).getSourceTable();
+      }
+      return table instanceof SeekableTableMeta ? (SeekableTableMeta) table : null;
+    }
+
+    /**
+     * The table read through the index of the join column, or null for hash
+     * joins.
+     */
+    public SeekableTableMeta lookupTable() {
+      return indexColumn == null ? null : seekableTable(joinTable);
+    }
+
+    /**
+     * The column of the table if <code>joinColumn</code> is an indexed column of
+     * a table which can be read through its indexes, otherwise null.
+     */
+    private static BasicColumn indexedColumn(ExposedTableMeta table, ColumnMeta joinColumn)
+        throws ModelException {
+      SeekableTableMeta seekableTable = seekableTable(table);
+      if (seekableTable == null || joinColumn.getClass() != IndexColumn.class) {
+        return null;
+      }
+      String name = seekableTable.columnNames().get(((IndexColumn) joinColumn).index());
+      BasicColumn column = seekableTable.tableMeta().column(new Ident(name));
+      return column.isIndexed() ? column : null;
+    }
+
+    /**
+     * Whether one of the join columns of the table is a unique column of a
+     * stored table, in which case every record of the other table matches at
+     * most one record of this table.
+     */
+    public boolean uniqueJoin(boolean left) throws ModelException {
+      ExposedTableMeta table = left ? leftTable : rightTable;
+      for (ColumnMeta joinColumn : left ? leftTableJoinColumns : rightTableJoinColumns) {
+        BasicColumn column = indexedColumn(table, joinColumn);
+        if (column != null && column.isUnique()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * The estimated cost of looking up the matching records of the inner table
+     * through the index of its join column for every record of the outer table,
+     * or -1 if that is not possible or a hash join is estimated to be cheaper.
+     */
+    private static double indexJoinCost(ExposedTableMeta outerTable, ExposedTableMeta innerTable,
+        ImmutableList<ColumnMeta> outerJoinColumns, ImmutableList<ColumnMeta> innerJoinColumns)
+        throws ModelException {
+      if (innerJoinColumns.size() != 1
+          || !outerJoinColumns.get(0).getType().equals(innerJoinColumns.get(0).getType())) {
+        return -1.0;
+      }
+      BasicColumn column = indexedColumn(innerTable, innerJoinColumns.get(0));
+      if (column == null) {
+        return -1.0;
+      }
+      long outerRows = CostModel.rows(outerTable);
+      long innerRows = CostModel.rows(innerTable);
+      if (outerRows < 0) {
+        return -1.0;
+      }
+      TableStats stats = seekableTable(innerTable).tableMeta().stats();
+      double cost = outerRows * CostModel.indexCost(innerRows, CostModel.selectivity(stats, column));
+      return cost < CostModel.scanCost(innerRows) ? cost : -1.0;
+    }
+
     @Override
     public ImmutableList<String> columnNames() {
       return ImmutableList.<String>builder()
@@ -148,21 +275,78 @@ public class JoinTables {
           .merge(DerivedTables.resourcesFromColumns(rightTableJoinColumns));
     }
 
+    private static ImmutableList<DataType<?>> keyedTypes(
+        ImmutableList<ColumnMeta> joinColumns, ExposedTableMeta table) {
+      ImmutableList.Builder<DataType<?>> builder = ImmutableList.builder();
+      for (ColumnMeta column : joinColumns) {
+        builder.add(column.getType());
+      }
+      return builder.addAll(table.columnTypes()).build();
+    }
+
+    /**
+     * Concatenates the main and the join table records without their first
+     * <code>offset</code> values.
+     */
+    private Object[] match(Object[] mainTableValues, Object[] joinTableValues, int offset) {
+      int mainLength = mainTableValues.length - offset;
+      int joinLength = joinTableValues.length - offset;
+      Object[] result = new Object[mainLength + joinLength];
+      if (mainTableFirst) {
+        System.arraycopy(mainTableValues, offset, result, 0, mainLength);
+        System.arraycopy(joinTableValues, offset, result, mainLength, joinLength);
+      } else {
+        System.arraycopy(joinTableValues, offset, result, 0, joinLength);
+        System.arraycopy(mainTableValues, offset, result, joinLength, mainLength);
+      }
+      return result;
+    }
+
     @Override
     public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
+      if (indexColumn != null) {
+        return indexReader(resources, context);
+      }
       final IterableTableReader mainReader = mainTable.reader(resources, context);
       final IterableTableReader joinReader = joinTable.reader(resources, context);
+      final int numKeys = mainTableJoinColumns.size();
+      WorkMemory workMemory = resources.workMemory();
+      final HashJoin hashJoin = new HashJoin(workMemory.getDir(), workMemory.getJoinMemory(), numKeys,
+          keyedTypes(joinTableJoinColumns, joinTable), keyedTypes(mainTableJoinColumns, mainTable));
       return new IterableTableReader() {
 
         private boolean joined;
-        private LinkedListMultimap<ImmutableList<Object>, Object[]> joinValues;
         private Iterator<Object[]> joinValuesForCurrentKey;
         private Object[] mainTableValues;
 
+        private final HashJoin.Source mainSource = new HashJoin.Source() {
+          @Override
+          public Object[] next() throws IOException {
+            if (cancelled.get()) {
+              return null;
+            }
+            Object[] values = mainReader.next();
+            return values == null ? null : keyed(values, mainTableJoinColumns);
+          }
+        };
+
+        private Object[] keyed(Object[] sourceValues, ImmutableList<ColumnMeta> joinColumns) throws IOException {
+          Object[] values = new Object[numKeys + sourceValues.length];
+          for (int i = 0; i < numKeys; i++) {
+            values[i] = joinColumns.get(i).value(sourceValues, resources, context);
+          }
+          System.arraycopy(sourceValues, 0, values, numKeys, sourceValues.length);
+          return values;
+        }
+
         @Override
         public void close() throws IOException {
-          mainReader.close();
-          joinReader.close();
+          try {
+            hashJoin.close();
+          } finally {
+            mainReader.close();
+            joinReader.close();
+          }
         }
 
         @Override
@@ -170,69 +354,93 @@ public class JoinTables {
           if (!joined) {
             join();
           }
-          Object[] result = null;
-          do {
-            while (joinValuesForCurrentKey == null || !joinValuesForCurrentKey.hasNext()) {
-              List<Object[]> values = null;
-              mainTableValues = mainReader.next();
-              if (mainTableValues == null) {
-                return null;
-              }
-              ImmutableList.Builder<Object> builder = ImmutableList.builder();
-              for (ColumnMeta column : mainTableJoinColumns) {
-                Object key = column.value(mainTableValues, resources, context);
-                builder.add(key);
-              }
-              values = joinValues.get(builder.build());
-              if (values != null && !values.isEmpty()) {
-                joinValuesForCurrentKey = values.iterator();
-              } else if (!innerJoin) {
-                Object[] nullValues = new Object[joinTable.columnNames().size()];
-                Arrays.fill(nullValues, null);
-                joinValuesForCurrentKey = ImmutableList.of(nullValues).iterator();
-              }
+          while (joinValuesForCurrentKey == null || !joinValuesForCurrentKey.hasNext()) {
+            if (!hashJoin.next(mainSource)) {
+              return null;
+            }
+            mainTableValues = hashJoin.probeValues();
+            List<Object[]> values = hashJoin.matches();
+            if (!values.isEmpty()) {
+              joinValuesForCurrentKey = values.iterator();
+            } else if (!innerJoin) {
+              Object[] nullValues = new Object[numKeys + joinTable.columnNames().size()];
+              Arrays.fill(nullValues, null);
+              joinValuesForCurrentKey = ImmutableList.of(nullValues).iterator();
+            } else {
+              // The list of matches is reused by the hash join.
+              joinValuesForCurrentKey = null;
             }
-
-            result = match(mainTableValues, joinValuesForCurrentKey.next());
-          } while (result == null);
-
-          return result;
-        }
-
-        private Object[] match(Object[] mainTableValues, Object[] joinTableValues) {
-          Object[] result = new Object[mainTable.columnNames().size() + joinTable.columnNames().size()];
-          if (joinTableValues == null) {
-            return null;
-          }
-          if (mainTableFirst) {
-            System.arraycopy(mainTableValues, 0, result, 0, mainTableValues.length);
-            System.arraycopy(joinTableValues, 0, result, mainTableValues.length, joinTableValues.length);
-          } else {
-            System.arraycopy(joinTableValues, 0, result, 0, joinTableValues.length);
-            System.arraycopy(mainTableValues, 0, result, joinTableValues.length, mainTableValues.length);
           }
-          return result;
+          return match(mainTableValues, joinValuesForCurrentKey.next(), numKeys);
         }
 
         private void join() throws IOException {
-          joinValues = LinkedListMultimap.create();
           while (!cancelled.get()) {
             Object[] joinSourceValues = joinReader.next();
             if (joinSourceValues == null) {
               break;
             }
-            ImmutableList.Builder<Object> builder = ImmutableList.builder();
-            for (ColumnMeta column : joinTableJoinColumns) {
-              Object key = column.value(joinSourceValues, resources, context);
-              builder.add(key);
-            }
-            joinValues.put(builder.build(), joinSourceValues);
+            hashJoin.build(keyed(joinSourceValues, joinTableJoinColumns));
           }
           joined = true;
         }
       };
     }
 
+    /**
+     * Index nested loop join: the matching records of the join table are read
+     * through the index of the join column for every record of the main table.
+     */
+    private IterableTableReader indexReader(Resources resources, TableContext context) throws IOException {
+      final IterableTableReader mainReader = mainTable.reader(resources, context);
+      final String tableName = seekableTable(joinTable).fullName();
+      final SeekableTableReader joinReader = resources.reader(tableName);
+      final IndexReader index = resources.getIndex(tableName, indexColumn.getName());
+      final ColumnMeta mainTableJoinColumn = mainTableJoinColumns.get(0);
+      final Object[] nullValues = new Object[joinTable.columnNames().size()];
+      return new IterableTableReader() {
+
+        private Object[] mainTableValues;
+        private long[] positions;
+        private int pointer;
+        private boolean matched;
+
+        @Override
+        public void close() throws IOException {
+          mainReader.close();
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+          while (!cancelled.get()) {
+            if (positions == null) {
+              mainTableValues = mainReader.next();
+              if (mainTableValues == null) {
+                return null;
+              }
+              Object key = mainTableJoinColumn.value(mainTableValues, resources, context);
+              positions = key == null ? new long[0] : index.get(key);
+              pointer = 0;
+              matched = false;
+            }
+            if (pointer < positions.length) {
+              Record record = joinReader.get(positions[pointer++]);
+              if (record != RecordReader.EMPTY) {
+                matched = true;
+                return match(mainTableValues, record.getValues(), 0);
+              }
+            } else {
+              positions = null;
+              if (!matched && !innerJoin) {
+                return match(mainTableValues, nullValues, 0);
+              }
+            }
+          }
+          return null;
+        }
+      };
+    }
+
     @Override
     public TableDependencies tableDependencies() {
       TableDependencies deps = new TableDependencies();
@@ -63,6 +63,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<String[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -90,6 +97,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Double[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -117,6 +131,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Long[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -144,6 +165,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Date[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -171,6 +199,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Boolean[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -212,6 +247,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<String[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -239,6 +281,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Double[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -266,6 +315,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Long[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -293,6 +349,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Date[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -320,6 +383,13 @@ public class ListAggregators {
               public boolean isNull() {
                 return false;
               }
+
+              @Override
+              public void merge(Aggregator<Boolean[], Object> other) {
+                for (Object x : other.finishImpl()) {
+                  addImpl(x);
+                }
+              }
             };
           }
         };
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import com.cosyan.db.io.TableReader.IterableTableReader;
+import com.cosyan.db.lang.expr.TableDefinition.ViewDefinition;
+import com.cosyan.db.lang.sql.SelectStatement.Select;
+import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.model.AggrTables.GlobalAggrTableMeta;
+import com.cosyan.db.model.ColumnMeta.AggrColumn;
+import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.KeyValueTableMeta;
+import com.cosyan.db.model.References.ReferencedMultiTableMeta;
+import com.cosyan.db.model.TableMeta.ExposedTableMeta;
+import com.cosyan.db.transaction.Resources;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The aggregates of a view over a reverse foreign key, maintained on the
+ * inserts and deletes of the referencing table. The aggregates of a key are
+ * computed from the referencing records when first used, and updated
+ * afterwards, so rules using the view do not read all the referencing records
+ * on every change. Deletes which cannot be undone on the aggregate (float sums
+ * and averages, the current minimum or maximum) drop the key, which is
+ * computed again on the next use.
+ *
+ * The changes of a transaction are kept separately until commit. The
+ * aggregates are only used by transactions writing the referencing table,
+ * which hold its write lock. At most <code>maxKeys</code> committed keys are
+ * kept, the least recently used ones are dropped first.
+ */
+public class RefAggregates {
+
+  private enum Op {
+    COUNT {
+      @Override
+      Object add(Object value, Object x) {
+        return null;
+      }
+
+      @Override
+      Object finish(Object value, long count) {
+        return count;
+      }
+
+      @Override
+      boolean remove(Object[] values, int i, Object x) {
+        return true;
+      }
+    },
+    LONG_SUM {
+      @Override
+      Object add(Object value, Object x) {
+        return value == null ? x : (Long) value + (Long) x;
+      }
+
+      @Override
+      boolean remove(Object[] values, int i, Object x) {
+        values[i] = (Long) values[i] - (Long) x;
+        return true;
+      }
+    },
+    DOUBLE_SUM {
+      @Override
+      Object add(Object value, Object x) {
+        return value == null ? x : (Double) value + (Double) x;
+      }
+    },
+    AVG {
+      @Override
+      Object add(Object value, Object x) {
+        double d = x instanceof Long ? (double) (Long) x : (Double) x;
+        return value == null ? d : (Double) value + d;
+      }
+
+      @Override
+      Object finish(Object value, long count) {
+        return (Double) value / count;
+      }
+    },
+    MIN {
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      @Override
+      Object add(Object value, Object x) {
+        return value == null || ((Comparable) x).compareTo(value) < 0 ? x : value;
+      }
+
+      @Override
+      boolean remove(Object[] values, int i, Object x) {
+        return !Objects.equals(values[i], x);
+      }
+    },
+    MAX {
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      @Override
+      Object add(Object value, Object x) {
+        return value == null || ((Comparable) x).compareTo(value) > 0 ? x : value;
+      }
+
+      @Override
+      boolean remove(Object[] values, int i, Object x) {
+        return !Objects.equals(values[i], x);
+      }
+    },
+    DOUBLE_MIN {
+      @Override
+      Object add(Object value, Object x) {
+        return value == null ? x : Math.min((Double) value, (Double) x);
+      }
+
+      @Override
+      boolean remove(Object[] values, int i, Object x) {
+        return !Objects.equals(values[i], x);
+      }
+    },
+    DOUBLE_MAX {
+      @Override
+      Object add(Object value, Object x) {
+        return value == null ? x : Math.max((Double) value, (Double) x);
+      }
+
+      @Override
+      boolean remove(Object[] values, int i, Object x) {
+        return !Objects.equals(values[i], x);
+      }
+    };
+
+    /**
+     * Adds the non <code>null</code> value to the aggregate, which is
+     * <code>null</code> if no values were added yet.
+     */
+    abstract Object add(Object value, Object x);
+
+    /**
+     * Removes the value from the aggregate at <code>i</code>, or returns
+     * <code>false</code> if the aggregate has to be computed again.
+     */
+    boolean remove(Object[] values, int i, Object x) {
+      return false;
+    }
+
+    Object finish(Object value, long count) {
+      return value;
+    }
+
+    @Nullable
+    static Op of(AggrColumn column) {
+      boolean isDouble = column.getFunction().getReturnType().isDouble();
+      switch (column.getFunction().getName()) {
+      case "count":
+        return COUNT;
+      case "sum":
+        return isDouble ? DOUBLE_SUM : LONG_SUM;
+      case "avg":
+        return AVG;
+      case "min":
+        return isDouble ? DOUBLE_MIN : MIN;
+      case "max":
+        return isDouble ? DOUBLE_MAX : MAX;
+      default:
+        return null;
+      }
+    }
+  }
+
+  private static class State {
+    private final Object[] values;
+    private final long[] counts;
+
+    private State(Object[] values, long[] counts) {
+      this.values = values;
+      this.counts = counts;
+    }
+
+    private State copy() {
+      return new State(Arrays.copyOf(values, values.length), Arrays.copyOf(counts, counts.length));
+    }
+  }
+
+  private static class Compiled {
+    private final ColumnMeta whereColumn;
+    private final ImmutableList<AggrColumn> aggrColumns;
+    private final Op[] ops;
+    private final int keyIndex;
+
+    private Compiled(ColumnMeta whereColumn, ImmutableList<AggrColumn> aggrColumns, Op[] ops, int keyIndex) {
+      this.whereColumn = whereColumn;
+      this.aggrColumns = aggrColumns;
+      this.ops = ops;
+      this.keyIndex = keyIndex;
+    }
+  }
+
+  private final ViewDefinition ref;
+  private final ReferencedMultiTableMeta sourceTable;
+  // Null if the view cannot be maintained anymore after the columns changed.
+  @Nullable
+  private Compiled compiled;
+
+  private final LinkedHashMap<Object, State> committed;
+  // A null value means the key has to be computed again.
+  private final HashMap<Object, State> changed = new HashMap<>();
+
+  private RefAggregates(ViewDefinition ref, ReferencedMultiTableMeta sourceTable, Compiled compiled, int maxKeys) {
+    this.ref = ref;
+    this.sourceTable = sourceTable;
+    this.compiled = compiled;
+    this.committed = new LinkedHashMap<Object, State>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, State> eldest) {
+        return size() > maxKeys;
+      }
+    };
+  }
+
+  /**
+   * Compiles the view on the referencing table only, without references to
+   * other tables or the parent table, so the aggregates can be computed from
+   * the values of the inserted and deleted records. Returns <code>null</code>
+   * if the view cannot be maintained this way.
+   */
+  @Nullable
+  public static RefAggregates create(
+      ViewDefinition ref, ReferencedMultiTableMeta sourceTable, int maxKeys) {
+    Compiled compiled = compile(ref, sourceTable);
+    return compiled == null ? null : new RefAggregates(ref, sourceTable, compiled, maxKeys);
+  }
+
+  @Nullable
+  private static Compiled compile(ViewDefinition ref, ReferencedMultiTableMeta sourceTable) {
+    MaterializedTable table = sourceTable.getSourceTable();
+    SeekableTableMeta recordTable = new SeekableTableMeta(table) {
+      @Override
+      public TableMeta getRefTable(Ident ident) throws ModelException {
+        return null;
+      }
+    };
+    try {
+      ColumnMeta whereColumn = ColumnMeta.TRUE_COLUMN;
+      ExposedTableMeta derivedTable = recordTable;
+      if (ref.getSelect().getWhere().isPresent()) {
+        whereColumn = ref.getSelect().getWhere().get().compileColumn(recordTable);
+        derivedTable = new FilteredTableMeta(recordTable, whereColumn);
+      }
+      GlobalAggrTableMeta aggrTable = new GlobalAggrTableMeta(
+          new KeyValueTableMeta(derivedTable, TableMeta.wholeTableKeys));
+      Select.tableColumns(aggrTable, ref.getSelect().getColumns());
+      ImmutableList<AggrColumn> aggrColumns = ImmutableList.copyOf(aggrTable.aggrColumns);
+      Op[] ops = new Op[aggrColumns.size()];
+      for (int i = 0; i < ops.length; i++) {
+        ops[i] = Op.of(aggrColumns.get(i));
+        if (ops[i] == null) {
+          return null;
+        }
+      }
+      // The records only contain the columns which are not deleted.
+      int keyIndex = table.columnNames().indexOf(sourceTable.getReverseForeignKey().getRefColumn().getName());
+      return new Compiled(whereColumn, aggrColumns, ops, keyIndex);
+    } catch (ModelException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Compiles the view again after the columns of the referencing table
+   * changed, since the compiled columns refer to the values by position. The
+   * aggregates stay valid since the records did not change. If the view cannot
+   * be maintained anymore the aggregates are computed from the records.
+   */
+  public synchronized void reCompile() {
+    compiled = compile(ref, sourceTable);
+    if (compiled == null) {
+      clear();
+    }
+  }
+
+  public MaterializedTable table() {
+    return sourceTable.getSourceTable();
+  }
+
+  public synchronized int size() {
+    return committed.size();
+  }
+
+  @Nullable
+  private State state(Object key) {
+    if (changed.containsKey(key)) {
+      return changed.get(key);
+    }
+    return committed.get(key);
+  }
+
+  private State changedState(Object key, State state) {
+    if (changed.get(key) == state) {
+      return state;
+    }
+    State copy = state.copy();
+    changed.put(key, copy);
+    return copy;
+  }
+
+  private void add(Compiled c, State state, Object[] values, Resources resources) throws IOException {
+    if (!Boolean.TRUE.equals(c.whereColumn.value(values, resources, TableContext.EMPTY))) {
+      return;
+    }
+    for (int i = 0; i < c.ops.length; i++) {
+      Object x = c.aggrColumns.get(i).getBaseColumn().value(values, resources, TableContext.EMPTY);
+      if (x != null) {
+        state.values[i + 1] = c.ops[i].add(state.values[i + 1], x);
+        state.counts[i]++;
+      }
+    }
+  }
+
+  private boolean remove(Compiled c, State state, Object[] values, Resources resources) throws IOException {
+    if (!Boolean.TRUE.equals(c.whereColumn.value(values, resources, TableContext.EMPTY))) {
+      return true;
+    }
+    for (int i = 0; i < c.ops.length; i++) {
+      Object x = c.aggrColumns.get(i).getBaseColumn().value(values, resources, TableContext.EMPTY);
+      if (x != null) {
+        if (--state.counts[i] == 0) {
+          state.values[i + 1] = null;
+        } else if (!c.ops[i].remove(state.values, i + 1, x)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the aggregated values of the records referencing
+   * <code>sourceValues</code> in the same layout as the global aggregation, or
+   * <code>null</code> if the referenced key is <code>null</code> or the view
+   * cannot be maintained anymore.
+   */
+  @Nullable
+  public synchronized Object[] values(Object[] sourceValues, Resources resources) throws IOException {
+    Compiled c = compiled;
+    if (c == null) {
+      return null;
+    }
+    Object[] parentValues = sourceTable.getParent().values(sourceValues, resources, TableContext.EMPTY);
+    Object key = parentValues[sourceTable.getReverseForeignKey().getColumn().getIndex()];
+    if (key == null) {
+      return null;
+    }
+    State state = state(key);
+    if (state == null) {
+      state = new State(new Object[c.ops.length + 1], new long[c.ops.length]);
+      IterableTableReader reader = sourceTable.reader(resources, TableContext.withParent(sourceValues));
+      try {
+        Object[] values;
+        while ((values = reader.next()) != null) {
+          add(c, state, values, resources);
+        }
+      } finally {
+        reader.close();
+      }
+      changed.put(key, state);
+    }
+    Object[] result = new Object[c.ops.length + 1];
+    for (int i = 0; i < c.ops.length; i++) {
+      result[i + 1] = state.counts[i] == 0 && c.ops[i] != Op.COUNT ? null
+          : c.ops[i].finish(state.values[i + 1], state.counts[i]);
+    }
+    return result;
+  }
+
+  public synchronized void insert(Object[] values, Resources resources) throws IOException {
+    Compiled c = compiled;
+    Object key = c == null ? null : values[c.keyIndex];
+    State state = key == null ? null : state(key);
+    if (state != null) {
+      add(c, changedState(key, state), values, resources);
+    }
+  }
+
+  public synchronized void delete(Object[] values, Resources resources) throws IOException {
+    Compiled c = compiled;
+    Object key = c == null ? null : values[c.keyIndex];
+    State state = key == null ? null : state(key);
+    if (state != null && !remove(c, changedState(key, state), values, resources)) {
+      changed.put(key, null);
+    }
+  }
+
+  public synchronized void commit() {
+    for (Map.Entry<Object, State> entry : changed.entrySet()) {
+      if (entry.getValue() == null) {
+        committed.remove(entry.getKey());
+      } else {
+        committed.put(entry.getKey(), entry.getValue());
+      }
+    }
+    changed.clear();
+  }
+
+  public synchronized void rollback() {
+    changed.clear();
+  }
+
+  /**
+   * Drops all the aggregates, used when the records are changed without
+   * <code>insert</code> and <code>delete</code>.
+   */
+  public synchronized void clear() {
+    committed.clear();
+    changed.clear();
+  }
+}
@@ -16,10 +16,14 @@
 package com.cosyan.db.model;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
 import java.util.Arrays;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.RecordBatch;
 import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.io.TableReader.MultiFilteredTableReader;
 import com.cosyan.db.io.TableReader.SeekableTableReader;
@@ -36,6 +40,7 @@ import com.cosyan.db.model.Keys.GroupByKey;
 import com.cosyan.db.model.Keys.Ref;
 import com.cosyan.db.model.Keys.ReverseForeignKey;
 import com.cosyan.db.model.TableMeta.ExposedTableMeta;
+import com.cosyan.db.model.Vectors.Vector;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
@@ -414,6 +419,8 @@ public class References {
   public static class AggRefTableMeta extends TableMeta {
     private final IterableTableMeta sourceTable;
     private final ImmutableMap<String, ColumnMeta> columns;
+    @Nullable
+    private final RefAggregates refAggregates;
 
     @Override
     protected IndexColumn getColumn(Ident ident) throws ModelException {
@@ -438,6 +445,13 @@ public class References {
 
     public Object[] values(Object[] sourceValues, Resources resources, TableContext context)
         throws IOException {
+      // The maintained aggregates are only up to date for the writer of the referencing table.
+      if (refAggregates != null && resources.hasWriter(refAggregates.table().fullName())) {
+        Object[] aggrValues = refAggregates.values(sourceValues, resources);
+        if (aggrValues != null) {
+          return mapValues(aggrValues, resources, context, columns);
+        }
+      }
       IterableTableReader reader = sourceTable.reader(resources, TableContext.withParent(sourceValues));
       Object[] aggrValues = reader.next();
       reader.close();
@@ -475,6 +489,16 @@ public class References {
           return context.values(TableContext.PARENT)[index()];
         }
 
+        @Override
+        public Vector vector(RecordBatch batch, Resources resources, TableContext context) throws IOException {
+          return valuesOf(batch, resources, context);
+        }
+
+        @Override
+        public MethodHandle handle() {
+          return CompiledColumn.interpreted(this);
+        }
+
         @Override
         public String print(Object[] values, Resources resources, TableContext context) throws IOException {
           return String.valueOf(context.values(TableContext.PARENT)[index()]);
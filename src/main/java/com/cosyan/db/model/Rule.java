@@ -39,6 +39,8 @@ public abstract class Rule {
   private final Expression expr;
   protected final boolean nullIsTrue;
   protected final transient ColumnMeta column;
+  // The column evaluating the check, compiled to a method handle if enabled.
+  protected final transient ColumnMeta checkColumn;
   private final transient TableDependencies deps;
 
   public Rule(
@@ -46,9 +48,11 @@ public abstract class Rule {
       ColumnMeta column,
       Expression expr,
       boolean nullIsTrue,
-      TableDependencies deps) {
+      TableDependencies deps,
+      boolean compiled) {
     this.name = name;
     this.column = column;
+    this.checkColumn = compiled ? new CompiledColumn(column) : column;
     this.expr = expr;
     this.deps = deps;
     this.nullIsTrue = nullIsTrue;
@@ -90,8 +94,8 @@ public abstract class Rule {
     private final transient SeekableTableMeta table;
 
     public BooleanRule(String name, SeekableTableMeta table, ColumnMeta column, Expression expr,
-        boolean nullIsTrue, TableDependencies deps) {
-      super(name, column, expr, nullIsTrue, deps);
+        boolean nullIsTrue, TableDependencies deps, boolean compiled) {
+      super(name, column, expr, nullIsTrue, deps, compiled);
       assert column.getType() == DataTypes.BoolType;
       this.table = table;
     }
@@ -103,7 +107,7 @@ public abstract class Rule {
 
     @Override
     public boolean check(Resources resources, Object[] sourceValues) throws IOException {
-      Object check = column.value(sourceValues, resources, TableContext.EMPTY);
+      Object check = checkColumn.value(sourceValues, resources, TableContext.EMPTY);
       if (check == null) {
         return nullIsTrue;
       }
@@ -130,7 +134,7 @@ public abstract class Rule {
 
     public BooleanViewRule(String name, View view, ColumnMeta column, Expression expr,
         boolean nullIsTrue, TableDependencies deps) {
-      super(name, column, expr, nullIsTrue, deps);
+      super(name, column, expr, nullIsTrue, deps, /* compiled= */false);
       assert column.getType() == DataTypes.BoolType;
       this.view = view;
     }
@@ -142,7 +146,7 @@ public abstract class Rule {
 
     @Override
     public boolean check(Resources resources, Object[] sourceValues) throws IOException {
-      Object check = column.value(sourceValues, resources, TableContext.EMPTY);
+      Object check = checkColumn.value(sourceValues, resources, TableContext.EMPTY);
       if (check == null) {
         return nullIsTrue;
       }
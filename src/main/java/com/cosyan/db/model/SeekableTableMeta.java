@@ -136,6 +136,12 @@ public class SeekableTableMeta extends ExposedTableMeta implements ReferencedTab
     };
   }
 
+  @Override
+  public ImmutableList<IterableTableReader> splitReaders(Resources resources, TableContext context)
+      throws IOException {
+    return resources.reader(fullName()).splitReaders(resources);
+  }
+
   @Override
   public TableMeta parent() {
     return this;
@@ -15,6 +15,8 @@
  */
 package com.cosyan.db.model;
 
+import java.util.BitSet;
+
 import com.cosyan.db.doc.FunctionDocumentation.Func;
 import com.cosyan.db.doc.FunctionDocumentation.FuncCat;
 import com.cosyan.db.meta.MetaRepo.ModelException;
@@ -23,6 +25,9 @@ import com.cosyan.db.model.BuiltinFunctions.AggrFunction;
 import com.cosyan.db.model.BuiltinFunctions.TypedAggrFunction;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.StatAggregators.Skewness.SkewnessAggregator;
+import com.cosyan.db.model.Vectors.DoubleVector;
+import com.cosyan.db.model.Vectors.LongVector;
+import com.cosyan.db.model.Vectors.Vector;
 
 @FuncCat(name = "stats", doc = "Statistical functions")
 public class StatAggregators {
@@ -53,6 +58,22 @@ public class StatAggregators {
                 }
               }
 
+              @Override
+              public void addAll(Vector vector) {
+                DoubleVector values = (DoubleVector) vector;
+                BitSet nulls = values.nulls();
+                int i = nulls.nextClearBit(0);
+                if (i >= values.size()) {
+                  return;
+                }
+                // Adds the values in the same order as addImpl, so the result is the same.
+                double total = sum == null ? values.getDouble(i) : sum + values.getDouble(i);
+                for (i = nulls.nextClearBit(i + 1); i < values.size(); i = nulls.nextClearBit(i + 1)) {
+                  total += values.getDouble(i);
+                }
+                sum = total;
+              }
+
               @Override
               public Double finishImpl() {
                 return sum;
@@ -62,6 +83,13 @@ public class StatAggregators {
               public boolean isNull() {
                 return sum == null;
               }
+
+              @Override
+              public void merge(Aggregator<Double, Double> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -83,6 +111,22 @@ public class StatAggregators {
                 }
               }
 
+              @Override
+              public void addAll(Vector vector) {
+                LongVector values = (LongVector) vector;
+                BitSet nulls = values.nulls();
+                int i = nulls.nextClearBit(0);
+                if (i >= values.size()) {
+                  return;
+                }
+                // Adds the values in the same order as addImpl, so the result is the same.
+                long total = sum == null ? values.getLong(i) : sum + values.getLong(i);
+                for (i = nulls.nextClearBit(i + 1); i < values.size(); i = nulls.nextClearBit(i + 1)) {
+                  total += values.getLong(i);
+                }
+                sum = total;
+              }
+
               @Override
               public Long finishImpl() {
                 return sum;
@@ -92,6 +136,13 @@ public class StatAggregators {
               public boolean isNull() {
                 return sum == null;
               }
+
+              @Override
+              public void merge(Aggregator<Long, Long> other) {
+                if (!other.isNull()) {
+                  addImpl(other.finishImpl());
+                }
+              }
             };
           }
         };
@@ -103,6 +154,40 @@ public class StatAggregators {
 
   @Func(doc = "The average of the elements.")
   public static class Avg extends AggrFunction {
+    public static abstract class AvgAggregator<T> extends Aggregator<Double, T> {
+
+      private Double sum = null;
+      private long cnt = 0L;
+
+      protected void addItem(Double x) {
+        if (sum == null) {
+          sum = x;
+        } else {
+          sum += x;
+        }
+        cnt++;
+      }
+
+      @Override
+      public Double finishImpl() {
+        return sum / cnt;
+      }
+
+      @Override
+      public boolean isNull() {
+        return sum == null;
+      }
+
+      @Override
+      public void merge(Aggregator<Double, T> other) {
+        AvgAggregator<T> avg = (AvgAggregator<T>) other;
+        if (avg.sum != null) {
+          sum = sum == null ? avg.sum : sum + avg.sum;
+          cnt += avg.cnt;
+        }
+      }
+    }
+
     public Avg() {
       super("avg");
     }
@@ -114,29 +199,10 @@ public class StatAggregators {
 
           @Override
           public Aggregator<Double, Double> create() {
-            return new Aggregator<Double, Double>() {
-
-              private Double sum = null;
-              private Long cnt = 0L;
-
+            return new AvgAggregator<Double>() {
               @Override
               public void addImpl(Double x) {
-                if (sum == null) {
-                  sum = x;
-                } else {
-                  sum += x;
-                }
-                cnt++;
-              }
-
-              @Override
-              public Double finishImpl() {
-                return sum / cnt;
-              }
-
-              @Override
-              public boolean isNull() {
-                return sum == null;
+                addItem(x);
               }
             };
           }
@@ -146,29 +212,10 @@ public class StatAggregators {
 
           @Override
           public Aggregator<Double, Long> create() {
-            return new Aggregator<Double, Long>() {
-
-              private Double sum = null;
-              private Long cnt = 0L;
-
+            return new AvgAggregator<Long>() {
               @Override
               public void addImpl(Long x) {
-                if (sum == null) {
-                  sum = (double) x;
-                } else {
-                  sum += x;
-                }
-                cnt++;
-              }
-
-              @Override
-              public Double finishImpl() {
-                return sum / cnt;
-              }
-
-              @Override
-              public boolean isNull() {
-                return sum == null;
+                addItem((double) x);
               }
             };
           }
@@ -201,6 +248,21 @@ public class StatAggregators {
       return sum1 == null;
     }
 
+    @Override
+    public void merge(Aggregator<Double, T> other) {
+      StdDevAggregator<T> stdDev = (StdDevAggregator<T>) other;
+      if (stdDev.sum1 != null) {
+        if (sum1 == null) {
+          sum1 = 0.0;
+          sum2 = 0.0;
+          sum0 = 0.0;
+        }
+        sum1 += stdDev.sum1;
+        sum2 += stdDev.sum2;
+        sum0 += stdDev.sum0;
+      }
+    }
+
     protected double sampleMoment2() {
       return (sum0 * sum2 - sum1 * sum1) / (sum0 * (sum0 - 1));
     }
@@ -327,6 +389,15 @@ public class StatAggregators {
         sum3 += x * x * x;
       }
 
+      @Override
+      public void merge(Aggregator<Double, T> other) {
+        super.merge(other);
+        SkewnessAggregator<T> skewness = (SkewnessAggregator<T>) other;
+        if (skewness.sum3 != null) {
+          sum3 = sum3 == null ? skewness.sum3 : sum3 + skewness.sum3;
+        }
+      }
+
       protected double sampleMoment3() {
         double mu = sum1 / sum0;
         double sigmaPop = popDev();
@@ -394,6 +465,15 @@ public class StatAggregators {
         sum4 += x * x * x * x;
       }
 
+      @Override
+      public void merge(Aggregator<Double, T> other) {
+        super.merge(other);
+        KurtosisAggregator<T> kurtosis = (KurtosisAggregator<T>) other;
+        if (kurtosis.sum4 != null) {
+          sum4 = sum4 == null ? kurtosis.sum4 : sum4 + kurtosis.sum4;
+        }
+      }
+
       protected double sampleMoment4() {
         double mu = sum1 / sum0;
         return popToSampleCoeff() * (sum4 / sum0
@@ -104,6 +104,23 @@ public class StringFunctions {
     }
   }
 
+  @Func(doc = "Returns true iff self starts with prefix. Uses the index of self if there is one.")
+  public static class StartsWith extends SimpleFunction<Boolean> {
+    public static final String NAME = "starts_with";
+
+    public StartsWith() {
+      super(NAME, DataTypes.BoolType,
+          ImmutableMap.of("self", DataTypes.StringType, "prefix", DataTypes.StringType));
+    }
+
+    @Override
+    public Boolean call(ImmutableList<Object> argValues) {
+      String str = (String) argValues.get(0);
+      String prefix = (String) argValues.get(1);
+      return str.startsWith(prefix);
+    }
+  }
+
   @Func(doc = "Replaces every occurrences of target with replacement in self.")
   public static class Replace extends SimpleFunction<String> {
     public Replace() {
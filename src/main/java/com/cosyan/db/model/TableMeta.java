@@ -109,6 +109,17 @@ public abstract class TableMeta implements CompiledObject {
 
     public abstract IterableTableReader reader(Resources resources, TableContext context) throws IOException;
 
+    /**
+     * Readers of disjoint parts of the table which together return the same
+     * records as <code>reader</code> and can be read from different threads, or
+     * <code>null</code> if the table cannot be split.
+     */
+    @Nullable
+    public ImmutableList<IterableTableReader> splitReaders(Resources resources, TableContext context)
+        throws IOException {
+      return null;
+    }
+
     public abstract TableDependencies tableDependencies();
   }
 
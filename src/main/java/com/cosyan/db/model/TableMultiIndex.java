@@ -19,10 +19,14 @@ import java.io.IOException;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
+import com.cosyan.db.index.KeyRange;
 import com.cosyan.db.index.MultiLeafTries.DoubleMultiIndex;
 import com.cosyan.db.index.MultiLeafTries.LongMultiIndex;
 import com.cosyan.db.index.MultiLeafTries.MultiColumnMultiIndex;
 import com.cosyan.db.index.MultiLeafTries.StringMultiIndex;
+import com.cosyan.db.io.Indexes;
+import com.cosyan.db.io.Indexes.IndexCursor;
+import com.cosyan.db.io.Indexes.IndexLoader;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
 import com.cosyan.db.model.DataTypes.DataType;
@@ -38,16 +42,33 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
 
   public abstract long[] get(Object key) throws IOException;
 
+  /**
+   * Returns the file pointers of the key as of the last commit, without the
+   * uncommitted changes of the writing transaction.
+   */
+  public abstract long[] getCommitted(Object key) throws IOException;
+
   public abstract void commit() throws IOException;
 
   public abstract void rollback();
 
+  /**
+   * Keeps a Bloom filter of the keys to answer the lookups of absent keys
+   * without reading the index.
+   */
+  public abstract void enableBloomFilter(int bitsPerKey) throws IOException;
+
+  @Override
+  public abstract IndexLoader loader() throws IOException;
+
   public abstract boolean contains(Object key) throws IOException;
 
   public abstract ByteMultiTrieStat stats() throws IOException;
 
   public abstract void drop() throws IOException;
 
+  public abstract void sync() throws IOException;
+
   private boolean valid = true;
 
   public void invalidate() {
@@ -86,6 +107,21 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return index.get((Long) key);
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      return index.getCommitted((Long) key);
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -96,6 +132,16 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((Long) key).length > 0;
@@ -111,6 +157,11 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.LongType;
@@ -145,6 +196,21 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return index.get((String) key);
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      return index.getCommitted((String) key);
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -155,6 +221,16 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((String) key).length > 0;
@@ -170,6 +246,11 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.StringType;
@@ -204,6 +285,21 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return index.get((Double) key);
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      return index.getCommitted((Double) key);
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -214,6 +310,16 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((Double) key).length > 0;
@@ -229,6 +335,11 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.StringType;
@@ -269,6 +380,21 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return index.get((Object[]) key);
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      return index.getCommitted((Object[]) key);
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -279,6 +405,16 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((Object[]) key).length > 0;
@@ -294,6 +430,11 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.StringType;
@@ -20,9 +20,13 @@ import java.io.IOException;
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.IDIndex;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.KeyRange;
 import com.cosyan.db.index.LeafTypes.DoubleIndex;
 import com.cosyan.db.index.LeafTypes.LongIndex;
 import com.cosyan.db.index.LeafTypes.StringIndex;
+import com.cosyan.db.io.Indexes;
+import com.cosyan.db.io.Indexes.IndexCursor;
+import com.cosyan.db.io.Indexes.IndexLoader;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
 import com.cosyan.db.model.DataTypes.DataType;
@@ -35,14 +39,31 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
 
   public abstract long get0(Object key) throws IOException;
 
+  /**
+   * Returns the file pointer of the key as of the last commit, without the
+   * uncommitted changes of the writing transaction.
+   */
+  public abstract long[] getCommitted(Object key) throws IOException;
+
   public abstract void commit() throws IOException;
 
   public abstract void rollback();
 
+  /**
+   * Keeps a Bloom filter of the keys to answer the lookups of absent keys
+   * without reading the index.
+   */
+  public abstract void enableBloomFilter(int bitsPerKey) throws IOException;
+
+  @Override
+  public abstract IndexLoader loader() throws IOException;
+
   public abstract ByteTrieStat stats() throws IOException;
 
   public abstract void drop() throws IOException;
 
+  public abstract void sync() throws IOException;
+
   private boolean valid = true;
 
   public void invalidate() {
@@ -91,6 +112,26 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       }
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      Long filePointer = index.getCommitted((Long) key);
+      if (filePointer == null) {
+        return new long[0];
+      } else {
+        return new long[] { filePointer };
+      }
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -101,6 +142,16 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((Long) key) != null;
@@ -116,6 +167,11 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.LongType;
@@ -160,6 +216,26 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       }
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      Long filePointer = index.getCommitted((String) key);
+      if (filePointer == null) {
+        return new long[0];
+      } else {
+        return new long[] { filePointer };
+      }
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -170,6 +246,16 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((String) key) != null;
@@ -185,6 +271,11 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.StringType;
@@ -229,6 +320,26 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       }
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      Long filePointer = index.getCommitted((Double) key);
+      if (filePointer == null) {
+        return new long[0];
+      } else {
+        return new long[] { filePointer };
+      }
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -239,6 +350,16 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) throws IOException {
+      index.enableBloomFilter(bitsPerKey);
+    }
+
+    @Override
+    public IndexLoader loader() throws IOException {
+      return Indexes.loader(index.loader());
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((Double) key) != null;
@@ -254,6 +375,11 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     @Override
     public DataType<?> keyDataType() {
       return DataTypes.DoubleType;
@@ -298,6 +424,26 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       }
     }
 
+    @Override
+    public long[] getCommitted(Object key) throws IOException {
+      Long filePointer = index.getCommitted((Long) key);
+      if (filePointer == null) {
+        return new long[0];
+      } else {
+        return new long[] { filePointer };
+      }
+    }
+
+    @Override
+    public IndexCursor range(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, false));
+    }
+
+    @Override
+    public IndexCursor rangeCommitted(KeyRange range) throws IOException {
+      return Indexes.cursor(index.cursor(range, true));
+    }
+
     @Override
     public void commit() throws IOException {
       index.commit();
@@ -308,6 +454,17 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.rollback();
     }
 
+    @Override
+    public void enableBloomFilter(int bitsPerKey) {
+      // The IDs are looked up directly by their position in the file.
+    }
+
+    @Override
+    public IndexLoader loader() {
+      // The IDs added in order fill the segments of the file in order.
+      return Indexes.loader(this);
+    }
+
     @Override
     public boolean contains(Object key) throws IOException {
       return index.get((Long) key) != null;
@@ -323,6 +480,11 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       index.drop();
     }
 
+    @Override
+    public void sync() throws IOException {
+      index.sync();
+    }
+
     public long getLastID() {
       return index.getLastID();
     }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.model;
+
+import java.util.BitSet;
+
+import com.cosyan.db.model.DataTypes.DataType;
+
+/**
+ * The values of one column for a batch of records. Integer, float and boolean
+ * columns are stored in primitive arrays and bitmaps, so expressions over them
+ * can be evaluated in tight loops without boxing.
+ */
+public class Vectors {
+
+  public static abstract class Vector {
+    protected final int size;
+    protected final BitSet nulls;
+
+    protected Vector(int size, BitSet nulls) {
+      this.size = size;
+      this.nulls = nulls;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public BitSet nulls() {
+      return nulls;
+    }
+
+    public boolean isNull(int i) {
+      return nulls.get(i);
+    }
+
+    public abstract Object get(int i);
+  }
+
+  public static class LongVector extends Vector {
+    private final long[] values;
+
+    public LongVector(long[] values, int size, BitSet nulls) {
+      super(size, nulls);
+      this.values = values;
+    }
+
+    public long getLong(int i) {
+      return values[i];
+    }
+
+    @Override
+    public Object get(int i) {
+      return nulls.get(i) ? null : values[i];
+    }
+  }
+
+  public static class DoubleVector extends Vector {
+    private final double[] values;
+
+    public DoubleVector(double[] values, int size, BitSet nulls) {
+      super(size, nulls);
+      this.values = values;
+    }
+
+    public double getDouble(int i) {
+      return values[i];
+    }
+
+    @Override
+    public Object get(int i) {
+      return nulls.get(i) ? null : values[i];
+    }
+  }
+
+  public static class BoolVector extends Vector {
+    private final BitSet values;
+
+    public BoolVector(BitSet values, int size, BitSet nulls) {
+      super(size, nulls);
+      this.values = values;
+    }
+
+    public BitSet values() {
+      return values;
+    }
+
+    /**
+     * The positions where the value is <code>true</code> and not
+     * <code>null</code>.
+     */
+    public BitSet selected() {
+      BitSet selected = (BitSet) values.clone();
+      selected.andNot(nulls);
+      return selected;
+    }
+
+    @Override
+    public Object get(int i) {
+      return nulls.get(i) ? null : values.get(i);
+    }
+  }
+
+  public static class ObjectVector extends Vector {
+    private final Object[] values;
+
+    public ObjectVector(Object[] values, int size, BitSet nulls) {
+      super(size, nulls);
+      this.values = values;
+    }
+
+    @Override
+    public Object get(int i) {
+      return values[i];
+    }
+  }
+
+  /**
+   * Creates a vector from the values of a column, using a primitive layout if
+   * the type has one.
+   */
+  public static Vector of(DataType<?> type, Object[] values, int size) {
+    BitSet nulls = new BitSet(size);
+    if (type.isLong()) {
+      long[] longs = new long[size];
+      for (int i = 0; i < size; i++) {
+        if (values[i] == null) {
+          nulls.set(i);
+        } else {
+          longs[i] = (Long) values[i];
+        }
+      }
+      return new LongVector(longs, size, nulls);
+    } else if (type.isDouble()) {
+      double[] doubles = new double[size];
+      for (int i = 0; i < size; i++) {
+        if (values[i] == null) {
+          nulls.set(i);
+        } else {
+          doubles[i] = (Double) values[i];
+        }
+      }
+      return new DoubleVector(doubles, size, nulls);
+    } else if (type.isBool()) {
+      BitSet bools = new BitSet(size);
+      for (int i = 0; i < size; i++) {
+        if (values[i] == null) {
+          nulls.set(i);
+        } else if ((Boolean) values[i]) {
+          bools.set(i);
+        }
+      }
+      return new BoolVector(bools, size, nulls);
+    } else {
+      for (int i = 0; i < size; i++) {
+        if (values[i] == null) {
+          nulls.set(i);
+        }
+      }
+      return new ObjectVector(values, size, nulls);
+    }
+  }
+
+  /**
+   * Converts an integer vector to float, the same way as the numeric promotion
+   * of mixed type arithmetic.
+   */
+  public static DoubleVector toDouble(Vector vector) {
+    if (vector instanceof DoubleVector) {
+      return (DoubleVector) vector;
+    }
+    LongVector longs = (LongVector) vector;
+    double[] doubles = new double[longs.size];
+    for (int i = 0; i < longs.size; i++) {
+      doubles[i] = longs.values[i];
+    }
+    return new DoubleVector(doubles, longs.size, longs.nulls);
+  }
+
+  /**
+   * The positions where any of the two vectors is <code>null</code>.
+   */
+  public static BitSet nulls(Vector left, Vector right) {
+    BitSet nulls = (BitSet) left.nulls.clone();
+    nulls.or(right.nulls);
+    return nulls;
+  }
+}
@@ -15,22 +15,88 @@
  */
 package com.cosyan.db.model.stat;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.zip.CRC32;
 
+import com.cosyan.db.index.KeyRange;
+
 import net.agkn.hll.HLL;
 
 public class ColumnStats {
 
   public static final int CNTS_SIZE = 256;
+  public static final int SAMPLE_SIZE = 128;
   private long notNull;
   private final HLL hll;
   private final long[] cnts;
 
+  // The minimum, the maximum and a sample of the numeric and date values. The
+  // sorted sample is an equi-depth histogram of the values.
+  private long numeric;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private double[] sample = new double[0];
+
   public ColumnStats() {
     cnts = new long[CNTS_SIZE];
     hll = new HLL(13, 5);
   }
 
+  private ColumnStats(long notNull, HLL hll, long[] cnts) {
+    this.notNull = notNull;
+    this.hll = hll;
+    this.cnts = cnts;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(notNull);
+    for (int i = 0; i < CNTS_SIZE; i++) {
+      out.writeLong(cnts[i]);
+    }
+    byte[] bytes = hll.toBytes();
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes the range statistics, stored separately from the rest to keep the
+   * format of older stat files.
+   */
+  public void writeRange(DataOutput out) throws IOException {
+    out.writeLong(numeric);
+    out.writeDouble(min);
+    out.writeDouble(max);
+    out.writeInt(sample.length);
+    for (double d : sample) {
+      out.writeDouble(d);
+    }
+  }
+
+  public void readRange(DataInput in) throws IOException {
+    numeric = in.readLong();
+    min = in.readDouble();
+    max = in.readDouble();
+    sample = new double[in.readInt()];
+    for (int i = 0; i < sample.length; i++) {
+      sample[i] = in.readDouble();
+    }
+  }
+
+  public static ColumnStats read(DataInput in) throws IOException {
+    long notNull = in.readLong();
+    long[] cnts = new long[CNTS_SIZE];
+    for (int i = 0; i < CNTS_SIZE; i++) {
+      cnts[i] = in.readLong();
+    }
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new ColumnStats(notNull, HLL.fromBytes(bytes), cnts);
+  }
+
   public void add(Object obj) {
     if (obj != null) {
       notNull++;
@@ -43,9 +109,74 @@ public class ColumnStats {
       cnts[address]++;
       // TODO: use 64 bit hashing for HLL.
       hll.addRaw(hash32);
+
+      double d = toDouble(obj);
+      if (!Double.isNaN(d)) {
+        addNumeric(d);
+      }
     }
   }
 
+  private static double toDouble(Object obj) {
+    if (obj instanceof Number) {
+      return ((Number) obj).doubleValue();
+    } else if (obj instanceof Date) {
+      return ((Date) obj).getTime();
+    } else {
+      return Double.NaN;
+    }
+  }
+
+  private void addNumeric(double d) {
+    numeric++;
+    min = Math.min(min, d);
+    max = Math.max(max, d);
+    if (sample.length < SAMPLE_SIZE) {
+      sample = Arrays.copyOf(sample, sample.length + 1);
+      sample[sample.length - 1] = d;
+    } else {
+      // Reservoir sampling with a deterministic pseudo random index.
+      long i = ((numeric * 0x9E3779B97F4A7C15L) >>> 1) % numeric;
+      if (i < SAMPLE_SIZE) {
+        sample[(int) i] = d;
+      }
+    }
+  }
+
+  /**
+   * The estimated ratio of the values within <code>range</code>, or -1 if the
+   * column has no numeric or date values.
+   */
+  public double rangeSelectivity(KeyRange range) {
+    if (sample.length == 0) {
+      return -1.0;
+    }
+    double from = range.getFrom() == null ? Double.NEGATIVE_INFINITY : toDouble(range.getFrom());
+    double to = range.getTo() == null ? Double.POSITIVE_INFINITY : toDouble(range.getTo());
+    if (Double.isNaN(from) || Double.isNaN(to)) {
+      return -1.0;
+    }
+    if (from > max || to < min) {
+      return 0.0;
+    }
+    int matching = 0;
+    for (double d : sample) {
+      if ((d > from || (d == from && range.isFromInclusive()))
+          && (d < to || (d == to && range.isToInclusive()))) {
+        matching++;
+      }
+    }
+    return (double) matching / sample.length;
+  }
+
+  public double min() {
+    return min;
+  }
+
+  public double max() {
+    return max;
+  }
+
   public double maxRelativeCardinality() {
     long max = 0L;
     for (int i = 0; i < CNTS_SIZE; i++) {
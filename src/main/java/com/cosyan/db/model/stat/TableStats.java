@@ -17,52 +17,200 @@ package com.cosyan.db.model.stat;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.index.KeyRange;
+import com.cosyan.db.model.BasicColumn;
 
+/**
+ * Statistics of the committed records of a table: the number of records and a
+ * <code>ColumnStats</code> per column. The column statistics only grow, the
+ * values of the deleted records are not removed from the sketches.
+ */
 public class TableStats {
 
   private final Config config;
   private final String tableName;
 
   private long cnt = 0L;
+  private long deletedCnt = 0L;
+  private long deletedBytes = 0L;
+  private boolean fileStats = true;
+  private final HashMap<String, ColumnStats> columnStats = new HashMap<>();
 
   public TableStats(Config config, String tableName) throws IOException {
     this.config = config;
     this.tableName = tableName;
   }
 
-  public void load() throws IOException {
-    File statFile = new File(config.statDir() + File.separator + tableName);
+  private File statFile() {
+    return new File(config.statDir() + File.separator + tableName);
+  }
+
+  public synchronized void load() throws IOException {
+    File statFile = statFile();
+    fileStats = false;
     if (statFile.exists()) {
-      DataInputStream stream = new DataInputStream(new FileInputStream(statFile));
-      cnt = stream.readLong();
-      stream.close();
+      try (DataInputStream stream = new DataInputStream(new FileInputStream(statFile))) {
+        cnt = stream.readLong();
+        columnStats.clear();
+        try {
+          int columns = stream.readInt();
+          for (int i = 0; i < columns; i++) {
+            String name = stream.readUTF();
+            columnStats.put(name, ColumnStats.read(stream));
+          }
+          deletedCnt = stream.readLong();
+          deletedBytes = stream.readLong();
+          fileStats = true;
+          int rangeColumns = stream.readInt();
+          for (int i = 0; i < rangeColumns; i++) {
+            String name = stream.readUTF();
+            columnStats.computeIfAbsent(name, k -> new ColumnStats()).readRange(stream);
+          }
+        } catch (EOFException e) {
+          // Stat file without column, table file or range statistics.
+        }
+      }
     }
   }
 
-  public void save() throws IOException {
-    File statFile = new File(config.statDir() + File.separator + tableName);
-    if (statFile.exists()) {
-      DataOutputStream stream = new DataOutputStream(new FileOutputStream(statFile));
+  public synchronized void save() throws IOException {
+    Files.createDirectories(Paths.get(config.statDir()));
+    try (DataOutputStream stream = new DataOutputStream(new FileOutputStream(statFile()))) {
       stream.writeLong(cnt);
-      stream.close();
+      stream.writeInt(columnStats.size());
+      for (Map.Entry<String, ColumnStats> entry : columnStats.entrySet()) {
+        stream.writeUTF(entry.getKey());
+        entry.getValue().write(stream);
+      }
+      stream.writeLong(deletedCnt);
+      stream.writeLong(deletedBytes);
+      stream.writeInt(columnStats.size());
+      for (Map.Entry<String, ColumnStats> entry : columnStats.entrySet()) {
+        stream.writeUTF(entry.getKey());
+        entry.getValue().writeRange(stream);
+      }
     }
   }
 
-  public boolean isEmpty() {
+  /**
+   * Whether the loaded statistics contain the number of deleted records in the
+   * table file. If not these have to be initialized with <code>initFileStats</code>.
+   */
+  public synchronized boolean hasFileStats() {
+    return fileStats;
+  }
+
+  public synchronized void initFileStats(long records, long deletedRecords, long deletedBytes) {
+    this.cnt = records;
+    this.deletedCnt = deletedRecords;
+    this.deletedBytes = deletedBytes;
+    this.fileStats = true;
+  }
+
+  /**
+   * Takes over the statistics of the same table loaded before, e.g. when the
+   * tables are reloaded after a failed alter.
+   */
+  public synchronized void copy(TableStats other) {
+    synchronized (other) {
+      cnt = other.cnt;
+      deletedCnt = other.deletedCnt;
+      deletedBytes = other.deletedBytes;
+      fileStats = other.fileStats;
+      columnStats.clear();
+      columnStats.putAll(other.columnStats);
+    }
+  }
+
+  public synchronized void drop() {
+    statFile().delete();
+  }
+
+  public synchronized boolean isEmpty() {
     return cnt == 0;
   }
 
-  public void insert(long insertedLines) {
-    cnt += insertedLines;
+  /**
+   * Adds the records of a committed transaction. The values of the inserted
+   * records are in the order of <code>columns</code>. The deleted records stay
+   * in the table file until it is vacuumed.
+   */
+  public synchronized void commit(
+      List<BasicColumn> columns, List<Object[]> inserted, long deleted, long deletedBytes) {
+    for (Object[] values : inserted) {
+      for (int i = 0; i < columns.size(); i++) {
+        columnStats.computeIfAbsent(columns.get(i).getName(), k -> new ColumnStats()).add(values[i]);
+      }
+    }
+    cnt = Math.max(0L, cnt + inserted.size() - deleted);
+    this.deletedCnt += deleted;
+    this.deletedBytes += deletedBytes;
+  }
+
+  /**
+   * The deleted records are removed from the table file.
+   */
+  public synchronized void vacuumed() {
+    deletedCnt = 0L;
+    deletedBytes = 0L;
+  }
+
+  /**
+   * The number of records in the table.
+   */
+  public synchronized long count() {
+    return cnt;
+  }
+
+  /**
+   * The number of deleted records in the table file.
+   */
+  public synchronized long deletedCount() {
+    return deletedCnt;
+  }
+
+  /**
+   * The size of the deleted records in the table file.
+   */
+  public synchronized long deletedBytes() {
+    return deletedBytes;
+  }
+
+  /**
+   * The estimated number of distinct non null values of the column, 0 if
+   * unknown.
+   */
+  public synchronized long cardinality(String column) {
+    ColumnStats stats = columnStats.get(column);
+    return stats == null ? 0L : stats.cardinality();
+  }
+
+  /**
+   * The estimated ratio of the values of the column within <code>range</code>,
+   * or -1 if unknown.
+   */
+  public synchronized double rangeSelectivity(String column, KeyRange range) {
+    ColumnStats stats = columnStats.get(column);
+    return stats == null ? -1.0 : stats.rangeSelectivity(range);
   }
 
-  public void delete(long deletedLines) {
-    cnt -= deletedLines;
+  /**
+   * The number of non null values ever added to the column.
+   */
+  public synchronized long notNull(String column) {
+    ColumnStats stats = columnStats.get(column);
+    return stats == null ? 0L : stats.notNull();
   }
 }
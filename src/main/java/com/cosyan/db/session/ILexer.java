@@ -15,6 +15,7 @@
  */
 package com.cosyan.db.session;
 
+import com.cosyan.db.lang.expr.Literals.Parameters;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.session.IParser.ParserException;
 import com.google.common.collect.PeekingIterator;
@@ -23,6 +24,12 @@ public interface ILexer {
 
   PeekingIterator<Token> tokenize(String sql) throws ParserException;
 
+  /**
+   * Tokenizes the SQL and registers its <code>?</code> placeholders in
+   * <code>parameters</code>.
+   */
+  PeekingIterator<Token> tokenize(String sql, Parameters parameters) throws ParserException;
+
   PeekingIterator<Token> tokenizeExpression(String sql) throws ParserException;
 
 }
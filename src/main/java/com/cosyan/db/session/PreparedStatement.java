@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.session;
+
+import com.cosyan.db.auth.AuthToken;
+import com.cosyan.db.lang.expr.Literals.ParamLiteral;
+import com.cosyan.db.lang.expr.Literals.Parameters;
+import com.cosyan.db.lang.expr.Statements.Statement;
+import com.cosyan.db.meta.MetaReader;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.cosyan.db.transaction.MetaResources;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Statements parsed once and executed many times with different parameter
+ * values. The statements are only compiled again if the meta repo or the types
+ * of the parameter values change.
+ */
+public class PreparedStatement {
+
+  private final long id;
+  private final ImmutableList<Statement> statements;
+  private final Parameters parameters;
+
+  private long metaVersion;
+  private ImmutableList<DataType<?>> types;
+  private MetaResources metaResources;
+  private long compilations;
+
+  PreparedStatement(long id, Iterable<Statement> statements, Parameters parameters) {
+    this.id = id;
+    this.statements = ImmutableList.copyOf(statements);
+    this.parameters = parameters;
+  }
+
+  public long id() {
+    return id;
+  }
+
+  public int numParams() {
+    return parameters.size();
+  }
+
+  public ImmutableList<Statement> statements() {
+    return statements;
+  }
+
+  public synchronized long compilations() {
+    return compilations;
+  }
+
+  public void check(Object[] values) throws RuleException {
+    if (values.length != parameters.size()) {
+      throw new RuleException(
+          String.format("Expected '%s' parameters but got '%s'.", parameters.size(), values.length));
+    }
+    for (Object value : values) {
+      try {
+        ParamLiteral.type(value);
+      } catch (IllegalArgumentException e) {
+        throw new RuleException(e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Binds the parameter values and returns the resources needed by the
+   * statements. The caller has to hold the meta repo read lock.
+   */
+  public synchronized MetaResources compile(Object[] values, MetaReader metaReader, AuthToken authToken)
+      throws ModelException {
+    parameters.bind(values);
+    ImmutableList<DataType<?>> newTypes = parameters.types();
+    if (metaResources == null || metaVersion != metaReader.metaVersion() || !newTypes.equals(types)) {
+      metaResources = null;
+      MetaResources newMetaResources = MetaResources.empty();
+      for (Statement statement : statements) {
+        newMetaResources = newMetaResources.merge(statement.compile(metaReader, authToken));
+      }
+      compilations++;
+      metaVersion = metaReader.metaVersion();
+      types = newTypes;
+      metaResources = newMetaResources;
+    }
+    return metaResources;
+  }
+}
@@ -15,16 +15,23 @@
  */
 package com.cosyan.db.session;
 
+import java.util.HashMap;
+
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.auth.Authenticator.AuthException;
 import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.lang.expr.Literals.Parameters;
 import com.cosyan.db.lang.expr.Statements.MetaStatement;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.lang.transaction.ResultSink;
 import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.MetaRepo;
+import com.cosyan.db.meta.MetaRepo.RuleException;
 import com.cosyan.db.session.IParser.ParserException;
+import com.cosyan.db.transaction.DataTransaction;
 import com.cosyan.db.transaction.Transaction;
 import com.cosyan.db.transaction.TransactionHandler;
 import com.google.common.collect.PeekingIterator;
@@ -40,6 +47,8 @@ public class Session {
   private final AuthToken authToken;
 
   private Transaction lastTransaction = null;
+  private final HashMap<Long, PreparedStatement> preparedStatements = new HashMap<>();
+  private long preparedCntr = 0L;
 
   public Session(MetaRepo metaRepo, TransactionHandler transactionHandler, TransactionJournal transactionJournal, AuthToken authToken,
       IParser parser, ILexer lexer) {
@@ -60,6 +69,22 @@ public class Session {
     }
   }
 
+  /**
+   * Executes the statements, writing the results of data statements to the
+   * sink as they are produced. Meta statements are executed as usual.
+   */
+  public Result execute(String sql, ResultSink sink) {
+    try {
+      Transaction transaction = transaction(sql);
+      if (transaction instanceof DataTransaction) {
+        ((DataTransaction) transaction).setResultSink(sink);
+      }
+      return execute(transaction);
+    } catch (ParserException | ConfigException e) {
+      return new ErrorResult(e);
+    }
+  }
+
   private Transaction transaction(String sql) throws ConfigException, ParserException {
     PeekingIterator<Token> tokens = lexer.tokenize(sql);
     if (parser.isMeta(tokens)) {
@@ -70,6 +95,55 @@ public class Session {
     }
   }
 
+  /**
+   * Parses the statements with <code>?</code> parameter placeholders and
+   * returns a handle to execute them with different parameter values.
+   */
+  public synchronized PreparedStatement prepare(String sql) throws ParserException {
+    Parameters parameters = new Parameters();
+    PeekingIterator<Token> tokens = lexer.tokenize(sql, parameters);
+    if (parser.isMeta(tokens)) {
+      throw new ParserException("Only select, insert, delete and update statements can be prepared.", tokens.peek());
+    }
+    PreparedStatement preparedStatement = new PreparedStatement(
+        preparedCntr++, parser.parseStatements(tokens), parameters);
+    preparedStatements.put(preparedStatement.id(), preparedStatement);
+    return preparedStatement;
+  }
+
+  /**
+   * Releases the prepared statement, executing it afterwards fails. Prepared
+   * statements are kept until they are released or the session is closed.
+   */
+  public synchronized Result deallocate(long preparedStatementId) {
+    if (preparedStatements.remove(preparedStatementId) == null) {
+      return new ErrorResult(
+          new RuleException(String.format("Invalid prepared statement '%s'.", preparedStatementId)));
+    }
+    return new StatementResult(1L);
+  }
+
+  public Result execute(long preparedStatementId, Object[] values) {
+    PreparedStatement preparedStatement;
+    synchronized (this) {
+      preparedStatement = preparedStatements.get(preparedStatementId);
+    }
+    if (preparedStatement == null) {
+      return new ErrorResult(
+          new RuleException(String.format("Invalid prepared statement '%s'.", preparedStatementId)));
+    }
+    return execute(preparedStatement, values);
+  }
+
+  public Result execute(PreparedStatement preparedStatement, Object[] values) {
+    try {
+      preparedStatement.check(values);
+      return execute(transactionHandler.begin(preparedStatement, values, metaRepo.config()));
+    } catch (RuleException | ConfigException e) {
+      return new ErrorResult(e);
+    }
+  }
+
   public Result execute(Transaction transaction) {
     synchronized (this) {
       if (lastTransaction != null) {
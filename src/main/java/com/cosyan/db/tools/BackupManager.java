@@ -27,6 +27,7 @@ import org.apache.commons.io.FileUtils;
 
 import com.cosyan.db.conf.Config;
 import com.cosyan.db.logging.MetaJournal.DBException;
+import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.MetaReader;
 import com.cosyan.db.meta.MetaRepo;
 import com.cosyan.db.meta.MetaWriter;
@@ -99,6 +100,7 @@ public class BackupManager {
       } finally {
         stream.close();
       }
+      TransactionJournal.discard(config);
       metaWriter.resetAndReadTables();
     } finally {
       metaWriter.metaRepoWriteUnlock();
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MetaReader;
+import com.cosyan.db.meta.MetaRepo;
+import com.cosyan.db.meta.TableStat;
+import com.cosyan.db.session.Session;
+
+/**
+ * Background task running <code>VACUUM</code> on the tables where the ratio of
+ * the deleted records exceeds the configured threshold.
+ */
+public class Compactor {
+
+  private final MetaRepo metaRepo;
+  private final Session session;
+  private final int intervalSec;
+  private final int deletedRatioPct;
+  private final AtomicLong failures = new AtomicLong();
+
+  private ScheduledExecutorService executor;
+
+  public Compactor(Config config, MetaRepo metaRepo, Session session) throws ConfigException {
+    this.metaRepo = metaRepo;
+    this.session = session;
+    this.intervalSec = config.getInt(Config.VACUUM_INTERVAL_SEC, 0);
+    this.deletedRatioPct = config.getInt(Config.VACUUM_DELETED_RATIO_PCT, 50);
+  }
+
+  public synchronized void start() {
+    if (intervalSec <= 0 || executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::compact, intervalSec, intervalSec, TimeUnit.SECONDS);
+  }
+
+  public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  public List<String> tablesToVacuum() {
+    List<String> result = new ArrayList<>();
+    MetaReader metaReader = metaRepo.metaRepoReadLock();
+    try {
+      for (MaterializedTable table : metaReader.getTables(session.authToken())) {
+        try {
+          TableStat stat = table.stat();
+          if (stat.getDeletedRecords() > 0 && stat.deletedRatio() * 100 >= deletedRatioPct) {
+            result.add(table.fullName());
+          }
+        } catch (RuntimeException e) {
+          failed(e);
+        }
+      }
+    } finally {
+      metaReader.metaRepoReadUnlock();
+    }
+    return result;
+  }
+
+  /**
+   * Vacuums the tables. A failed vacuum is logged in the transaction journal
+   * like any other transaction and is retried on the next run. Unexpected
+   * errors are reported and skip only the affected table, since an exception
+   * thrown by a scheduled run would cancel all the later runs.
+   */
+  public void compact() {
+    List<String> tables;
+    try {
+      tables = tablesToVacuum();
+    } catch (RuntimeException e) {
+      failed(e);
+      return;
+    }
+    for (String table : tables) {
+      try {
+        session.execute("vacuum " + table + ";");
+      } catch (RuntimeException e) {
+        failed(e);
+      }
+    }
+  }
+
+  private void failed(RuntimeException e) {
+    failures.incrementAndGet();
+    e.printStackTrace();
+  }
+
+  /**
+   * The number of unexpected errors of the runs so far.
+   */
+  public long failures() {
+    return failures.get();
+  }
+}
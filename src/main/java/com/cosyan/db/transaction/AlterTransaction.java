@@ -57,7 +57,9 @@ public class AlterTransaction extends Transaction {
         return new ErrorResult(e);
       }
       try {
-        lock(metaResources, metaRepo);
+        if (!lock(metaResources, metaRepo)) {
+          return new ErrorResult(new RuleException("Transaction cancelled."));
+        }
         journal.start(trxNumber);
         Result result;
         Resources resources = metaRepo.resources(metaResources, session.authToken());
@@ -75,14 +77,15 @@ public class AlterTransaction extends Transaction {
           return new CrashResult(e);
         }
         try {
-          resources.commit();
+          // The file pointers logged so far might not be valid after the alter.
+          metaRepo.checkpoint(journal);
+          // Only a vacuum logs changes, the recovery completes the swap of the table file.
+          commit(metaRepo, resources, journal);
           metaRepo.writeTables();
+          metaRepo.checkpoint(journal);
           journal.success(trxNumber);
           return result;
-        } catch (IOException e) {
-          // Need to restore db;
-          journal.ioWriteError(trxNumber);
-          e.printStackTrace();
+        } catch (IOException | DBException e) {
           return new CrashResult(e);
         }
       } catch (Throwable e) {
@@ -94,7 +97,7 @@ public class AlterTransaction extends Transaction {
         }
         return new CrashResult(e);
       } finally {
-        metaRepo.unlock(metaResources);
+        unlock(metaResources, metaRepo);
       }
     } finally {
       metaWriter.metaRepoWriteUnlock();
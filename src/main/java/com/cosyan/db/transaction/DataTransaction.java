@@ -27,6 +27,7 @@ import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.CrashResult;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.lang.transaction.ResultSink;
 import com.cosyan.db.logging.MetaJournal.DBException;
 import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.Grants.GrantException;
@@ -40,6 +41,7 @@ import com.google.common.collect.ImmutableList;
 
 public class DataTransaction extends Transaction {
   private final ImmutableList<Statement> statements;
+  private ResultSink sink;
 
   public DataTransaction(long trxNumber, Iterable<Statement> statements, Config config) throws ConfigException {
     super(trxNumber, config.getInt(Config.TR_RETRY_MS));
@@ -50,6 +52,13 @@ public class DataTransaction extends Transaction {
     return statements;
   }
 
+  /**
+   * Streams the results to the sink during the execution of the transaction.
+   */
+  public void setResultSink(ResultSink sink) {
+    this.sink = sink;
+  }
+
   protected MetaResources collectResources(MetaReader metaReader, AuthToken authToken) throws ModelException {
     MetaResources metaResources = MetaResources.empty();
     for (Statement statement : statements) {
@@ -61,7 +70,13 @@ public class DataTransaction extends Transaction {
   protected Result execute(MetaRepo metaRepo, Resources resources) throws RuleException, IOException {
     List<Result> results = new ArrayList<>();
     for (Statement statement : statements) {
-      results.add(statement.execute(resources));
+      if (sink == null) {
+        results.add(statement.execute(resources));
+      } else {
+        Result result = statement.execute(resources, sink);
+        sink.result(result);
+        results.add(result);
+      }
     }
     return new TransactionResult(results);
   }
@@ -74,26 +89,90 @@ public class DataTransaction extends Transaction {
     }
   }
 
+  /**
+   * Executes a read-only transaction on the committed snapshots of the tables
+   * without taking table locks, so it neither waits for nor blocks writers. The
+   * meta repo read lock is only held until the snapshots are pinned, the pinned
+   * snapshots keep the tables from being altered or dropped.
+   */
+  private Result executeSnapshot(
+      MetaRepo metaRepo, MetaReader metaReader, MetaResources metaResources, TransactionJournal journal) {
+    try {
+      Resources resources;
+      try {
+        if (cancelled.get()) {
+          return new ErrorResult(new RuleException("Transaction cancelled."));
+        }
+        journal.start(trxNumber);
+        resources = metaRepo.snapshotResources(metaResources);
+      } finally {
+        metaReader.metaRepoReadUnlock();
+      }
+      try {
+        Result result = execute(metaRepo, resources);
+        journal.success(trxNumber, /* sync= */false);
+        return result;
+      } catch (RuleException e) {
+        journal.userError(trxNumber);
+        return new ErrorResult(e);
+      } catch (IOException e) {
+        journal.ioReadError(trxNumber);
+        return new CrashResult(e);
+      } finally {
+        resources.release();
+      }
+    } catch (Throwable e) {
+      e.printStackTrace();
+      try {
+        journal.crash(trxNumber);
+      } catch (DBException e1) {
+        return new CrashResult(e);
+      }
+      return new CrashResult(e);
+    }
+  }
+
   @Override
   public Result execute(MetaRepo metaRepo, Session session) {
     TransactionJournal journal = session.transactionJournal();
     MetaReader metaReader = metaRepo.metaRepoReadLock();
     MetaResources metaResources;
+    boolean snapshot = false;
     try {
       metaResources = collectResources(metaReader, session.authToken());
       for (MetaResource resource : metaResources.objects()) {
         metaReader.checkAccess(resource, session.authToken());
       }
+      if (journal.needsCheckpoint()) {
+        metaRepo.checkpoint(journal);
+      }
+      snapshot = metaResources.snapshotRead();
     } catch (ModelException | GrantException e) {
       return new ErrorResult(e);
+    } catch (IOException | DBException e) {
+      return new CrashResult(e);
     } finally {
-      metaReader.metaRepoReadUnlock();
+      if (!snapshot) {
+        metaReader.metaRepoReadUnlock();
+      }
+    }
+    if (snapshot) {
+      return executeSnapshot(metaRepo, metaReader, metaResources, journal);
     }
     try {
-      lock(metaResources, metaRepo);
+      if (!lock(metaResources, metaRepo)) {
+        return new ErrorResult(new RuleException("Transaction cancelled."));
+      }
       journal.start(trxNumber);
       Result result;
       Resources resources = metaRepo.resources(metaResources, session.authToken());
+      resources.setCommitter(r -> {
+        try {
+          commit(metaRepo, r, journal);
+        } catch (DBException e) {
+          throw new IOException(e);
+        }
+      });
       try {
         result = execute(metaRepo, resources);
       } catch (RuleException e) {
@@ -106,15 +185,12 @@ public class DataTransaction extends Transaction {
         return new CrashResult(e);
       }
       try {
-        resources.commit();
-        journal.success(trxNumber);
-        return result;
-      } catch (IOException e) {
-        // Need to restore db;
-        e.printStackTrace();
-        journal.ioWriteError(trxNumber);
+        commit(metaRepo, resources, journal);
+      } catch (IOException | DBException e) {
         return new CrashResult(e);
       }
+      journal.success(trxNumber, redoLogged);
+      return result;
     } catch (Throwable e) {
       // Unspecified error, need to restore db;
       e.printStackTrace();
@@ -125,7 +201,7 @@ public class DataTransaction extends Transaction {
       }
       return new CrashResult(e);
     } finally {
-      metaRepo.unlock(metaResources);
+      unlock(metaResources, metaRepo);
     }
   }
 }
@@ -49,6 +49,7 @@ public class GlobalTransaction extends Transaction {
         journal.start(trxNumber);
         Result result = globalStatement.execute(metaWriter, session.authToken());
         metaRepo.writeTables();
+        metaRepo.checkpoint(journal);
         return result;
       } catch (ModelException | GrantException e) {
         // Restore metaRepo.
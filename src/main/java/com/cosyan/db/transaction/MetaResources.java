@@ -179,6 +179,21 @@ public class MetaResources {
     return objects.values();
   }
 
+  /**
+   * Whether the resources are only read tables which can be read from
+   * committed snapshots without locks. Tables with extra (group by) indexes are
+   * not, since their keys cannot be checked against the records.
+   */
+  public boolean snapshotRead() {
+    for (MetaResource resource : objects.values()) {
+      if (!(resource instanceof TableMetaResource) || resource.write() || resource.isMeta()
+          || !((TableMetaResource) resource).getTable().extraIndexes().isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public Iterable<TableMetaResource> tables() {
     return objects.values().stream().filter(o -> o instanceof TableMetaResource).map(o -> (TableMetaResource)o).collect(Collectors.toList());
   }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.transaction;
+
+import com.cosyan.db.auth.AuthToken;
+import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.meta.MetaReader;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.session.PreparedStatement;
+
+/**
+ * Executes a prepared statement with the given parameter values, reusing the
+ * compiled statements if possible.
+ */
+public class PreparedTransaction extends DataTransaction {
+
+  private final PreparedStatement preparedStatement;
+  private final Object[] values;
+
+  public PreparedTransaction(long trxNumber, PreparedStatement preparedStatement, Object[] values, Config config)
+      throws ConfigException {
+    super(trxNumber, preparedStatement.statements(), config);
+    this.preparedStatement = preparedStatement;
+    this.values = values;
+  }
+
+  @Override
+  protected MetaResources collectResources(MetaReader metaReader, AuthToken authToken) throws ModelException {
+    return preparedStatement.compile(values, metaReader, authToken);
+  }
+}
@@ -15,13 +15,20 @@
  */
 package com.cosyan.db.transaction;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
+import com.cosyan.db.io.Parallelism;
 import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.io.TableReader.SeekableTableReader;
 import com.cosyan.db.io.TableWriter;
+import com.cosyan.db.io.WorkMemory;
 import com.cosyan.db.meta.DBObject;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.GroupByKey;
@@ -34,18 +41,32 @@ import com.google.common.collect.Sets;
 
 public class Resources {
 
+  public static interface Committer {
+    void commit(Resources resources) throws IOException;
+  }
+
   private final ImmutableMap<String, SeekableTableReader> readers;
   private final ImmutableMap<String, TableWriter> writers;
   private final ImmutableMap<String, DBObject> metas;
+  private final WorkMemory workMemory;
+  private final Parallelism parallelism;
+  private final Lock publishLock;
+  private Committer committer = Resources::commit;
 
   public Resources(
       ImmutableMap<String, SeekableTableReader> readers,
       ImmutableMap<String, TableWriter> writers,
-      ImmutableMap<String, DBObject> metas) {
+      ImmutableMap<String, DBObject> metas,
+      WorkMemory workMemory,
+      Parallelism parallelism,
+      Lock publishLock) {
     assert Sets.intersection(readers.keySet(), writers.keySet()).isEmpty();
     this.readers = readers;
     this.writers = writers;
     this.metas = metas;
+    this.workMemory = workMemory;
+    this.parallelism = parallelism;
+    this.publishLock = publishLock;
   }
 
   public void rollback() {
@@ -54,16 +75,89 @@ public class Resources {
     }
   }
 
+  /**
+   * Writes the changes of every table, then publishes the tables together under
+   * the publish lock, so a snapshot sees either all or none of the changes.
+   */
   public void commit() throws IOException {
+    Map<TableWriter, Long> versions = new LinkedHashMap<>();
+    try {
+      for (TableWriter table : writers.values()) {
+        versions.put(table, table.beginCommit());
+        table.commitChanges();
+      }
+    } finally {
+      // Publishes even after a write error, the deletes already written stay on the disk.
+      publishLock.lock();
+      try {
+        for (Map.Entry<TableWriter, Long> version : versions.entrySet()) {
+          version.getKey().publish(version.getValue());
+        }
+      } finally {
+        publishLock.unlock();
+      }
+    }
+  }
+
+  public void setCommitter(Committer committer) {
+    this.committer = committer;
+  }
+
+  /**
+   * Commits the changes made so far in the middle of the transaction, e.g. the
+   * batches of an import. The transaction logs these changes in the journal too.
+   */
+  public void intermediateCommit() throws IOException {
+    committer.commit(this);
+  }
+
+  public void release() throws IOException {
+    for (SeekableTableReader reader : readers.values()) {
+      reader.release();
+    }
+  }
+
+  /**
+   * Returns the serialized changes of all the written tables for the redo log,
+   * or <code>null</code> if nothing has changed.
+   */
+  public byte[] redoRecord() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    int changed = 0;
     for (TableWriter table : writers.values()) {
-      table.commit();
+      if (table.hasChanges()) {
+        changed++;
+      }
+    }
+    if (changed == 0) {
+      return null;
     }
+    out.writeInt(changed);
+    for (TableWriter table : writers.values()) {
+      if (table.hasChanges()) {
+        table.writeRedo(out);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  public WorkMemory workMemory() {
+    return workMemory;
+  }
+
+  public Parallelism parallelism() {
+    return parallelism;
   }
 
   public TableWriter writer(String table) {
     return Preconditions.checkNotNull(writers.get(table));
   }
 
+  public boolean hasWriter(String table) {
+    return writers.containsKey(table);
+  }
+
   public DBObject meta(String table) {
     assert metas.containsKey(table) : String.format("Invalid table %s.", table);
     return Preconditions.checkNotNull(metas.get(table));
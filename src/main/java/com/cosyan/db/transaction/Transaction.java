@@ -15,10 +15,13 @@
  */
 package com.cosyan.db.transaction;
 
-import java.util.Random;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.logging.MetaJournal.DBException;
+import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.MetaRepo;
 import com.cosyan.db.session.Session;
 
@@ -28,6 +31,9 @@ public abstract class Transaction {
   private final int retryMS;
 
   protected AtomicBoolean cancelled = new AtomicBoolean(false);
+  private boolean locked = false;
+  // Whether the transaction logged any REDO records, i.e. changed data.
+  protected boolean redoLogged = false;
 
   public Transaction(long trxNumber, int retryMS) {
     this.trxNumber = trxNumber;
@@ -38,19 +44,59 @@ public abstract class Transaction {
     return trxNumber;
   }
 
-  protected void lock(MetaResources metaResources, MetaRepo metaRepo) {
-    boolean locked = false;
-    Random random = new Random();
-    while (!locked && !cancelled.get()) {
-      if (metaRepo.tryLock(metaResources)) {
-        locked = true;
-      } else {
-        try {
-          Thread.sleep(random.nextInt(retryMS));
-        } catch (InterruptedException e) {
-          cancelled.set(true);
+  /**
+   * Waits for the locks of the resources. Returns false if the transaction
+   * was cancelled in the meantime, in which case no locks are held.
+   */
+  protected boolean lock(MetaResources metaResources, MetaRepo metaRepo) {
+    locked = !cancelled.get() && metaRepo.lock(metaResources, cancelled, retryMS);
+    return locked;
+  }
+
+  protected void unlock(MetaResources metaResources, MetaRepo metaRepo) {
+    if (locked) {
+      metaRepo.unlock(metaResources);
+      locked = false;
+    }
+  }
+
+  /**
+   * Logs the changes made so far in the journal, then applies them. If applying
+   * the logged changes fails they are applied again from the REDO record, the same
+   * way as they would be replayed on the next start.
+   */
+  protected void commit(MetaRepo metaRepo, Resources resources, TransactionJournal journal)
+      throws IOException, DBException {
+    Lock commitLock = metaRepo.commitLock();
+    commitLock.lock();
+    try {
+      byte[] changes;
+      try {
+        changes = resources.redoRecord();
+      } catch (IOException e) {
+        resources.rollback();
+        throw e;
+      }
+      try {
+        journal.redo(trxNumber, changes);
+        redoLogged |= changes != null;
+      } catch (DBException e) {
+        resources.rollback();
+        journal.redoError(trxNumber);
+        throw e;
+      }
+      try {
+        resources.commit();
+      } catch (IOException e) {
+        resources.rollback();
+        journal.ioWriteError(trxNumber);
+        if (changes == null) {
+          throw e;
         }
+        metaRepo.redo(changes);
       }
+    } finally {
+      commitLock.unlock();
     }
   }
 
@@ -21,6 +21,7 @@ import com.cosyan.db.lang.expr.Statements.AlterStatement;
 import com.cosyan.db.lang.expr.Statements.GlobalStatement;
 import com.cosyan.db.lang.expr.Statements.MetaStatement;
 import com.cosyan.db.lang.expr.Statements.Statement;
+import com.cosyan.db.session.PreparedStatement;
 
 public class TransactionHandler {
 
@@ -30,6 +31,11 @@ public class TransactionHandler {
     return new DataTransaction(trxCntr++, statements, config);
   }
 
+  public synchronized DataTransaction begin(PreparedStatement preparedStatement, Object[] values, Config config)
+      throws ConfigException {
+    return new PreparedTransaction(trxCntr++, preparedStatement, values, config);
+  }
+
   public synchronized Transaction begin(MetaStatement metaStatement, Config config) throws ConfigException {
     if (metaStatement instanceof AlterStatement) {
       return new AlterTransaction(trxCntr++, (AlterStatement) metaStatement, config);
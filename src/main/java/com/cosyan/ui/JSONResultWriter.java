@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.ui;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StreamedQueryResult;
+import com.cosyan.db.lang.transaction.ResultSink;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Writes the results of a transaction to the response as they are produced, in
+ * the same JSON format as <code>TransactionResult.toJSON</code>. The writes
+ * block if the client reads slower than the rows are produced. Errors after
+ * the first result are appended as an <code>error</code> field.
+ */
+public class JSONResultWriter implements ResultSink {
+
+  private static final int FLUSH_ROWS = 256;
+
+  private final HttpServletResponse resp;
+  private final PrintWriter pw;
+
+  private boolean started = false;
+  private boolean firstResult = true;
+  private boolean firstRow;
+  private int unflushedRows;
+  private ImmutableList<DataType<?>> types;
+
+  public JSONResultWriter(HttpServletResponse resp, PrintWriter pw) {
+    this.resp = resp;
+    this.pw = pw;
+  }
+
+  private void start() {
+    if (!started) {
+      resp.setStatus(HttpStatus.OK_200);
+      pw.write("{\"result\":[");
+      started = true;
+    }
+    if (!firstResult) {
+      pw.write(",");
+    }
+    firstResult = false;
+  }
+
+  private void flush() throws IOException {
+    pw.flush();
+    if (pw.checkError()) {
+      throw new IOException("Client connection closed.");
+    }
+  }
+
+  @Override
+  public void query(ImmutableList<String> header, ImmutableList<DataType<?>> types) throws IOException {
+    start();
+    JSONObject obj = new JSONObject();
+    obj.put("type", "query");
+    obj.put("header", header);
+    obj.put("types", types.stream().map(t -> t.toJSON()).collect(Collectors.toList()));
+    String json = obj.toString();
+    // Leaves the object open for the values.
+    pw.write(json.substring(0, json.length() - 1));
+    pw.write(",\"values\":[");
+    this.types = types;
+    firstRow = true;
+    unflushedRows = 0;
+    flush();
+  }
+
+  @Override
+  public void row(Object[] values) throws IOException {
+    if (!firstRow) {
+      pw.write(",");
+    }
+    firstRow = false;
+    pw.write(new JSONArray(QueryResult.prettyPrintToList(values, types)).toString());
+    if (++unflushedRows == FLUSH_ROWS) {
+      unflushedRows = 0;
+      flush();
+    }
+  }
+
+  @Override
+  public void result(Result result) throws IOException {
+    if (result instanceof StreamedQueryResult) {
+      pw.write("]}");
+      types = null;
+    } else {
+      start();
+      pw.write(result.toJSON().toString());
+    }
+    flush();
+  }
+
+  /**
+   * Writes the end of the response after the transaction finished.
+   */
+  public void finish(Result result) {
+    if (!started) {
+      resp.setStatus(result.isSuccess() ? HttpStatus.OK_200 : HttpStatus.INTERNAL_SERVER_ERROR_500);
+      pw.write(result.toJSON().toString());
+      return;
+    }
+    if (types != null) {
+      // The query did not finish.
+      pw.write("]}");
+    }
+    pw.write("]");
+    if (!result.isSuccess()) {
+      pw.write(",\"error\":");
+      pw.write(result.toJSON().get("error").toString());
+    }
+    pw.write("}");
+  }
+}
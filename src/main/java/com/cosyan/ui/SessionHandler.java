@@ -15,7 +15,11 @@
  */
 package com.cosyan.ui;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
@@ -29,12 +33,14 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpStatus;
 import org.json.JSONObject;
 
+import com.cosyan.client.BinaryProtocol;
 import com.cosyan.db.DBApi;
 import com.cosyan.db.DBApi.Task;
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.auth.Authenticator;
 import com.cosyan.db.auth.Authenticator.AuthException;
 import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.session.Session;
 import com.google.common.collect.ImmutableMap;
 
@@ -45,6 +51,16 @@ public class SessionHandler {
     JSONObject apply(Session session);
   }
 
+  @FunctionalInterface
+  public interface StreamingFunction {
+    Result apply(Session session, JSONResultWriter writer);
+  }
+
+  @FunctionalInterface
+  private interface SessionTask {
+    void run(Session session) throws IOException;
+  }
+
   private final Map<String, AuthToken> tokens;
   private final DBApi dbApi;
   private final Map<String, Session> sessions;
@@ -91,9 +107,50 @@ public class SessionHandler {
   }
 
   public synchronized void execute(HttpServletRequest req, HttpServletResponse resp, CheckedFunction func) throws IOException {
+    submit(req, resp, session -> {
+      JSONObject result = func.apply(session);
+      if (result.has("error")) {
+        resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+      } else {
+        resp.setStatus(HttpStatus.OK_200);
+      }
+      try (PrintWriter pw = resp.getWriter()) {
+        pw.write(result.toString());
+      }
+    });
+  }
+
+  /**
+   * Executes the function writing the results to the response while the
+   * transaction is running.
+   */
+  public synchronized void stream(HttpServletRequest req, HttpServletResponse resp, StreamingFunction func) throws IOException {
+    submit(req, resp, session -> {
+      try (PrintWriter pw = resp.getWriter()) {
+        JSONResultWriter writer = new JSONResultWriter(resp, pw);
+        writer.finish(func.apply(session, writer));
+      }
+    });
+  }
+
+  /**
+   * Executes the binary request frames of the request body in the same session,
+   * writing a result frame to the response after each of them.
+   */
+  public synchronized void binary(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    submit(req, resp, session -> {
+      resp.setStatus(HttpStatus.OK_200);
+      resp.setContentType("application/octet-stream");
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(req.getInputStream()));
+          OutputStream out = new BufferedOutputStream(resp.getOutputStream())) {
+        BinaryProtocol.serve(session, in, out);
+      }
+    });
+  }
+
+  private void submit(HttpServletRequest req, HttpServletResponse resp, SessionTask task) throws IOException {
     AsyncContext async = req.startAsync(req, resp);
     async.setTimeout(0);
-    PrintWriter pw = resp.getWriter();
     try {
       Session session = getSession(req);
       dbApi.execute(new Task(session) {
@@ -101,24 +158,21 @@ public class SessionHandler {
         @Override
         public void run(Session session) {
           try {
-            JSONObject result = func.apply(session);
-            if (result.has("error")) {
-              resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
-            } else {
-              resp.setStatus(HttpStatus.OK_200);
-            }
-            pw.write(result.toString());
+            task.run(session);
+          } catch (IOException e) {
+            // The client closed the connection.
           } finally {
             async.complete();
-            pw.close();
           }
         }
       });
     } catch (NoSessionExpression e) {
+      PrintWriter pw = resp.getWriter();
       resp.setStatus(HttpStatus.UNAUTHORIZED_401);
       pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
       async.complete();
     } catch (ConfigException e) {
+      PrintWriter pw = resp.getWriter();
       resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
       pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
       async.complete();
@@ -40,7 +40,11 @@ import com.cosyan.ui.admin.SettingsServlet;
 import com.cosyan.ui.admin.UsersServlet;
 import com.cosyan.ui.entity.EntityLoadServlet;
 import com.cosyan.ui.entity.EntityMetaServlet;
+import com.cosyan.ui.sql.SQLServlets.BinarySQLServlet;
 import com.cosyan.ui.sql.SQLServlets.CancelServlet;
+import com.cosyan.ui.sql.SQLServlets.DeallocatePreparedServlet;
+import com.cosyan.ui.sql.SQLServlets.ExecutePreparedServlet;
+import com.cosyan.ui.sql.SQLServlets.PrepareServlet;
 import com.cosyan.ui.sql.SQLServlets.SQLServlet;
 import com.google.common.collect.ImmutableList;
 
@@ -52,6 +56,10 @@ public class WebServer {
       .add(UsersServlet.class)
       .add(IndexServlet.class)
       .add(SQLServlet.class)
+      .add(BinarySQLServlet.class)
+      .add(PrepareServlet.class)
+      .add(ExecutePreparedServlet.class)
+      .add(DeallocatePreparedServlet.class)
       .add(CancelServlet.class)
       .add(LoginServlet.class)
       .add(LogoutServlet.class)
@@ -30,6 +30,10 @@ import org.json.JSONObject;
 
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.NodeCache.NodeCacheStat;
+import com.cosyan.db.io.PageCache.PageCacheStat;
+import com.cosyan.db.lock.LockManager.LockStat;
+import com.cosyan.db.logging.TransactionJournal.JournalStat;
 import com.cosyan.db.meta.MetaReader;
 import com.cosyan.db.meta.TableStat;
 import com.cosyan.db.session.Session;
@@ -64,12 +68,30 @@ public class MonitoringServlet extends ParamServlet {
         obj.put("freeMemory", Runtime.getRuntime().freeMemory());
         obj.put("totalMemory", Runtime.getRuntime().totalMemory());
         obj.put("maxMemory", Runtime.getRuntime().maxMemory());
+        {
+          JournalStat stat = session.transactionJournal().stats();
+          JSONObject journal = new JSONObject();
+          journal.put("batches", stat.getBatches());
+          journal.put("records", stat.getRecords());
+          journal.put("avgBatchSize", stat.avgBatchSize());
+          journal.put("maxBatchSize", stat.getMaxBatchSize());
+          journal.put("fsyncs", stat.getFsyncs());
+          journal.put("avgFsyncMillis", stat.avgFsyncMillis());
+          journal.put("maxFsyncMillis", stat.getMaxFsyncNanos() / 1000000.0);
+          journal.put("checkpoints", stat.getCheckpoints());
+          journal.put("size", stat.getSize());
+          obj.put("journal", journal);
+        }
         {
           JSONArray tables = new JSONArray();
           for (Entry<String, TableStat> entry : metaReader.tableStats().entrySet()) {
             JSONObject table = new JSONObject();
             table.put("name", entry.getKey());
             table.put("fileSize", entry.getValue().getFileSize());
+            table.put("records", entry.getValue().getRecords());
+            table.put("deletedRecords", entry.getValue().getDeletedRecords());
+            table.put("deletedBytes", entry.getValue().getDeletedBytes());
+            table.put("deletedRatio", entry.getValue().deletedRatio());
             tables.put(table);
           }
           obj.put("tables", tables);
@@ -82,6 +104,14 @@ public class MonitoringServlet extends ParamServlet {
             index.put("indexFileSize", entry.getValue().getIndexFileSize());
             index.put("inMemNodes", entry.getValue().getInMemNodes());
             index.put("pendingNodes", entry.getValue().getPendingNodes());
+            index.put("inMemBytes", entry.getValue().getInMemBytes());
+            index.put("hits", entry.getValue().getHits());
+            index.put("misses", entry.getValue().getMisses());
+            index.put("evictions", entry.getValue().getEvictions());
+            index.put("hitRatio", entry.getValue().hitRatio());
+            index.put("bloomFilterBytes", entry.getValue().getBloomFilterBytes());
+            index.put("bloomFilterNegatives", entry.getValue().getBloomFilterNegatives());
+            index.put("bloomFilterFalsePositiveRate", entry.getValue().bloomFilterFalsePositiveRate());
             uniqueIndexes.put(index);
           }
           obj.put("uniqueIndexes", uniqueIndexes);
@@ -95,11 +125,57 @@ public class MonitoringServlet extends ParamServlet {
             index.put("indexFileSize", entry.getValue().getIndexFileSize());
             index.put("trieInMemNodes", entry.getValue().getTrieInMemNodes());
             index.put("triePendingNodes", entry.getValue().getTriePendingNodes());
+            index.put("inMemNodes", entry.getValue().getInMemNodes());
             index.put("pendingNodes", entry.getValue().getPendingNodes());
+            index.put("inMemBytes", entry.getValue().getInMemBytes());
+            index.put("hits", entry.getValue().getHits());
+            index.put("misses", entry.getValue().getMisses());
+            index.put("evictions", entry.getValue().getEvictions());
+            index.put("hitRatio", entry.getValue().hitRatio());
+            index.put("bloomFilterBytes", entry.getValue().getBloomFilterBytes());
+            index.put("bloomFilterNegatives", entry.getValue().getBloomFilterNegatives());
+            index.put("bloomFilterFalsePositiveRate", entry.getValue().bloomFilterFalsePositiveRate());
             multiIndexes.put(index);
           }
           obj.put("multiIndexes", multiIndexes);
         }
+        {
+          JSONArray locks = new JSONArray();
+          for (Entry<String, LockStat> entry : metaReader.lockStats().entrySet()) {
+            JSONObject lock = new JSONObject();
+            lock.put("name", entry.getKey());
+            lock.put("acquisitions", entry.getValue().getAcquisitions());
+            lock.put("waits", entry.getValue().getWaits());
+            lock.put("avgWaitMillis", entry.getValue().avgWaitMillis());
+            lock.put("maxWaitMillis", entry.getValue().getMaxWaitNanos() / 1000000.0);
+            lock.put("histogram", new JSONArray(entry.getValue().getHistogram()));
+            lock.put("queueLength", entry.getValue().getQueueLength());
+            locks.put(lock);
+          }
+          obj.put("locks", locks);
+        }
+        {
+          PageCacheStat stat = metaReader.pageCacheStats();
+          JSONObject pageCache = new JSONObject();
+          pageCache.put("pageSize", stat.getPageSize());
+          pageCache.put("maxPages", stat.getMaxPages());
+          pageCache.put("cachedPages", stat.getCachedPages());
+          pageCache.put("hits", stat.getHits());
+          pageCache.put("misses", stat.getMisses());
+          pageCache.put("evictions", stat.getEvictions());
+          obj.put("pageCache", pageCache);
+        }
+        {
+          NodeCacheStat stat = metaReader.indexCacheStats();
+          JSONObject indexCache = new JSONObject();
+          indexCache.put("maxBytes", stat.getMaxBytes());
+          indexCache.put("bytes", stat.getBytes());
+          indexCache.put("nodes", stat.getNodes());
+          indexCache.put("hits", stat.getHits());
+          indexCache.put("misses", stat.getMisses());
+          indexCache.put("evictions", stat.getEvictions());
+          obj.put("indexCache", indexCache);
+        }
         resp.setStatus(HttpStatus.OK_200);
         resp.getWriter().println(obj);
       } finally {
@@ -21,7 +21,15 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.session.IParser.ParserException;
+import com.cosyan.db.session.PreparedStatement;
 import com.cosyan.db.session.Session;
+import com.cosyan.ui.JSONResultWriter;
 import com.cosyan.ui.ParamServlet;
 import com.cosyan.ui.SessionHandler;
 import com.cosyan.ui.ParamServlet.Servlet;
@@ -40,12 +48,148 @@ public class SQLServlets {
     @Param(name = "token", doc = "User authentication token.")
     @Param(name = "session", doc = "Session ID.")
     @Param(name = "sql", mandatory = true, doc = "The SQL script to execute.")
+    @Param(name = "stream", doc = "If 'true' the rows are written to the response as they are read, "
+        + "an error after the first result is added to the results.")
+    @Override
+    protected void doGetImpl(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException {
+      String sql = req.getParameter("sql");
+      if (Boolean.parseBoolean(req.getParameter("stream"))) {
+        sessionHandler.stream(req, resp, (Session session, JSONResultWriter writer) -> {
+          return session.execute(sql, writer);
+        });
+      } else {
+        sessionHandler.execute(req, resp, (Session session) -> {
+          return session.execute(sql).toJSON();
+        });
+      }
+    }
+  }
+
+  @Servlet(path = "binary", doc = "Executes the binary request frames in the HTTP `POST` body "
+      + "and returns the binary result frames, see <code>com.cosyan.client.BinaryClient</code>.")
+  public static class BinarySQLServlet extends ParamServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final SessionHandler sessionHandler;
+
+    public BinarySQLServlet(SessionHandler sessionHandler) {
+      this.sessionHandler = sessionHandler;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException {
+      doGet(req, resp);
+    }
+
+    @Param(name = "token", doc = "User authentication token.")
+    @Param(name = "session", doc = "Session ID.")
+    @Override
+    protected void doGetImpl(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException {
+      sessionHandler.binary(req, resp);
+    }
+  }
+
+  @Servlet(path = "prepare", doc = "Prepares an SQL script with '?' parameters and returns the prepared statement ID.")
+  public static class PrepareServlet extends ParamServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final SessionHandler sessionHandler;
+
+    public PrepareServlet(SessionHandler sessionHandler) {
+      this.sessionHandler = sessionHandler;
+    }
+
+    @Param(name = "token", doc = "User authentication token.")
+    @Param(name = "session", mandatory = true, doc = "Session ID.")
+    @Param(name = "sql", mandatory = true, doc = "The SQL script to prepare.")
+    @Override
+    protected void doGetImpl(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException {
+      sessionHandler.execute(req, resp, (Session session) -> {
+        try {
+          PreparedStatement preparedStatement = session.prepare(req.getParameter("sql"));
+          JSONObject result = new JSONObject();
+          result.put("id", preparedStatement.id());
+          result.put("params", preparedStatement.numParams());
+          return result;
+        } catch (ParserException e) {
+          return new ErrorResult(e).toJSON();
+        }
+      });
+    }
+  }
+
+  @Servlet(path = "executePrepared", doc = "Executes a prepared statement and returns the results.")
+  public static class ExecutePreparedServlet extends ParamServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final SessionHandler sessionHandler;
+
+    public ExecutePreparedServlet(SessionHandler sessionHandler) {
+      this.sessionHandler = sessionHandler;
+    }
+
+    @Param(name = "token", doc = "User authentication token.")
+    @Param(name = "session", mandatory = true, doc = "Session ID.")
+    @Param(name = "id", mandatory = true, doc = "The prepared statement ID.")
+    @Param(name = "params", doc = "JSON array of the parameter values.")
+    @Override
+    protected void doGetImpl(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException {
+      sessionHandler.execute(req, resp, (Session session) -> {
+        try {
+          long id = Long.parseLong(req.getParameter("id"));
+          String params = req.getParameter("params");
+          return session.execute(id, values(params == null ? new JSONArray() : new JSONArray(params))).toJSON();
+        } catch (NumberFormatException | JSONException e) {
+          return new ErrorResult(e).toJSON();
+        }
+      });
+    }
+
+    private static Object[] values(JSONArray params) {
+      Object[] values = new Object[params.length()];
+      for (int i = 0; i < values.length; i++) {
+        Object value = params.get(i);
+        if (value == JSONObject.NULL) {
+          values[i] = null;
+        } else if (value instanceof Integer || value instanceof Long) {
+          values[i] = ((Number) value).longValue();
+        } else if (value instanceof Number) {
+          values[i] = ((Number) value).doubleValue();
+        } else {
+          values[i] = value;
+        }
+      }
+      return values;
+    }
+  }
+
+  @Servlet(path = "deallocatePrepared", doc = "Releases a prepared statement of the session.")
+  public static class DeallocatePreparedServlet extends ParamServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final SessionHandler sessionHandler;
+
+    public DeallocatePreparedServlet(SessionHandler sessionHandler) {
+      this.sessionHandler = sessionHandler;
+    }
+
+    @Param(name = "token", doc = "User authentication token.")
+    @Param(name = "session", mandatory = true, doc = "Session ID.")
+    @Param(name = "id", mandatory = true, doc = "The prepared statement ID.")
     @Override
     protected void doGetImpl(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException {
       sessionHandler.execute(req, resp, (Session session) -> {
-        String sql = req.getParameter("sql");
-        return session.execute(sql).toJSON();
+        try {
+          return session.deallocate(Long.parseLong(req.getParameter("id"))).toJSON();
+        } catch (NumberFormatException e) {
+          return new ErrorResult(e).toJSON();
+        }
       });
     }
   }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.cosyan.client.BinaryClient.Requests;
+import com.cosyan.client.BinaryProtocol.PreparedResult;
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.InsertIntoResult;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.model.DataTypes;
+import com.google.common.collect.ImmutableList;
+
+public class BinaryProtocolTest extends UnitTestBase {
+
+  private List<Result> serve(Requests requests) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryProtocol.serve(session,
+        new DataInputStream(new ByteArrayInputStream(requests.toByteArray())), out);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    List<Result> results = new ArrayList<>();
+    DataInputStream frame;
+    while ((frame = BinaryProtocol.readFrame(in)) != null) {
+      results.add(BinaryProtocol.readResult(frame));
+    }
+    return results;
+  }
+
+  private QueryResult query(Result result) {
+    return (QueryResult) ((TransactionResult) result).getResults().get(0);
+  }
+
+  @Test
+  public void testPipelinedRequests() throws Exception {
+    execute("create table t1 (a varchar, b integer, c float, d boolean, e timestamp, f enum('x', 'y'));");
+    Requests requests = new Requests()
+        .sql("insert into t1 values ('abc', 1, 1.5, true, dt '2018-01-02', 'y'), "
+            + "(null, 2, null, false, null, 'x');")
+        .prepare("select a, b, c, d, e, f from t1 where b = ?;")
+        .execute(0L, 1L)
+        .execute(0L, 2)
+        .sql("select x from t1;");
+    List<Result> results = serve(requests);
+    assertEquals(5, results.size());
+
+    InsertIntoResult insert = (InsertIntoResult) ((TransactionResult) results.get(0)).getResults().get(0);
+    assertEquals(2L, insert.getAffectedLines());
+    assertEquals(new PreparedResult(0L, 1), results.get(1));
+
+    QueryResult q1 = query(results.get(2));
+    assertEquals(ImmutableList.of("a", "b", "c", "d", "e", "f"), q1.getHeader());
+    assertEquals(ImmutableList.of(DataTypes.StringType, DataTypes.LongType, DataTypes.DoubleType,
+        DataTypes.BoolType, DataTypes.dateType(), DataTypes.StringType), q1.getTypes());
+    assertEquals(1, q1.getValues().size());
+    assertArrayEquals(new Object[] { "abc", 1L, 1.5, true,
+        DataTypes.dateType().fromString("2018-01-02 00:00:00"), "y" }, q1.getValues().get(0));
+
+    QueryResult q2 = query(results.get(3));
+    assertArrayEquals(new Object[] { null, 2L, null, false, null, "x" }, q2.getValues().get(0));
+
+    assertFalse(results.get(4).isSuccess());
+    assertEquals("Column 'x' not found in table 'admin.t1'.",
+        ((ErrorResult) results.get(4)).getError().getMessage());
+  }
+
+  @Test
+  public void testSameAsQueryResult() throws Exception {
+    execute("create table t2 (a integer, b varchar);");
+    execute("insert into t2 values (1, 'a'), (2, null), (3, 'c');");
+    List<Result> results = serve(new Requests().sql("select a, b from t2;"));
+    QueryResult expected = query("select a, b from t2;", session);
+    QueryResult actual = query(results.get(0));
+    assertEquals(expected.getHeader(), actual.getHeader());
+    assertEquals(expected.getValues().size(), actual.getValues().size());
+    for (int i = 0; i < expected.getValues().size(); i++) {
+      assertArrayEquals(expected.getValues().get(i), actual.getValues().get(i));
+    }
+  }
+
+  @Test
+  public void testDeallocate() throws Exception {
+    execute("create table t4 (a integer);");
+    long id = ((PreparedResult) serve(new Requests().prepare("select a from t4 where a = ?;")).get(0)).getId();
+    List<Result> results = serve(new Requests().deallocate(id).execute(id, 1L));
+    assertEquals(2, results.size());
+    assertEquals(1L, ((StatementResult) results.get(0)).getAffectedLines());
+    assertEquals(String.format("Invalid prepared statement '%s'.", id), error(results.get(1)));
+  }
+
+  private List<Result> serve(byte[] requests) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryProtocol.serve(session, new DataInputStream(new ByteArrayInputStream(requests)), out);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    List<Result> results = new ArrayList<>();
+    DataInputStream frame;
+    while ((frame = BinaryProtocol.readFrame(in)) != null) {
+      results.add(BinaryProtocol.readResult(frame));
+    }
+    return results;
+  }
+
+  private String error(Result result) {
+    return ((ErrorResult) result).getError().getMessage();
+  }
+
+  @Test
+  public void testInvalidFrames() throws Exception {
+    execute("create table t3 (a integer);");
+    execute("insert into t3 values (1);");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    // Unknown request kind, the next frame is still served.
+    out.writeInt(1);
+    out.writeByte(9);
+    out.write(new Requests().sql("select a from t3;").toByteArray());
+    out.writeInt(-1);
+    List<Result> results = serve(bytes.toByteArray());
+    assertEquals(3, results.size());
+    assertEquals("Invalid request '9'.", error(results.get(0)));
+    assertArrayEquals(new Object[] { 1L }, query(results.get(1)).getValues().get(0));
+    assertEquals("Invalid frame length '-1'.", error(results.get(2)));
+
+    bytes.reset();
+    out.writeInt(BinaryProtocol.MAX_FRAME + 1);
+    results = serve(bytes.toByteArray());
+    assertEquals(1, results.size());
+    assertEquals("Invalid frame length '" + (BinaryProtocol.MAX_FRAME + 1) + "'.", error(results.get(0)));
+
+    // Counts and lengths larger than the rest of the frame.
+    bytes.reset();
+    out.writeInt(13);
+    out.writeByte(BinaryProtocol.EXECUTE);
+    out.writeLong(0L);
+    out.writeInt(Integer.MAX_VALUE);
+    out.writeInt(5);
+    out.writeByte(BinaryProtocol.SQL);
+    out.writeInt(Integer.MAX_VALUE);
+    out.write(new Requests().sql("select a from t3;").toByteArray());
+    results = serve(bytes.toByteArray());
+    assertEquals(3, results.size());
+    assertEquals("Invalid length '" + Integer.MAX_VALUE + "'.", error(results.get(0)));
+    assertEquals("Invalid length '" + Integer.MAX_VALUE + "'.", error(results.get(1)));
+    assertArrayEquals(new Object[] { 1L }, query(results.get(2)).getValues().get(0));
+
+    // Truncated request.
+    bytes.reset();
+    out.writeInt(1);
+    out.writeByte(BinaryProtocol.SQL);
+    results = serve(bytes.toByteArray());
+    assertEquals(1, results.size());
+    assertFalse(results.get(0).isSuccess());
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.LeafTypes.LongIndex;
+import com.cosyan.db.index.LeafTypes.StringIndex;
+
+public class BloomFilterTest {
+
+  @Test
+  public void testFalsePositiveRate() {
+    int n = 100000;
+    BloomFilter filter = new BloomFilter(n, 10);
+    for (long i = 0; i < n; i++) {
+      filter.add(BloomFilter.hash(LeafTypes.longKeyType.toByteArray(i)));
+    }
+    for (long i = 0; i < n; i++) {
+      assertTrue(filter.mightContain(BloomFilter.hash(LeafTypes.longKeyType.toByteArray(i))));
+    }
+    int falsePositives = 0;
+    for (long i = n; i < 2 * n; i++) {
+      if (filter.mightContain(BloomFilter.hash(LeafTypes.longKeyType.toByteArray(i)))) {
+        falsePositives++;
+      }
+    }
+    // About 1% for a standard Bloom filter, a bit more for a blocked one.
+    assertTrue("" + falsePositives, falsePositives < n * 0.02);
+  }
+
+  @Test
+  public void testIndexFilter() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/bloomindex"));
+    StringIndex index = new StringIndex("/tmp/bloomindex");
+    index.put("a", 1L);
+    index.put("b", 2L);
+    index.commit();
+    index.put("c", 3L);
+    index.enableBloomFilter(10);
+    // Built from the committed and the pending keys.
+    assertEquals(Long.valueOf(1L), index.get("a"));
+    assertEquals(Long.valueOf(3L), index.get("c"));
+    index.rollback();
+    assertEquals(null, index.get("c"));
+    assertEquals(null, index.getCommitted("x"));
+
+    index.delete("a");
+    assertEquals(null, index.get("a"));
+    assertEquals(Long.valueOf(1L), index.getCommitted("a"));
+    index.commit();
+    assertEquals(null, index.getCommitted("a"));
+    index.put("a", 4L);
+    index.commit();
+    assertEquals(Long.valueOf(4L), index.get("a"));
+
+    ByteTrieStat stat = index.stats();
+    assertTrue(stat.getBloomFilterBytes() > 0);
+    assertEquals(stat.getBloomFilterNegatives() + stat.getBloomFilterFalsePositives(), 4L);
+  }
+
+  @Test
+  public void testRebuild() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/bloomrebuild"));
+    LongIndex index = new LongIndex("/tmp/bloomrebuild");
+    index.enableBloomFilter(10);
+    long initialBytes = index.stats().getBloomFilterBytes();
+    for (long i = 0; i < 10000; i++) {
+      index.put(i, i);
+      if (i % 1000 == 999) {
+        index.commit();
+      }
+    }
+    // Grows with the keys.
+    assertTrue(index.stats().getBloomFilterBytes() > initialBytes);
+    for (long i = 0; i < 10000; i++) {
+      assertEquals(Long.valueOf(i), index.get(i));
+    }
+    for (long i = 0; i < 10000; i++) {
+      if (i % 4 != 0) {
+        index.delete(i);
+      }
+    }
+    index.commit();
+    for (long i = 0; i < 10000; i++) {
+      assertEquals(i % 4 != 0 ? null : Long.valueOf(i), index.get(i));
+    }
+    ByteTrieStat stat = index.stats();
+    // The deleted keys are removed from the rebuilt filter.
+    assertTrue(stat.getBloomFilterNegatives() > 7000);
+    assertTrue(stat.bloomFilterFalsePositiveRate() < 0.1);
+  }
+}
@@ -218,4 +218,60 @@ public class ByteMultiTrieTest {
     }
     assertEquals(v10L.stream().mapToLong(Long::longValue).toArray(), index.get(10.0));
   }
+
+  @Test
+  public void testLoader() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longloader2#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/longloader2#index"));
+    LongMultiIndex index = new LongMultiIndex("/tmp/longloader2");
+    LongMultiIndex.Loader loader = index.loader();
+    long[] v1 = new long[25];
+    for (int i = 0; i < v1.length; i++) {
+      v1[i] = i * 100;
+      loader.add(1L, v1[i]);
+    }
+    loader.add(2L, 7L);
+    long[] v3 = new long[10];
+    for (int i = 0; i < v3.length; i++) {
+      v3[i] = i;
+      loader.add(3L, v3[i]);
+    }
+    loader.finish();
+    assertEquals(v1, index.get(1L));
+    assertEquals(new long[0], index.getCommitted(1L));
+    index.commit();
+    index.close();
+
+    index = new LongMultiIndex("/tmp/longloader2");
+    assertEquals(v1, index.get(1L));
+    assertEquals(new long[] { 7L }, index.get(2L));
+    assertEquals(v3, index.get(3L));
+    assertEquals(new long[0], index.get(4L));
+    index.put(3L, 10L);
+    index.put(2L, 8L);
+    index.commit();
+    assertEquals(new long[] { 7L, 8L }, index.get(2L));
+    assertEquals(11, index.get(3L).length);
+    index.close();
+  }
+
+  @Test
+  public void testLoaderRollback() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/stringloader2#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/stringloader2#index"));
+    StringMultiIndex index = new StringMultiIndex("/tmp/stringloader2");
+    long length = Files.size(Paths.get("/tmp/stringloader2#chain"));
+    StringMultiIndex.Loader loader = index.loader();
+    for (int i = 0; i < 100; i++) {
+      loader.add("a" + (100 + i), i);
+    }
+    loader.finish();
+    assertEquals(new long[] { 5L }, index.get("a105"));
+    index.rollback();
+    assertEquals(true, length == Files.size(Paths.get("/tmp/stringloader2#chain")));
+    assertEquals(new long[0], index.get("a105"));
+    index.put("a105", 1L);
+    index.commit();
+    assertEquals(new long[] { 1L }, index.get("a105"));
+  }
 }
@@ -53,5 +53,6 @@ public class ByteTrieLargeTest {
       index.get(i);
     }
     System.out.println(System.currentTimeMillis() - t);
+    System.out.println(Files.size(Paths.get("/tmp/longindex")) + " " + index.stats());
   }
 }
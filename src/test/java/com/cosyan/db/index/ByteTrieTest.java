@@ -17,8 +17,19 @@ package com.cosyan.db.index;
 
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
 
 import org.junit.Test;
 
@@ -387,4 +398,281 @@ public class ByteTrieTest {
     } catch (IndexException e) {
     }
   }
+
+  private <K> List<K> keys(ByteTrie<K, Long> index, KeyRange range) throws Exception {
+    List<K> keys = new ArrayList<>();
+    ByteTrie<K, Long>.Cursor cursor = index.cursor(range, false);
+    while (cursor.next()) {
+      keys.add(cursor.key());
+    }
+    return keys;
+  }
+
+  @Test
+  public void testLongCursor() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longcursor"));
+    LongIndex index = new LongIndex("/tmp/longcursor");
+    for (long key : new long[] { 5L, -3L, 1000L, 0L, -1000000L, 7L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+      index.put(key, key);
+    }
+    org.junit.Assert.assertEquals(
+        Arrays.asList(Long.MIN_VALUE, -1000000L, -3L, 0L, 5L, 7L, 1000L, Long.MAX_VALUE),
+        keys(index, KeyRange.ALL));
+    org.junit.Assert.assertEquals(
+        Arrays.asList(Long.MAX_VALUE, 1000L, 7L, 5L, 0L, -3L, -1000000L, Long.MIN_VALUE),
+        keys(index, KeyRange.ALL.withDescending(true)));
+    org.junit.Assert.assertEquals(
+        Arrays.asList(-3L, 0L, 5L),
+        keys(index, KeyRange.greaterThan(-3L, true).intersect(KeyRange.lessThan(7L, false))));
+    org.junit.Assert.assertEquals(
+        Arrays.asList(5L, 0L),
+        keys(index, new KeyRange(-3L, false, 6L, true, true)));
+    org.junit.Assert.assertEquals(
+        Arrays.asList(),
+        keys(index, KeyRange.greaterThan(Long.MAX_VALUE, false)));
+
+    index.commit();
+    index.delete(5L);
+    index.put(6L, 6L);
+    org.junit.Assert.assertEquals(Arrays.asList(0L, 6L, 7L), keys(index, new KeyRange(0L, true, 7L, true, false)));
+    List<Long> committed = new ArrayList<>();
+    ByteTrie<Long, Long>.Cursor cursor = index.cursor(new KeyRange(0L, true, 7L, true, false), true);
+    while (cursor.next()) {
+      committed.add(cursor.key());
+    }
+    org.junit.Assert.assertEquals(Arrays.asList(0L, 5L, 7L), committed);
+  }
+
+  @Test
+  public void testDoubleCursor() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/doublecursor"));
+    DoubleIndex index = new DoubleIndex("/tmp/doublecursor");
+    for (double key : new double[] { 1.5, -0.5, 0.0, -2.25, 1e10, -1e-10 }) {
+      index.put(key, 0L);
+    }
+    org.junit.Assert.assertEquals(
+        Arrays.asList(-2.25, -0.5, -1e-10, 0.0, 1.5, 1e10),
+        keys(index, KeyRange.ALL));
+    org.junit.Assert.assertEquals(
+        Arrays.asList(0.0, -1e-10, -0.5),
+        keys(index, new KeyRange(-1.0, false, 1.0, false, true)));
+  }
+
+  @Test
+  public void testStringCursor() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/stringcursor"));
+    StringIndex index = new StringIndex("/tmp/stringcursor");
+    for (String key : new String[] { "b", "ab", "abc", "a", "", "ba", "\u00e9", "abd", "c" }) {
+      index.put(key, 0L);
+    }
+    org.junit.Assert.assertEquals(
+        Arrays.asList("", "a", "ab", "abc", "abd", "b", "ba", "c", "\u00e9"),
+        keys(index, KeyRange.ALL));
+    org.junit.Assert.assertEquals(
+        Arrays.asList("ab", "abc", "abd"),
+        keys(index, KeyRange.prefix("ab")));
+    org.junit.Assert.assertEquals(
+        Arrays.asList("abd", "abc", "ab"),
+        keys(index, KeyRange.prefix("ab").withDescending(true)));
+    org.junit.Assert.assertEquals(
+        Arrays.asList("abc", "abd", "b"),
+        keys(index, new KeyRange("ab", false, "b", true, false)));
+    org.junit.Assert.assertEquals(
+        Arrays.asList("ba", "b", "abd"),
+        keys(index, new KeyRange("abc", false, "bb", false, true)));
+  }
+
+  @Test
+  public void testNodeGrowth() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longgrowth"));
+    LongIndex index = new LongIndex("/tmp/longgrowth");
+    // The keys only differ in the last byte, the node grows from 4 to 256 children.
+    for (long i = 0; i < 40; i++) {
+      index.put(i, i * 10);
+    }
+    index.commit();
+    for (long i = 40; i < 60; i++) {
+      index.put(i, i * 10);
+    }
+    index.rollback();
+    index.cleanUp();
+    for (long i = 0; i < 60; i++) {
+      assertEquals(i < 40 ? i * 10 : null, index.get(i));
+    }
+    for (long i = 40; i < 256; i++) {
+      index.put(i, i * 10);
+    }
+    assertEquals(true, index.delete(100L));
+    index.commit();
+    index.cleanUp();
+    List<Long> expected = new ArrayList<>();
+    for (long i = 0; i < 256; i++) {
+      assertEquals(i == 100 ? null : i * 10, index.get(i));
+      if (i != 100) {
+        expected.add(i);
+      }
+    }
+    org.junit.Assert.assertEquals(expected, keys(index, KeyRange.ALL));
+  }
+
+  /**
+   * Writes the keys in the format before the adaptive index nodes, where every
+   * index node has 257 pointers and the file has no header. The trie paths are
+   * the keys serialized with <code>encoding</code>.
+   */
+  private long writeLegacy(RandomAccessFile raf, List<Long> keys, int depth, Function<Long, byte[]> encoding)
+      throws Exception {
+    long indexPointer = raf.length();
+    raf.seek(indexPointer);
+    raf.write(new byte[257 * Long.BYTES]);
+    TreeMap<Integer, List<Long>> slots = new TreeMap<>();
+    for (long key : keys) {
+      int slot = encoding.apply(key)[depth] - Byte.MIN_VALUE;
+      slots.computeIfAbsent(slot, s -> new ArrayList<>()).add(key);
+    }
+    long[] pointers = new long[257];
+    for (Map.Entry<Integer, List<Long>> slot : slots.entrySet()) {
+      if (slot.getValue().size() == 1) {
+        long key = slot.getValue().get(0);
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(b);
+        LeafTypes.longKeyType.write(stream, key);
+        stream.writeLong(key * 10);
+        pointers[slot.getKey()] = raf.length();
+        raf.seek(raf.length());
+        raf.write(b.toByteArray());
+      } else {
+        pointers[slot.getKey()] = -writeLegacy(raf, slot.getValue(), depth + 1, encoding);
+      }
+    }
+    ByteBuffer bb = ByteBuffer.allocate(257 * Long.BYTES);
+    bb.asLongBuffer().put(pointers);
+    raf.seek(indexPointer);
+    raf.write(bb.array());
+    return indexPointer;
+  }
+
+  @Test
+  public void testMigrateLegacyFile() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longlegacy"));
+    List<Long> keys = Arrays.asList(-5L, 1L, 2L, 3L, 1000L, 999999999L);
+    try (RandomAccessFile raf = new RandomAccessFile("/tmp/longlegacy", "rw")) {
+      writeLegacy(raf, keys, 0, LeafTypes.longKeyType::toByteArray);
+    }
+    LongIndex index = new LongIndex("/tmp/longlegacy");
+    for (long key : keys) {
+      assertEquals(key * 10, index.get(key));
+    }
+    assertEquals(null, index.get(4L));
+    org.junit.Assert.assertEquals(keys, keys(index, KeyRange.ALL));
+    index.put(4L, 40L);
+    index.commit();
+    index.close();
+    assertEquals(false, Files.exists(Paths.get("/tmp/longlegacy.migrate")));
+
+    index = new LongIndex("/tmp/longlegacy");
+    assertEquals(40L, index.get(4L));
+    assertEquals(10L, index.get(1L));
+    index.close();
+  }
+
+  @Test
+  public void testMigratePlainKeyEncoding() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longlegacyplain"));
+    List<Long> keys = Arrays.asList(-5L, 1L, 2L, 3L, 1000L, 999999999L);
+    // The keys of the files written before the order preserving encoding.
+    try (RandomAccessFile raf = new RandomAccessFile("/tmp/longlegacyplain", "rw")) {
+      writeLegacy(raf, keys, 0, key -> ByteBuffer.allocate(Long.BYTES).putLong(key).array());
+    }
+    LongIndex index = new LongIndex("/tmp/longlegacyplain");
+    for (long key : keys) {
+      assertEquals(key * 10, index.get(key));
+    }
+    assertEquals(null, index.get(4L));
+    org.junit.Assert.assertEquals(keys, keys(index, KeyRange.ALL));
+    org.junit.Assert.assertEquals(Arrays.asList(1L, 2L, 3L),
+        keys(index, new KeyRange(0L, false, 1000L, false, false)));
+    index.close();
+  }
+
+  @Test
+  public void testLoader() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/stringloader"));
+    StringIndex index = new StringIndex("/tmp/stringloader");
+    List<String> keys = new ArrayList<>();
+    for (String key : new String[] { "", "a", "ab", "abc", "abd", "b", "ba", "c", "\u00e9" }) {
+      keys.add(key);
+    }
+    // Nodes of every type, with keys ending at the node and below it.
+    for (int i = 0; i < 300; i++) {
+      keys.add("x" + i);
+      keys.add("y" + (i % 40) + "/" + i);
+    }
+    Collections.sort(keys);
+    ByteTrie<String, Long>.Loader loader = index.loader();
+    for (int i = 0; i < keys.size(); i++) {
+      loader.add(keys.get(i), (long) i);
+    }
+    loader.finish();
+    org.junit.Assert.assertEquals(keys, keys(index, KeyRange.ALL));
+    assertEquals(null, index.getCommitted("a"));
+    index.commit();
+    index.cleanUp();
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals((long) i, index.get(keys.get(i)));
+    }
+    assertEquals(null, index.get("x"));
+    assertEquals(null, index.get("abe"));
+    org.junit.Assert.assertEquals(Arrays.asList("ab", "abc", "abd"), keys(index, KeyRange.prefix("ab")));
+
+    // The loaded trie is modified as any other.
+    index.put("x", -1L);
+    index.put("abe", -2L);
+    assertEquals(true, index.delete("x10"));
+    index.commit();
+    index.close();
+    index = new StringIndex("/tmp/stringloader");
+    assertEquals(-1L, index.get("x"));
+    assertEquals(-2L, index.get("abe"));
+    assertEquals(null, index.get("x10"));
+    assertEquals((long) keys.indexOf("y7/87"), index.get("y7/87"));
+    index.close();
+  }
+
+  @Test
+  public void testLoaderRollback() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longloader"));
+    LongIndex index = new LongIndex("/tmp/longloader");
+    long length = Files.size(Paths.get("/tmp/longloader"));
+    ByteTrie<Long, Long>.Loader loader = index.loader();
+    loader.add(1L, 10L);
+    loader.add(2L, 20L);
+    try {
+      loader.add(2L, 30L);
+      fail();
+    } catch (IndexException e) {
+      org.junit.Assert.assertEquals("Key '2' already present in index.", e.getMessage());
+    }
+    index.rollback();
+    org.junit.Assert.assertEquals(length, Files.size(Paths.get("/tmp/longloader")));
+    assertEquals(null, index.get(1L));
+
+    loader = index.loader();
+    for (long i = 0; i < 1000; i++) {
+      loader.add(i * 1000, i);
+    }
+    loader.finish();
+    index.commit();
+    // Keys are added one by one to a non-empty trie.
+    loader = index.loader();
+    loader.add(5L, 5L);
+    loader.add(1L, 1L);
+    loader.finish();
+    index.commit();
+    index.cleanUp();
+    assertEquals(999L, index.get(999000L));
+    assertEquals(5L, index.get(5L));
+    assertEquals(1L, index.get(1L));
+    index.close();
+  }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.LeafTypes.LongIndex;
+import com.cosyan.db.index.MultiLeafTries.LongMultiIndex;
+import com.cosyan.db.index.NodeCache.NodeCacheStat;
+import com.cosyan.db.index.NodeCache.Owner;
+
+public class NodeCacheTest {
+
+  @Test
+  public void testGetPut() {
+    NodeCache cache = new NodeCache(1000);
+    Owner o1 = cache.newOwner();
+    Owner o2 = cache.newOwner();
+    for (long i = 0; i < 50; i++) {
+      cache.put(o1, i, "a" + i, 10);
+      cache.put(o2, i, "b" + i, 10);
+    }
+    assertEquals("a7", cache.get(o1, 7L));
+    assertEquals("b7", cache.get(o2, 7L));
+    assertNull(cache.get(o1, 50L));
+    assertEquals(100, cache.stats().getNodes());
+    assertEquals(1000L, cache.stats().getBytes());
+    assertEquals(2L, cache.stats().getHits());
+    assertEquals(1L, cache.stats().getMisses());
+
+    cache.put(o1, 7L, "c7", 10);
+    assertEquals("c7", cache.get(o1, 7L));
+    assertEquals(1000L, cache.stats().getBytes());
+    assertEquals(0L, cache.stats().getEvictions());
+
+    cache.put(o1, 50L, "a50", 10);
+    assertEquals(1000L, cache.stats().getBytes());
+    assertEquals(1L, cache.stats().getEvictions());
+  }
+
+  @Test
+  public void testEviction() {
+    NodeCache cache = new NodeCache(100);
+    Owner owner = cache.newOwner();
+    for (long i = 0; i < 1000; i++) {
+      cache.put(owner, i * 17, i, 10);
+      assertTrue(cache.stats().getBytes() <= 100L);
+    }
+    assertEquals(10, cache.stats().getNodes());
+    assertEquals(990L, cache.stats().getEvictions());
+    assertEquals(10, owner.nodes());
+    assertEquals(990L, owner.evictions());
+    // The nodes left in the cache can still be found after the removals.
+    int found = 0;
+    for (long i = 0; i < 1000; i++) {
+      Object node = cache.get(owner, i * 17);
+      if (node != null) {
+        assertEquals(i, node);
+        found++;
+      }
+    }
+    assertEquals(10, found);
+  }
+
+  @Test
+  public void testInvalidate() {
+    NodeCache cache = new NodeCache(1000);
+    Owner o1 = cache.newOwner();
+    Owner o2 = cache.newOwner();
+    for (long i = 0; i < 20; i++) {
+      cache.put(o1, i, i, 10);
+      cache.put(o2, i, i, 10);
+    }
+    cache.invalidate(o1);
+    assertNull(cache.get(o1, 3L));
+    assertEquals(3L, cache.get(o2, 3L));
+    assertEquals(20, cache.stats().getNodes());
+    assertEquals(200L, cache.stats().getBytes());
+    assertEquals(0L, o1.bytes());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    NodeCache cache = new NodeCache(10000);
+    List<Owner> owners = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    AtomicInteger errors = new AtomicInteger();
+    for (int t = 0; t < 8; t++) {
+      Owner owner = cache.newOwner();
+      owners.add(owner);
+      Thread thread = new Thread(() -> {
+        for (long i = 0; i < 5000; i++) {
+          cache.put(owner, i % 500, i % 500, 10);
+          Object node = cache.get(owner, (i * 7) % 500);
+          if (node != null && !node.equals((i * 7) % 500)) {
+            errors.incrementAndGet();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, errors.get());
+    NodeCacheStat stat = cache.stats();
+    assertTrue(stat.getBytes() <= 10000L);
+    assertEquals(stat.getBytes(), 10L * stat.getNodes());
+    long bytes = 0L;
+    long hits = 0L;
+    for (Owner owner : owners) {
+      bytes += owner.bytes();
+      hits += owner.hits();
+    }
+    assertEquals(stat.getBytes(), bytes);
+    assertEquals(stat.getHits(), hits);
+    assertEquals(8 * 5000L, stat.getHits() + stat.getMisses());
+  }
+
+  @Test
+  public void testSmallBudget() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/nodecacheindex"));
+    Files.deleteIfExists(Paths.get("/tmp/nodecachemultiindex#index"));
+    Files.deleteIfExists(Paths.get("/tmp/nodecachemultiindex#chain"));
+    NodeCache cache = new NodeCache(4096);
+    LongIndex index = new LongIndex("/tmp/nodecacheindex", cache);
+    LongMultiIndex multiIndex = new LongMultiIndex("/tmp/nodecachemultiindex", cache);
+    for (long i = 0; i < 2000; i++) {
+      index.put(i * 31, i);
+      multiIndex.put(i % 100, i);
+      if (i % 100 == 0) {
+        index.commit();
+        multiIndex.commit();
+      }
+    }
+    index.commit();
+    multiIndex.commit();
+    for (long i = 0; i < 2000; i++) {
+      assertEquals(Long.valueOf(i), index.get(i * 31));
+    }
+    for (long i = 0; i < 100; i++) {
+      assertEquals(20, multiIndex.get(i).length);
+    }
+    assertTrue(cache.stats().getBytes() <= 4096L);
+    ByteTrieStat stat = index.stats();
+    assertTrue(stat.getEvictions() > 0);
+    assertTrue(stat.getInMemBytes() <= 4096L);
+    assertTrue(multiIndex.stats().getEvictions() > 0);
+  }
+}
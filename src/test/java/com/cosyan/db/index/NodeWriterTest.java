@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+public class NodeWriterTest {
+
+  private RandomAccessFile open() throws IOException {
+    File file = File.createTempFile("nodewriter", ".bin");
+    file.deleteOnExit();
+    return new RandomAccessFile(file, "rw");
+  }
+
+  @Test
+  public void testCoalesceAdjacentNodes() throws IOException {
+    RandomAccessFile raf = open();
+    NodeWriter writer = new NodeWriter(raf.getChannel(), 10);
+    writer.buffer(0L, 2).put(new byte[] { 1, 2 });
+    writer.stream(2L, 3).write(new byte[] { 3, 4, 5 });
+    writer.buffer(5L, 1).put((byte) 6);
+    // Gap in the file.
+    writer.buffer(8L, 2).put(new byte[] { 9, 10 });
+    writer.flush();
+    assertEquals(2, writer.writes());
+
+    byte[] result = new byte[10];
+    raf.seek(0L);
+    raf.readFully(result);
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 0, 0, 9, 10 }, result);
+    raf.close();
+  }
+
+  @Test
+  public void testBufferFull() throws IOException {
+    RandomAccessFile raf = open();
+    NodeWriter writer = new NodeWriter(raf.getChannel(), 4);
+    writer.buffer(0L, 3).put(new byte[] { 1, 2, 3 });
+    writer.buffer(3L, 3).put(new byte[] { 4, 5, 6 });
+    // Larger than the buffer.
+    writer.buffer(6L, 6).put(new byte[] { 7, 8, 9, 10, 11, 12 });
+    writer.flush();
+    assertEquals(3, writer.writes());
+
+    byte[] result = new byte[12];
+    raf.seek(0L);
+    raf.readFully(result);
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }, result);
+    raf.close();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+public class ExternalSortTest {
+
+  private static final Comparator<Object[]> BY_KEY = new Comparator<Object[]>() {
+    @Override
+    public int compare(Object[] x, Object[] y) {
+      return ((Long) x[0]).compareTo((Long) y[0]);
+    }
+  };
+
+  private static final ImmutableList<DataType<?>> TYPES = ImmutableList.of(DataTypes.LongType, DataTypes.StringType);
+
+  @Test
+  public void testInMemory() throws IOException {
+    File dir = Files.createTempDirectory("sort").toFile();
+    ExternalSort sort = new ExternalSort(dir, 1024 * 1024, TYPES, BY_KEY);
+    sort.add(new Object[] { 3L, "c" });
+    sort.add(new Object[] { 1L, "a" });
+    sort.add(new Object[] { 2L, null });
+    assertEquals(0, sort.spills());
+    assertArrayEquals(new Object[] { 1L, "a" }, sort.next());
+    assertArrayEquals(new Object[] { 2L, null }, sort.next());
+    assertArrayEquals(new Object[] { 3L, "c" }, sort.next());
+    assertNull(sort.next());
+    sort.close();
+  }
+
+  @Test
+  public void testSpill() throws IOException {
+    File dir = Files.createTempDirectory("sort").toFile();
+    ExternalSort sort = new ExternalSort(dir, 1024, TYPES, BY_KEY);
+    for (int i = 0; i < 1000; i++) {
+      sort.add(new Object[] { (long) ((i * 7) % 100), "v" + i });
+    }
+    assertEquals(true, sort.spills() > 1);
+    assertEquals(sort.spills(), dir.list().length);
+    ArrayList<Object[]> result = new ArrayList<>();
+    Object[] values;
+    while ((values = sort.next()) != null) {
+      result.add(values);
+    }
+    assertEquals(1000, result.size());
+    for (int i = 1; i < result.size(); i++) {
+      long prev = (Long) result.get(i - 1)[0];
+      long next = (Long) result.get(i)[0];
+      assertEquals(true, prev <= next);
+      if (prev == next) {
+        // Equal keys keep the input order.
+        int prevI = Integer.valueOf(((String) result.get(i - 1)[1]).substring(1));
+        int nextI = Integer.valueOf(((String) result.get(i)[1]).substring(1));
+        assertEquals(true, prevI < nextI);
+      }
+    }
+    sort.close();
+    assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    File dir = Files.createTempDirectory("sort").toFile();
+    ExternalSort sort1 = new ExternalSort(dir, 1024, TYPES, BY_KEY);
+    ExternalSort sort2 = new ExternalSort(dir, 1024 * 1024, TYPES, BY_KEY);
+    ExternalSort sort3 = new ExternalSort(dir, 1024 * 1024, TYPES, BY_KEY);
+    for (int i = 0; i < 500; i++) {
+      sort1.add(new Object[] { (long) ((i * 7) % 100), "x" + i });
+      sort2.add(new Object[] { (long) ((i * 3) % 100), "y" + i });
+    }
+    sort1.finish();
+    sort2.finish();
+    assertEquals(true, sort1.spills() > 1);
+    ExternalSort.Merge merge = new ExternalSort.Merge(ImmutableList.of(sort1, sort2, sort3), BY_KEY);
+    ArrayList<Object[]> result = new ArrayList<>();
+    Object[] values;
+    while ((values = merge.next()) != null) {
+      result.add(values);
+    }
+    assertEquals(1000, result.size());
+    for (int i = 1; i < result.size(); i++) {
+      long prev = (Long) result.get(i - 1)[0];
+      long next = (Long) result.get(i)[0];
+      assertEquals(true, prev <= next);
+      if (prev == next) {
+        // Equal keys are returned in the order of the sorts.
+        char prevSort = ((String) result.get(i - 1)[1]).charAt(0);
+        char nextSort = ((String) result.get(i)[1]).charAt(0);
+        assertEquals(true, prevSort <= nextSort);
+      }
+    }
+    sort1.close();
+    sort2.close();
+    sort3.close();
+    assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void testTopN() {
+    ExternalSort.TopN topN = new ExternalSort.TopN(3, BY_KEY);
+    topN.add(new Object[] { 5L, "a" });
+    topN.add(new Object[] { 1L, "b" });
+    topN.add(new Object[] { 4L, "c" });
+    topN.add(new Object[] { 1L, "d" });
+    topN.add(new Object[] { 9L, "e" });
+    topN.add(new Object[] { 4L, "f" });
+    ArrayList<Object[]> result = topN.sorted();
+    assertEquals(3, result.size());
+    assertArrayEquals(new Object[] { 1L, "b" }, result.get(0));
+    assertArrayEquals(new Object[] { 1L, "d" }, result.get(1));
+    assertArrayEquals(new Object[] { 4L, "c" }, result.get(2));
+  }
+}
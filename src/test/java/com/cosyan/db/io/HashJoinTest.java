@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+public class HashJoinTest {
+
+  private static final ImmutableList<DataType<?>> TYPES = ImmutableList.of(DataTypes.LongType, DataTypes.StringType);
+
+  private HashJoin.Source source(final Iterator<Object[]> iterator) {
+    return new HashJoin.Source() {
+      @Override
+      public Object[] next() {
+        return iterator.hasNext() ? iterator.next() : null;
+      }
+    };
+  }
+
+  @Test
+  public void testInMemory() throws IOException {
+    File dir = Files.createTempDirectory("join").toFile();
+    HashJoin join = new HashJoin(dir, 1024 * 1024, 1, TYPES, TYPES);
+    join.build(new Object[] { 1L, "a" });
+    join.build(new Object[] { 2L, "b" });
+    join.build(new Object[] { 1L, "c" });
+    join.build(new Object[] { null, "d" });
+    assertFalse(join.partitioned());
+
+    HashJoin.Source probe = source(ImmutableList.of(
+        new Object[] { 1L, "x" },
+        new Object[] { 3L, "y" },
+        new Object[] { null, "z" }).iterator());
+    assertTrue(join.next(probe));
+    assertArrayEquals(new Object[] { 1L, "x" }, join.probeValues());
+    assertEquals(2, join.matches().size());
+    assertArrayEquals(new Object[] { 1L, "a" }, join.matches().get(0));
+    assertArrayEquals(new Object[] { 1L, "c" }, join.matches().get(1));
+    assertTrue(join.next(probe));
+    assertEquals(0, join.matches().size());
+    assertTrue(join.next(probe));
+    assertArrayEquals(new Object[] { null, "z" }, join.probeValues());
+    assertEquals(0, join.matches().size());
+    assertFalse(join.next(probe));
+    join.close();
+  }
+
+  @Test
+  public void testPartitioned() throws IOException {
+    File dir = Files.createTempDirectory("join").toFile();
+    HashJoin join = new HashJoin(dir, 1024, 1, TYPES, TYPES);
+    for (long i = 0; i < 1000; i++) {
+      join.build(new Object[] { i % 100, "b" + i });
+    }
+    assertTrue(join.partitioned());
+
+    ImmutableList.Builder<Object[]> probeValues = ImmutableList.builder();
+    for (long i = 0; i < 200; i++) {
+      probeValues.add(new Object[] { i, "p" + i });
+    }
+    HashJoin.Source probe = source(probeValues.build().iterator());
+    TreeMap<Long, Integer> matches = new TreeMap<>();
+    while (join.next(probe)) {
+      Long key = (Long) join.probeValues()[0];
+      for (Object[] match : join.matches()) {
+        assertEquals(key, match[0]);
+      }
+      assertFalse(matches.containsKey(key));
+      matches.put(key, join.matches().size());
+    }
+    assertEquals(200, matches.size());
+    for (long i = 0; i < 200; i++) {
+      assertEquals(i < 100 ? 10 : 0, (int) matches.get(i));
+    }
+    join.close();
+    assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void testSingleKeyPartition() throws IOException {
+    File dir = Files.createTempDirectory("join").toFile();
+    HashJoin join = new HashJoin(dir, 1024, 1, TYPES, TYPES);
+    for (long i = 0; i < 500; i++) {
+      join.build(new Object[] { 1000L, "b" + i });
+    }
+    for (long i = 0; i < 100; i++) {
+      join.build(new Object[] { i, "b" + i });
+    }
+    assertTrue(join.partitioned());
+
+    ImmutableList.Builder<Object[]> probeValues = ImmutableList.builder();
+    for (long i = 0; i < 200; i++) {
+      probeValues.add(new Object[] { i, "p" + i });
+    }
+    probeValues.add(new Object[] { 1000L, "x" });
+    probeValues.add(new Object[] { 1000L, "y" });
+    HashJoin.Source probe = source(probeValues.build().iterator());
+    // The probe records of the key not fitting in memory are returned once per block.
+    TreeMap<String, Integer> matches = new TreeMap<>();
+    while (join.next(probe)) {
+      String name = (String) join.probeValues()[1];
+      for (Object[] match : join.matches()) {
+        assertEquals(join.probeValues()[0], match[0]);
+      }
+      if (join.matches().isEmpty()) {
+        assertFalse(matches.containsKey(name));
+      }
+      matches.put(name, matches.getOrDefault(name, 0) + join.matches().size());
+    }
+    assertEquals(202, matches.size());
+    for (long i = 0; i < 200; i++) {
+      assertEquals(i < 100 ? 1 : 0, (int) matches.get("p" + i));
+    }
+    assertEquals(500, (int) matches.get("x"));
+    assertEquals(500, (int) matches.get("y"));
+    join.close();
+    assertEquals(0, dir.list().length);
+  }
+}
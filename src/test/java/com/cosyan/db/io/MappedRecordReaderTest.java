@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cosyan.db.io.RecordProvider.MappedRecordReader;
+import com.cosyan.db.io.RecordProvider.Record;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.Ident;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class MappedRecordReaderTest {
+
+  private ImmutableList<BasicColumn> columns;
+
+  @Before
+  public void setUp() throws ModelException {
+    columns = ImmutableList.of(
+        new BasicColumn(0, new Ident("a"), DataTypes.LongType, true, false, false),
+        new BasicColumn(1, new Ident("b"), DataTypes.StringType, true, false, false));
+  }
+
+  private String writeFile(Object[]... records) throws IOException {
+    File file = File.createTempFile("mapped", ".bin");
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      for (Object[] values : records) {
+        out.write(Serializer.serialize(values, columns));
+      }
+    }
+    return file.getPath();
+  }
+
+  @Test
+  public void testReadAcrossSegments() throws IOException {
+    String path = writeFile(
+        new Object[] { 1L, "abc" },
+        new Object[] { 2L, null },
+        new Object[] { 3L, "xyz" });
+    for (long segmentSize : new long[] { 3L, 7L, 16L, MappedDataFile.MAX_SEGMENT_SIZE }) {
+      MappedRecordReader reader = new MappedRecordReader(columns, new MappedDataFile(path, segmentSize));
+      assertArrayEquals(new Object[] { 1L, "abc" }, reader.read().getValues());
+      assertArrayEquals(new Object[] { 2L, null }, reader.read().getValues());
+      assertArrayEquals(new Object[] { 3L, "xyz" }, reader.read().getValues());
+      assertEquals(RecordProvider.EMPTY, reader.read());
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSkipDeletedRecords() throws IOException {
+    String path = writeFile(
+        new Object[] { 1L, "abc" },
+        new Object[] { 2L, "def" });
+    MappedRecordReader reader = new MappedRecordReader(columns, new MappedDataFile(path));
+    Record first = reader.read();
+    reader.close();
+
+    reader = new MappedRecordReader(
+        columns, new MappedDataFile(path, 5L), ImmutableSet.of(first.getFilePointer()), null);
+    assertArrayEquals(new Object[] { 2L, "def" }, reader.read().getValues());
+    assertEquals(RecordProvider.EMPTY, reader.read());
+    reader.close();
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+    MappedRecordReader reader = new MappedRecordReader(columns, new MappedDataFile(writeFile()));
+    assertEquals(RecordProvider.EMPTY, reader.read());
+    reader.close();
+  }
+
+  @Test
+  public void testSplits() throws IOException {
+    Object[][] records = new Object[100][];
+    for (int i = 0; i < records.length; i++) {
+      records[i] = new Object[] { (long) i, i % 2 == 0 ? "x" + i : null };
+    }
+    String path = writeFile(records);
+    MappedDataFile file = new MappedDataFile(path);
+    long end = file.length();
+    assertArrayEquals(new long[] { 0L }, MappedRecordReader.splits(file, end, 4, end));
+    long[] starts = MappedRecordReader.splits(file, end, 4, 1L);
+    file.close();
+    assertEquals(4, starts.length);
+
+    int i = 0;
+    for (int j = 0; j < starts.length; j++) {
+      MappedRecordReader reader = new MappedRecordReader(
+          columns, new MappedDataFile(path), starts[j], j + 1 < starts.length ? starts[j + 1] : end, pos -> false);
+      Record record;
+      while ((record = reader.read()) != RecordProvider.EMPTY) {
+        assertArrayEquals(records[i++], record.getValues());
+      }
+      reader.close();
+    }
+    assertEquals(records.length, i);
+  }
+
+  @Test
+  public void testSyncToRecordHeader() throws IOException {
+    // Values which look like record headers.
+    String path = writeFile(
+        new Object[] { 0x0100000000L, "\u0001\u0000\u0000" },
+        new Object[] { 1L, null },
+        new Object[] { 0x0000000901000000L, "abc" },
+        new Object[] { 0L, "\u0000" });
+    MappedRecordReader reader = new MappedRecordReader(columns, new MappedDataFile(path));
+    ArrayList<Long> starts = new ArrayList<>();
+    Record record;
+    while ((record = reader.read()) != RecordProvider.EMPTY) {
+      starts.add(record.getFilePointer());
+    }
+    reader.close();
+
+    MappedDataFile file = new MappedDataFile(path);
+    long end = file.length();
+    for (long position = 0; position <= end; position++) {
+      long expected = end;
+      for (long start : starts) {
+        if (start >= position) {
+          expected = start;
+          break;
+        }
+      }
+      assertEquals(expected, MappedRecordReader.sync(file, position, end));
+    }
+    file.close();
+  }
+
+  @Test
+  public void testReadLineAndReadFully() throws IOException {
+    File file = File.createTempFile("mapped", ".txt");
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write("ab\ncd\r\nef\rgh".getBytes("ISO-8859-1"));
+    }
+    for (long segmentSize : new long[] { 3L, MappedDataFile.MAX_SEGMENT_SIZE }) {
+      MappedDataFile data = new MappedDataFile(file.getPath(), segmentSize);
+      assertEquals("ab", data.readLine());
+      assertEquals("cd", data.readLine());
+      assertEquals("ef", data.readLine());
+      assertEquals("gh", data.readLine());
+      assertEquals(null, data.readLine());
+      data.seek(1L);
+      byte[] bytes = new byte[6];
+      data.readFully(bytes, 1, 5);
+      assertArrayEquals("\0b\ncd\r".getBytes("ISO-8859-1"), bytes);
+      data.close();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+public class PagedSeekableFileStreamTest {
+
+  private PagedSeekableFileStream open(PageCache pageCache) throws IOException {
+    File file = File.createTempFile("paged", ".bin");
+    file.deleteOnExit();
+    return new PagedSeekableFileStream(new RandomAccessFile(file, "rw"), pageCache);
+  }
+
+  @Test
+  public void testReadAcrossPages() throws IOException {
+    PagedSeekableFileStream stream = open(new PageCache(4, 2));
+    stream.write(0, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+    assertEquals(10, stream.length());
+    byte[] result = new byte[10];
+    new DataInputStream(stream).readFully(result);
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, result);
+    assertEquals(-1, stream.read());
+    stream.seek(5);
+    assertEquals(6, stream.read());
+    stream.seek(2);
+    assertEquals(3, stream.read());
+    stream.close();
+  }
+
+  @Test
+  public void testWriteUpdatesCachedPages() throws IOException {
+    PagedSeekableFileStream stream = open(new PageCache(4, 4));
+    stream.write(0, new byte[] { 1, 2, 3, 4, 5, 6 });
+    stream.seek(0);
+    assertEquals(1, stream.read());
+    stream.write(3, new byte[] { -1, -2 });
+    stream.seek(3);
+    assertEquals(255, stream.read());
+    assertEquals(254, stream.read());
+    assertEquals(6, stream.read());
+    stream.write(6, new byte[] { 7 });
+    assertEquals(7, stream.read());
+    assertEquals(-1, stream.read());
+    stream.close();
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    PageCache pageCache = new PageCache(2, 2);
+    PagedSeekableFileStream stream = open(pageCache);
+    stream.write(0, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+    for (int i = 0; i < 8; i++) {
+      stream.seek(i);
+      assertEquals(i + 1, stream.read());
+    }
+    stream.seek(0);
+    assertEquals(1, stream.read());
+    assertEquals(2, pageCache.stats().getCachedPages());
+    assertEquals(3, pageCache.stats().getEvictions());
+    stream.close();
+    assertEquals(0, pageCache.stats().getCachedPages());
+  }
+}
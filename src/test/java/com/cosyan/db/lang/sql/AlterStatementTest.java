@@ -767,4 +767,21 @@ public class AlterStatementTest extends UnitTestBase {
       assertValues(new Object[][] { { 0L, 20L }, { 0L, 20L }, { 0L, 20L } }, result);
     }
   }
+
+  @Test
+  public void testAddConstraintAndIndexOnLargeTable() throws Exception {
+    execute("create table t68 (a integer, b varchar);");
+    StringBuilder sb = new StringBuilder("insert into t68 values ");
+    for (int i = 0; i < 1000; i++) {
+      sb.append(String.format("(%s, 'x%s')%s", i, i % 10, i < 999 ? ", " : ";"));
+    }
+    execute(sb.toString());
+
+    ErrorResult e = error("alter table t68 add constraint c1 check (a < 999);");
+    assertEquals("Constraint check c1 failed.", e.getError().getMessage());
+    execute("alter table t68 add constraint c2 check (a >= 0);");
+
+    execute("create index t68.b;");
+    assertEquals(100L, query("select count(1) as c from t68 where b = 'x7';").getValues().get(0)[0]);
+  }
 }
@@ -251,6 +251,30 @@ public class CreateStatementTest extends UnitTestBase {
     assertArrayEquals(new long[] { 16L }, index.get("y"));
   }
 
+  @Test
+  public void testCreateIndexWithManyRecords() throws Exception {
+    execute("create table t30 (a integer, b varchar);");
+    for (int i = 0; i < 10; i++) {
+      StringBuilder sb = new StringBuilder("insert into t30 values ");
+      for (int j = 0; j < 200; j++) {
+        int k = i * 200 + j;
+        sb.append(j > 0 ? ", " : "").append("(" + (k % 300 - 150) + ", 'x" + k + "')");
+      }
+      execute(sb.append(";").toString());
+    }
+    execute("delete from t30 where a = 0;");
+    execute("create index t30.a;");
+    TableMultiIndex index = metaRepo.table("admin", "t30").multiIndexes().get("a");
+    assertEquals(0, index.get(0L).length);
+    assertEquals(7, index.get(-150L).length);
+    assertEquals(6, index.get(149L).length);
+    long[] values = index.get(7L);
+    for (int i = 1; i < values.length; i++) {
+      assertTrue(values[i - 1] < values[i]);
+    }
+    assertValues(new Object[][] { { 14L } }, query("select count(1) as c from t30 where a = -1 or a = 1;"));
+  }
+
   @Test
   public void testCreateTableForeignKeyNameResolution() throws Exception {
     execute("create user u1 identified by 'abc';");
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.model.stat.TableStats;
+
+public class ExplainStatementTest extends UnitTestBase {
+
+  private void insert(String table, int n) {
+    StringBuilder sb = new StringBuilder("insert into " + table + " values ");
+    for (int i = 0; i < n; i++) {
+      sb.append(i > 0 ? ", " : "").append("(").append(i).append(", ").append(i % 10).append(")");
+    }
+    execute(sb.append(";").toString());
+  }
+
+  private void assertPlan(String sql, String... lines) {
+    QueryResult result = query(sql);
+    assertEquals(lines.length, result.getValues().size());
+    for (int i = 0; i < lines.length; i++) {
+      assertEquals(lines[i], result.getValues().get(i)[0]);
+    }
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    execute("create table t1 (a integer unique not null, b integer);");
+    insert("t1", 100);
+    execute("delete from t1 where a < 10;");
+    TableStats stats = metaRepo.table("admin", "t1").stats();
+    assertEquals(90L, stats.count());
+    assertEquals(10L, stats.cardinality("b"));
+    assertEquals(100L, stats.notNull("a"));
+  }
+
+  @Test
+  public void testAccessPath() throws Exception {
+    execute("create table t2 (a integer unique not null, b integer);");
+    execute("create index t2.b;");
+    insert("t2", 100);
+
+    assertPlan("explain select * from t2 where a = 5;",
+        "project (rows=1, cost=4.0)",
+        "  index lookup admin.t2.a = 5 (rows=1, cost=4.0)");
+    assertPlan("explain select b from t2 where b = 5;",
+        "project (rows=10, cost=40.0)",
+        "  index lookup admin.t2.b = 5 (rows=10, cost=40.0)");
+    assertPlan("explain select b from t2 where a > 5;",
+        "project (rows=34, cost=100.0)",
+        "  filter (rows=34, cost=100.0)",
+        "    full scan admin.t2 (rows=100, cost=100.0)");
+    assertPlan("explain select b from t2 where a > 5 and a < 10;",
+        "project (rows=4, cost=16.0)",
+        "  index range scan admin.t2.a (5, 10) (rows=4, cost=16.0)");
+    // The sampled values of the column show that only a few records match.
+    assertPlan("explain select b from t2 where a > 95;",
+        "project (rows=4, cost=16.0)",
+        "  index range scan admin.t2.a (95, ) (rows=4, cost=16.0)");
+    assertValues(new Object[][] { { 5L } }, query("select b from t2 where b = 5 and a = 5;"));
+  }
+
+  @Test
+  public void testJoinBuildSide() throws Exception {
+    execute("create table t3 (a integer unique not null, b integer);");
+    execute("create table t4 (a integer unique not null, b integer);");
+    insert("t3", 10);
+    insert("t4", 1000);
+
+    assertPlan("explain select x.a as xa, y.a as ya from t3 as x inner join t4 as y on x.a = y.b;",
+        "project (rows=1000, cost=1010.0)",
+        "  hash join inner build left (rows=1000, cost=1010.0)",
+        "    full scan admin.t3 (rows=10, cost=10.0)",
+        "    full scan admin.t4 (rows=1000, cost=1000.0)");
+    assertPlan("explain select x.a as xa, y.a as ya from t4 as y inner join t3 as x on y.b = x.a;",
+        "project (rows=1000, cost=1010.0)",
+        "  hash join inner build right (rows=1000, cost=1010.0)",
+        "    full scan admin.t4 (rows=1000, cost=1000.0)",
+        "    full scan admin.t3 (rows=10, cost=10.0)");
+    assertValues(new Object[][] { { 3L, 3L }, { 3L, 13L } },
+        query("select x.a as xa, y.a as ya from t3 as x inner join t4 as y on x.a = y.b where y.a < 20 and x.a = 3;"));
+  }
+
+  @Test
+  public void testIndexJoin() throws Exception {
+    execute("create table t5 (a integer unique not null, b integer);");
+    execute("create index t5.b;");
+    execute("create table t6 (a integer unique not null, b integer);");
+    insert("t5", 1000);
+    insert("t6", 1000);
+
+    assertPlan("explain select y.a as ya, x.a as xa from (select a, b from t6 where a = 3) as y "
+        + "inner join t5 as x on y.b = x.a;",
+        "project (rows=1, cost=8.0)",
+        "  index nested loop join inner lookup admin.t5.a (rows=1, cost=8.0)",
+        "    project (rows=1, cost=4.0)",
+        "      index lookup admin.t6.a = 3 (rows=1, cost=4.0)");
+    assertValues(new Object[][] { { 3L, 3L } },
+        query("select y.a as ya, x.a as xa from (select a, b from t6 where a = 3) as y "
+            + "inner join t5 as x on y.b = x.a;"));
+    assertValues(new Object[][] { { 3L, 3L } },
+        query("select y.a as ya, x.a as xa from t5 as x "
+            + "inner join (select a, b from t6 where a = 3) as y on x.a = y.b;"));
+
+    assertValues(new Object[][] { { 30L, null } },
+        query("select y.a as ya, x.a as xa from (select a, b from t6 where a = 30) as y "
+            + "left join t5 as x on y.a = x.b;"));
+    assertEquals(100, query("select y.a as ya, x.a as xa from (select a, b from t6 where a = 3) as y "
+        + "left join t5 as x on y.a = x.b;").getValues().size());
+  }
+}
@@ -398,4 +398,16 @@ public class InsertIntoTest extends UnitTestBase {
     ErrorResult e1 = error("insert into t36 values (2.0);");
     assertError(RuleException.class, "Key '2.0' already present in index.", e1);
   }
+
+  @Test
+  public void testConstraintMixedTypes() throws Exception {
+    execute("create table t37 (a integer, b float, c boolean, "
+        + "constraint c_1 check((a * 2 + b > 3.0 or c) and a % 3 < 2.0 and 'x' + 'y' = 'xy'));");
+    execute("insert into t37 values (1, 1.5, false), (0, 0.0, true), (null, 1.0, false), (1, null, null);");
+
+    ErrorResult e1 = error("insert into t37 values (1, 0.5, false);");
+    assertError(RuleException.class, "Constraint check c_1 failed.", e1);
+    ErrorResult e2 = error("insert into t37 values (5, 0.0, true);");
+    assertError(RuleException.class, "Constraint check c_1 failed.", e2);
+  }
 }
@@ -15,9 +15,16 @@
  */
 package com.cosyan.db.lang.sql;
 
+import java.io.File;
+
 import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.index.LeafTypes.DoubleIndex;
+import com.cosyan.db.index.LeafTypes.LongIndex;
+import com.cosyan.db.index.LeafTypes.StringIndex;
+import com.cosyan.db.index.MultiLeafTries.LongMultiIndex;
+import com.cosyan.db.index.MultiLeafTries.StringMultiIndex;
 
 public class InsertStatementPerformanceTest extends UnitTestBase {
 
@@ -113,4 +120,75 @@ public class InsertStatementPerformanceTest extends UnitTestBase {
     t = System.currentTimeMillis() - t;
     System.out.println("Records with ID index many per transaction inserted in " + t + " " + speed(t, N));
   }
+
+  @Test
+  public void testInsertWithManyIndexes_multipleRecordsPerTransaction() {
+    execute("create table t7 (a varchar unique, b integer unique, c float unique, d varchar, e integer);");
+    execute("create index t7.d;");
+    execute("create index t7.e;");
+    long t = System.currentTimeMillis();
+    for (int i = 0; i < N / T; i++) {
+      StringBuilder sb = new StringBuilder();
+      int x = i * T;
+      sb.append("insert into t7 values ('abc" + x + "', " + x + ", " + x + ".0, 'x" + (x % 100) + "', " + (x % 10) + ")");
+      for (int j = 1; j < T; j++) {
+        x++;
+        sb.append(",('abc" + x + "', " + x + ", " + x + ".0, 'x" + (x % 100) + "', " + (x % 10) + ")");
+      }
+      sb.append(";");
+      execute(sb.toString());
+    }
+    t = System.currentTimeMillis() - t;
+    System.out.println("Records with 5 indexes many per transaction inserted in " + t + " " + speed(t, N));
+  }
+
+  @Test
+  public void testCreateIndex() {
+    execute("create table t8 (a varchar, b integer);");
+    for (int i = 0; i < N / T; i++) {
+      StringBuilder sb = new StringBuilder();
+      int x = i * T;
+      sb.append("insert into t8 values ('abc" + (x * 7919 % N) + "', " + (x % 1000) + ")");
+      for (int j = 1; j < T; j++) {
+        x++;
+        sb.append(",('abc" + (x * 7919 % N) + "', " + (x % 1000) + ")");
+      }
+      sb.append(";");
+      execute(sb.toString());
+    }
+    long t = System.currentTimeMillis();
+    execute("create index t8.a;");
+    execute("create index t8.b;");
+    t = System.currentTimeMillis() - t;
+    System.out.println("Indexes of 2 columns created in " + t + " " + speed(t, 2 * N));
+  }
+
+  @Test
+  public void testIndexCommitLatency() throws Exception {
+    String dir = config.indexDir() + File.separator;
+    LongIndex longIndex = new LongIndex(dir + "commit_long");
+    StringIndex stringIndex = new StringIndex(dir + "commit_string");
+    DoubleIndex doubleIndex = new DoubleIndex(dir + "commit_double");
+    LongMultiIndex longMultiIndex = new LongMultiIndex(dir + "commit_long_multi");
+    StringMultiIndex stringMultiIndex = new StringMultiIndex(dir + "commit_string_multi");
+    long commitNanos = 0L;
+    for (int i = 0; i < N / T; i++) {
+      for (int j = 0; j < T; j++) {
+        long x = i * T + j;
+        longIndex.put(x, x);
+        stringIndex.put("abc" + x, x);
+        doubleIndex.put((double) x, x);
+        longMultiIndex.put(x % 100, x);
+        stringMultiIndex.put("x" + (x % 10), x);
+      }
+      long t = System.nanoTime();
+      longIndex.commit();
+      stringIndex.commit();
+      doubleIndex.commit();
+      longMultiIndex.commit();
+      stringMultiIndex.commit();
+      commitNanos += System.nanoTime() - t;
+    }
+    System.out.println(String.format("Commit of %s keys in 5 indexes in %.2f ms", T, commitNanos / 1000000.0 / (N / T)));
+  }
 }
@@ -19,8 +19,10 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
+import com.cosyan.db.lang.expr.Literals.Parameters;
 import com.cosyan.db.lang.sql.Tokens.FloatToken;
 import com.cosyan.db.lang.sql.Tokens.IntToken;
+import com.cosyan.db.lang.sql.Tokens.ParamToken;
 import com.cosyan.db.lang.sql.Tokens.StringToken;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.session.IParser.ParserException;
@@ -107,4 +109,17 @@ public class LexerTest {
             new Token("g", null), new Token(";", null)),
         lexer.tokens("f().g;"));
   }
+
+  @Test
+  public void testParams() throws ParserException {
+    Parameters parameters = new Parameters();
+    ImmutableList<Token> tokens = ImmutableList.copyOf(lexer.tokenize("a=? and b<?;", parameters));
+    assertEquals(
+        ImmutableList.of(new Token("a", null), new Token("=", null), new Token("?", null), new Token("and", null),
+            new Token("b", null), new Token("<", null), new Token("?", null), new Token(";", null)),
+        tokens);
+    assertEquals(2, parameters.size());
+    assertEquals(0, ((ParamToken) tokens.get(2)).getIndex());
+    assertEquals(1, ((ParamToken) tokens.get(6)).getIndex());
+  }
 }
@@ -222,4 +222,89 @@ public class SelectStatementTest extends UnitTestBase {
     QueryResult r = query("select * from u1.t25;");
     assertValues(new Object[][] { { "x" } }, r);
   }
+
+  @Test
+  public void testIndexRange() {
+    execute("create table t26 (a integer unique not null, b varchar, c float);");
+    execute("create index t26.b;");
+    execute("create index t26.c;");
+    execute("insert into t26 values (3, 'xa', 1.5), (1, 'y', -2.0), (5, 'xb', 0.0), (2, 'z', 3.0), (4, 'xc', -1.0);");
+
+    assertValues(new Object[][] { { 2L }, { 3L }, { 4L } }, query("select a from t26 where a >= 2 and a < 5 order by a;"));
+    assertValues(new Object[][] { { 4L }, { 5L } }, query("select a from t26 where 3 < a order by a;"));
+    assertValues(new Object[][] { { 5L } }, query("select a from t26 where a > 2 and c.abs() < 1;"));
+    assertValues(new Object[][] { { "xa" }, { "xb" }, { "xc" } }, query("select b from t26 where b.starts_with('x');"));
+    assertValues(new Object[][] { { -2.0 }, { -1.0 } }, query("select c from t26 where c < 0;"));
+    assertValues(new Object[][] { { 1.5 }, { 3.0 } }, query("select c from t26 where c > 0 and c <= 3;"));
+
+    execute("delete from t26 where a = 3;");
+    execute("update t26 set b = 'xd' where a = 2;");
+    assertValues(new Object[][] { { "xb" }, { "xc" }, { "xd" } }, query("select b from t26 where b.starts_with('x');"));
+  }
+
+  @Test
+  public void testIndexOrderLimit() {
+    execute("create table t27 (a integer unique not null, b varchar);");
+    execute("insert into t27 values (3, 'c'), (1, 'a'), (5, 'e'), (2, 'b'), (4, 'd');");
+
+    assertValues(new Object[][] { { 1L, "a" }, { 2L, "b" } }, query("select * from t27 order by a limit 2;"));
+    assertValues(new Object[][] { { 5L, "e" }, { 4L, "d" }, { 3L, "c" } },
+        query("select a, b from t27 order by a desc limit 3;"));
+    assertValues(new Object[][] { { 3L }, { 2L } }, query("select a from t27 where a < 4 order by a desc limit 2;"));
+    assertValues(new Object[][] { { 4L }, { 2L } },
+        query("select a from t27 where not (b = 'c') and a < 5 order by a desc limit 2;"));
+    assertValues(new Object[][] { { "e" }, { "d" } }, query("select b from t27 order by b desc limit 2;"));
+  }
+
+  @Test
+  public void testParallelGroupBy() {
+    execute("create table t28 (a integer, b varchar, c float);");
+    StringBuilder sb = new StringBuilder("insert into t28 values ");
+    for (int i = 0; i < 1000; i++) {
+      sb.append(String.format("(%s, 'x%s', %s.0)%s", i, i % 3, i % 10, i < 999 ? ", " : ";"));
+    }
+    execute(sb.toString());
+
+    assertValues(new Object[][] {
+        { "x0", 334L, 166833L, 9.0, 7L },
+        { "x1", 333L, 166167L, 9.0, 7L },
+        { "x2", 333L, 166500L, 9.0, 7L } },
+        query("select b, count(1) as cnt, sum(a) as s, max(c) as m, count(distinct a % 7) as d "
+            + "from t28 group by b order by b;"));
+    assertValues(new Object[][] { { "x0", 4.5 } },
+        query("select b, avg(c) as ac from t28 where a < 30 and b = 'x0' group by b;"));
+  }
+
+  @Test
+  public void testParallelFilter() {
+    execute("create table t29 (a integer, b varchar);");
+    StringBuilder sb = new StringBuilder("insert into t29 values ");
+    for (int i = 0; i < 1000; i++) {
+      sb.append(String.format("(%s, 'x%s')%s", i, i % 10, i < 999 ? ", " : ";"));
+    }
+    execute(sb.toString());
+
+    Object[][] expected = new Object[100][];
+    for (int i = 0; i < 100; i++) {
+      expected[i] = new Object[] { i * 10L + 7L };
+    }
+    assertValues(expected, query("select a from t29 where b = 'x7';"));
+  }
+
+  @Test
+  public void testBatchExpressions() {
+    execute("create table t30 (a integer, b float, c boolean);");
+    StringBuilder sb = new StringBuilder("insert into t30 values ");
+    for (int i = 0; i < 3000; i++) {
+      String a = i % 7 == 0 ? "null" : String.valueOf(i % 5 + 1);
+      sb.append(String.format("(%s, %s.5, %s)%s", a, i % 3, i % 2 == 0, i < 2999 ? ", " : ";"));
+    }
+    execute(sb.toString());
+
+    // Division by zero is not evaluated for null values.
+    assertValues(new Object[][] { { 1542L } }, query("select count(a) from t30 where 10 / a > 2;"));
+    assertValues(new Object[][] { { 2486L } }, query("select count(a) from t30 where a * 2 + b > 3 or not c;"));
+    assertValues(new Object[][] { { 7714L, 11569.0 } }, query("select sum(a), sum(a * b) from t30;"));
+    assertValues(new Object[][] { { 1543L } }, query("select count(a) from t30 where c impl (a = 2);"));
+  }
 }
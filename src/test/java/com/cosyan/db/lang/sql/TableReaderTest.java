@@ -243,6 +243,27 @@ public class TableReaderTest extends UnitTestBase {
     assertArrayEquals(new Object[] { "a", 3L }, result.getValues().get(3));
   }
 
+  @Test
+  public void testOrderByDuplicateKeys() throws Exception {
+    QueryResult result = query("select a, b from large order by a;");
+    assertEquals(4, result.getValues().size());
+    assertArrayEquals(new Object[] { "a", 1L }, result.getValues().get(0));
+    assertArrayEquals(new Object[] { "a", 3L }, result.getValues().get(1));
+    assertArrayEquals(new Object[] { "b", 5L }, result.getValues().get(2));
+    assertArrayEquals(new Object[] { "b", 7L }, result.getValues().get(3));
+  }
+
+  @Test
+  public void testOrderByLimit() throws Exception {
+    QueryResult result = query("select a, b from large order by a desc limit 3;");
+    assertEquals(3, result.getValues().size());
+    assertArrayEquals(new Object[] { "b", 5L }, result.getValues().get(0));
+    assertArrayEquals(new Object[] { "b", 7L }, result.getValues().get(1));
+    assertArrayEquals(new Object[] { "a", 1L }, result.getValues().get(2));
+
+    assertEquals(0, query("select a, b from large order by a limit 0;").getValues().size());
+  }
+
   @Test
   public void testInnerJoin1() throws Exception {
     QueryResult result = query("select * from left inner join right on a = x;");
@@ -406,6 +427,17 @@ public class TableReaderTest extends UnitTestBase {
     assertArrayEquals(new Object[] { "c", 5L, null }, result.getValues().get(2));
   }
 
+  @Test
+  public void testJoinNullKey() throws Exception {
+    QueryResult result = query("select * from null left join right on a = x;");
+    assertEquals(3, result.getValues().size());
+    assertArrayEquals(new Object[] { null, 1L, 2.0, null, null }, result.getValues().get(0));
+    assertArrayEquals(new Object[] { "b", null, 4.0, null, null }, result.getValues().get(1));
+    assertArrayEquals(new Object[] { "c", 5L, null, "c", 6L }, result.getValues().get(2));
+
+    assertEquals(1, query("select * from null inner join right on a = x;").getValues().size());
+  }
+
   @Test
   public void testNullEquals() throws Exception {
     ErrorResult e = error("select * from null where b = null;");
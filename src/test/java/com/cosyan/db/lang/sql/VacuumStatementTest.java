@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.VacuumResult;
+import com.cosyan.db.meta.TableStat;
+
+public class VacuumStatementTest extends UnitTestBase {
+
+  private VacuumResult vacuum(String sql) {
+    Result result = session.execute(sql);
+    assertTrue(result.toJSON().toString(), result instanceof VacuumResult);
+    return (VacuumResult) result;
+  }
+
+  @Test
+  public void testVacuumLogTable() throws Exception {
+    execute("create table t1 (a varchar, b integer, constraint pk_a primary key (a));");
+    execute("create index t1.b;");
+    execute("insert into t1 values ('x', 1), ('y', 2), ('z', 2);");
+    execute("delete from t1 where a = 'x';");
+    execute("update t1 set b = 3 where a = 'y';");
+
+    TableStat stat = metaRepo.table("admin", "t1").stat();
+    assertEquals(2, stat.getRecords());
+    assertEquals(2, stat.getDeletedRecords());
+    assertEquals(0.5, stat.deletedRatio(), 0.0);
+
+    VacuumResult result = vacuum("vacuum t1;");
+    assertEquals(2, result.getAffectedLines());
+    assertEquals(stat.getDeletedBytes(), result.getReclaimedBytes());
+
+    stat = metaRepo.table("admin", "t1").stat();
+    assertEquals(2, stat.getRecords());
+    assertEquals(0, stat.getDeletedRecords());
+
+    assertValues(new Object[][] { { "z", 2L }, { "y", 3L } }, query("select * from t1;"));
+    assertValues(new Object[][] { { "y", 3L } }, query("select * from t1 where a = 'y';"));
+    assertValues(new Object[][] { { "z", 2L } }, query("select * from t1 where b = 2;"));
+    assertValues(new Object[][] { { "y", 3L } }, query("select * from t1 where b = 3;"));
+
+    execute("insert into t1 values ('x', 3);");
+    execute("delete from t1 where a = 'z';");
+    assertValues(new Object[][] { { "y", 3L }, { "x", 3L } }, query("select * from t1 where b = 3;"));
+    assertValues(new Object[][] { { "x", 3L } }, query("select * from t1 where a = 'x';"));
+  }
+
+  @Test
+  public void testVacuumLookupTableWithForeignKey() throws Exception {
+    execute("create lookup table t2 (a id, b varchar);");
+    execute("create table t3 (c integer, constraint fk_a foreign key (c) references t2);");
+    execute("insert into t2 (b) values ('x'), ('y'), ('z');");
+    execute("delete from t2 where b = 'x';");
+    execute("insert into t3 values (2);");
+
+    VacuumResult result = vacuum("vacuum t2;");
+    assertEquals(1, result.getAffectedLines());
+    assertValues(new Object[][] { { 1L, "y" }, { 2L, "z" } }, query("select * from t2;"));
+    assertValues(new Object[][] { { "z" } }, query("select fk_a.b from t3;"));
+
+    execute("insert into t2 (b) values ('w');");
+    assertValues(new Object[][] { { 3L, "w" } }, query("select * from t2 where a = 3;"));
+  }
+
+  @Test
+  public void testVacuumEmptyTable() throws Exception {
+    execute("create table t4 (a varchar);");
+    VacuumResult result = vacuum("vacuum t4;");
+    assertEquals(0, result.getAffectedLines());
+    assertEquals(0, result.getReclaimedBytes());
+  }
+
+  @Test
+  public void testVacuumError() throws Exception {
+    ErrorResult e = error("vacuum t5;");
+    assertEquals("[7, 9]: Table 'admin.t5' does not exist.", e.getError().getMessage());
+  }
+}
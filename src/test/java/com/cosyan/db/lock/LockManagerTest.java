@@ -15,11 +15,24 @@
  */
 package com.cosyan.db.lock;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lock.LockManager.LockStat;
+import com.cosyan.db.meta.MetaReader;
+import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.session.Session;
+import com.cosyan.db.transaction.MetaResources;
 import com.google.common.collect.ImmutableList;
 
 public class LockManagerTest extends UnitTestBase {
@@ -204,4 +217,88 @@ public class LockManagerTest extends UnitTestBase {
     }
   }
 
+
+  @Test
+  public void testFIFOWakeUp() throws InterruptedException {
+    ResourceLock lock = new ResourceLock();
+    AtomicBoolean cancelled = new AtomicBoolean(false);
+    assertTrue(lock.lock(/* write= */true, cancelled, 100));
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    Thread reader = new Thread(() -> {
+      lock.lock(/* write= */false, new AtomicBoolean(false), 100);
+      order.add("reader");
+      lock.unlock(/* write= */false);
+    });
+    reader.start();
+    while (lock.stats().getQueueLength() < 1) {
+      Thread.sleep(1);
+    }
+    Thread writer = new Thread(() -> {
+      lock.lock(/* write= */true, new AtomicBoolean(false), 100);
+      order.add("writer");
+      lock.unlock(/* write= */true);
+    });
+    writer.start();
+    while (lock.stats().getQueueLength() < 2) {
+      Thread.sleep(1);
+    }
+    // A new reader cannot overtake the queued writer.
+    AtomicBoolean cancelledReader = new AtomicBoolean(false);
+    Thread lateReader = new Thread(() -> {
+      if (lock.lock(/* write= */false, cancelledReader, 10)) {
+        order.add("late reader");
+        lock.unlock(/* write= */false);
+      }
+    });
+    lateReader.start();
+    while (lock.stats().getQueueLength() < 3) {
+      Thread.sleep(1);
+    }
+    cancelledReader.set(true);
+    lateReader.join();
+    assertEquals(2, lock.stats().getQueueLength());
+
+    lock.unlock(/* write= */true);
+    reader.join();
+    writer.join();
+    assertEquals(ImmutableList.of("reader", "writer"), order);
+
+    LockStat stat = lock.stats();
+    assertEquals(3, stat.getAcquisitions());
+    assertEquals(2, stat.getWaits());
+    assertEquals(3, Arrays.stream(stat.getHistogram()).sum());
+    assertEquals(0, stat.getQueueLength());
+  }
+
+  @Test
+  public void testLockStats() {
+    Session s = dbApi.newAdminSession();
+    s.execute("create table t9 (a integer);");
+    s.execute("insert into t9 values (1);");
+    s.execute("insert into t9 values (2);");
+    MetaReader metaReader = metaRepo.metaRepoReadLock();
+    try {
+      LockStat stat = metaReader.lockStats().get("admin.t9");
+      assertTrue(stat.getAcquisitions() >= 2);
+      assertEquals(stat.getAcquisitions(), Arrays.stream(stat.getHistogram()).sum());
+    } finally {
+      metaReader.metaRepoReadUnlock();
+    }
+  }
+
+  @Test
+  public void testSelectDoesNotWaitForWriter() throws ModelException {
+    Session s = dbApi.newAdminSession();
+    s.execute("create table t10 (a integer);");
+    s.execute("insert into t10 values (1);");
+    MetaResources write = MetaResources.updateTable(metaRepo.table("admin", "t10"));
+    assertTrue(metaRepo.lock(write, new AtomicBoolean(false), 100));
+    try {
+      QueryResult result = query("select * from t10;", s);
+      assertValues(new Object[][] { { 1L } }, result);
+    } finally {
+      metaRepo.unlock(write);
+    }
+  }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.logging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.logging.TransactionJournal.JournalStat;
+
+public class TransactionJournalTest extends UnitTestBase {
+
+  private File journalFile() {
+    return new File(config.journalDir() + File.separator + "transaction.journal");
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    TransactionJournal journal = session.transactionJournal();
+    JournalStat before = journal.stats();
+    int numThreads = 8;
+    int n = 50;
+    AtomicInteger errors = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      final long offset = i * 1000000L;
+      Thread thread = new Thread(() -> {
+        try {
+          for (int j = 0; j < n; j++) {
+            journal.start(offset + j);
+            journal.success(offset + j);
+          }
+        } catch (Exception e) {
+          errors.incrementAndGet();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, errors.get());
+
+    JournalStat after = journal.stats();
+    assertEquals(2 * numThreads * n, after.getRecords() - before.getRecords());
+    assertTrue(after.getBatches() - before.getBatches() <= 2 * numThreads * n);
+    assertTrue(after.getFsyncs() - before.getFsyncs() <= numThreads * n);
+
+    // Every record is durable and intact.
+    byte[] content = Files.readAllBytes(Paths.get(journalFile().getPath()));
+    assertEquals(0, content.length % TransactionJournal.RECORD_SIZE);
+    for (int i = 0; i < content.length; i += TransactionJournal.RECORD_SIZE) {
+      byte[] record = Arrays.copyOfRange(content, i, i + TransactionJournal.RECORD_SIZE);
+      long trxNumber = ByteBuffer.wrap(record, 1, 8).getLong();
+      assertArrayEquals(TransactionJournal.record(record[0], trxNumber), record);
+    }
+  }
+
+  @Test
+  public void testReadOnlyTransactionsDoNotSync() throws Exception {
+    TransactionJournal journal = session.transactionJournal();
+    execute("create table t1 (a integer);");
+    JournalStat before = journal.stats();
+    execute("insert into t1 values (1);");
+    JournalStat afterInsert = journal.stats();
+    assertTrue(afterInsert.getFsyncs() > before.getFsyncs());
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(1, query("select * from t1;").getValues().size());
+    }
+    assertEquals(afterInsert.getFsyncs(), journal.stats().getFsyncs());
+    // Drops the REDO record of the insert.
+    journal.checkpoint(0L);
+  }
+
+  @Test
+  public void testRedoTail() throws Exception {
+    TransactionJournal journal = session.transactionJournal();
+    journal.checkpoint(0L);
+    assertEquals(0, journal.redoTail().size());
+
+    journal.redo(1L, new byte[] { 1, 2, 3 });
+    journal.start(2L);
+    journal.redo(2L, new byte[] { 4 });
+    journal.ioWriteError(2L);
+    journal.redo(3L, new byte[] { 5, 6 });
+    journal.success(3L);
+    journal.redo(4L, null);
+    // Only the last REDO record of the transaction is dropped.
+    journal.redo(5L, new byte[] { 9 });
+    journal.redo(5L, new byte[] { 10 });
+    journal.redoError(5L);
+    // Torn record at the end of the journal.
+    byte[] torn = TransactionJournal.redoRecord(6L, new byte[] { 7, 8 });
+    Files.write(Paths.get(journalFile().getPath()), Arrays.copyOf(torn, torn.length - 3),
+        StandardOpenOption.APPEND);
+
+    List<byte[]> tail = journal.redoTail();
+    assertEquals(4, tail.size());
+    assertArrayEquals(new byte[] { 1, 2, 3 }, tail.get(0));
+    assertArrayEquals(new byte[] { 4 }, tail.get(1));
+    assertArrayEquals(new byte[] { 5, 6 }, tail.get(2));
+    assertArrayEquals(new byte[] { 9 }, tail.get(3));
+
+    journal.checkpoint(0L);
+    assertEquals(0, journal.redoTail().size());
+    assertEquals(TransactionJournal.RECORD_SIZE, journalFile().length());
+  }
+}
@@ -19,9 +19,11 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
+import com.cosyan.db.index.KeyRange;
 import com.cosyan.db.lang.sql.Lexer;
 import com.cosyan.db.lang.sql.Parser;
 import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
 import com.cosyan.db.model.Ident;
 import com.cosyan.db.session.IParser.ParserException;
 import com.google.common.collect.ImmutableList;
@@ -52,4 +54,23 @@ public class PredicateHelperTest {
     assertClause("(a > 1 or b = 2) and c = 3;",
         new VariableEquals(new Ident("c"), 3L));
   }
+
+  private void assertRange(String sql, VariableRange... ranges) throws ParserException {
+    assertEquals(ImmutableList.copyOf(ranges),
+        PredicateHelper.extractRanges(parser.parseExpression(lexer.tokenize(sql))));
+  }
+
+  @Test
+  public void testExtractRanges() throws ParserException {
+    assertRange("a > 1 and b <= 'x';",
+        new VariableRange(new Ident("a"), KeyRange.greaterThan(1L, false)),
+        new VariableRange(new Ident("b"), KeyRange.lessThan("x", true)));
+    assertRange("1 < a and 2.0 >= b;",
+        new VariableRange(new Ident("a"), KeyRange.greaterThan(1L, false)),
+        new VariableRange(new Ident("b"), KeyRange.lessThan(2.0, true)));
+    assertRange("a.starts_with('ab') and c = 1;",
+        new VariableRange(new Ident("a"), new KeyRange("ab", true, "ac", false, false)));
+    assertRange("a > 1 or b < 2;");
+    assertRange("a.length() > 1 and a < b;");
+  }
 }
@@ -32,6 +32,7 @@ import com.cosyan.db.auth.Authenticator.Method;
 import com.cosyan.db.conf.Config;
 import com.cosyan.db.conf.Config.ConfigException;
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.TableWriter;
 import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.CrashResult;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
@@ -39,6 +40,8 @@ import com.cosyan.db.lang.transaction.Result.QueryResult;
 import com.cosyan.db.lang.transaction.Result.TransactionResult;
 import com.cosyan.db.meta.View.TopLevelView;
 import com.cosyan.db.session.Session;
+import com.cosyan.db.transaction.MetaResources;
+import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
@@ -380,4 +383,120 @@ public class RestartDBTest {
       assertEquals("Referencing constraint check v22.c_1 failed.", e.getError().getMessage());
     }
   }
+
+  @Test
+  public void testRedoLogAfterCrash() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    Session session = dbApi.newAdminSession();
+    session.execute("create table t30(a varchar unique, b integer);");
+    session.execute("insert into t30 values('x', 1), ('y', 2);");
+    session.execute("delete from t30 where a = 'x';");
+
+    // The changes are logged but the DB crashes before applying them.
+    MetaRepo metaRepo = dbApi.getMetaRepo();
+    MaterializedTable t30 = metaRepo.table("admin", "t30");
+    {
+      Resources resources = metaRepo.resources(MetaResources.insertIntoTable(t30), session.authToken());
+      resources.writer("admin.t30").insert(resources, new Object[] { "z", 3L }, true);
+      session.transactionJournal().redo(1000L, resources.redoRecord());
+      resources.rollback();
+    }
+    // Failed to log the changes, these are rolled back.
+    {
+      Resources resources = metaRepo.resources(MetaResources.insertIntoTable(t30), session.authToken());
+      resources.writer("admin.t30").insert(resources, new Object[] { "w", 4L }, true);
+      session.transactionJournal().redo(1001L, resources.redoRecord());
+      session.transactionJournal().redoError(1001L);
+      resources.rollback();
+    }
+    assertEquals(1, query("select * from t30;", session).getValues().size());
+
+    dbApi = new DBApi(config);
+    session = dbApi.newAdminSession();
+    QueryResult result = query("select * from t30;", session);
+    assertEquals(2, result.getValues().size());
+    assertArrayEquals(new Object[] { "y", 2L }, result.getValues().get(0));
+    assertArrayEquals(new Object[] { "z", 3L }, result.getValues().get(1));
+    ErrorResult e = (ErrorResult) session.execute("insert into t30 values('z', 5);");
+    assertEquals("Key 'z' already present in index.", e.getError().getMessage());
+    session.execute("insert into t30 values('x', 6);");
+    assertArrayEquals(new Object[] { "x", 6L },
+        query("select * from t30 where a = 'x';", session).getValues().get(0));
+
+    // Replaying the changes again is idempotent.
+    dbApi = new DBApi(config);
+    result = query("select * from t30;", dbApi.newAdminSession());
+    assertEquals(3, result.getValues().size());
+  }
+
+  @Test
+  public void testRedoLogAfterFailedCommit() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    Session session = dbApi.newAdminSession();
+    session.execute("create table t31(a integer);");
+    session.execute("create table t32(b integer);");
+    session.execute("insert into t31 values(1);");
+    session.execute("insert into t32 values(1);");
+
+    // The changes are logged, then the commit fails after writing the first table.
+    MetaRepo metaRepo = dbApi.getMetaRepo();
+    MaterializedTable t31 = metaRepo.table("admin", "t31");
+    MaterializedTable t32 = metaRepo.table("admin", "t32");
+    {
+      Resources resources = metaRepo.resources(
+          MetaResources.insertIntoTable(t31).merge(MetaResources.insertIntoTable(t32)), session.authToken());
+      resources.writer("admin.t31").insert(resources, new Object[] { 2L }, true);
+      resources.writer("admin.t32").insert(resources, new Object[] { 2L }, true);
+      session.transactionJournal().redo(1002L, resources.redoRecord());
+      resources.writer("admin.t31").commit();
+      session.transactionJournal().ioWriteError(1002L);
+      resources.rollback();
+    }
+    assertEquals(2, query("select * from t31;", session).getValues().size());
+    assertEquals(1, query("select * from t32;", session).getValues().size());
+
+    // The logged changes of both tables are replayed.
+    dbApi = new DBApi(config);
+    session = dbApi.newAdminSession();
+    assertEquals(2, query("select * from t31;", session).getValues().size());
+    QueryResult result = query("select * from t32;", session);
+    assertEquals(2, result.getValues().size());
+    assertArrayEquals(new Object[] { 2L }, result.getValues().get(1));
+  }
+
+  @Test
+  public void testVacuumCompletedAfterCrash() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    Session session = dbApi.newAdminSession();
+    session.execute("create table t33(a varchar unique, b integer);");
+    session.execute("create index t33.b;");
+    session.execute("insert into t33 values('x', 1), ('y', 2), ('z', 2);");
+    session.execute("delete from t33 where a = 'x';");
+
+    // The vacuum is logged but the DB crashes before swapping the table file.
+    MetaRepo metaRepo = dbApi.getMetaRepo();
+    MaterializedTable t33 = metaRepo.table("admin", "t33");
+    assertEquals(1, t33.stat().getDeletedRecords());
+    {
+      Resources resources = metaRepo.resources(MetaResources.tableMeta(t33), session.authToken());
+      resources.writer("admin.t33").vacuum(resources);
+      session.transactionJournal().redo(1003L, resources.redoRecord());
+    }
+    // A vacuum which was not logged.
+    File stale = new File(t33.fileName() + ".0" + TableWriter.VACUUM_SUFFIX);
+    assertTrue(stale.createNewFile());
+
+    dbApi = new DBApi(config);
+    session = dbApi.newAdminSession();
+    t33 = dbApi.getMetaRepo().table("admin", "t33");
+    assertEquals(2, t33.stat().getRecords());
+    assertEquals(0, t33.stat().getDeletedRecords());
+    assertArrayEquals(new String[0], new File(config.tableDir()).list(
+        (dir, name) -> name.endsWith(TableWriter.VACUUM_SUFFIX)));
+    QueryResult result = query("select * from t33;", session);
+    assertEquals(2, result.getValues().size());
+    assertArrayEquals(new Object[] { "y", 2L }, query("select * from t33 where a = 'y';", session).getValues().get(0));
+    assertArrayEquals(new Object[] { "z", 2L }, query("select * from t33 where a = 'z';", session).getValues().get(0));
+    assertEquals(2, query("select * from t33 where b = 2;", session).getValues().size());
+  }
 }
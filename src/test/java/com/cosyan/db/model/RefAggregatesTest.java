@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.google.common.collect.ImmutableSet;
+
+public class RefAggregatesTest extends UnitTestBase {
+
+  @Test
+  public void testRegistered() throws Exception {
+    execute("create table t1 (a varchar, b integer, constraint pk_a primary key (a));");
+    execute("create table t2 (a varchar, b integer, constraint fk_a foreign key (a) references t1(a));");
+    execute("alter table t1 add view s (select sum(b) as sb from rev_fk_a);");
+    // References the parent record, cannot be computed from the records of t2.
+    execute("alter table t1 add view p (select sum(fk_a.b) as sb from rev_fk_a);");
+    assertEquals(ImmutableSet.of("admin.t1.s"), metaRepo.table("admin", "t2").refAggregates().keySet());
+
+    execute("alter table t1 drop view s;");
+    assertEquals(ImmutableSet.of(), metaRepo.table("admin", "t2").refAggregates().keySet());
+  }
+
+  @Test
+  public void testInsertDeleteRollback() throws Exception {
+    execute("create table t3 (a varchar, constraint pk_a primary key (a));");
+    execute("create table t4 (a varchar, b integer, c integer, "
+        + "constraint fk_a foreign key (a) references t3(a));");
+    execute("alter table t3 add view s (select sum(b) as sb, count(1) as c from rev_fk_a where c = 1);");
+    execute("alter table t3 add constraint c_1 check (s.sb <= 5 and s.c <= 3);");
+
+    execute("insert into t3 values ('x'), ('y');");
+    execute("insert into t4 values ('x', 2, 1), ('x', 2, 1), ('y', 5, 1), ('x', 9, 2);");
+    assertError(RuleException.class, "Referencing constraint check t3.c_1 failed.",
+        error("insert into t4 values ('x', 2, 1);"));
+    // The failed insert is rolled back.
+    execute("insert into t4 values ('x', 1, 1);");
+    assertError(RuleException.class, "Referencing constraint check t3.c_1 failed.",
+        error("insert into t4 values ('x', 1, 1);"));
+
+    execute("delete from t4 where a = 'x' and b = 1;");
+    execute("update t4 set b = 1 where a = 'x' and b = 2 and c = 1;");
+    assertError(RuleException.class, "Referencing constraint check t3.c_1 failed.",
+        error("update t4 set b = 6 where a = 'y';"));
+    assertError(RuleException.class, "Referencing constraint check t3.c_1 failed.",
+        error("update t4 set c = 1 where a = 'x' and c = 2;"));
+    execute("update t4 set b = 3, c = 1 where a = 'x' and c = 2;");
+
+    assertValues(new Object[][] { { "x", 5L, 3L }, { "y", 5L, 1L } },
+        query("select a, s.sb, s.c from t3;"));
+  }
+
+  @Test
+  public void testMinMax() throws Exception {
+    execute("create table t5 (a varchar, constraint pk_a primary key (a));");
+    execute("create table t6 (a varchar, b float, constraint fk_a foreign key (a) references t5(a));");
+    execute("alter table t5 add view s (select min(b) as mi, max(b) as ma, avg(b) as av from rev_fk_a);");
+    execute("alter table t5 add constraint c_1 check (s.ma - s.mi <= 2.0 and s.av >= 1.0);");
+
+    execute("insert into t5 values ('x');");
+    execute("insert into t6 values ('x', 1.0), ('x', 2.0), ('x', 3.0);");
+    assertError(RuleException.class, "Referencing constraint check t5.c_1 failed.",
+        error("insert into t6 values ('x', 3.5);"));
+    // Deleting the minimum computes the aggregates again.
+    execute("delete from t6 where b = 1.0;");
+    execute("insert into t6 values ('x', 4.0);");
+    assertError(RuleException.class, "Referencing constraint check t5.c_1 failed.",
+        error("insert into t6 values ('x', 0.5);"));
+    execute("delete from t6 where b = 4.0;");
+    execute("delete from t6 where b = 3.0;");
+    execute("insert into t6 values ('x', 0.5);");
+    assertError(RuleException.class, "Referencing constraint check t5.c_1 failed.",
+        error("insert into t6 values ('x', 0.25);"));
+  }
+
+  @Test
+  public void testCountDelete() throws Exception {
+    execute("create table t7 (a varchar, constraint pk_a primary key (a));");
+    execute("create table t8 (a varchar, b integer, constraint fk_a foreign key (a) references t7(a));");
+    execute("alter table t7 add view s (select count(1) as c from rev_fk_a);");
+    execute("alter table t7 add constraint c_1 check (s.c <= 2);");
+
+    execute("insert into t7 values ('x');");
+    execute("insert into t8 values ('x', 1), ('x', 2);");
+    execute("delete from t8 where b = 1;");
+    execute("insert into t8 values ('x', 3);");
+    assertError(RuleException.class, "Referencing constraint check t7.c_1 failed.",
+        error("insert into t8 values ('x', 4);"));
+    assertValues(new Object[][] { { "x", 2L } }, query("select a, s.c from t7;"));
+  }
+
+  @Test
+  public void testCacheSize() throws Exception {
+    execute("create table t9 (a varchar, constraint pk_a primary key (a));");
+    execute("create table t10 (a varchar, b integer, constraint fk_a foreign key (a) references t9(a));");
+    execute("alter table t9 add view s (select sum(b) as sb from rev_fk_a);");
+    execute("alter table t9 add constraint c_1 check (s.sb <= 5);");
+
+    execute("insert into t9 values ('x'), ('y'), ('z');");
+    execute("insert into t10 values ('x', 1), ('y', 2), ('z', 3);");
+    execute("insert into t10 values ('x', 1);");
+    execute("insert into t10 values ('y', 1);");
+    execute("insert into t10 values ('z', 1);");
+    // The test config keeps at most two keys, the evicted ones are computed again.
+    assertEquals(2, metaRepo.table("admin", "t10").refAggregates().get("admin.t9.s").size());
+    execute("insert into t10 values ('x', 3);");
+    assertError(RuleException.class, "Referencing constraint check t9.c_1 failed.",
+        error("insert into t10 values ('x', 1);"));
+    assertValues(new Object[][] { { "x", 5L }, { "y", 3L }, { "z", 4L } },
+        query("select a, s.sb from t9;"));
+  }
+
+  @Test
+  public void testAlterReferencingTable() throws Exception {
+    execute("create table t11 (a varchar, constraint pk_a primary key (a));");
+    execute("create table t12 (a varchar, c integer, b integer, d integer, "
+        + "constraint fk_a foreign key (a) references t11(a));");
+    execute("alter table t11 add view s (select sum(b) as sb from rev_fk_a where d = 1);");
+    execute("alter table t11 add constraint c_1 check (s.sb <= 5);");
+
+    execute("insert into t11 values ('x');");
+    execute("insert into t12 values ('x', 1, 2, 1), ('x', 2, 2, 1), ('x', 3, 9, 2);");
+    // Dropping the column moves the aggregated and the filtered columns.
+    execute("alter table t12 drop c;");
+    execute("insert into t12 values ('x', 1, 1);");
+    assertError(RuleException.class, "Referencing constraint check t11.c_1 failed.",
+        error("insert into t12 values ('x', 1, 1);"));
+    execute("insert into t12 values ('x', 7, 2);");
+
+    execute("alter table t12 add e integer;");
+    execute("insert into t12 values ('x', 7, 2, 7);");
+    assertError(RuleException.class, "Referencing constraint check t11.c_1 failed.",
+        error("insert into t12 values ('x', 1, 1, 7);"));
+  }
+}
@@ -17,8 +17,16 @@ package com.cosyan.db.model.stat;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import org.junit.Test;
 
+import com.cosyan.db.index.KeyRange;
+
 public class ColumnStatsTest {
 
   @Test
@@ -76,4 +84,42 @@ public class ColumnStatsTest {
     }
     assertEquals(15L, s1.cardinality(), 1);
   }
+
+  @Test
+  public void testSerialization() throws IOException {
+    ColumnStats s1 = new ColumnStats();
+    for (int i = 0; i < 10000; i++) {
+      s1.add("xyz" + (i % 100));
+      s1.add(null);
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    s1.write(new DataOutputStream(baos));
+    ColumnStats s2 = ColumnStats.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+    assertEquals(s1.cardinality(), s2.cardinality());
+    assertEquals(s1.notNull(), s2.notNull());
+    assertEquals(s1.maxRelativeCardinality(), s2.maxRelativeCardinality(), 0.0);
+  }
+
+  @Test
+  public void testRangeSelectivity() throws IOException {
+    ColumnStats s1 = new ColumnStats();
+    assertEquals(-1.0, s1.rangeSelectivity(KeyRange.greaterThan(5L, false)), 0.0);
+    for (long i = 0; i < 10000; i++) {
+      s1.add(i);
+      s1.add(null);
+    }
+    assertEquals(0.0, s1.min(), 0.0);
+    assertEquals(9999.0, s1.max(), 0.0);
+    assertEquals(0.9, s1.rangeSelectivity(KeyRange.greaterThan(1000L, true)), 0.1);
+    assertEquals(0.1, s1.rangeSelectivity(KeyRange.lessThan(1000L, false)), 0.1);
+    assertEquals(0.0, s1.rangeSelectivity(KeyRange.greaterThan(10000L, false)), 0.0);
+    assertEquals(1.0, s1.rangeSelectivity(KeyRange.greaterThan(-1.0, false)), 0.0);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    s1.writeRange(new DataOutputStream(baos));
+    ColumnStats s2 = new ColumnStats();
+    s2.readRange(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+    KeyRange range = KeyRange.lessThan(2500L, true);
+    assertEquals(s1.rangeSelectivity(range), s2.rangeSelectivity(range), 0.0);
+  }
 }
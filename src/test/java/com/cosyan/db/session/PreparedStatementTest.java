@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.google.common.collect.Iterables;
+
+public class PreparedStatementTest extends UnitTestBase {
+
+  private Result run(PreparedStatement preparedStatement, Object... values) {
+    Result result = session.execute(preparedStatement, values);
+    assertTrue(result.toJSON().toString(), result instanceof TransactionResult);
+    return result;
+  }
+
+  private QueryResult query(PreparedStatement preparedStatement, Object... values) {
+    return (QueryResult) Iterables.getOnlyElement(((TransactionResult) run(preparedStatement, values)).getResults());
+  }
+
+  private ErrorResult error(PreparedStatement preparedStatement, Object... values) {
+    Result result = session.execute(preparedStatement, values);
+    assertTrue(result.toJSON().toString(), result instanceof ErrorResult);
+    return (ErrorResult) result;
+  }
+
+  @Test
+  public void testInsertAndSelect() throws Exception {
+    execute("create table t1 (a integer unique not null, b varchar);");
+    PreparedStatement insert = session.prepare("insert into t1 values (?, ?);");
+    assertEquals(2, insert.numParams());
+    run(insert, 1L, "x");
+    run(insert, 2L, "y");
+    assertEquals(1L, insert.compilations());
+    // The type of the parameters changed.
+    run(insert, 3L, null);
+    assertEquals(2L, insert.compilations());
+
+    PreparedStatement select = session.prepare("select b from t1 where a = ?;");
+    assertValues(new Object[][] { { "x" } }, query(select, 1L));
+    assertValues(new Object[][] { { "y" } }, query(select, 2L));
+    assertValues(new Object[][] { { null } }, query(select, 3L));
+    assertValues(new Object[][] {}, query(select, 4L));
+    assertEquals(1L, select.compilations());
+
+    PreparedStatement update = session.prepare("update t1 set b = ? where a = ?;");
+    run(update, "z", 2L);
+    assertValues(new Object[][] { { "z" } }, query(select, 2L));
+    assertValues(new Object[][] { { 1L, "x" }, { 3L, null } },
+        query(session.prepare("select * from t1 where not (a = ?) and a < ?;"), 2L, 4L));
+  }
+
+  @Test
+  public void testRecompile() throws Exception {
+    execute("create table t2 (a integer, b varchar);");
+    execute("insert into t2 values (1, 'x'), (2, 'y');");
+    PreparedStatement select = session.prepare("select b from t2 where a = ?;");
+    assertValues(new Object[][] { { "x" } }, query(select, 1L));
+    assertEquals(1L, select.compilations());
+
+    execute("create index t2.a;");
+    assertValues(new Object[][] { { "y" } }, query(select, 2L));
+    assertEquals(2L, select.compilations());
+
+    error(select, "x");
+    assertValues(new Object[][] { { "x" } }, query(select, 1L));
+    assertEquals(3L, select.compilations());
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    execute("create table t3 (a integer);");
+    PreparedStatement select = session.prepare("select * from t3 where a = ?;");
+    assertEquals("Expected '1' parameters but got '2'.", error(select, 1L, 2L).getError().getMessage());
+    assertEquals("Invalid parameter type 'class java.lang.Integer'.", error(select, 1).getError().getMessage());
+    assertEquals("[27, 28]: Parameters can only be used in prepared statements.",
+        error("select * from t3 where a = ?;").getError().getMessage());
+    assertEquals("Invalid prepared statement '100'.",
+        ((ErrorResult) session.execute(100L, new Object[0])).getError().getMessage());
+  }
+
+  @Test
+  public void testDeallocate() throws Exception {
+    execute("create table t4 (a integer);");
+    execute("insert into t4 values (1);");
+    PreparedStatement select = session.prepare("select * from t4 where a = ?;");
+    assertTrue(session.execute(select.id(), new Object[] { 1L }).isSuccess());
+    assertTrue(session.deallocate(select.id()).isSuccess());
+    assertEquals(String.format("Invalid prepared statement '%s'.", select.id()),
+        ((ErrorResult) session.execute(select.id(), new Object[] { 1L })).getError().getMessage());
+    assertEquals(String.format("Invalid prepared statement '%s'.", select.id()),
+        ((ErrorResult) session.deallocate(select.id())).getError().getMessage());
+  }
+}
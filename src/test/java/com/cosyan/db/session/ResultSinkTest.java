@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.lang.transaction.Result.StreamedQueryResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.lang.transaction.ResultSink;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+public class ResultSinkTest extends UnitTestBase {
+
+  private static class CollectingSink implements ResultSink {
+    private final ArrayList<String> events = new ArrayList<>();
+
+    @Override
+    public void query(ImmutableList<String> header, ImmutableList<DataType<?>> types) throws IOException {
+      events.add("query " + header);
+    }
+
+    @Override
+    public void row(Object[] values) throws IOException {
+      events.add("row " + values[0]);
+    }
+
+    @Override
+    public void result(Result result) throws IOException {
+      events.add("result " + result.getClass().getSimpleName());
+    }
+  }
+
+  @Test
+  public void testStreamQuery() throws Exception {
+    execute("create table t1 (a integer);");
+    execute("insert into t1 values (1), (2), (3);");
+
+    CollectingSink sink = new CollectingSink();
+    Result result = session.execute("insert into t1 values (4); select a from t1 where a > 1;", sink);
+    assertTrue(result instanceof TransactionResult);
+    assertEquals(ImmutableList.of(
+        "result InsertIntoResult",
+        "query [a]",
+        "row 2",
+        "row 3",
+        "row 4",
+        "result StreamedQueryResult"), sink.events);
+
+    ImmutableList<Result> results = ((TransactionResult) result).getResults();
+    assertEquals(1L, ((StatementResult) results.get(0)).getAffectedLines());
+    assertEquals(3L, ((StreamedQueryResult) results.get(1)).getRows());
+  }
+
+  @Test
+  public void testStreamError() throws Exception {
+    execute("create table t2 (a integer);");
+    CollectingSink sink = new CollectingSink();
+    Result result = session.execute("select b from t2;", sink);
+    assertTrue(result instanceof ErrorResult);
+    assertEquals(ImmutableList.of(), sink.events);
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+
+public class CompactorTest extends UnitTestBase {
+
+  @Test
+  public void testErrorsDoNotStopCompaction() throws Exception {
+    execute("create table t1 (a integer);");
+    execute("insert into t1 values (1), (2), (3), (4);");
+    execute("delete from t1 where a < 4;");
+    Compactor compactor = new Compactor(config, metaRepo, session) {
+      private int runs;
+
+      @Override
+      public List<String> tablesToVacuum() {
+        if (runs++ == 0) {
+          throw new IllegalStateException("Failed to read the stats.");
+        }
+        return super.tablesToVacuum();
+      }
+    };
+    compactor.compact();
+    assertEquals(1L, compactor.failures());
+    assertEquals(3L, metaRepo.table("admin", "t1").stat().getDeletedRecords());
+
+    compactor.compact();
+    assertEquals(1L, compactor.failures());
+    assertEquals(0L, metaRepo.table("admin", "t1").stat().getDeletedRecords());
+    assertValues(new Object[][] { { 4L } }, query("select * from t1;"));
+  }
+}
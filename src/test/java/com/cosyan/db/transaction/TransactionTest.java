@@ -15,15 +15,21 @@
  */
 package com.cosyan.db.transaction;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
 import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
 import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.TableUniqueIndex;
 
@@ -165,4 +171,83 @@ public class TransactionTest extends UnitTestBase {
     assertHeader(new String[] { "a", "b" }, (QueryResult) result.getResults().get(2));
     assertValues(new Object[][] { { "x", 1L } }, (QueryResult) result.getResults().get(2));
   }
+
+  @Test
+  public void testSnapshotRead() throws ModelException, IOException {
+    execute("create table t9 (a integer, b varchar, constraint pk_a primary key (a));");
+    execute("insert into t9 values(1, 'x');" +
+        "insert into t9 values(2, 'y');");
+    MaterializedTable t9 = metaRepo.table("admin", "t9");
+    Resources resources = metaRepo.snapshotResources(MetaResources.readTable(t9));
+    try {
+      execute("insert into t9 values(3, 'z');");
+      execute("delete from t9 where a = 1;");
+      execute("update t9 set b = 'w' where a = 2;");
+
+      // Changes committed after the snapshot are not visible.
+      IterableTableReader reader = resources.createIterableReader("admin.t9");
+      assertArrayEquals(new Object[] { 1L, "x" }, reader.next());
+      assertArrayEquals(new Object[] { 2L, "y" }, reader.next());
+      assertNull(reader.next());
+      reader.close();
+
+      TableUniqueIndex index = resources.getPrimaryKeyIndex("admin.t9");
+      assertEquals(1, index.get(1L).length);
+      assertEquals(1, index.get(2L).length);
+      assertEquals(0, index.get(3L).length);
+      assertArrayEquals(new Object[] { 2L, "y" }, resources.reader("admin.t9").get(2L, resources).getValues());
+    } finally {
+      resources.release();
+    }
+
+    QueryResult result = query("select * from t9;");
+    assertValues(new Object[][] {
+        { 3L, "z" },
+        { 2L, "w" } }, result);
+  }
+
+  @Test
+  public void testSnapshotIndexAfterDeletes() throws ModelException, IOException {
+    execute("create table t10 (a integer, b varchar);");
+    execute("create index t10.b;");
+    execute("insert into t10 values(1, 'x'), (2, 'x'), (3, 'y'), (4, 'z');");
+    MaterializedTable t10 = metaRepo.table("admin", "t10");
+    Resources resources = metaRepo.snapshotResources(MetaResources.readTable(t10));
+    try {
+      IndexReader index = resources.getIndex("admin.t10", "b");
+      assertEquals(2, index.get("x").length);
+      execute("delete from t10 where a = 1;");
+      assertEquals(2, index.get("x").length);
+      execute("update t10 set b = 'x' where a = 3;");
+      execute("delete from t10 where b = 'z';");
+      assertEquals(2, index.get("x").length);
+      assertEquals(1, index.get("y").length);
+      assertEquals(1, index.get("z").length);
+    } finally {
+      resources.release();
+    }
+  }
+
+  @Test
+  public void testAlterWaitsForSnapshot() throws Exception {
+    execute("create table t11 (a integer);");
+    execute("insert into t11 values(1);");
+    MaterializedTable t11 = metaRepo.table("admin", "t11");
+    Resources resources = metaRepo.snapshotResources(MetaResources.readTable(t11));
+    Thread alter;
+    try {
+      alter = new Thread(() -> execute("alter table t11 add b varchar;"));
+      alter.start();
+      alter.join(200);
+      // The snapshot runs without the meta repo lock but keeps the table from being altered.
+      assertTrue(alter.isAlive());
+      IterableTableReader reader = resources.createIterableReader("admin.t11");
+      assertArrayEquals(new Object[] { 1L }, reader.next());
+      reader.close();
+    } finally {
+      resources.release();
+    }
+    alter.join();
+    assertValues(new Object[][] { { 1L, null } }, query("select * from t11;"));
+  }
 }